@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -41,6 +41,7 @@ import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.integration.IntegrationMessageHeaderAccessor;
 import org.springframework.integration.channel.NullChannel;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.expression.ExpressionUtils;
 import org.springframework.integration.handler.AbstractMessageProducingHandler;
 import org.springframework.integration.handler.DiscardingMessageHandler;
@@ -321,6 +322,11 @@ public abstract class AbstractCorrelatingMessageHandler extends AbstractMessageP
 		return "aggregator";
 	}
 
+	@Override
+	protected String getTaskSchedulerPoolBeanName() {
+		return IntegrationContextUtils.TIMER_TASK_SCHEDULER_BEAN_NAME;
+	}
+
 	public MessageGroupStore getMessageStore() {
 		return this.messageStore;
 	}
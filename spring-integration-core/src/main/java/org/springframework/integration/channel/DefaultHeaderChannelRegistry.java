@@ -1,5 +1,5 @@
 /*
- * Copyright 2013-2016 the original author or authors.
+ * Copyright 2013-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.context.Lifecycle;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.support.channel.BeanFactoryChannelResolver;
 import org.springframework.integration.support.channel.HeaderChannelRegistry;
@@ -110,6 +111,11 @@ public class DefaultHeaderChannelRegistry extends IntegrationObjectSupport
 		super.setTaskScheduler(taskScheduler);
 	}
 
+	@Override
+	protected String getTaskSchedulerPoolBeanName() {
+		return IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME;
+	}
+
 	@Override
 	public final int size() {
 		return this.channels.size();
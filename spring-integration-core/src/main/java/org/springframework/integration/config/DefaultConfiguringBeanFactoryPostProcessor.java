@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,6 +27,7 @@ import org.springframework.beans.factory.config.BeanDefinitionHolder;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.parsing.BeanComponentDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
@@ -37,7 +38,7 @@ import org.springframework.integration.channel.PublishSubscribeChannel;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.context.IntegrationProperties;
 import org.springframework.integration.handler.LoggingHandler;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.integration.scheduling.IntegrationTaskScheduler;
 
 /**
  * A {@link BeanFactoryPostProcessor} implementation that provides default beans for the error handling and task
@@ -67,6 +68,7 @@ class DefaultConfiguringBeanFactoryPostProcessor implements BeanFactoryPostProce
 			if (!beanFactory.containsBean(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME)) {
 				this.registerTaskScheduler(registry);
 			}
+			this.registerTaskSchedulerPools(beanFactory, registry);
 			this.registerIdGeneratorConfigurer(registry);
 		}
 		else if (this.logger.isWarnEnabled()) {
@@ -158,7 +160,7 @@ class DefaultConfiguringBeanFactoryPostProcessor implements BeanFactoryPostProce
 			this.logger.info("No bean named '" + IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME +
 					"' has been explicitly defined. Therefore, a default ThreadPoolTaskScheduler will be created.");
 		}
-		BeanDefinition scheduler = BeanDefinitionBuilder.genericBeanDefinition(ThreadPoolTaskScheduler.class)
+		BeanDefinition scheduler = BeanDefinitionBuilder.genericBeanDefinition(IntegrationTaskScheduler.class)
 				.addPropertyValue("poolSize", IntegrationProperties.getExpressionFor(IntegrationProperties.TASK_SCHEDULER_POOL_SIZE))
 				.addPropertyValue("threadNamePrefix", "task-scheduler-")
 				.addPropertyValue("rejectedExecutionHandler", new CallerRunsPolicy())
@@ -168,4 +170,38 @@ class DefaultConfiguringBeanFactoryPostProcessor implements BeanFactoryPostProce
 		registry.registerBeanDefinition(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME, scheduler);
 	}
 
+	/**
+	 * Register the dedicated polling, timer and housekeeping TaskScheduler pools
+	 * which haven't been explicitly defined. The pool sizes are resolved from the
+	 * Integration properties when the pools are created; a pool without a positive
+	 * pool size falls back to the common {@code taskScheduler} bean.
+	 * @see TaskSchedulerPoolFactoryBean
+	 */
+	private void registerTaskSchedulerPools(ConfigurableListableBeanFactory beanFactory,
+			BeanDefinitionRegistry registry) {
+
+		String[][] pools = {
+				{ IntegrationContextUtils.POLLING_TASK_SCHEDULER_BEAN_NAME,
+						IntegrationProperties.TASK_SCHEDULER_POLLING_POOL_SIZE, "polling-scheduler-" },
+				{ IntegrationContextUtils.TIMER_TASK_SCHEDULER_BEAN_NAME,
+						IntegrationProperties.TASK_SCHEDULER_TIMER_POOL_SIZE, "timer-scheduler-" },
+				{ IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME,
+						IntegrationProperties.TASK_SCHEDULER_HOUSEKEEPING_POOL_SIZE, "housekeeping-scheduler-" }
+		};
+		for (String[] pool : pools) {
+			if (beanFactory.containsBean(pool[0])) {
+				continue;
+			}
+			AbstractBeanDefinition scheduler =
+					BeanDefinitionBuilder.genericBeanDefinition(TaskSchedulerPoolFactoryBean.class)
+							.addPropertyValue("poolSize", IntegrationProperties.getExpressionFor(pool[1]))
+							.addPropertyValue("threadNamePrefix", pool[2])
+							.addPropertyValue("errorHandler", new RootBeanDefinition(MessagePublishingErrorHandler.class))
+							.getBeanDefinition();
+			// the pools may be aliases of the 'taskScheduler'; keep autowiring by type unambiguous
+			scheduler.setAutowireCandidate(false);
+			registry.registerBeanDefinition(pool[0], scheduler);
+		}
+	}
+
 }
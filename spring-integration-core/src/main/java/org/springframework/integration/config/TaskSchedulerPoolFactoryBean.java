@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.config;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.integration.context.IntegrationContextUtils;
+import org.springframework.integration.scheduling.IntegrationTaskScheduler;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+import org.springframework.util.ErrorHandler;
+
+/**
+ * A {@link FactoryBean} for the dedicated polling, timer and housekeeping
+ * {@link TaskScheduler} pools. The pool size is resolved when the bean is created
+ * (typically from an {@code IntegrationProperties} expression), rather than when
+ * the bean definitions are registered. When it is positive, an
+ * {@link IntegrationTaskScheduler} with that pool size is created and managed by
+ * this factory; otherwise the factory exposes the common {@code taskScheduler} bean.
+ *
+ * @author agent
+ * @since 5.0
+ */
+public class TaskSchedulerPoolFactoryBean implements FactoryBean<TaskScheduler>, BeanFactoryAware, BeanNameAware,
+		InitializingBean, DisposableBean {
+
+	private int poolSize;
+
+	private String threadNamePrefix;
+
+	private ErrorHandler errorHandler;
+
+	private RejectedExecutionHandler rejectedExecutionHandler = new ThreadPoolExecutor.CallerRunsPolicy();
+
+	private BeanFactory beanFactory;
+
+	private String beanName;
+
+	private IntegrationTaskScheduler taskScheduler;
+
+	/**
+	 * Set the pool size; a value less than 1 means the common
+	 * {@code taskScheduler} bean is used instead of a dedicated pool.
+	 * @param poolSize the pool size.
+	 */
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	public void setThreadNamePrefix(String threadNamePrefix) {
+		this.threadNamePrefix = threadNamePrefix;
+	}
+
+	public void setErrorHandler(ErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	public void setRejectedExecutionHandler(RejectedExecutionHandler rejectedExecutionHandler) {
+		Assert.notNull(rejectedExecutionHandler, "'rejectedExecutionHandler' must not be null");
+		this.rejectedExecutionHandler = rejectedExecutionHandler;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void setBeanName(String name) {
+		this.beanName = name;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (this.poolSize > 0) {
+			IntegrationTaskScheduler scheduler = new IntegrationTaskScheduler();
+			scheduler.setPoolSize(this.poolSize);
+			scheduler.setBeanName(this.beanName);
+			if (this.threadNamePrefix != null) {
+				scheduler.setThreadNamePrefix(this.threadNamePrefix);
+			}
+			scheduler.setRejectedExecutionHandler(this.rejectedExecutionHandler);
+			if (this.errorHandler != null) {
+				scheduler.setErrorHandler(this.errorHandler);
+			}
+			scheduler.afterPropertiesSet();
+			this.taskScheduler = scheduler;
+		}
+	}
+
+	@Override
+	public TaskScheduler getObject() throws Exception {
+		if (this.taskScheduler != null) {
+			return this.taskScheduler;
+		}
+		return IntegrationContextUtils.getRequiredTaskScheduler(this.beanFactory);
+	}
+
+	@Override
+	public Class<?> getObjectType() {
+		return this.taskScheduler != null ? this.taskScheduler.getClass() : TaskScheduler.class;
+	}
+
+	@Override
+	public boolean isSingleton() {
+		return true;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (this.taskScheduler != null) {
+			this.taskScheduler.destroy();
+		}
+	}
+
+}
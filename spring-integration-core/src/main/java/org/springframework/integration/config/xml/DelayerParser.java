@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -94,6 +94,10 @@ public class DelayerParser extends AbstractConsumerEndpointParser {
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "message-store");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "send-timeout");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "ignore-expression-failures");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "write-behind-executor");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "write-behind-batch-size");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "write-behind-queue-capacity");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "recovery-page-size");
 
 		Element txElement = DomUtils.getChildElementByTagName(element, "transactional");
 		Element adviceChainElement = DomUtils.getChildElementByTagName(element, "advice-chain");
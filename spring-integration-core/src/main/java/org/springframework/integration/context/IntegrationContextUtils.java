@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -38,6 +38,14 @@ public abstract class IntegrationContextUtils {
 
 	public static final String TASK_SCHEDULER_BEAN_NAME = "taskScheduler";
 
+	public static final String POLLING_TASK_SCHEDULER_BEAN_NAME = "integrationPollingTaskScheduler";
+
+	public static final String TIMER_TASK_SCHEDULER_BEAN_NAME = "integrationTimerTaskScheduler";
+
+	public static final String HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME = "integrationHousekeepingTaskScheduler";
+
+	public static final String POLLING_TASK_EXECUTOR_BEAN_NAME = "integrationPollingTaskExecutor";
+
 	public static final String ERROR_CHANNEL_BEAN_NAME = "errorChannel";
 
 	public static final String NULL_CHANNEL_BEAN_NAME = "nullChannel";
@@ -116,6 +124,23 @@ public abstract class IntegrationContextUtils {
 		return taskScheduler;
 	}
 
+	/**
+	 * Return the dedicated {@link TaskScheduler} pool with the provided bean name
+	 * (e.g. {@link #POLLING_TASK_SCHEDULER_BEAN_NAME}), falling back to the
+	 * "taskScheduler" bean if there is no such pool.
+	 * @param beanFactory BeanFactory for lookup, must not be null.
+	 * @param poolBeanName the bean name of the dedicated pool; may be null.
+	 * @return the {@link TaskScheduler} if available.
+	 * @since 5.0
+	 */
+	public static TaskScheduler getTaskScheduler(BeanFactory beanFactory, String poolBeanName) {
+		TaskScheduler taskScheduler = null;
+		if (poolBeanName != null) {
+			taskScheduler = getBeanOfType(beanFactory, poolBeanName, TaskScheduler.class);
+		}
+		return taskScheduler != null ? taskScheduler : getTaskScheduler(beanFactory);
+	}
+
 	/**
 	 * @param beanFactory BeanFactory for lookup, must not be null.
 	 * @return the instance of {@link StandardEvaluationContext} bean whose name is "integrationEvaluationContext" .
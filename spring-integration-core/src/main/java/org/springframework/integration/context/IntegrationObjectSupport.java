@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -196,11 +196,24 @@ public abstract class IntegrationObjectSupport implements BeanNameAware, NamedCo
 
 	protected TaskScheduler getTaskScheduler() {
 		if (this.taskScheduler == null && this.beanFactory != null) {
-			this.taskScheduler = IntegrationContextUtils.getTaskScheduler(this.beanFactory);
+			this.taskScheduler = IntegrationContextUtils.getTaskScheduler(this.beanFactory,
+					getTaskSchedulerPoolBeanName());
 		}
 		return this.taskScheduler;
 	}
 
+	/**
+	 * Subclasses may override this to use a dedicated {@link TaskScheduler} pool
+	 * (e.g. {@link IntegrationContextUtils#TIMER_TASK_SCHEDULER_BEAN_NAME}) when no
+	 * scheduler is explicitly provided. When there is no such bean, the
+	 * {@link IntegrationContextUtils#TASK_SCHEDULER_BEAN_NAME} is used.
+	 * @return the bean name of the dedicated pool or null.
+	 * @since 5.0
+	 */
+	protected String getTaskSchedulerPoolBeanName() {
+		return null;
+	}
+
 	protected DestinationResolver<MessageChannel> getChannelResolver() {
 		if (this.channelResolver == null) {
 			this.channelResolver = new BeanFactoryChannelResolver(this.beanFactory);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2016 the original author or authors.
+ * Copyright 2014-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -61,6 +61,32 @@ public final class IntegrationProperties {
 	 */
 	public static final String TASK_SCHEDULER_POOL_SIZE = INTEGRATION_PROPERTIES_PREFIX + "taskScheduler.poolSize";
 
+	/**
+	 * Specifies the pool size of the dedicated {@code integrationPollingTaskScheduler} used by pollers.
+	 * When the value is {@code 0} (default), the bean is an alias of the {@code taskScheduler} bean.
+	 * @since 5.0
+	 */
+	public static final String TASK_SCHEDULER_POLLING_POOL_SIZE =
+			INTEGRATION_PROPERTIES_PREFIX + "taskScheduler.polling.poolSize";
+
+	/**
+	 * Specifies the pool size of the dedicated {@code integrationTimerTaskScheduler} used by delayers
+	 * and group timeouts.
+	 * When the value is {@code 0} (default), the bean is an alias of the {@code taskScheduler} bean.
+	 * @since 5.0
+	 */
+	public static final String TASK_SCHEDULER_TIMER_POOL_SIZE =
+			INTEGRATION_PROPERTIES_PREFIX + "taskScheduler.timer.poolSize";
+
+	/**
+	 * Specifies the pool size of the dedicated {@code integrationHousekeepingTaskScheduler} used by reapers
+	 * and other housekeeping tasks.
+	 * When the value is {@code 0} (default), the bean is an alias of the {@code taskScheduler} bean.
+	 * @since 5.0
+	 */
+	public static final String TASK_SCHEDULER_HOUSEKEEPING_POOL_SIZE =
+			INTEGRATION_PROPERTIES_PREFIX + "taskScheduler.housekeeping.poolSize";
+
 	/**
 	 * Specifies the value of {@link org.springframework.messaging.core.GenericMessagingTemplate#throwExceptionOnLateReply}.
 	 */
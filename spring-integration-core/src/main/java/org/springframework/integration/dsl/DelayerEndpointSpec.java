@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.dsl;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import org.aopalliance.aop.Advice;
@@ -76,6 +77,46 @@ public final class DelayerEndpointSpec extends ConsumerEndpointSpec<DelayerEndpo
 		return _this();
 	}
 
+	/**
+	 * @param writeBehindExecutor the executor for the asynchronous message store writes.
+	 * @return the endpoint spec.
+	 * @see DelayHandler#setWriteBehindExecutor(Executor)
+	 */
+	public DelayerEndpointSpec writeBehindExecutor(Executor writeBehindExecutor) {
+		this.handler.setWriteBehindExecutor(writeBehindExecutor);
+		return _this();
+	}
+
+	/**
+	 * @param writeBehindBatchSize the write-behind batch size.
+	 * @return the endpoint spec.
+	 * @see DelayHandler#setWriteBehindBatchSize(int)
+	 */
+	public DelayerEndpointSpec writeBehindBatchSize(int writeBehindBatchSize) {
+		this.handler.setWriteBehindBatchSize(writeBehindBatchSize);
+		return _this();
+	}
+
+	/**
+	 * @param writeBehindQueueCapacity the write-behind queue capacity.
+	 * @return the endpoint spec.
+	 * @see DelayHandler#setWriteBehindQueueCapacity(int)
+	 */
+	public DelayerEndpointSpec writeBehindQueueCapacity(int writeBehindQueueCapacity) {
+		this.handler.setWriteBehindQueueCapacity(writeBehindQueueCapacity);
+		return _this();
+	}
+
+	/**
+	 * @param recoveryPageSize the number of persisted messages rescheduled by one task.
+	 * @return the endpoint spec.
+	 * @see DelayHandler#setRecoveryPageSize(int)
+	 */
+	public DelayerEndpointSpec recoveryPageSize(int recoveryPageSize) {
+		this.handler.setRecoveryPageSize(recoveryPageSize);
+		return _this();
+	}
+
 	/**
 	 * Configure a list of {@link Advice} objects that will be applied, in nested order,
 	 * when delayed messages are sent.
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -29,6 +29,7 @@ import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.core.task.SyncTaskExecutor;
 import org.springframework.integration.channel.MessagePublishingErrorHandler;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.support.channel.BeanFactoryChannelResolver;
 import org.springframework.integration.transaction.ExpressionEvaluatingTransactionSynchronizationProcessor;
 import org.springframework.integration.transaction.IntegrationResourceHolder;
@@ -59,6 +60,8 @@ public abstract class AbstractPollingEndpoint extends AbstractEndpoint implement
 
 	private volatile Executor taskExecutor = new SyncTaskExecutor();
 
+	private volatile boolean taskExecutorSet;
+
 	private volatile ErrorHandler errorHandler;
 
 	private volatile boolean errorHandlerIsDefault;
@@ -87,6 +90,7 @@ public abstract class AbstractPollingEndpoint extends AbstractEndpoint implement
 
 	public void setTaskExecutor(Executor taskExecutor) {
 		this.taskExecutor = (taskExecutor != null ? taskExecutor : new SyncTaskExecutor());
+		this.taskExecutorSet = taskExecutor != null;
 	}
 
 	public void setTrigger(Trigger trigger) {
@@ -133,6 +137,11 @@ public abstract class AbstractPollingEndpoint extends AbstractEndpoint implement
 		return this.beanClassLoader;
 	}
 
+	@Override
+	protected String getTaskSchedulerPoolBeanName() {
+		return IntegrationContextUtils.POLLING_TASK_SCHEDULER_BEAN_NAME;
+	}
+
 	/**
 	 * Return true if this advice should be applied only to the {@link #receiveMessage()} operation
 	 * rather than the whole poll.
@@ -157,6 +166,15 @@ public abstract class AbstractPollingEndpoint extends AbstractEndpoint implement
 				return;
 			}
 			Assert.notNull(this.trigger, "Trigger is required");
+			if (!this.taskExecutorSet && getBeanFactory() != null
+					&& getBeanFactory().containsBean(IntegrationContextUtils.POLLING_TASK_EXECUTOR_BEAN_NAME)) {
+				Executor pollingTaskExecutor =
+						getBeanFactory().getBean(IntegrationContextUtils.POLLING_TASK_EXECUTOR_BEAN_NAME, Executor.class);
+				if (pollingTaskExecutor != null) {
+					this.taskExecutor = pollingTaskExecutor;
+					this.taskExecutorSet = true;
+				}
+			}
 			if (this.taskExecutor != null) {
 				if (!(this.taskExecutor instanceof ErrorHandlingTaskExecutor)) {
 					if (this.errorHandler == null) {
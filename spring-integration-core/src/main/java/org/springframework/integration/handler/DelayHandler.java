@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,20 +17,30 @@
 package org.springframework.integration.handler;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.aopalliance.aop.Advice;
 
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationListener;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.EvaluationException;
 import org.springframework.expression.Expression;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.context.IntegrationObjectSupport;
 import org.springframework.integration.expression.ExpressionUtils;
 import org.springframework.integration.store.MessageGroup;
@@ -71,6 +81,13 @@ import org.springframework.util.CollectionUtils;
  * seconds from the current time). If the value is a Date, it will be
  * delayed at least until that Date occurs (i.e. the delay in that case is
  * equivalent to {@code headerDate.getTime() - new Date().getTime()}).
+ * <p>
+ * With a persistent {@link MessageGroupStore}, delayed messages can be written to the
+ * store asynchronously, in batches, by providing a {@link #setWriteBehindExecutor(Executor)
+ * writeBehindExecutor}; a message released before it has been written is released from
+ * memory and never written. Persisted messages are rescheduled on startup on the
+ * {@link TaskScheduler} thread, {@link #setRecoveryPageSize(int) recoveryPageSize}
+ * messages per task.
  *
  * @author Mark Fisher
  * @author Artem Bilan
@@ -81,7 +98,13 @@ import org.springframework.util.CollectionUtils;
 @ManagedResource
 @IntegrationManagedResource
 public class DelayHandler extends AbstractReplyProducingMessageHandler implements DelayHandlerManagement,
-		ApplicationListener<ContextRefreshedEvent> {
+		ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+
+	public static final int DEFAULT_WRITE_BEHIND_BATCH_SIZE = 100;
+
+	public static final int DEFAULT_WRITE_BEHIND_QUEUE_CAPACITY = 10000;
+
+	public static final int DEFAULT_RECOVERY_PAGE_SIZE = 1000;
 
 	private final String messageGroupId;
 
@@ -101,6 +124,27 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 
 	private EvaluationContext evaluationContext;
 
+	/*
+	 * Messages queued for the write-behind and not yet written to the store.
+	 */
+	private final Map<UUID, Message<?>> unwrittenMessages = new ConcurrentHashMap<>();
+
+	private final Object writeBehindMonitor = new Object();
+
+	private final AtomicBoolean flushing = new AtomicBoolean();
+
+	private volatile Executor writeBehindExecutor;
+
+	private volatile int writeBehindBatchSize = DEFAULT_WRITE_BEHIND_BATCH_SIZE;
+
+	private volatile int writeBehindQueueCapacity = DEFAULT_WRITE_BEHIND_QUEUE_CAPACITY;
+
+	private volatile BlockingQueue<Message<?>> writeQueue;
+
+	private volatile BlockingQueue<Message<?>> removeQueue;
+
+	private volatile int recoveryPageSize = DEFAULT_RECOVERY_PAGE_SIZE;
+
 	/**
 	 * Create a DelayHandler with the given 'messageGroupId' that is used as 'key' for {@link MessageGroup}
 	 * to store delayed Messages in the {@link MessageGroupStore}. The sending of Messages after
@@ -190,11 +234,67 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 		this.delayedAdviceChain = delayedAdviceChain;
 	}
 
+	/**
+	 * Specify an {@link Executor} to write delayed messages to, and remove released
+	 * messages from, a persistent {@link MessageGroupStore} asynchronously, in batches,
+	 * instead of on the calling thread. Ignored for a {@link SimpleMessageStore}.
+	 * When the write-behind queue is full, messages are written on the calling thread.
+	 * Messages which are not yet written when the application fails are lost.
+	 * @param writeBehindExecutor the executor.
+	 * @since 5.0
+	 * @see #setWriteBehindBatchSize(int)
+	 * @see #setWriteBehindQueueCapacity(int)
+	 */
+	public void setWriteBehindExecutor(Executor writeBehindExecutor) {
+		this.writeBehindExecutor = writeBehindExecutor;
+	}
+
+	/**
+	 * Set the maximum number of messages written to (or removed from) the store in one
+	 * operation by the write-behind. Default 100.
+	 * @param writeBehindBatchSize the batch size.
+	 * @since 5.0
+	 */
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		Assert.isTrue(writeBehindBatchSize > 0, "'writeBehindBatchSize' must be greater than 0");
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
+
+	/**
+	 * Set the capacity of each of the write-behind queues (writes and removals).
+	 * Default 10000.
+	 * @param writeBehindQueueCapacity the queue capacity.
+	 * @since 5.0
+	 */
+	public void setWriteBehindQueueCapacity(int writeBehindQueueCapacity) {
+		Assert.isTrue(writeBehindQueueCapacity > 0, "'writeBehindQueueCapacity' must be greater than 0");
+		this.writeBehindQueueCapacity = writeBehindQueueCapacity;
+	}
+
+	/**
+	 * Set the number of persisted messages rescheduled by one task on startup; the
+	 * following messages are handled by another task, so a large number of persisted
+	 * messages doesn't hold the scheduler thread for long. Note that the whole message
+	 * group is still read from the store at once. Default 1000.
+	 * @param recoveryPageSize the number of messages per task.
+	 * @since 5.0
+	 * @see #reschedulePersistedMessages()
+	 */
+	public void setRecoveryPageSize(int recoveryPageSize) {
+		Assert.isTrue(recoveryPageSize > 0, "'recoveryPageSize' must be greater than 0");
+		this.recoveryPageSize = recoveryPageSize;
+	}
+
 	@Override
 	public String getComponentType() {
 		return "delayer";
 	}
 
+	@Override
+	protected String getTaskSchedulerPoolBeanName() {
+		return IntegrationContextUtils.TIMER_TASK_SCHEDULER_BEAN_NAME;
+	}
+
 	@Override
 	protected void doInit() {
 		if (this.messageStore == null) {
@@ -205,6 +305,14 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 		}
 		this.evaluationContext = ExpressionUtils.createStandardEvaluationContext(this.getBeanFactory());
 		this.releaseHandler = this.createReleaseMessageTask();
+		if (isWriteBehind()) {
+			this.writeQueue = new LinkedBlockingQueue<>(this.writeBehindQueueCapacity);
+			this.removeQueue = new LinkedBlockingQueue<>(this.writeBehindQueueCapacity);
+		}
+	}
+
+	private boolean isWriteBehind() {
+		return this.writeBehindExecutor != null && !(this.messageStore instanceof SimpleMessageStore);
 	}
 
 	private MessageHandler createReleaseMessageTask() {
@@ -312,7 +420,7 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 					.withPayload(messageWrapper)
 					.copyHeaders(message.getHeaders())
 					.build();
-			this.messageStore.addMessageToGroup(this.messageGroupId, delayedMessage);
+			storeDelayedMessage(delayedMessage);
 		}
 
 
@@ -327,7 +435,10 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 			final UUID messageId = delayedMessage.getHeaders().getId();
 
 			releaseTask = () -> {
-				Message<?> messageToRelease = getMessageById(messageId);
+				Message<?> messageToRelease = this.unwrittenMessages.get(messageId);
+				if (messageToRelease == null) {
+					messageToRelease = getMessageById(messageId);
+				}
 				if (messageToRelease != null) {
 					releaseMessage(messageToRelease);
 				}
@@ -337,6 +448,90 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 		getTaskScheduler().schedule(releaseTask, new Date(messageWrapper.getRequestDate() + delay));
 	}
 
+	private void storeDelayedMessage(Message<?> delayedMessage) {
+		if (isWriteBehind()) {
+			UUID messageId = delayedMessage.getHeaders().getId();
+			this.unwrittenMessages.put(messageId, delayedMessage);
+			if (this.writeQueue.offer(delayedMessage)) {
+				scheduleFlush();
+				return;
+			}
+			this.unwrittenMessages.remove(messageId);
+		}
+		this.messageStore.addMessageToGroup(this.messageGroupId, delayedMessage);
+	}
+
+	private void removeReleasedMessageFromGroup(Message<?> message) {
+		if (isWriteBehind() && this.removeQueue.offer(message)) {
+			scheduleFlush();
+		}
+		else {
+			this.messageStore.removeMessagesFromGroup(this.messageGroupId, message);
+		}
+	}
+
+	private void scheduleFlush() {
+		if (this.flushing.compareAndSet(false, true)) {
+			try {
+				this.writeBehindExecutor.execute(this::flush);
+			}
+			catch (RuntimeException e) {
+				this.flushing.set(false);
+				logger.error("Failed to schedule the write-behind; flushing on the calling thread", e);
+				flush();
+			}
+		}
+	}
+
+	private void flush() {
+		do {
+			try {
+				while (flushBatch()) {
+					// keep flushing until the queues are empty
+				}
+			}
+			finally {
+				this.flushing.set(false);
+			}
+		}
+		while ((!this.writeQueue.isEmpty() || !this.removeQueue.isEmpty())
+				&& this.flushing.compareAndSet(false, true));
+	}
+
+	private boolean flushBatch() {
+		List<Message<?>> toWrite = new ArrayList<>(this.writeBehindBatchSize);
+		this.writeQueue.drainTo(toWrite, this.writeBehindBatchSize);
+		if (!toWrite.isEmpty()) {
+			synchronized (this.writeBehindMonitor) {
+				// skip the messages released meanwhile
+				toWrite.removeIf(m -> !this.unwrittenMessages.containsKey(m.getHeaders().getId()));
+				if (!toWrite.isEmpty()) {
+					try {
+						this.messageStore.addMessagesToGroup(this.messageGroupId,
+								toWrite.toArray(new Message<?>[toWrite.size()]));
+						toWrite.forEach(m -> this.unwrittenMessages.remove(m.getHeaders().getId()));
+					}
+					catch (Exception e) {
+						// the messages stay in memory and are released from there
+						logger.error("Failed to write " + toWrite.size() + " delayed messages to the store", e);
+					}
+				}
+			}
+		}
+		List<Message<?>> toRemove = new ArrayList<>(this.writeBehindBatchSize);
+		this.removeQueue.drainTo(toRemove, this.writeBehindBatchSize);
+		if (!toRemove.isEmpty()) {
+			try {
+				this.messageStore.removeMessagesFromGroup(this.messageGroupId, toRemove);
+			}
+			catch (Exception e) {
+				logger.error("Failed to remove " + toRemove.size() + " released messages from the store", e);
+			}
+		}
+		return !toWrite.isEmpty() || !toRemove.isEmpty()
+				|| !this.writeQueue.isEmpty() || !this.removeQueue.isEmpty();
+	}
+
 	private Message<?> getMessageById(UUID messageId) {
 		Message<?> theMessage = ((MessageStore) this.messageStore).getMessage(messageId);
 
@@ -357,9 +552,12 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 	}
 
 	private void doReleaseMessage(Message<?> message) {
-		if (removeDelayedMessageFromMessageStore(message)) {
+		if (removeUnwrittenMessage(message)) {
+			this.handleMessageInternal(message);
+		}
+		else if (removeDelayedMessageFromMessageStore(message)) {
 			if (!(this.messageStore instanceof SimpleMessageStore)) {
-				this.messageStore.removeMessagesFromGroup(this.messageGroupId, message);
+				removeReleasedMessageFromGroup(message);
 			}
 			this.handleMessageInternal(message);
 		}
@@ -371,6 +569,15 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 		}
 	}
 
+	private boolean removeUnwrittenMessage(Message<?> message) {
+		if (this.unwrittenMessages.isEmpty()) {
+			return false;
+		}
+		synchronized (this.writeBehindMonitor) {
+			return this.unwrittenMessages.remove(message.getHeaders().getId()) != null;
+		}
+	}
+
 	private boolean removeDelayedMessageFromMessageStore(Message<?> message) {
 		if (this.messageStore instanceof SimpleMessageStore) {
 			synchronized (this.messageGroupId) {
@@ -391,23 +598,32 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 
 	@Override
 	public int getDelayedMessageCount() {
-		return this.messageStore.messageGroupSize(this.messageGroupId);
+		return this.messageStore.messageGroupSize(this.messageGroupId) + this.unwrittenMessages.size();
 	}
 
 	/**
 	 * Used for reading persisted Messages in the 'messageStore'
 	 * to reschedule them e.g. upon application restart.
-	 * The logic is based on iteration over {@code messageGroup.getMessages()}
-	 * and schedules task for 'delay' logic.
-	 * This behavior is dictated by the avoidance of invocation thread overload.
+	 * The group is read and rescheduled by tasks on the {@link TaskScheduler}, each of
+	 * them handling {@link #setRecoveryPageSize(int) recoveryPageSize} messages, so the
+	 * calling thread is not blocked and the scheduler is not flooded with one task per
+	 * message. The messages are copied from the group first, since releasing a message
+	 * removes it from the group.
 	 */
 	@Override
 	public synchronized void reschedulePersistedMessages() {
-		MessageGroup messageGroup = this.messageStore.getMessageGroup(this.messageGroupId);
-		for (final Message<?> message : messageGroup.getMessages()) {
-			getTaskScheduler().schedule((Runnable) () -> {
-				// This is fine to keep the reference to the message,
-				// because the scheduled task is performed immediately.
+		if (this.messageStore.messageGroupSize(this.messageGroupId) > 0) {
+			getTaskScheduler().schedule(() -> {
+				MessageGroup messageGroup = this.messageStore.getMessageGroup(this.messageGroupId);
+				rescheduleBatch(new ArrayDeque<>(messageGroup.getMessages()));
+			}, new Date());
+		}
+	}
+
+	private void rescheduleBatch(Deque<Message<?>> messages) {
+		for (int i = 0; i < this.recoveryPageSize && !messages.isEmpty(); i++) {
+			Message<?> message = messages.poll();
+			try {
 				long delay = determineDelayForMessage(message);
 				if (delay > 0) {
 					releaseMessageAfterDelay(message, delay);
@@ -415,7 +631,13 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 				else {
 					releaseMessage(message);
 				}
-			}, new Date());
+			}
+			catch (Exception e) {
+				logger.error("Failed to reschedule the persisted message: " + message, e);
+			}
+		}
+		if (!messages.isEmpty()) {
+			getTaskScheduler().schedule(() -> rescheduleBatch(messages), new Date());
 		}
 	}
 
@@ -439,6 +661,18 @@ public class DelayHandler extends AbstractReplyProducingMessageHandler implement
 	}
 
 
+	/**
+	 * Write the pending write-behind operations to the store on the calling thread.
+	 */
+	@Override
+	public void destroy() throws Exception {
+		if (this.writeQueue != null) {
+			while (flushBatch()) {
+				// flush the remaining messages
+			}
+		}
+	}
+
 	/**
 	 * Delegate {@link MessageHandler} implementation for 'release Message task'.
 	 * Used as 'pointcut' to wrap 'release Message task' with <code>adviceChain</code>.
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.scheduling;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * A {@link ThreadPoolTaskScheduler} that exposes the number of queued tasks and
+ * tracks the scheduling lateness - the time between the moment a task was due and
+ * the moment a pool thread actually started it. A growing lateness means the pool
+ * is too small for the work scheduled on it.
+ * <p>
+ * Used by the framework for the default {@code taskScheduler} bean and for the
+ * dedicated polling, timer and housekeeping pools.
+ *
+ * @author agent
+ * @since 5.0
+ */
+@ManagedResource
+public class IntegrationTaskScheduler extends ThreadPoolTaskScheduler {
+
+	private static final long serialVersionUID = 1L;
+
+	private final AtomicLong executedTaskCount = new AtomicLong();
+
+	private final AtomicLong totalLateness = new AtomicLong();
+
+	private final AtomicLong maxLateness = new AtomicLong();
+
+	private volatile long lastLateness;
+
+	@Override
+	protected ScheduledExecutorService createExecutor(int poolSize, ThreadFactory threadFactory,
+			RejectedExecutionHandler rejectedExecutionHandler) {
+
+		return new LatenessTrackingExecutor(poolSize, threadFactory, rejectedExecutionHandler);
+	}
+
+	/**
+	 * @return the number of tasks waiting in the scheduler queue, including
+	 * future executions of periodic tasks.
+	 */
+	@ManagedAttribute
+	public int getQueueSize() {
+		try {
+			return getScheduledThreadPoolExecutor().getQueue().size();
+		}
+		catch (IllegalStateException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the number of task executions started since the last reset.
+	 */
+	@ManagedAttribute
+	public long getExecutedTaskCount() {
+		return this.executedTaskCount.get();
+	}
+
+	/**
+	 * @return the lateness of the most recently started task in milliseconds.
+	 */
+	@ManagedAttribute
+	public double getLastLateness() {
+		return toMillis(this.lastLateness);
+	}
+
+	/**
+	 * @return the maximum lateness since the last reset in milliseconds.
+	 */
+	@ManagedAttribute
+	public double getMaxLateness() {
+		return toMillis(this.maxLateness.get());
+	}
+
+	/**
+	 * @return the mean lateness since the last reset in milliseconds.
+	 */
+	@ManagedAttribute
+	public double getMeanLateness() {
+		long count = this.executedTaskCount.get();
+		return count > 0 ? toMillis(this.totalLateness.get()) / count : 0;
+	}
+
+	/**
+	 * Reset the lateness statistics.
+	 */
+	@ManagedOperation
+	public void resetLateness() {
+		this.executedTaskCount.set(0);
+		this.totalLateness.set(0);
+		this.maxLateness.set(0);
+		this.lastLateness = 0;
+	}
+
+	private void recordLateness(long lateness) {
+		long value = Math.max(lateness, 0);
+		this.lastLateness = value;
+		this.executedTaskCount.incrementAndGet();
+		this.totalLateness.addAndGet(value);
+		long max = this.maxLateness.get();
+		while (value > max && !this.maxLateness.compareAndSet(max, value)) {
+			max = this.maxLateness.get();
+		}
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+	private final class LatenessTrackingExecutor extends ScheduledThreadPoolExecutor {
+
+		LatenessTrackingExecutor(int corePoolSize, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+			super(corePoolSize, threadFactory, handler);
+		}
+
+		@Override
+		protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+			return new LatenessTrackingTask<>(task, this);
+		}
+
+		@Override
+		protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
+			return new LatenessTrackingTask<>(task, this);
+		}
+
+	}
+
+	private final class LatenessTrackingTask<V> implements RunnableScheduledFuture<V> {
+
+		private final RunnableScheduledFuture<V> delegate;
+
+		private final ScheduledThreadPoolExecutor executor;
+
+		LatenessTrackingTask(RunnableScheduledFuture<V> delegate, ScheduledThreadPoolExecutor executor) {
+			this.delegate = delegate;
+			this.executor = executor;
+		}
+
+		@Override
+		public void run() {
+			if (!this.delegate.isDone()) {
+				recordLateness(-this.delegate.getDelay(TimeUnit.NANOSECONDS));
+			}
+			this.delegate.run();
+		}
+
+		@Override
+		public boolean isPeriodic() {
+			return this.delegate.isPeriodic();
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return this.delegate.getDelay(unit);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			if (other instanceof LatenessTrackingTask) {
+				return this.delegate.compareTo(((LatenessTrackingTask<?>) other).delegate);
+			}
+			return this.delegate.compareTo(other);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = this.delegate.cancel(mayInterruptIfRunning);
+			if (cancelled && this.executor.getRemoveOnCancelPolicy()) {
+				this.executor.remove(this);
+			}
+			return cancelled;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return this.delegate.isCancelled();
+		}
+
+		@Override
+		public boolean isDone() {
+			return this.delegate.isDone();
+		}
+
+		@Override
+		public V get() throws InterruptedException, ExecutionException {
+			return this.delegate.get();
+		}
+
+		@Override
+		public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return this.delegate.get(timeout, unit);
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 the original author or authors.
+ * Copyright 2015-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -42,6 +42,9 @@ public class PassThruMessageConverter implements MessageConverter {
 
 	@Override
 	public Message<?> toMessage(Object payload, MessageHeaders headers) {
+		if (payload instanceof Message) {
+			return (Message<?>) payload;
+		}
 		Assert.isInstanceOf(byte[].class, payload, "'payload' must be of 'byte[]' type.");
 		return MessageBuilder.createMessage(payload, headers);
 	}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+/**
+ * A {@link Pool} whose size and wait timeout can be changed at runtime.
+ *
+ * @param <T> the item type.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public interface ConfigurablePool<T> extends Pool<T> {
+
+	/**
+	 * Adjust the pool size. When reducing the size, idle items are removed; if there
+	 * are not enough idle items, the size is reduced as in-use items are returned.
+	 * @param poolSize the target pool size.
+	 */
+	void setPoolSize(int poolSize);
+
+	/**
+	 * Set the time for which {@link #getItem()} waits if no item is available.
+	 * @param waitTimeout the wait timeout in milliseconds.
+	 */
+	void setWaitTimeout(long waitTimeout);
+
+}
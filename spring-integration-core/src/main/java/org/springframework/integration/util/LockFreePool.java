@@ -0,0 +1,447 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.integration.util.SimplePool.PoolItemCallback;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ConfigurablePool} with the same semantics as the {@link SimplePool} (dynamic resizing,
+ * growth on demand up to the limit and a variable wait timeout), but without locks on
+ * the {@link #getItem()}/{@link #releaseItem(Object)} path, for pools that are used by
+ * many concurrent threads.
+ * <p>
+ * Idle items are kept on a concurrent (LIFO) free list; in addition, each thread
+ * remembers the item it released last and tries to reclaim it first, so a thread
+ * that repeatedly obtains and releases an item usually gets the same one without
+ * touching the shared free list. Capacity is tracked with an atomic counter; a
+ * monitor is only used to wait when the pool is exhausted.
+ * <p>
+ * Items are validated with {@link PoolItemCallback#isStale(Object)} when obtained;
+ * {@link #removeStaleIdleItems()} can be invoked periodically to discard stale idle
+ * items before they are requested; it only claims items while permits are available,
+ * so that it never causes the pool size to be exceeded.
+ *
+ * @param <T> the item type.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class LockFreePool<T> implements ConfigurablePool<T> {
+
+	private static final int IDLE = 0;
+
+	private static final int IN_USE = 1;
+
+	private static final int RELEASING = 2;
+
+	private static final int REMOVED = 3;
+
+	protected final Log logger = LogFactory.getLog(this.getClass());
+
+	private final AtomicInteger permits = new AtomicInteger();
+
+	private final AtomicInteger poolSize = new AtomicInteger();
+
+	private final AtomicInteger targetPoolSize = new AtomicInteger();
+
+	private final AtomicInteger idle = new AtomicInteger();
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	private final Object permitMonitor = new Object();
+
+	private final Deque<Entry<T>> available = new ConcurrentLinkedDeque<>();
+
+	private final Map<T, Entry<T>> allocated = new ConcurrentHashMap<>();
+
+	private final ThreadLocal<Entry<T>> lastReleased = new ThreadLocal<>();
+
+	private final PoolItemCallback<T> callback;
+
+	private volatile long waitTimeout = Long.MAX_VALUE;
+
+	/**
+	 * Creates a LockFreePool with a specific limit.
+	 * @param poolSize The maximum number of items the pool supports.
+	 * @param callback A {@link PoolItemCallback} implementation called during various
+	 * pool operations.
+	 */
+	public LockFreePool(int poolSize, PoolItemCallback<T> callback) {
+		int size = poolSize <= 0 ? Integer.MAX_VALUE : poolSize;
+		this.poolSize.set(size);
+		this.targetPoolSize.set(size);
+		this.permits.set(size);
+		this.callback = callback;
+	}
+
+	/**
+	 * Adjusts the current pool size. When reducing the pool size, attempts to
+	 * remove the delta from the pool. If there are not enough unused items in
+	 * the pool, the actual pool size will decrease to the specified size as in-use
+	 * items are returned.
+	 * @param poolSize The desired target pool size.
+	 */
+	@Override
+	public synchronized void setPoolSize(int poolSize) {
+		int delta = poolSize - this.poolSize.get();
+		this.targetPoolSize.addAndGet(delta);
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug(String.format("Target pool size changed by %d, now %d", delta,
+					this.targetPoolSize.get()));
+		}
+		if (delta > 0) {
+			this.poolSize.addAndGet(delta);
+			releasePermits(delta);
+		}
+		else {
+			while (delta < 0) {
+				if (!tryAcquirePermit()) {
+					break;
+				}
+				Entry<T> entry = claimAvailable();
+				if (entry == null) {
+					releasePermits(1);
+					break;
+				}
+				doRemoveItem(entry);
+				this.poolSize.decrementAndGet();
+				delta++;
+			}
+		}
+		if (delta < 0 && this.logger.isDebugEnabled()) {
+			this.logger.debug(String.format("Pool is overcommitted by %d; items will be removed when returned",
+					-delta));
+		}
+	}
+
+	/**
+	 * Returns the current size of the pool; may be greater than the target pool size
+	 * if it was recently reduced and too many items were in use to allow the new size
+	 * to be set.
+	 */
+	@Override
+	public int getPoolSize() {
+		return this.poolSize.get();
+	}
+
+	@Override
+	public int getIdleCount() {
+		return this.idle.get();
+	}
+
+	@Override
+	public int getActiveCount() {
+		return this.active.get();
+	}
+
+	@Override
+	public int getAllocatedCount() {
+		return this.allocated.size();
+	}
+
+	/**
+	 * Adjusts the wait timeout - the time for which getItem() will wait if no idle
+	 * entries are available.
+	 * <br>
+	 * Default: infinity.
+	 * @param waitTimeout The wait timeout in milliseconds.
+	 */
+	@Override
+	public void setWaitTimeout(long waitTimeout) {
+		this.waitTimeout = waitTimeout;
+	}
+
+	/**
+	 * Obtains an item from the pool; waits up to waitTime milliseconds (default infinity).
+	 * @throws MessagingException if no items become available in time.
+	 */
+	@Override
+	public T getItem() {
+		boolean permitted = false;
+		try {
+			permitted = tryAcquirePermit() || awaitPermit();
+			if (!permitted) {
+				throw new IllegalStateException("Timed out while waiting to acquire a pool entry.");
+			}
+			return doGetItem();
+		}
+		catch (Exception e) {
+			if (permitted) {
+				releasePermits(1);
+			}
+			if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			throw new MessagingException("Failed to obtain pooled item", e);
+		}
+	}
+
+	private T doGetItem() {
+		while (true) {
+			Entry<T> entry = claimLastReleased();
+			if (entry == null) {
+				entry = claimAvailable();
+			}
+			if (entry == null) {
+				T item = this.callback.createForPool();
+				if (this.logger.isDebugEnabled()) {
+					this.logger.debug("Obtained new " + item + ".");
+				}
+				entry = new Entry<>(item);
+				this.allocated.put(item, entry);
+				this.active.incrementAndGet();
+				return item;
+			}
+			if (this.callback.isStale(entry.item)) {
+				if (this.logger.isDebugEnabled()) {
+					this.logger.debug("Received a stale item " + entry.item + ", will attempt to get a new one.");
+				}
+				doRemoveItem(entry);
+			}
+			else {
+				if (this.logger.isDebugEnabled()) {
+					this.logger.debug("Obtained " + entry.item + " from pool.");
+				}
+				return entry.item;
+			}
+		}
+	}
+
+	/**
+	 * Returns an item to the pool.
+	 */
+	@Override
+	public void releaseItem(T item) {
+		Assert.notNull(item, "Item cannot be null");
+		Entry<T> entry = this.allocated.get(item);
+		Assert.isTrue(entry != null, "You can only release items that were obtained from the pool");
+		if (!entry.state.compareAndSet(IN_USE, RELEASING)) {
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug("Ignoring release of " + item + " back to the pool - not in use");
+			}
+			return;
+		}
+		if (shrink()) {
+			doRemoveItem(entry);
+			return;
+		}
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("Releasing " + item + " back to the pool");
+		}
+		this.active.decrementAndGet();
+		this.idle.incrementAndGet();
+		entry.state.set(IDLE);
+		this.lastReleased.set(entry);
+		enqueue(entry);
+		releasePermits(1);
+	}
+
+	@Override
+	public void removeAllIdleItems() {
+		Entry<T> entry;
+		while ((entry = claimAvailable()) != null) {
+			doRemoveItem(entry);
+		}
+	}
+
+	/**
+	 * Validate the idle items with {@link PoolItemCallback#isStale(Object)} and remove
+	 * the stale ones; intended to be invoked periodically, so that stale items are
+	 * discarded before they are requested.
+	 * @return the number of items removed.
+	 */
+	public int removeStaleIdleItems() {
+		int removed = 0;
+		for (Entry<T> entry : this.available) {
+			if (entry.state.get() != IDLE) {
+				continue;
+			}
+			// hold a permit while the entry is claimed, otherwise a concurrent getItem() would
+			// find no idle entry and create an item beyond the pool size
+			if (!tryAcquirePermit()) {
+				break;
+			}
+			try {
+				if (claim(entry)) {
+					if (this.callback.isStale(entry.item)) {
+						doRemoveItem(entry);
+						removed++;
+					}
+					else {
+						this.active.decrementAndGet();
+						this.idle.incrementAndGet();
+						entry.state.set(IDLE);
+						enqueue(entry);
+					}
+				}
+			}
+			finally {
+				releasePermits(1);
+			}
+		}
+		if (removed > 0 && this.logger.isDebugEnabled()) {
+			this.logger.debug("Removed " + removed + " stale idle items");
+		}
+		return removed;
+	}
+
+	private Entry<T> claimLastReleased() {
+		Entry<T> entry = this.lastReleased.get();
+		if (entry != null) {
+			this.lastReleased.remove();
+			if (claim(entry)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private Entry<T> claimAvailable() {
+		Entry<T> entry;
+		while ((entry = this.available.pollFirst()) != null) {
+			// clear before claiming, so a concurrent release re-queues the entry if the claim fails
+			entry.queued.set(false);
+			if (claim(entry)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	private boolean claim(Entry<T> entry) {
+		if (entry.state.compareAndSet(IDLE, IN_USE)) {
+			this.idle.decrementAndGet();
+			this.active.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	private void enqueue(Entry<T> entry) {
+		if (entry.queued.compareAndSet(false, true)) {
+			this.available.offerFirst(entry);
+		}
+	}
+
+	/**
+	 * Reduce the pool size by one if it is over committed.
+	 * @return true if reduced.
+	 */
+	private boolean shrink() {
+		while (true) {
+			int size = this.poolSize.get();
+			if (size <= this.targetPoolSize.get()) {
+				return false;
+			}
+			if (this.poolSize.compareAndSet(size, size - 1)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean tryAcquirePermit() {
+		while (true) {
+			int available = this.permits.get();
+			if (available <= 0) {
+				return false;
+			}
+			if (this.permits.compareAndSet(available, available - 1)) {
+				return true;
+			}
+		}
+	}
+
+	private boolean awaitPermit() {
+		long timeout = this.waitTimeout;
+		long deadline = timeout == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+		synchronized (this.permitMonitor) {
+			this.waiters.incrementAndGet();
+			try {
+				while (!tryAcquirePermit()) {
+					long wait = deadline == Long.MAX_VALUE ? 0 : deadline - System.currentTimeMillis();
+					if (deadline != Long.MAX_VALUE && wait <= 0) {
+						return false;
+					}
+					this.permitMonitor.wait(wait);
+				}
+				return true;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException("Interrupted awaiting a pooled resource", e);
+			}
+			finally {
+				this.waiters.decrementAndGet();
+			}
+		}
+	}
+
+	private void releasePermits(int count) {
+		this.permits.addAndGet(count);
+		if (this.waiters.get() > 0) {
+			synchronized (this.permitMonitor) {
+				// wake one waiter per permit, rather than the whole herd
+				if (count == 1) {
+					this.permitMonitor.notify();
+				}
+				else {
+					this.permitMonitor.notifyAll();
+				}
+			}
+		}
+	}
+
+	private void doRemoveItem(Entry<T> entry) {
+		if (this.logger.isDebugEnabled()) {
+			this.logger.debug("Removing " + entry.item + " from the pool");
+		}
+		entry.state.set(REMOVED);
+		this.active.decrementAndGet();
+		this.allocated.remove(entry.item);
+		this.callback.removedFromPool(entry.item);
+	}
+
+	private static final class Entry<T> {
+
+		private final T item;
+
+		private final AtomicInteger state = new AtomicInteger(IN_USE);
+
+		private final AtomicBoolean queued = new AtomicBoolean();
+
+		Entry(T item) {
+			this.item = item;
+		}
+
+	}
+
+}
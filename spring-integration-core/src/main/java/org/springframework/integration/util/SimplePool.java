@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,7 +40,7 @@ import org.springframework.util.Assert;
  * @since 2.2
  *
  */
-public class SimplePool<T> implements Pool<T> {
+public class SimplePool<T> implements ConfigurablePool<T> {
 
 	protected final Log logger = LogFactory.getLog(this.getClass());
 
@@ -87,6 +87,7 @@ public class SimplePool<T> implements Pool<T> {
 	 * items are returned.
 	 * @param poolSize The desired target pool size.
 	 */
+	@Override
 	public synchronized void setPoolSize(int poolSize) {
 		int delta = poolSize - this.poolSize.get();
 		this.targetPoolSize.addAndGet(delta);
@@ -149,6 +150,7 @@ public class SimplePool<T> implements Pool<T> {
 	 * Default: infinity.
 	 * @param waitTimeout The wait timeout in milliseconds.
 	 */
+	@Override
 	public void setWaitTimeout(long waitTimeout) {
 		this.waitTimeout = waitTimeout;
 	}
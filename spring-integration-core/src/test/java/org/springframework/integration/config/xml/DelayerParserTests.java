@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -101,6 +101,10 @@ public class DelayerParserTests {
 		DelayHandler delayHandler = (DelayHandler) handler;
 		DirectFieldAccessor accessor = new DirectFieldAccessor(delayHandler);
 		assertEquals(context.getBean("testMessageStore"), accessor.getPropertyValue("messageStore"));
+		assertSame(context.getBean("testExecutor"), accessor.getPropertyValue("writeBehindExecutor"));
+		assertEquals(50, accessor.getPropertyValue("writeBehindBatchSize"));
+		assertEquals(500, accessor.getPropertyValue("writeBehindQueueCapacity"));
+		assertEquals(200, accessor.getPropertyValue("recoveryPageSize"));
 	}
 
 	@Test //INT-2649
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,11 +24,17 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.After;
 import org.junit.Before;
@@ -45,6 +51,7 @@ import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.MessagePublishingErrorHandler;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.context.IntegrationContextUtils;
+import org.springframework.integration.store.AbstractKeyValueMessageStore;
 import org.springframework.integration.store.MessageGroup;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.SimpleMessageStore;
@@ -479,6 +486,76 @@ public class DelayHandlerTests {
 	}
 
 
+	@Test
+	public void testWriteBehind() throws Exception {
+		MapMessageStore messageStore = new MapMessageStore();
+		List<Runnable> writeBehindTasks = new ArrayList<>();
+		QueueChannel results = new QueueChannel();
+		this.delayHandler.setOutputChannel(results);
+		this.delayHandler.setMessageStore(messageStore);
+		this.delayHandler.setWriteBehindExecutor(writeBehindTasks::add);
+		this.setDelayExpression();
+		this.startDelayerHandler();
+
+		for (int i = 0; i < 3; i++) {
+			this.delayHandler.handleMessage(MessageBuilder.withPayload(i).setHeader("delay", 3600000).build());
+		}
+		assertEquals(0, messageStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+		assertEquals(3, this.delayHandler.getDelayedMessageCount());
+		assertEquals(1, writeBehindTasks.size());
+
+		// released before written
+		this.delayHandler.handleMessage(MessageBuilder.withPayload("foo").setHeader("delay", 10).build());
+		Message<?> released = results.receive(10000);
+		assertNotNull(released);
+		assertEquals("foo", released.getPayload());
+
+		writeBehindTasks.remove(0).run();
+		assertEquals(3, messageStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+		assertEquals(3, this.delayHandler.getDelayedMessageCount());
+		assertEquals(1, messageStore.addCalls.get());
+
+		// persisted messages are released from the store and removed in the background
+		this.delayHandler.handleMessage(MessageBuilder.withPayload("bar").setHeader("delay", 10).build());
+		assertEquals(1, writeBehindTasks.size());
+		writeBehindTasks.remove(0).run();
+		assertEquals(4, messageStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+		released = results.receive(10000);
+		assertNotNull(released);
+		assertEquals("bar", released.getPayload());
+		assertEquals(4, messageStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+		assertEquals(1, writeBehindTasks.size());
+		this.delayHandler.destroy();
+		assertEquals(3, messageStore.messageGroupSize(DELAYER_MESSAGE_GROUP_ID));
+	}
+
+	@Test
+	public void testPagedRecovery() throws Exception {
+		MapMessageStore messageStore = new MapMessageStore();
+		QueueChannel results = new QueueChannel();
+		this.delayHandler.setOutputChannel(results);
+		this.delayHandler.setMessageStore(messageStore);
+		this.delayHandler.setDefaultDelay(3600000);
+		this.delayHandler.setRecoveryPageSize(10);
+		this.delayHandler.afterPropertiesSet();
+
+		for (int i = 0; i < 25; i++) {
+			this.delayHandler.handleMessage(new GenericMessage<>(i));
+		}
+		assertEquals(25, this.delayHandler.getDelayedMessageCount());
+
+		// emulate restart with the messages overdue
+		this.taskScheduler.destroy();
+		this.taskScheduler.afterPropertiesSet();
+		this.delayHandler.setDefaultDelay(0);
+		this.delayHandler.onApplicationEvent(new ContextRefreshedEvent(TestUtils.createTestApplicationContext()));
+
+		for (int i = 0; i < 25; i++) {
+			assertNotNull(results.receive(10000));
+		}
+		assertEquals(0, this.delayHandler.getDelayedMessageCount());
+	}
+
 	private void waitForLatch(long timeout) {
 		try {
 			this.latch.await(timeout, TimeUnit.MILLISECONDS);
@@ -511,6 +588,56 @@ public class DelayHandlerTests {
 	}
 
 
+	private static class MapMessageStore extends AbstractKeyValueMessageStore {
+
+		private final Map<Object, Object> store = new ConcurrentHashMap<>();
+
+		private final AtomicInteger addCalls = new AtomicInteger();
+
+		MapMessageStore() {
+			super();
+		}
+
+		@Override
+		public void addMessagesToGroup(Object groupId, Message<?>... messages) {
+			this.addCalls.incrementAndGet();
+			super.addMessagesToGroup(groupId, messages);
+		}
+
+		@Override
+		protected Object doRetrieve(Object id) {
+			return this.store.get(id);
+		}
+
+		@Override
+		protected void doStore(Object id, Object objectToStore) {
+			this.store.put(id, objectToStore);
+		}
+
+		@Override
+		protected void doStoreIfAbsent(Object id, Object objectToStore) {
+			this.store.putIfAbsent(id, objectToStore);
+		}
+
+		@Override
+		protected Object doRemove(Object id) {
+			return this.store.remove(id);
+		}
+
+		@Override
+		protected Collection<?> doListKeys(String keyPattern) {
+			String prefix = keyPattern.replace("*", "");
+			List<Object> keys = new ArrayList<>();
+			for (Object key : this.store.keySet()) {
+				if (key.toString().startsWith(prefix)) {
+					keys.add(key);
+				}
+			}
+			return keys;
+		}
+
+	}
+
 	@SuppressWarnings("serial")
 	private static class TestTimedOutException extends RuntimeException {
 
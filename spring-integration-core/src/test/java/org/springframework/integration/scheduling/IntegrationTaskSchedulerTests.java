@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.scheduling;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Resource;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.InboundChannelAdapter;
+import org.springframework.integration.annotation.Poller;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.config.EnableIntegration;
+import org.springframework.integration.context.IntegrationContextUtils;
+import org.springframework.integration.endpoint.SourcePollingChannelAdapter;
+import org.springframework.integration.handler.DelayHandler;
+import org.springframework.integration.support.channel.HeaderChannelRegistry;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+
+/**
+ * @author agent
+ * @since 5.0
+ */
+@RunWith(SpringRunner.class)
+@DirtiesContext
+public class IntegrationTaskSchedulerTests {
+
+	@Autowired
+	@Qualifier(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME)
+	private TaskScheduler taskScheduler;
+
+	@Resource(name = IntegrationContextUtils.POLLING_TASK_SCHEDULER_BEAN_NAME)
+	private IntegrationTaskScheduler pollingTaskScheduler;
+
+	@Resource(name = IntegrationContextUtils.TIMER_TASK_SCHEDULER_BEAN_NAME)
+	private IntegrationTaskScheduler timerTaskScheduler;
+
+	@Resource(name = IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME)
+	private IntegrationTaskScheduler housekeepingTaskScheduler;
+
+	@Autowired
+	@Qualifier("integrationTaskSchedulerTests.Config.threadName.inboundChannelAdapter")
+	private SourcePollingChannelAdapter pollingChannelAdapter;
+
+	@Autowired
+	private PollableChannel pollingResults;
+
+	@Autowired
+	private MessageChannel delayerInput;
+
+	@Autowired
+	private PollableChannel delayerResults;
+
+	@Autowired
+	private DelayHandler delayer;
+
+	@Autowired
+	private HeaderChannelRegistry headerChannelRegistry;
+
+	@Test
+	public void testDedicatedPools() {
+		assertThat(this.taskScheduler, instanceOf(IntegrationTaskScheduler.class));
+		assertEquals(2, TestUtils.getPropertyValue(this.pollingTaskScheduler, "poolSize"));
+		assertEquals(1, TestUtils.getPropertyValue(this.timerTaskScheduler, "poolSize"));
+
+		Message<?> result = this.pollingResults.receive(10000);
+		assertNotNull(result);
+		assertThat((String) result.getPayload(), startsWith("polling-exec-"));
+		assertSame(this.pollingTaskScheduler, TestUtils.getPropertyValue(this.pollingChannelAdapter, "taskScheduler"));
+		assertThat(this.pollingTaskScheduler.getExecutedTaskCount(), greaterThanOrEqualTo(1L));
+
+		this.delayerInput.send(new GenericMessage<>("foo"));
+		result = this.delayerResults.receive(10000);
+		assertNotNull(result);
+		assertEquals("foo", result.getPayload());
+		assertSame(this.timerTaskScheduler, TestUtils.getPropertyValue(this.delayer, "taskScheduler"));
+		assertEquals(1L, this.timerTaskScheduler.getExecutedTaskCount());
+
+		assertSame(this.housekeepingTaskScheduler,
+				TestUtils.getPropertyValue(this.headerChannelRegistry, "taskScheduler"));
+	}
+
+	@Test
+	public void testPoolsFallBackToTaskScheduler() {
+		try (AnnotationConfigApplicationContext context =
+				new AnnotationConfigApplicationContext(DefaultPoolsConfig.class)) {
+
+			TaskScheduler taskScheduler = context.getBean(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME,
+					TaskScheduler.class);
+			assertSame(taskScheduler, context.getBean(IntegrationContextUtils.POLLING_TASK_SCHEDULER_BEAN_NAME));
+			assertSame(taskScheduler, context.getBean(IntegrationContextUtils.TIMER_TASK_SCHEDULER_BEAN_NAME));
+			assertSame(taskScheduler, context.getBean(IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME));
+			assertSame(taskScheduler, context.getBean(TaskScheduler.class));
+		}
+	}
+
+	@Test
+	public void testLatenessAndQueueSize() throws Exception {
+		IntegrationTaskScheduler scheduler = new IntegrationTaskScheduler();
+		scheduler.setPoolSize(1);
+		scheduler.afterPropertiesSet();
+		try {
+			CountDownLatch blocker = new CountDownLatch(1);
+			CountDownLatch done = new CountDownLatch(3);
+			scheduler.execute(() -> {
+				try {
+					blocker.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				done.countDown();
+			});
+			scheduler.schedule(done::countDown, new Date());
+			scheduler.schedule(done::countDown, new Date());
+			Thread.sleep(200);
+			assertEquals(2, scheduler.getQueueSize());
+			blocker.countDown();
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+
+			assertEquals(0, scheduler.getQueueSize());
+			assertEquals(3, scheduler.getExecutedTaskCount());
+			assertThat(scheduler.getMaxLateness(), greaterThanOrEqualTo(150.0));
+			assertThat(scheduler.getMeanLateness(), greaterThanOrEqualTo(100.0));
+
+			scheduler.resetLateness();
+			assertEquals(0, scheduler.getExecutedTaskCount());
+			assertEquals(0.0, scheduler.getMaxLateness(), 0.0);
+		}
+		finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Configuration
+	@EnableIntegration
+	public static class Config {
+
+		@Bean(name = IntegrationContextUtils.INTEGRATION_GLOBAL_PROPERTIES_BEAN_NAME)
+		public static Properties integrationGlobalProperties() {
+			Properties properties = new Properties();
+			properties.setProperty("spring.integration.taskScheduler.polling.poolSize", "2");
+			properties.setProperty("spring.integration.taskScheduler.timer.poolSize", "1");
+			properties.setProperty("spring.integration.taskScheduler.housekeeping.poolSize", "1");
+			return properties;
+		}
+
+		@Bean(name = IntegrationContextUtils.POLLING_TASK_EXECUTOR_BEAN_NAME)
+		public ThreadPoolTaskExecutor integrationPollingTaskExecutor() {
+			ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+			executor.setThreadNamePrefix("polling-exec-");
+			return executor;
+		}
+
+		@Bean
+		public PollableChannel pollingResults() {
+			return new QueueChannel();
+		}
+
+		@InboundChannelAdapter(value = "pollingResults", poller = @Poller(fixedDelay = "100"))
+		public String threadName() {
+			return Thread.currentThread().getName();
+		}
+
+		@Bean
+		public PollableChannel delayerResults() {
+			return new QueueChannel();
+		}
+
+		@Bean
+		@ServiceActivator(inputChannel = "delayerInput")
+		public DelayHandler delayer() {
+			DelayHandler delayHandler = new DelayHandler("delayer");
+			delayHandler.setDefaultDelay(10);
+			delayHandler.setOutputChannel(delayerResults());
+			return delayHandler;
+		}
+
+	}
+
+	// not a @Configuration, so it isn't detected for the test context
+	@EnableIntegration
+	public static class DefaultPoolsConfig {
+
+	}
+
+}
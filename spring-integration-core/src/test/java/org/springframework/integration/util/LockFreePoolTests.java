@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import org.springframework.messaging.MessagingException;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class LockFreePoolTests {
+
+	@Test
+	public void testReuseAndStale() {
+		final Set<String> strings = new HashSet<String>();
+		final AtomicBoolean stale = new AtomicBoolean();
+		LockFreePool<String> pool = stringPool(2, strings, stale);
+		String s1 = pool.getItem();
+		String s2 = pool.getItem();
+		assertNotSame(s1, s2);
+		pool.releaseItem(s1);
+		String s3 = pool.getItem();
+		assertSame(s1, s3);
+		stale.set(true);
+		pool.releaseItem(s3);
+		s3 = pool.getItem();
+		assertNotSame(s1, s3);
+		assertFalse(strings.remove(s1));
+		assertEquals(2, pool.getAllocatedCount());
+	}
+
+	@Test
+	public void testOverCommitandResize() {
+		final Set<String> strings = new HashSet<String>();
+		final AtomicBoolean stale = new AtomicBoolean();
+		LockFreePool<String> pool = stringPool(2, strings, stale);
+		String s1 = pool.getItem();
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, pool.getActiveCount());
+		assertEquals(1, pool.getAllocatedCount());
+		pool.releaseItem(s1);
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(1, pool.getAllocatedCount());
+		s1 = pool.getItem();
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(1, pool.getActiveCount());
+		assertEquals(1, pool.getAllocatedCount());
+		String s2 = pool.getItem();
+		assertNotSame(s1, s2);
+		pool.setWaitTimeout(1);
+		try {
+			pool.getItem();
+			fail("Expected exception");
+		}
+		catch (MessagingException e) { }
+
+		// resize up
+		pool.setPoolSize(4);
+		String s3 = pool.getItem();
+		String s4 = pool.getItem();
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(4, pool.getActiveCount());
+		assertEquals(4, pool.getAllocatedCount());
+		pool.releaseItem(s4);
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(3, pool.getActiveCount());
+
+		// resize down
+		pool.setPoolSize(2);
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(3, pool.getActiveCount());
+		assertEquals(3, pool.getPoolSize());
+		assertEquals(3, pool.getAllocatedCount());
+		pool.releaseItem(s3);
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(2, pool.getActiveCount());
+		assertEquals(2, pool.getPoolSize());
+		assertEquals(2, pool.getAllocatedCount());
+		pool.releaseItem(s2);
+		pool.releaseItem(s1);
+		assertEquals(2, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(2, strings.size());
+		pool.removeAllIdleItems();
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(0, pool.getAllocatedCount());
+		assertEquals(0, strings.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForeignObject() {
+		LockFreePool<String> pool = stringPool(2, new HashSet<String>(), new AtomicBoolean());
+		pool.getItem();
+		pool.releaseItem("Hello, world!");
+	}
+
+	@Test
+	public void testDoubleReturn() {
+		LockFreePool<String> pool = stringPool(1, new HashSet<String>(), new AtomicBoolean());
+		pool.setWaitTimeout(1);
+		String s1 = pool.getItem();
+		pool.releaseItem(s1);
+		pool.releaseItem(s1);
+		assertSame(s1, pool.getItem());
+		try {
+			pool.getItem();
+			fail("Expected exception");
+		}
+		catch (MessagingException e) { }
+	}
+
+	@Test
+	public void testWaitForRelease() throws Exception {
+		final LockFreePool<String> pool = stringPool(1, new HashSet<String>(), new AtomicBoolean());
+		final String s1 = pool.getItem();
+		ExecutorService exec = Executors.newSingleThreadExecutor();
+		Future<String> future = exec.submit(pool::getItem);
+		Thread.sleep(100);
+		assertFalse(future.isDone());
+		pool.releaseItem(s1);
+		assertSame(s1, future.get(10, TimeUnit.SECONDS));
+		exec.shutdownNow();
+	}
+
+	@Test
+	public void testRemoveStaleIdleItems() {
+		final Set<String> strings = new HashSet<String>();
+		final AtomicBoolean stale = new AtomicBoolean();
+		LockFreePool<String> pool = stringPool(3, strings, stale);
+		String s1 = pool.getItem();
+		String s2 = pool.getItem();
+		pool.releaseItem(s1);
+		pool.releaseItem(s2);
+		assertEquals(0, pool.removeStaleIdleItems());
+		assertEquals(2, pool.getIdleCount());
+		stale.set(true);
+		assertEquals(2, pool.removeStaleIdleItems());
+		assertEquals(0, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(0, pool.getAllocatedCount());
+		stale.set(false);
+		assertNotSame(s1, pool.getItem());
+	}
+
+	@Test
+	public void testRemoveStaleIdleItemsHoldsPermit() throws Exception {
+		final CountDownLatch validating = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final AtomicInteger created = new AtomicInteger();
+		final LockFreePool<String> pool = new LockFreePool<String>(1, new SimplePool.PoolItemCallback<String>() {
+
+			@Override
+			public String createForPool() {
+				return "String" + created.getAndIncrement();
+			}
+
+			@Override
+			public boolean isStale(String item) {
+				if (validating.getCount() > 0) {
+					validating.countDown();
+					try {
+						proceed.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public void removedFromPool(String item) {
+			}
+
+		});
+		String s1 = pool.getItem();
+		pool.releaseItem(s1);
+		ExecutorService exec = Executors.newFixedThreadPool(2);
+		Future<Integer> removed = exec.submit(pool::removeStaleIdleItems);
+		assertTrue(validating.await(10, TimeUnit.SECONDS));
+		Future<String> future = exec.submit(pool::getItem);
+		Thread.sleep(100);
+		// waits for the item being validated instead of creating a second one
+		assertFalse(future.isDone());
+		proceed.countDown();
+		assertSame(s1, future.get(10, TimeUnit.SECONDS));
+		assertEquals(Integer.valueOf(0), removed.get(10, TimeUnit.SECONDS));
+		assertEquals(1, created.get());
+		assertEquals(1, pool.getAllocatedCount());
+		exec.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		final LockFreePool<String> pool = stringPool(8, Collections.synchronizedSet(new HashSet<>()),
+				new AtomicBoolean());
+		final Set<String> inUse = ConcurrentHashMap.newKeySet();
+		final AtomicInteger errors = new AtomicInteger();
+		int threads = 32;
+		final CountDownLatch latch = new CountDownLatch(threads);
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			exec.execute(() -> {
+				for (int j = 0; j < 2000; j++) {
+					String item = pool.getItem();
+					if (!inUse.add(item)) {
+						errors.incrementAndGet();
+					}
+					inUse.remove(item);
+					pool.releaseItem(item);
+				}
+				latch.countDown();
+			});
+		}
+		assertTrue(latch.await(30, TimeUnit.SECONDS));
+		assertEquals(0, errors.get());
+		assertEquals(0, pool.getActiveCount());
+		assertEquals(pool.getAllocatedCount(), pool.getIdleCount());
+		assertTrue(pool.getAllocatedCount() <= 8);
+		exec.shutdownNow();
+	}
+
+	private LockFreePool<String> stringPool(int size, final Set<String> strings,
+			final AtomicBoolean stale) {
+		LockFreePool<String> pool = new LockFreePool<String>(size, new SimplePool.PoolItemCallback<String>() {
+
+			private final AtomicInteger i = new AtomicInteger();
+
+			@Override
+			public String createForPool() {
+				String string = new String("String" + this.i.getAndIncrement());
+				strings.add(string);
+				return string;
+			}
+
+			@Override
+			public boolean isStale(String item) {
+				return stale.get();
+			}
+
+			@Override
+			public void removedFromPool(String item) {
+				strings.remove(item);
+			}
+
+		});
+		return pool;
+	}
+
+}
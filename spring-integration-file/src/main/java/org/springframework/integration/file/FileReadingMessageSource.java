@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.integration.file;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
@@ -523,17 +524,7 @@ public class FileReadingMessageSource extends IntegrationObjectSupport implement
 									"] with context [" + event.context() + "]");
 						}
 
-						for (WatchKey watchKey : this.pathKeys.values()) {
-							watchKey.cancel();
-						}
-						this.pathKeys.clear();
-
-						if (event.context() != null && event.context() instanceof Path) {
-							files.addAll(walkDirectory((Path) event.context(), event.kind()));
-						}
-						else {
-							files.addAll(walkDirectory(FileReadingMessageSource.this.directory.toPath(), event.kind()));
-						}
+						files.addAll(recoverOverflow((Path) key.watchable()));
 					}
 				}
 				key.reset();
@@ -542,6 +533,33 @@ public class FileReadingMessageSource extends IntegrationObjectSupport implement
 			return files;
 		}
 
+		/**
+		 * Events have been lost for this directory only: its subdirectories have their own
+		 * watch keys, so re-list its direct entries and only walk the subdirectories that
+		 * are not registered yet; the filter rejects the files that were already seen.
+		 */
+		private Set<File> recoverOverflow(Path directory) {
+			Set<File> recovered = new LinkedHashSet<File>();
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (Path path : stream) {
+					if (Files.isDirectory(path)) {
+						WatchKey watchKey = this.pathKeys.get(path);
+						if (watchKey == null || !watchKey.isValid()) {
+							this.pathKeys.remove(path);
+							recovered.addAll(walkDirectory(path, StandardWatchEventKinds.OVERFLOW));
+						}
+					}
+					else {
+						recovered.add(path.toFile());
+					}
+				}
+			}
+			catch (IOException e) {
+				logger.error("Failed to list directory: " + directory, e);
+			}
+			return recovered;
+		}
+
 		private Set<File> walkDirectory(Path directory, final WatchEvent.Kind<?> kind) {
 			final Set<File> walkedFiles = new LinkedHashSet<File>();
 			try {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,14 +26,23 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,6 +56,7 @@ import org.springframework.expression.common.LiteralExpression;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.integration.expression.ExpressionUtils;
 import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.file.support.FsyncPolicy;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.handler.MessageTriggerAction;
 import org.springframework.integration.support.locks.DefaultLockRegistry;
@@ -89,7 +99,19 @@ import org.springframework.util.StringUtils;
  * {@link #setFlushInterval(long) flushInterval} or when a message is sent to the
  * {@link #trigger(Message)} method, or a
  * {@link #flushIfNeeded(MessageFlushPredicate, Message) flushIfNeeded}
- * method is called.
+ * method is called. The state of each open file is guarded by its own lock, so
+ * concurrent writes to different files do not contend, and the periodic flush
+ * skips files that are being written (they are flushed on a later sweep). The
+ * number of open files can be capped with {@link #setMaxOpenFiles(int)}.
+ * <p>
+ * When {@link #setUseFileChannel(boolean) useFileChannel} is true, files are written
+ * through a {@link FileChannel}: {@link File} and {@link InputStream} payloads are
+ * transferred with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)
+ * transferTo} and {@link FileChannel#transferFrom(ReadableByteChannel, long, long)
+ * transferFrom}, and {@code byte[]} and {@code String} payloads (as well as
+ * {@link Collection}s of them, which are written as a batch) with a single gathering
+ * write that includes the new-lines. The {@link #setFsyncPolicy(FsyncPolicy) fsyncPolicy}
+ * controls when the data is forced to the device.
  *
  * @author Mark Fisher
  * @author Iwein Fuld
@@ -109,7 +131,7 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 	private static final long DEFAULT_FLUSH_INTERVAL = 30000L;
 
-	private final Map<String, FileState> fileStates = new HashMap<String, FileState>();
+	private final Map<String, FileState> fileStates = new ConcurrentHashMap<String, FileState>();
 
 	private volatile String temporaryFileSuffix = ".writing";
 
@@ -149,6 +171,16 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 	private volatile boolean preserveTimestamp;
 
+	private volatile int maxOpenFiles;
+
+	private final AtomicLong writeSequence = new AtomicLong();
+
+	private volatile boolean useFileChannel;
+
+	private volatile long preallocateSize;
+
+	private volatile FsyncPolicy fsyncPolicy = FsyncPolicy.NONE;
+
 	/**
 	 * Constructor which sets the {@link #destinationDirectoryExpression} using
 	 * a {@link LiteralExpression}.
@@ -337,6 +369,66 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		this.preserveTimestamp = preserveTimestamp;
 	}
 
+	/**
+	 * Set the maximum number of files kept open when {@link FileExistsMode#APPEND_NO_FLUSH}
+	 * is being used; when a file is opened and the limit is exceeded, the least recently
+	 * written (idle) files are flushed and closed. Default 0 (no limit).
+	 * @param maxOpenFiles the maximum number of open files.
+	 * @since 5.0
+	 */
+	public void setMaxOpenFiles(int maxOpenFiles) {
+		Assert.isTrue(maxOpenFiles >= 0, "'maxOpenFiles' cannot be negative");
+		this.maxOpenFiles = maxOpenFiles;
+	}
+
+	/**
+	 * Set to true to write files through a {@link FileChannel} rather than buffered
+	 * streams and writers; {@code byte[]} and {@code String} elements of a
+	 * {@link Collection} payload are then written to the file as a batch, with one
+	 * gathering write. Default false.
+	 * @param useFileChannel true to use a {@link FileChannel}.
+	 * @since 5.0
+	 * @see #setFsyncPolicy(FsyncPolicy)
+	 * @see #setPreallocateSize(long)
+	 */
+	public void setUseFileChannel(boolean useFileChannel) {
+		this.useFileChannel = useFileChannel;
+	}
+
+	/**
+	 * When using a {@link #setUseFileChannel(boolean) file channel} and
+	 * {@link FileExistsMode#APPEND_NO_FLUSH}, extend open files by this number of bytes
+	 * ahead of the data being written, so that the file size does not change (and the
+	 * file system metadata does not need to be updated) on every write; the file is
+	 * truncated to its real length when it is flushed. Preallocation is not used with
+	 * the other modes, including {@link FileExistsMode#APPEND}.
+	 * <p>
+	 * If the application terminates abnormally, the file is left with up to
+	 * {@code preallocateSize} trailing zero bytes; since the real length is not
+	 * recorded, it can't be restored when the file is opened again, and data appended
+	 * later follows the padding. Only use preallocation for formats where such padding
+	 * can be detected (for example, text records), and strip it before appending to a
+	 * file that was not closed normally.
+	 * Default 0 (no preallocation).
+	 * @param preallocateSize the size.
+	 * @since 5.0
+	 */
+	public void setPreallocateSize(long preallocateSize) {
+		Assert.isTrue(preallocateSize >= 0, "'preallocateSize' cannot be negative");
+		this.preallocateSize = preallocateSize;
+	}
+
+	/**
+	 * When using a {@link #setUseFileChannel(boolean) file channel}, set the policy
+	 * for forcing written data to the storage device. Default {@link FsyncPolicy#NONE}.
+	 * @param fsyncPolicy the policy.
+	 * @since 5.0
+	 */
+	public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+		Assert.notNull(fsyncPolicy, "'fsyncPolicy' cannot be null");
+		this.fsyncPolicy = fsyncPolicy;
+	}
+
 	@Override
 	protected void doInit() {
 		this.evaluationContext = ExpressionUtils.createStandardEvaluationContext(getBeanFactory());
@@ -428,6 +520,10 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 					resultFile = handleFileMessage((File) payload, tempFile, resultFile);
 					timestamp = ((File) payload).lastModified();
 				}
+				else if (this.useFileChannel && (payload instanceof InputStream || payload instanceof byte[]
+						|| payload instanceof String || payload instanceof Collection)) {
+					resultFile = handleChannelMessage(payload, originalFileFromHeader, tempFile, resultFile);
+				}
 				else if (payload instanceof InputStream) {
 					resultFile = handleInputStreamMessage((InputStream) payload, originalFileFromHeader, tempFile,
 							resultFile);
@@ -496,6 +592,9 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 			rename(sourceFile, resultFile);
 			return resultFile;
 		}
+		else if (this.useFileChannel) {
+			return handleChannelMessage(sourceFile, sourceFile, tempFile, resultFile);
+		}
 		else {
 			BufferedInputStream bis = new BufferedInputStream(new FileInputStream(sourceFile));
 			return handleInputStreamMessage(bis, sourceFile, tempFile, resultFile);
@@ -510,15 +609,15 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		if (append) {
 			final File fileToWriteTo = this.determineFileToWrite(resultFile, tempFile);
 
-			final FileState state = getFileState(fileToWriteTo, false);
-
 			WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry,
 					fileToWriteTo.getAbsolutePath()) {
 
 				@Override
 				protected void whileLocked() throws IOException {
+					FileState state = null;
 					BufferedOutputStream bos = null;
 					try {
+						state = getFileState(fileToWriteTo, false);
 						bos = state != null ? state.stream : createOutputStream(fileToWriteTo, true);
 						byte[] buffer = new byte[StreamUtils.BUFFER_SIZE];
 						int bytesRead = -1;
@@ -540,14 +639,13 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 								if (bos != null) {
 									bos.close();
 								}
-								clearState(fileToWriteTo, state);
-							}
-							else {
-								state.lastWrite = System.currentTimeMillis();
 							}
 						}
 						catch (IOException ex) {
 						}
+						finally {
+							releaseFileState(fileToWriteTo, state);
+						}
 					}
 				}
 
@@ -594,8 +692,6 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 			throws IOException {
 		final File fileToWriteTo = this.determineFileToWrite(resultFile, tempFile);
 
-		final FileState state = getFileState(fileToWriteTo, false);
-
 		final boolean append = FileExistsMode.APPEND.equals(this.fileExistsMode);
 
 		WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry,
@@ -603,8 +699,10 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 			@Override
 			protected void whileLocked() throws IOException {
+				FileState state = null;
 				BufferedOutputStream bos = null;
 				try {
+					state = getFileState(fileToWriteTo, false);
 					bos = state != null ? state.stream : createOutputStream(fileToWriteTo, append);
 					bos.write(bytes);
 					if (FileWritingMessageHandler.this.appendNewLine) {
@@ -617,14 +715,13 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 							if (bos != null) {
 								bos.close();
 							}
-							clearState(fileToWriteTo, state);
-						}
-						else {
-							state.lastWrite = System.currentTimeMillis();
 						}
 					}
 					catch (IOException ex) {
 					}
+					finally {
+						releaseFileState(fileToWriteTo, state);
+					}
 				}
 			}
 
@@ -638,8 +735,6 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 			throws IOException {
 		final File fileToWriteTo = this.determineFileToWrite(resultFile, tempFile);
 
-		final FileState state = getFileState(fileToWriteTo, true);
-
 		final boolean append = FileExistsMode.APPEND.equals(this.fileExistsMode);
 
 		WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry,
@@ -647,8 +742,10 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 			@Override
 			protected void whileLocked() throws IOException {
+				FileState state = null;
 				BufferedWriter writer = null;
 				try {
+					state = getFileState(fileToWriteTo, true);
 					writer = state != null ? state.writer : createWriter(fileToWriteTo, append);
 					writer.write(content);
 					if (FileWritingMessageHandler.this.appendNewLine) {
@@ -661,14 +758,13 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 							if (writer != null) {
 								writer.close();
 							}
-							clearState(fileToWriteTo, state);
-						}
-						else {
-							state.lastWrite = System.currentTimeMillis();
 						}
 					}
 					catch (IOException ex) {
 					}
+					finally {
+						releaseFileState(fileToWriteTo, state);
+					}
 				}
 
 			}
@@ -680,6 +776,54 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		return resultFile;
 	}
 
+	private File handleChannelMessage(final Object payload, File originalFile, File tempFile,
+			final File resultFile) throws IOException {
+		final File fileToWriteTo = this.determineFileToWrite(resultFile, tempFile);
+
+		final boolean append = FileExistsMode.APPEND.equals(this.fileExistsMode);
+
+		WhileLockedProcessor whileLockedProcessor = new WhileLockedProcessor(this.lockRegistry,
+				fileToWriteTo.getAbsolutePath()) {
+
+			@Override
+			protected void whileLocked() throws IOException {
+				FileState state = null;
+				ChannelWriter channelWriter = null;
+				try {
+					state = getFileState(fileToWriteTo, false);
+					channelWriter = state != null
+							? state.channelWriter
+							: createChannelWriter(fileToWriteTo, append, false);
+					channelWriter.write(payload);
+					if (FsyncPolicy.BATCH.equals(FileWritingMessageHandler.this.fsyncPolicy)) {
+						channelWriter.force();
+					}
+				}
+				finally {
+					try {
+						if (payload instanceof InputStream) {
+							((InputStream) payload).close();
+						}
+					}
+					catch (IOException ex) {
+					}
+					try {
+						if (state == null && channelWriter != null) {
+							channelWriter.close();
+						}
+					}
+					finally {
+						releaseFileState(fileToWriteTo, state);
+					}
+				}
+			}
+
+		};
+		whileLockedProcessor.doWhileLocked();
+		this.cleanUpAfterCopy(fileToWriteTo, resultFile, originalFile);
+		return resultFile;
+	}
+
 	private File determineFileToWrite(File resultFile, File tempFile) {
 
 		final File fileToWriteTo;
@@ -765,33 +909,139 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		return destinationDirectory;
 	}
 
-	private synchronized FileState getFileState(final File fileToWriteTo, boolean isString)
-			throws FileNotFoundException {
+	/**
+	 * Obtain the state of a file when {@link FileExistsMode#APPEND_NO_FLUSH} is being
+	 * used; the state is returned locked and must be released with
+	 * {@link #releaseFileState(File, FileState)}.
+	 */
+	private FileState getFileState(final File fileToWriteTo, boolean isString)
+			throws IOException {
+		if (!FileExistsMode.APPEND_NO_FLUSH.equals(this.fileExistsMode)) {
+			return null;
+		}
 		String absolutePath = fileToWriteTo.getAbsolutePath();
-		FileState state;
-		boolean appendNoFlush = FileExistsMode.APPEND_NO_FLUSH.equals(this.fileExistsMode);
-		if (appendNoFlush) {
-			state = this.fileStates.get(absolutePath);
-			if (state != null && ((isString && state.stream != null) || (!isString && state.writer != null))) {
-				state.close();
-				state = null;
-				this.fileStates.remove(absolutePath);
-			}
+		while (true) {
+			FileState state = this.fileStates.get(absolutePath);
+			boolean created = false;
 			if (state == null) {
-				if (isString) {
-					state = new FileState(createWriter(fileToWriteTo, true));
+				FileState newState = this.useFileChannel
+						? new FileState(createChannelWriter(fileToWriteTo, true, true))
+						: isString
+								? new FileState(createWriter(fileToWriteTo, true))
+								: new FileState(createOutputStream(fileToWriteTo, true));
+				state = this.fileStates.putIfAbsent(absolutePath, newState);
+				if (state == null) {
+					state = newState;
+					created = true;
 				}
 				else {
-					state = new FileState(createOutputStream(fileToWriteTo, true));
+					newState.close();
 				}
-				this.fileStates.put(absolutePath, state);
 			}
-			state.lastWrite = Long.MAX_VALUE; // prevent flush while we write
+			state.lock.lock();
+			if (state.closed) {
+				// flushed while we were waiting for the lock
+				state.lock.unlock();
+				continue;
+			}
+			if ((isString && state.stream != null) || (!isString && state.writer != null)) {
+				closeState(absolutePath, state);
+				state.lock.unlock();
+				continue;
+			}
+			if (created) {
+				evictIfNecessary(state);
+			}
+			return state;
 		}
-		else {
-			state = null;
+	}
+
+	private void releaseFileState(File fileToWriteTo, FileState state) {
+		if (state != null) {
+			if (this.flushTask == null) {
+				closeState(fileToWriteTo.getAbsolutePath(), state);
+			}
+			else {
+				state.lastWrite = System.currentTimeMillis();
+				state.writeSequence = this.writeSequence.incrementAndGet();
+			}
+			state.lock.unlock();
+		}
+	}
+
+	/**
+	 * Close the least recently written idle files while there are more than
+	 * {@link #setMaxOpenFiles(int) maxOpenFiles} open.
+	 */
+	private void evictIfNecessary(FileState current) {
+		int maxOpenFiles = this.maxOpenFiles;
+		while (maxOpenFiles > 0 && this.fileStates.size() > maxOpenFiles) {
+			Entry<String, FileState> eldest = null;
+			for (Entry<String, FileState> entry : this.fileStates.entrySet()) {
+				FileState state = entry.getValue();
+				if (state != current && !state.lock.isLocked()
+						&& (eldest == null || state.writeSequence < eldest.getValue().writeSequence)) {
+					eldest = entry;
+				}
+			}
+			if (eldest == null) {
+				// all in use
+				return;
+			}
+			FileState state = eldest.getValue();
+			if (state.lock.tryLock()) {
+				try {
+					if (!state.closed) {
+						closeState(eldest.getKey(), state);
+						if (this.logger.isDebugEnabled()) {
+							this.logger.debug("Closed least recently written: " + eldest.getKey());
+						}
+					}
+				}
+				finally {
+					state.lock.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the state and remove it from the map; must be called while holding the
+	 * state's lock.
+	 */
+	private void closeState(String absolutePath, FileState state) {
+		state.close();
+		this.fileStates.remove(absolutePath, state);
+	}
+
+	/**
+	 * Flush and close the files that match the predicate; a file that is being written
+	 * is waited for if {@code wait}, otherwise it is skipped.
+	 */
+	private void flushStates(BiPredicate<String, FileState> predicate, boolean wait) {
+		for (Entry<String, FileState> entry : this.fileStates.entrySet()) {
+			FileState state = entry.getValue();
+			if (!predicate.test(entry.getKey(), state)) {
+				continue;
+			}
+			if (wait) {
+				state.lock.lock();
+			}
+			else if (!state.lock.tryLock()) {
+				continue;
+			}
+			try {
+				if (!state.closed && predicate.test(entry.getKey(), state)) {
+					closeState(entry.getKey(), state);
+					if (this.logger.isDebugEnabled()) {
+						this.logger.debug("Flushed: " + entry.getKey());
+					}
+				}
+			}
+			finally {
+				state.lock.unlock();
+			}
 		}
-		return state;
 	}
 
 	private BufferedWriter createWriter(final File fileToWriteTo, final boolean append) throws FileNotFoundException {
@@ -804,6 +1054,37 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 		return new BufferedOutputStream(new FileOutputStream(fileToWriteTo, append), this.bufferSize);
 	}
 
+	private ChannelWriter createChannelWriter(File fileToWriteTo, boolean append, boolean preallocate)
+			throws IOException {
+		FileChannel channel = append
+				? FileChannel.open(fileToWriteTo.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+				: FileChannel.open(fileToWriteTo.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+		return new ChannelWriter(channel, append ? channel.size() : 0, preallocate);
+	}
+
+	/**
+	 * Force the open files to the device; files that are being written are skipped.
+	 */
+	private void forceStates() {
+		for (Entry<String, FileState> entry : this.fileStates.entrySet()) {
+			FileState state = entry.getValue();
+			if (state.channelWriter != null && state.lock.tryLock()) {
+				try {
+					if (!state.closed) {
+						state.channelWriter.force();
+					}
+				}
+				catch (IOException e) {
+					this.logger.error("Failed to force: " + entry.getKey(), e);
+				}
+				finally {
+					state.lock.unlock();
+				}
+			}
+		}
+	}
+
 	/**
 	 * When using {@link FileExistsMode#APPEND_NO_FLUSH}, you can send a message to this
 	 * method to flush any file(s) that needs it. By default, the payload must be a regular
@@ -825,16 +1106,8 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 	 * @param flushPredicate the {@link FlushPredicate}.
 	 * @since 4.3
 	 */
-	public synchronized void flushIfNeeded(FlushPredicate flushPredicate) {
-		Iterator<Entry<String, FileState>> iterator = this.fileStates.entrySet().iterator();
-		while (iterator.hasNext()) {
-			Entry<String, FileState> entry = iterator.next();
-			FileState state = entry.getValue();
-			if (flushPredicate.shouldFlush(entry.getKey(), state.lastWrite)) {
-				iterator.remove();
-				state.close();
-			}
-		}
+	public void flushIfNeeded(FlushPredicate flushPredicate) {
+		flushStates((path, state) -> flushPredicate.shouldFlush(path, state.lastWrite), true);
 	}
 
 	/**
@@ -846,22 +1119,8 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 	 * @param filterMessage an optional message passed into the predicate.
 	 * @since 4.3
 	 */
-	public synchronized void flushIfNeeded(MessageFlushPredicate flushPredicate, Message<?> filterMessage) {
-		Iterator<Entry<String, FileState>> iterator = this.fileStates.entrySet().iterator();
-		while (iterator.hasNext()) {
-			Entry<String, FileState> entry = iterator.next();
-			FileState state = entry.getValue();
-			if (flushPredicate.shouldFlush(entry.getKey(), state.lastWrite, filterMessage)) {
-				iterator.remove();
-				state.close();
-			}
-		}
-	}
-
-	private synchronized void clearState(final File fileToWriteTo, final FileState state) {
-		if (state != null) {
-			this.fileStates.remove(fileToWriteTo.getAbsolutePath());
-		}
+	public void flushIfNeeded(MessageFlushPredicate flushPredicate, Message<?> filterMessage) {
+		flushStates((path, state) -> flushPredicate.shouldFlush(path, state.lastWrite, filterMessage), true);
 	}
 
 	private static void rename(File source, File target) throws IOException {
@@ -874,26 +1133,47 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 		private final BufferedOutputStream stream;
 
-		private volatile long lastWrite;
+		private final ChannelWriter channelWriter;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		private volatile long lastWrite = System.currentTimeMillis();
+
+		// orders the writes when several happen within the same millisecond
+		private volatile long writeSequence;
+
+		private volatile boolean closed;
 
 		FileState(BufferedWriter writer) {
 			this.writer = writer;
 			this.stream = null;
+			this.channelWriter = null;
 		}
 
 		FileState(BufferedOutputStream stream) {
 			this.writer = null;
 			this.stream = stream;
+			this.channelWriter = null;
+		}
+
+		FileState(ChannelWriter channelWriter) {
+			this.writer = null;
+			this.stream = null;
+			this.channelWriter = channelWriter;
 		}
 
 		private void close() {
+			this.closed = true;
 			try {
 				if (this.writer != null) {
 					this.writer.close();
 				}
-				else {
+				else if (this.stream != null) {
 					this.stream.close();
 				}
+				else {
+					this.channelWriter.close();
+				}
 			}
 			catch (IOException e) {
 				// ignore
@@ -909,22 +1189,144 @@ public class FileWritingMessageHandler extends AbstractReplyProducingMessageHand
 
 		@Override
 		public void run() {
-			synchronized (FileWritingMessageHandler.this) {
-				long expired = FileWritingMessageHandler.this.flushTask == null ? Long.MAX_VALUE
-						: (System.currentTimeMillis() - FileWritingMessageHandler.this.flushInterval);
-				Iterator<Entry<String, FileState>> iterator =
-						FileWritingMessageHandler.this.fileStates.entrySet().iterator();
-				while (iterator.hasNext()) {
-					Entry<String, FileState> entry = iterator.next();
-					FileState state = entry.getValue();
-					if (state.lastWrite < expired) {
-						iterator.remove();
-						state.close();
-						if (FileWritingMessageHandler.this.logger.isDebugEnabled()) {
-							FileWritingMessageHandler.this.logger.debug("Flushed: " + entry.getKey());
-						}
+			boolean stopped = FileWritingMessageHandler.this.flushTask == null;
+			long expired = stopped ? Long.MAX_VALUE
+					: (System.currentTimeMillis() - FileWritingMessageHandler.this.flushInterval);
+			// files being written are skipped by the periodic sweep, but waited for when stopping
+			flushStates((path, state) -> state.lastWrite < expired, stopped);
+			if (!stopped && FsyncPolicy.INTERVAL.equals(FileWritingMessageHandler.this.fsyncPolicy)) {
+				forceStates();
+			}
+		}
+
+	}
+
+	/**
+	 * Writes payloads to a {@link FileChannel} at an explicit position, so that the file
+	 * can be extended ahead of the data when preallocating.
+	 */
+	private final class ChannelWriter {
+
+		private final FileChannel channel;
+
+		private final boolean preallocate;
+
+		private long position;
+
+		private long allocated;
+
+		ChannelWriter(FileChannel channel, long position, boolean preallocate) {
+			this.channel = channel;
+			this.position = position;
+			this.allocated = position;
+			this.preallocate = preallocate && FileWritingMessageHandler.this.preallocateSize > 0;
+		}
+
+		void write(Object payload) throws IOException {
+			if (payload instanceof File) {
+				try (FileChannel source = FileChannel.open(((File) payload).toPath(), StandardOpenOption.READ)) {
+					long size = source.size();
+					ensureAllocated(size);
+					this.channel.position(this.position);
+					long transferred = 0;
+					while (transferred < size) {
+						transferred += source.transferTo(transferred, size - transferred, this.channel);
 					}
+					this.position += transferred;
 				}
+				writeNewLineIfNeeded();
+			}
+			else if (payload instanceof InputStream) {
+				ReadableByteChannel source = Channels.newChannel((InputStream) payload);
+				int chunkSize = FileWritingMessageHandler.this.bufferSize;
+				long transferred;
+				while ((transferred = this.channel.transferFrom(source, this.position, chunkSize)) > 0) {
+					this.position += transferred;
+				}
+				writeNewLineIfNeeded();
+			}
+			else {
+				write(toBuffers(payload));
+			}
+			this.allocated = Math.max(this.allocated, this.position);
+		}
+
+		private ByteBuffer[] toBuffers(Object payload) {
+			byte[] newLine = FileWritingMessageHandler.this.appendNewLine
+					? LINE_SEPARATOR.getBytes(FileWritingMessageHandler.this.charset)
+					: null;
+			Collection<?> records = payload instanceof Collection
+					? (Collection<?>) payload
+					: Collections.singletonList(payload);
+			ByteBuffer[] buffers = new ByteBuffer[newLine != null ? records.size() * 2 : records.size()];
+			int i = 0;
+			for (Object record : records) {
+				if (record instanceof byte[]) {
+					buffers[i++] = ByteBuffer.wrap((byte[]) record);
+				}
+				else if (record instanceof String) {
+					byte[] bytes = ((String) record).getBytes(FileWritingMessageHandler.this.charset);
+					buffers[i++] = ByteBuffer.wrap(bytes);
+				}
+				else {
+					throw new IllegalArgumentException("unsupported Message payload type ["
+							+ (record == null ? "null" : record.getClass().getName()) + "]; "
+							+ "Collection elements must be byte[] or String");
+				}
+				if (newLine != null) {
+					buffers[i++] = ByteBuffer.wrap(newLine);
+				}
+			}
+			return buffers;
+		}
+
+		private void writeNewLineIfNeeded() throws IOException {
+			if (FileWritingMessageHandler.this.appendNewLine) {
+				byte[] newLine = LINE_SEPARATOR.getBytes(FileWritingMessageHandler.this.charset);
+				write(new ByteBuffer[] { ByteBuffer.wrap(newLine) });
+			}
+		}
+
+		private void write(ByteBuffer[] buffers) throws IOException {
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+			ensureAllocated(remaining);
+			this.channel.position(this.position);
+			while (remaining > 0) {
+				long written = this.channel.write(buffers);
+				this.position += written;
+				remaining -= written;
+			}
+		}
+
+		private void ensureAllocated(long length) throws IOException {
+			if (this.preallocate && this.position + length > this.allocated) {
+				this.allocated = this.position + length + FileWritingMessageHandler.this.preallocateSize;
+				this.channel.write(ByteBuffer.allocate(1), this.allocated - 1);
+			}
+		}
+
+		void force() throws IOException {
+			this.channel.force(false);
+		}
+
+		void close() throws IOException {
+			try {
+				boolean truncated = false;
+				if (this.allocated > this.position) {
+					this.channel.truncate(this.position);
+					truncated = true;
+				}
+				FsyncPolicy fsyncPolicy = FileWritingMessageHandler.this.fsyncPolicy;
+				if (FsyncPolicy.INTERVAL.equals(fsyncPolicy)
+						|| (truncated && FsyncPolicy.BATCH.equals(fsyncPolicy))) {
+					this.channel.force(true);
+				}
+			}
+			finally {
+				this.channel.close();
 			}
 		}
 
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.integration.file.filters.FileListFilter;
+import org.springframework.integration.file.filters.IgnoreHiddenFileListFilter;
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link DirectoryScanner} that walks the directory tree and keeps a snapshot of the
+ * size and modified time of each file; each scan only returns the files that are new,
+ * or whose size or modified time has changed, since the previous scan. Files that have
+ * been deleted are removed from the snapshot and, if the filter is a
+ * {@link ResettableFileListFilter}, from the filter.
+ * <p>
+ * Since the snapshot already ensures that each version of a file is only returned
+ * once, the default filter only ignores hidden files.
+ * <p>
+ * Subdirectories are scanned in parallel, as tasks of a {@link ForkJoinPool} (by
+ * default the {@link ForkJoinPool#commonPool() common pool}). When
+ * {@link #setSkipUnchangedDirectories(boolean) skipUnchangedDirectories} is true, the
+ * entries of a directory whose modified time has not changed are not listed again;
+ * this is much faster for large trees, but only detects files that are created,
+ * deleted or renamed, not files that are modified in place.
+ * <p>
+ * If a {@link #setSnapshotFile(File) snapshot file} is provided, the snapshot is
+ * loaded from it before the first scan and written to it after each scan that finds
+ * changes, so that only the changes made while the application was stopped are
+ * returned after a restart.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class IncrementalDirectoryScanner extends DefaultDirectoryScanner {
+
+	private static final int SNAPSHOT_MAGIC = 0x53494453;
+
+	private static final Log logger = LogFactory.getLog(IncrementalDirectoryScanner.class);
+
+	private final ConcurrentMap<Path, DirectoryState> snapshot = new ConcurrentHashMap<>();
+
+	private final Object monitor = new Object();
+
+	private volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	private volatile boolean skipUnchangedDirectories;
+
+	private volatile File snapshotFile;
+
+	private boolean loaded;
+
+	public IncrementalDirectoryScanner() {
+		setFilter(new IgnoreHiddenFileListFilter());
+	}
+
+	/**
+	 * Set the pool used to scan the directories. Default
+	 * {@link ForkJoinPool#commonPool()}.
+	 * @param pool the pool.
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		Assert.notNull(pool, "'pool' cannot be null");
+		this.pool = pool;
+	}
+
+	/**
+	 * Set to true to avoid listing directories whose modified time has not changed
+	 * since the previous scan; files modified in place in such directories are then not
+	 * detected. Default false.
+	 * @param skipUnchangedDirectories true to skip unchanged directories.
+	 */
+	public void setSkipUnchangedDirectories(boolean skipUnchangedDirectories) {
+		this.skipUnchangedDirectories = skipUnchangedDirectories;
+	}
+
+	/**
+	 * Set a file in which the snapshot is persisted.
+	 * @param snapshotFile the file.
+	 */
+	public void setSnapshotFile(File snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	@Override
+	protected File[] listEligibleFiles(File directory) {
+		Path root = directory.toPath().toAbsolutePath();
+		if (!Files.isDirectory(root)) {
+			return null;
+		}
+		synchronized (this.monitor) {
+			if (!this.loaded) {
+				load();
+				this.loaded = true;
+			}
+			Scan scan = new Scan();
+			this.pool.invoke(new DirectoryScan(root, scan));
+			if (!scan.deleted.isEmpty()) {
+				FileListFilter<File> filter = getFilter();
+				if (filter instanceof ResettableFileListFilter) {
+					for (File file : scan.deleted) {
+						((ResettableFileListFilter<File>) filter).remove(file);
+					}
+				}
+			}
+			if (scan.dirty.get()) {
+				save();
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Scanned " + root + ": " + scan.changed.size() + " new or changed file(s), "
+						+ scan.deleted.size() + " deleted file(s)");
+			}
+			return scan.changed.toArray(new File[scan.changed.size()]);
+		}
+	}
+
+	private void removeSubtree(Path directory, Scan scan) {
+		for (Entry<Path, DirectoryState> entry : this.snapshot.entrySet()) {
+			if (entry.getKey().startsWith(directory) && this.snapshot.remove(entry.getKey()) != null) {
+				for (String name : entry.getValue().files.keySet()) {
+					scan.deleted.add(entry.getKey().resolve(name).toFile());
+				}
+			}
+		}
+	}
+
+	private void load() {
+		File file = this.snapshotFile;
+		if (file == null || !file.exists()) {
+			return;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Not a snapshot file");
+			}
+			int directories = input.readInt();
+			for (int i = 0; i < directories; i++) {
+				Path directory = Paths.get(input.readUTF());
+				long modified = input.readLong();
+				int fileCount = input.readInt();
+				Map<String, FileState> files = new HashMap<>(fileCount * 4 / 3 + 1);
+				for (int j = 0; j < fileCount; j++) {
+					files.put(input.readUTF(), new FileState(input.readLong(), input.readLong()));
+				}
+				int subdirectoryCount = input.readInt();
+				Set<String> subdirectories = new HashSet<>(subdirectoryCount * 4 / 3 + 1);
+				for (int j = 0; j < subdirectoryCount; j++) {
+					subdirectories.add(input.readUTF());
+				}
+				this.snapshot.put(directory, new DirectoryState(modified, files, subdirectories));
+			}
+		}
+		catch (IOException e) {
+			logger.error("Failed to load the snapshot from " + file + "; all files will be scanned", e);
+			this.snapshot.clear();
+		}
+	}
+
+	private void save() {
+		File file = this.snapshotFile;
+		if (file == null) {
+			return;
+		}
+		File temp = new File(file.getAbsolutePath() + ".writing");
+		try {
+			try (DataOutputStream output =
+					new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(SNAPSHOT_MAGIC);
+				output.writeInt(this.snapshot.size());
+				for (Entry<Path, DirectoryState> entry : this.snapshot.entrySet()) {
+					DirectoryState state = entry.getValue();
+					output.writeUTF(entry.getKey().toString());
+					output.writeLong(state.modified);
+					output.writeInt(state.files.size());
+					for (Entry<String, FileState> fileEntry : state.files.entrySet()) {
+						output.writeUTF(fileEntry.getKey());
+						output.writeLong(fileEntry.getValue().size);
+						output.writeLong(fileEntry.getValue().modified);
+					}
+					output.writeInt(state.subdirectories.size());
+					for (String subdirectory : state.subdirectories) {
+						output.writeUTF(subdirectory);
+					}
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			logger.error("Failed to write the snapshot to " + file, e);
+		}
+	}
+
+	private static final class Scan {
+
+		private final Collection<File> changed = new ConcurrentLinkedQueue<>();
+
+		private final Collection<File> deleted = new ConcurrentLinkedQueue<>();
+
+		private final AtomicBoolean dirty = new AtomicBoolean();
+
+	}
+
+	private final class DirectoryScan extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+
+		private final Scan scan;
+
+		DirectoryScan(Path directory, Scan scan) {
+			this.directory = directory;
+			this.scan = scan;
+		}
+
+		@Override
+		protected void compute() {
+			Map<Path, DirectoryState> snapshot = IncrementalDirectoryScanner.this.snapshot;
+			DirectoryState previous = snapshot.get(this.directory);
+			List<DirectoryScan> subtasks = new ArrayList<>();
+			try {
+				long modified = Files.getLastModifiedTime(this.directory).toMillis();
+				if (previous != null && previous.modified == modified
+						&& IncrementalDirectoryScanner.this.skipUnchangedDirectories) {
+					for (String subdirectory : previous.subdirectories) {
+						subtasks.add(new DirectoryScan(this.directory.resolve(subdirectory), this.scan));
+					}
+				}
+				else {
+					Map<String, FileState> files = new HashMap<>();
+					Set<String> subdirectories = new HashSet<>();
+					boolean changed = list(previous, files, subdirectories, subtasks);
+					if (previous != null) {
+						for (String name : previous.files.keySet()) {
+							if (!files.containsKey(name)) {
+								this.scan.deleted.add(this.directory.resolve(name).toFile());
+							}
+						}
+						for (String name : previous.subdirectories) {
+							if (!subdirectories.contains(name)) {
+								removeSubtree(this.directory.resolve(name), this.scan);
+							}
+						}
+					}
+					if (changed || previous == null || previous.modified != modified
+							|| previous.files.size() != files.size()
+							|| !previous.subdirectories.equals(subdirectories)) {
+						snapshot.put(this.directory, new DirectoryState(modified, files, subdirectories));
+						this.scan.dirty.set(true);
+					}
+				}
+			}
+			catch (NoSuchFileException e) {
+				// deleted during the scan; the parent's next scan will remove it from the snapshot
+			}
+			catch (IOException e) {
+				logger.error("Failed to scan directory: " + this.directory, e);
+			}
+			invokeAll(subtasks);
+		}
+
+		private boolean list(DirectoryState previous, Map<String, FileState> files, Set<String> subdirectories,
+				List<DirectoryScan> subtasks) throws IOException {
+
+			boolean changed = false;
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+				for (Path path : stream) {
+					BasicFileAttributes attributes;
+					try {
+						attributes = Files.readAttributes(path, BasicFileAttributes.class);
+					}
+					catch (NoSuchFileException e) {
+						continue;
+					}
+					String name = path.getFileName().toString();
+					if (attributes.isDirectory()) {
+						if (!Files.isSymbolicLink(path)) {
+							subdirectories.add(name);
+							subtasks.add(new DirectoryScan(path, this.scan));
+						}
+					}
+					else if (attributes.isRegularFile()) {
+						FileState state = new FileState(attributes.size(),
+								attributes.lastModifiedTime().toMillis());
+						files.put(name, state);
+						if (previous == null || !state.equals(previous.files.get(name))) {
+							this.scan.changed.add(path.toFile());
+							changed = true;
+						}
+					}
+				}
+			}
+			return changed;
+		}
+
+	}
+
+	private static final class DirectoryState {
+
+		private final long modified;
+
+		private final Map<String, FileState> files;
+
+		private final Set<String> subdirectories;
+
+		DirectoryState(long modified, Map<String, FileState> files, Set<String> subdirectories) {
+			this.modified = modified;
+			this.files = Collections.unmodifiableMap(files);
+			this.subdirectories = Collections.unmodifiableSet(subdirectories);
+		}
+
+	}
+
+	private static final class FileState {
+
+		private final long size;
+
+		private final long modified;
+
+		FileState(long size, long modified) {
+			this.size = size;
+			this.modified = modified;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FileState)) {
+				return false;
+			}
+			FileState other = (FileState) obj;
+			return this.size == other.size && this.modified == other.modified;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.size ^ (this.modified * 31));
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -74,6 +74,10 @@ abstract class FileWritingMessageHandlerBeanDefinitionBuilder {
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "buffer-size");
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "flush-interval");
 		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element, "flush-predicate");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "max-open-files");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "use-file-channel");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "preallocate-size");
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, "fsync-policy");
 		String remoteFileNameGenerator = element.getAttribute("filename-generator");
 		String remoteFileNameGeneratorExpression = element.getAttribute("filename-generator-expression");
 		boolean hasRemoteFileNameGenerator = StringUtils.hasText(remoteFileNameGenerator);
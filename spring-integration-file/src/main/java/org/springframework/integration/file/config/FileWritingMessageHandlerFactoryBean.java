@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,7 @@ import org.springframework.integration.file.FileNameGenerator;
 import org.springframework.integration.file.FileWritingMessageHandler;
 import org.springframework.integration.file.FileWritingMessageHandler.MessageFlushPredicate;
 import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.file.support.FsyncPolicy;
 
 /**
  * Factory bean used to create {@link FileWritingMessageHandler}s.
@@ -71,6 +72,14 @@ public class FileWritingMessageHandlerFactoryBean
 
 	private volatile MessageFlushPredicate flushPredicate;
 
+	private volatile Integer maxOpenFiles;
+
+	private volatile Boolean useFileChannel;
+
+	private volatile Long preallocateSize;
+
+	private volatile FsyncPolicy fsyncPolicy;
+
 	public void setFileExistsMode(String fileExistsModeAsString) {
 		this.fileExistsMode = FileExistsMode.getForString(fileExistsModeAsString);
 	}
@@ -131,6 +140,22 @@ public class FileWritingMessageHandlerFactoryBean
 		this.flushPredicate = flushPredicate;
 	}
 
+	public void setMaxOpenFiles(Integer maxOpenFiles) {
+		this.maxOpenFiles = maxOpenFiles;
+	}
+
+	public void setUseFileChannel(Boolean useFileChannel) {
+		this.useFileChannel = useFileChannel;
+	}
+
+	public void setPreallocateSize(Long preallocateSize) {
+		this.preallocateSize = preallocateSize;
+	}
+
+	public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+		this.fsyncPolicy = fsyncPolicy;
+	}
+
 	@Override
 	protected FileWritingMessageHandler createHandler() {
 
@@ -186,6 +211,18 @@ public class FileWritingMessageHandlerFactoryBean
 		if (this.flushPredicate != null) {
 			handler.setFlushPredicate(this.flushPredicate);
 		}
+		if (this.maxOpenFiles != null) {
+			handler.setMaxOpenFiles(this.maxOpenFiles);
+		}
+		if (this.useFileChannel != null) {
+			handler.setUseFileChannel(this.useFileChannel);
+		}
+		if (this.preallocateSize != null) {
+			handler.setPreallocateSize(this.preallocateSize);
+		}
+		if (this.fsyncPolicy != null) {
+			handler.setFsyncPolicy(this.fsyncPolicy);
+		}
 
 		return handler;
 	}
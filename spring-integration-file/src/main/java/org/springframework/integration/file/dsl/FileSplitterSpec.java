@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.file.dsl;
 
 import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
 
 import org.springframework.integration.dsl.MessageHandlerSpec;
 import org.springframework.integration.file.splitter.FileSplitter;
@@ -40,6 +41,14 @@ public class FileSplitterSpec extends MessageHandlerSpec<FileSplitterSpec, FileS
 
 	private boolean applySequence;
 
+	private boolean memoryMapped;
+
+	private FileSplitter.MappedPayloadType mappedPayloadType;
+
+	private Executor taskExecutor;
+
+	private Long chunkSize;
+
 	FileSplitterSpec() {
 		this(true);
 	}
@@ -113,12 +122,63 @@ public class FileSplitterSpec extends MessageHandlerSpec<FileSplitterSpec, FileS
 		return this;
 	}
 
+	/**
+	 * Memory-map file payloads and emit the lines as {@code byte[]}.
+	 * @return the FileSplitterSpec
+	 * @see FileSplitter#setMemoryMapped(boolean)
+	 */
+	public FileSplitterSpec memoryMapped() {
+		return memoryMapped(FileSplitter.MappedPayloadType.BYTES);
+	}
+
+	/**
+	 * Memory-map file payloads and emit the lines with the provided payload type.
+	 * @param mappedPayloadType the payload type.
+	 * @return the FileSplitterSpec
+	 * @see FileSplitter#setMemoryMapped(boolean)
+	 * @see FileSplitter#setMappedPayloadType(FileSplitter.MappedPayloadType)
+	 */
+	public FileSplitterSpec memoryMapped(FileSplitter.MappedPayloadType mappedPayloadType) {
+		this.memoryMapped = true;
+		this.mappedPayloadType = mappedPayloadType;
+		return this;
+	}
+
+	/**
+	 * Split memory-mapped files in parallel on the provided executor.
+	 * @param taskExecutor the executor.
+	 * @return the FileSplitterSpec
+	 * @see FileSplitter#setTaskExecutor(Executor)
+	 */
+	public FileSplitterSpec taskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+		return this;
+	}
+
+	/**
+	 * Set the approximate size of the chunks when splitting in parallel.
+	 * @param chunkSize the chunk size.
+	 * @return the FileSplitterSpec
+	 * @see FileSplitter#setChunkSize(long)
+	 */
+	public FileSplitterSpec chunkSize(long chunkSize) {
+		this.chunkSize = chunkSize;
+		return this;
+	}
 
 	@Override
 	protected FileSplitter doGet() {
 		FileSplitter fileSplitter = new FileSplitter(this.iterator, this.markers, this.markersJson);
 		fileSplitter.setApplySequence(this.applySequence);
 		fileSplitter.setCharset(this.charset);
+		fileSplitter.setMemoryMapped(this.memoryMapped);
+		if (this.mappedPayloadType != null) {
+			fileSplitter.setMappedPayloadType(this.mappedPayloadType);
+		}
+		fileSplitter.setTaskExecutor(this.taskExecutor);
+		if (this.chunkSize != null) {
+			fileSplitter.setChunkSize(this.chunkSize);
+		}
 		return fileSplitter;
 	}
 
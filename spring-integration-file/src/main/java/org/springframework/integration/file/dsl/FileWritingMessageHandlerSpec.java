@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,6 +30,7 @@ import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.FileNameGenerator;
 import org.springframework.integration.file.FileWritingMessageHandler;
 import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.file.support.FsyncPolicy;
 import org.springframework.messaging.Message;
 import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.Assert;
@@ -194,6 +195,57 @@ public class FileWritingMessageHandlerSpec
 		return this;
 	}
 
+	/**
+	 * Set the maximum number of files kept open when {@link FileExistsMode#APPEND_NO_FLUSH}
+	 * is being used.
+	 * @param maxOpenFiles the maximum number of open files.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see FileWritingMessageHandler#setMaxOpenFiles(int)
+	 */
+	public FileWritingMessageHandlerSpec maxOpenFiles(int maxOpenFiles) {
+		this.target.setMaxOpenFiles(maxOpenFiles);
+		return this;
+	}
+
+	/**
+	 * Set to true to write files through a {@link java.nio.channels.FileChannel}.
+	 * @param useFileChannel true to use a file channel.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see FileWritingMessageHandler#setUseFileChannel(boolean)
+	 */
+	public FileWritingMessageHandlerSpec useFileChannel(boolean useFileChannel) {
+		this.target.setUseFileChannel(useFileChannel);
+		return this;
+	}
+
+	/**
+	 * Set the number of bytes by which open files are extended ahead of the data
+	 * when using a file channel and {@link FileExistsMode#APPEND_NO_FLUSH}; a file that
+	 * is not closed normally keeps trailing zero bytes.
+	 * @param preallocateSize the size.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see FileWritingMessageHandler#setPreallocateSize(long)
+	 */
+	public FileWritingMessageHandlerSpec preallocateSize(long preallocateSize) {
+		this.target.setPreallocateSize(preallocateSize);
+		return this;
+	}
+
+	/**
+	 * Set the policy for forcing written data to the device when using a file channel.
+	 * @param fsyncPolicy the policy.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see FileWritingMessageHandler#setFsyncPolicy(FsyncPolicy)
+	 */
+	public FileWritingMessageHandlerSpec fsyncPolicy(FsyncPolicy fsyncPolicy) {
+		this.target.setFsyncPolicy(fsyncPolicy);
+		return this;
+	}
+
 	/**
 	 * Specify a {@link TaskScheduler} for flush task when the {@link FileExistsMode#APPEND_NO_FLUSH} is in use.
 	 * @param taskScheduler the {@link TaskScheduler} to use.
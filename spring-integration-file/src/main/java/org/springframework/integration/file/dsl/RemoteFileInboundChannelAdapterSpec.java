@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.file.dsl;
 import java.io.File;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import org.springframework.expression.Expression;
@@ -218,6 +219,79 @@ public abstract class RemoteFileInboundChannelAdapterSpec<F, S extends RemoteFil
 		return _this();
 	}
 
+	/**
+	 * Set the number of files transferred concurrently, each on its own session.
+	 * @param parallelism the parallelism.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractInboundFileSynchronizer#setParallelism(int)
+	 */
+	public S parallelism(int parallelism) {
+		this.synchronizer.setParallelism(parallelism);
+		return _this();
+	}
+
+	/**
+	 * Set the executor used for concurrent transfers.
+	 * @param taskExecutor the executor.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractInboundFileSynchronizer#setTaskExecutor(Executor)
+	 */
+	public S taskExecutor(Executor taskExecutor) {
+		this.synchronizer.setTaskExecutor(taskExecutor);
+		return _this();
+	}
+
+	/**
+	 * Set the maximum number of attempts to transfer each file.
+	 * @param maxTransferAttempts the maximum number of attempts.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractInboundFileSynchronizer#setMaxTransferAttempts(int)
+	 */
+	public S maxTransferAttempts(int maxTransferAttempts) {
+		this.synchronizer.setMaxTransferAttempts(maxTransferAttempts);
+		return _this();
+	}
+
+	/**
+	 * Set the time to wait before the first retry of a failed transfer.
+	 * @param transferRetryInterval the interval in milliseconds.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractInboundFileSynchronizer#setTransferRetryInterval(long)
+	 */
+	public S transferRetryInterval(long transferRetryInterval) {
+		this.synchronizer.setTransferRetryInterval(transferRetryInterval);
+		return _this();
+	}
+
+	/**
+	 * Set the number of files to keep synchronized in the local directory ahead of the
+	 * poller.
+	 * @param prefetchCount the prefetch count.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractInboundFileSynchronizingMessageSource#setPrefetchCount(int)
+	 */
+	public S prefetchCount(int prefetchCount) {
+		this.target.setPrefetchCount(prefetchCount);
+		return _this();
+	}
+
+	/**
+	 * Set the executor used to prefetch files.
+	 * @param prefetchExecutor the executor.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractInboundFileSynchronizingMessageSource#setPrefetchExecutor(Executor)
+	 */
+	public S prefetchExecutor(Executor prefetchExecutor) {
+		this.target.setPrefetchExecutor(prefetchExecutor);
+		return _this();
+	}
+
 	@Override
 	public Collection<Object> getComponentsToRegister() {
 		return Collections.singletonList(this.synchronizer);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.file.dsl;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import org.springframework.expression.Expression;
@@ -280,6 +281,28 @@ public abstract class RemoteFileOutboundGatewaySpec<F, S extends RemoteFileOutbo
 		return _this();
 	}
 
+	/**
+	 * Set the number of concurrent transfers or listings for mget, mput and recursive ls.
+	 * @param parallelism the parallelism.
+	 * @return the current Spec
+	 * @see AbstractRemoteFileOutboundGateway#setParallelism(int)
+	 */
+	public S parallelism(int parallelism) {
+		this.target.setParallelism(parallelism);
+		return _this();
+	}
+
+	/**
+	 * Set the executor used for concurrent transfers or listings.
+	 * @param taskExecutor the executor.
+	 * @return the current Spec
+	 * @see AbstractRemoteFileOutboundGateway#setTaskExecutor(Executor)
+	 */
+	public S taskExecutor(Executor taskExecutor) {
+		this.target.setTaskExecutor(taskExecutor);
+		return _this();
+	}
+
 	/**
 	 * Specify a simple pattern to match remote files (e.g. '*.txt').
 	 * @param pattern the pattern.
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 
 package org.springframework.integration.file.dsl;
 
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 
 import org.springframework.expression.Expression;
@@ -109,6 +110,55 @@ public abstract class
 		return _this();
 	}
 
+	/**
+	 * Configure the size of the chunks in which the remote files are read, each on a
+	 * session that is released after the chunk has been read.
+	 * @param chunkSize the chunk size.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractRemoteFileStreamingMessageSource#setChunkSize(int)
+	 */
+	public S chunkSize(int chunkSize) {
+		this.target.setChunkSize(chunkSize);
+		return _this();
+	}
+
+	/**
+	 * Configure the number of chunks read ahead of the consumer.
+	 * @param readAheadChunks the number of chunks.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractRemoteFileStreamingMessageSource#setReadAheadChunks(int)
+	 */
+	public S readAheadChunks(int readAheadChunks) {
+		this.target.setReadAheadChunks(readAheadChunks);
+		return _this();
+	}
+
+	/**
+	 * Configure the maximum number of attempts to read a chunk.
+	 * @param maxChunkAttempts the maximum number of attempts.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractRemoteFileStreamingMessageSource#setMaxChunkAttempts(int)
+	 */
+	public S maxChunkAttempts(int maxChunkAttempts) {
+		this.target.setMaxChunkAttempts(maxChunkAttempts);
+		return _this();
+	}
+
+	/**
+	 * Configure the executor used to read chunks ahead of the consumer.
+	 * @param readAheadExecutor the executor.
+	 * @return the spec.
+	 * @since 5.0
+	 * @see AbstractRemoteFileStreamingMessageSource#setReadAheadExecutor(Executor)
+	 */
+	public S readAheadExecutor(Executor readAheadExecutor) {
+		this.target.setReadAheadExecutor(readAheadExecutor);
+		return _this();
+	}
+
 	/**
 	 * Configure a simple pattern filter (e.g. '*.txt').
 	 * @param pattern the pattern.
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.filters;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An accept-once filter that keeps, for each accepted file, a 64-bit hash of its name
+ * and its modified time in a compact open-addressing table of primitive {@code long}s,
+ * rather than the file objects (or keys and values in a metadata store). A file is
+ * accepted if its name is not in the table, or if its modified time has changed. This
+ * makes repeated scans of directories containing hundreds of thousands of files cheap,
+ * both in time and memory (16 bytes per entry plus load factor).
+ * <p>
+ * If an {@link #AbstractHashedAcceptOnceFileListFilter(File) index file} is provided,
+ * the table is loaded from it when the filter is created, and written to it on
+ * {@link #flush()} and {@link #close()} (and after each scan that accepts files, if
+ * {@link #setFlushOnUpdate(boolean) flushOnUpdate} is true), so the state survives
+ * application restarts. Unlike the {@link AbstractPersistentAcceptOnceFileListFilter},
+ * the state cannot be shared by several application instances.
+ * <p>
+ * Since only the hashes of the names are kept, there is a very small probability
+ * (about 3 in 10<sup>8</sup> with a million files) that two different names collide,
+ * in which case a new file might be wrongly rejected if it has the same modified time
+ * as the other one.
+ * <p>
+ * This implementation is thread safe.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public abstract class AbstractHashedAcceptOnceFileListFilter<F> extends AbstractFileListFilter<F>
+		implements ReversibleFileListFilter<F>, ResettableFileListFilter<F>, Flushable, Closeable {
+
+	private static final long INDEX_MAGIC = 0x5349484153484931L;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final Object monitor = new Object();
+
+	private final File indexFile;
+
+	private long[] hashes;
+
+	private long[] modifiedTimes;
+
+	private int size;
+
+	private boolean dirty;
+
+	private volatile boolean flushOnUpdate;
+
+	/**
+	 * Construct an instance that keeps its state in memory only.
+	 */
+	public AbstractHashedAcceptOnceFileListFilter() {
+		this(null);
+	}
+
+	/**
+	 * Construct an instance that keeps its state in the provided file; if the file
+	 * exists, it is loaded.
+	 * @param indexFile the index file.
+	 */
+	public AbstractHashedAcceptOnceFileListFilter(File indexFile) {
+		this.indexFile = indexFile;
+		allocate(INITIAL_CAPACITY);
+		if (indexFile != null && indexFile.exists()) {
+			try {
+				load(indexFile);
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("Failed to load the index from " + indexFile, e);
+			}
+		}
+	}
+
+	/**
+	 * Determine whether the index file should be written after each scan that accepts
+	 * files. Default false; the index is only written on {@link #flush()} and
+	 * {@link #close()}.
+	 * @param flushOnUpdate true to flush.
+	 */
+	public void setFlushOnUpdate(boolean flushOnUpdate) {
+		this.flushOnUpdate = flushOnUpdate;
+	}
+
+	/**
+	 * @return the number of files in the filter.
+	 */
+	public int size() {
+		synchronized (this.monitor) {
+			return this.size;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>The whole list is filtered while holding the filter's lock.
+	 */
+	@Override
+	public List<F> filterFiles(F[] files) {
+		List<F> accepted = new ArrayList<F>();
+		if (files != null) {
+			synchronized (this.monitor) {
+				for (F file : files) {
+					if (doAccept(file)) {
+						accepted.add(file);
+					}
+				}
+				if (!accepted.isEmpty() && this.flushOnUpdate) {
+					flushQuietly();
+				}
+			}
+		}
+		return accepted;
+	}
+
+	@Override
+	protected boolean accept(F file) {
+		synchronized (this.monitor) {
+			if (doAccept(file)) {
+				if (this.flushOnUpdate) {
+					flushQuietly();
+				}
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private boolean doAccept(F file) {
+		long hash = hash(fileName(file));
+		long modified = modified(file);
+		int slot = slot(hash);
+		if (this.hashes[slot] == hash) {
+			if (this.modifiedTimes[slot] == modified) {
+				return false;
+			}
+		}
+		else {
+			if ((this.size + 1) * 4L > this.hashes.length * 3L) {
+				allocate(this.hashes.length * 2);
+				slot = slot(hash);
+			}
+			this.hashes[slot] = hash;
+			this.size++;
+		}
+		this.modifiedTimes[slot] = modified;
+		this.dirty = true;
+		return true;
+	}
+
+	@Override
+	public void rollback(F file, List<F> files) {
+		synchronized (this.monitor) {
+			boolean rollingBack = false;
+			for (F fileToRollback : files) {
+				if (fileToRollback.equals(file)) {
+					rollingBack = true;
+				}
+				if (rollingBack) {
+					remove(fileToRollback);
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean remove(F fileToRemove) {
+		long hash = hash(fileName(fileToRemove));
+		synchronized (this.monitor) {
+			int slot = slot(hash);
+			if (this.hashes[slot] != hash) {
+				return false;
+			}
+			delete(slot);
+			this.dirty = true;
+			return true;
+		}
+	}
+
+	/**
+	 * Write the index to the index file, if any, and if it has changed since it was
+	 * last written.
+	 * @throws IOException an IO exception.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.indexFile != null) {
+			synchronized (this.monitor) {
+				if (this.dirty) {
+					save(this.indexFile);
+					this.dirty = false;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		}
+		catch (IOException e) {
+			this.logger.error("Failed to write the index to " + this.indexFile, e);
+		}
+	}
+
+	/**
+	 * Return the slot containing the hash or, if absent, the empty slot where it
+	 * belongs.
+	 */
+	private int slot(long hash) {
+		int mask = this.hashes.length - 1;
+		int slot = home(hash, mask);
+		while (this.hashes[slot] != 0 && this.hashes[slot] != hash) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Empty the slot, moving back the entries of the following cluster that would no
+	 * longer be found (linear probing deletion without tombstones).
+	 */
+	private void delete(int slot) {
+		int mask = this.hashes.length - 1;
+		int empty = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			long hash = this.hashes[next];
+			if (hash == 0) {
+				break;
+			}
+			int home = home(hash, mask);
+			boolean reachable = empty <= next
+					? empty < home && home <= next
+					: empty < home || home <= next;
+			if (!reachable) {
+				this.hashes[empty] = hash;
+				this.modifiedTimes[empty] = this.modifiedTimes[next];
+				empty = next;
+			}
+		}
+		this.hashes[empty] = 0;
+		this.modifiedTimes[empty] = 0;
+		this.size--;
+	}
+
+	private void allocate(int capacity) {
+		long[] oldHashes = this.hashes;
+		long[] oldModifiedTimes = this.modifiedTimes;
+		this.hashes = new long[capacity];
+		this.modifiedTimes = new long[capacity];
+		if (oldHashes != null) {
+			for (int i = 0; i < oldHashes.length; i++) {
+				if (oldHashes[i] != 0) {
+					int slot = slot(oldHashes[i]);
+					this.hashes[slot] = oldHashes[i];
+					this.modifiedTimes[slot] = oldModifiedTimes[i];
+				}
+			}
+		}
+	}
+
+	private void load(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			readFully(channel, buffer, 12);
+			if (buffer.getLong() != INDEX_MAGIC) {
+				throw new IOException("Not an index file");
+			}
+			int count = buffer.getInt();
+			int capacity = INITIAL_CAPACITY;
+			while (count * 4L > capacity * 3L) {
+				capacity *= 2;
+			}
+			allocate(capacity);
+			for (int i = 0; i < count; i++) {
+				if (buffer.remaining() < 16) {
+					buffer.compact();
+					readFully(channel, buffer, 16);
+				}
+				long hash = buffer.getLong();
+				int slot = slot(hash);
+				if (this.hashes[slot] == 0) {
+					this.size++;
+				}
+				this.hashes[slot] = hash;
+				this.modifiedTimes[slot] = buffer.getLong();
+			}
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+		while (buffer.position() < length) {
+			if (channel.read(buffer) < 0) {
+				throw new IOException("Truncated index file");
+			}
+		}
+		buffer.flip();
+	}
+
+	private void save(File file) throws IOException {
+		File temp = new File(file.getAbsolutePath() + ".writing");
+		try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			buffer.putLong(INDEX_MAGIC).putInt(this.size);
+			for (int i = 0; i < this.hashes.length; i++) {
+				if (this.hashes[i] != 0) {
+					if (buffer.remaining() < 16) {
+						writeFully(channel, buffer);
+					}
+					buffer.putLong(this.hashes[i]).putLong(this.modifiedTimes[i]);
+				}
+			}
+			writeFully(channel, buffer);
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static int home(long hash, int mask) {
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of the name (one step per {@code char}), with a final avalanche
+	 * step; never 0, which marks an empty slot.
+	 */
+	private static long hash(String name) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash == 0 ? 1 : hash;
+	}
+
+	/**
+	 * Return the modified time of the file.
+	 * @param file the file.
+	 * @return the modified time.
+	 */
+	protected abstract long modified(F file);
+
+	/**
+	 * Return the name of the file; the full path when files from several directories can
+	 * be passed to the filter.
+	 * @param file the file.
+	 * @return the name.
+	 */
+	protected abstract String fileName(F file);
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2013-2016 the original author or authors.
+ * Copyright 2013-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.file.filters;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.integration.metadata.ConcurrentMetadataStore;
@@ -69,18 +70,35 @@ public abstract class AbstractPersistentAcceptOnceFileListFilter<F> extends Abst
 		this.flushOnUpdate = flushOnUpdate;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>The whole list is filtered while holding the filter's lock and, if
+	 * {@link #setFlushOnUpdate(boolean) flushOnUpdate} is true, the store is flushed once
+	 * after the list has been filtered, rather than after each accepted file.
+	 * @since 5.0
+	 */
+	@Override
+	public List<F> filterFiles(F[] files) {
+		List<F> accepted = new ArrayList<F>();
+		if (files != null) {
+			synchronized (this.monitor) {
+				for (F file : files) {
+					if (doAccept(file)) {
+						accepted.add(file);
+					}
+				}
+				if (!accepted.isEmpty()) {
+					flushIfNeeded();
+				}
+			}
+		}
+		return accepted;
+	}
+
 	@Override
 	protected boolean accept(F file) {
-		String key = buildKey(file);
 		synchronized (this.monitor) {
-			String newValue = value(file);
-			String oldValue = this.store.putIfAbsent(key, newValue);
-			if (oldValue == null) { // not in store
-				flushIfNeeded();
-				return true;
-			}
-			// same value in store
-			if (!isEqual(file, oldValue) && this.store.replace(key, oldValue, newValue)) {
+			if (doAccept(file)) {
 				flushIfNeeded();
 				return true;
 			}
@@ -88,6 +106,17 @@ public abstract class AbstractPersistentAcceptOnceFileListFilter<F> extends Abst
 		}
 	}
 
+	private boolean doAccept(F file) {
+		String key = buildKey(file);
+		String newValue = value(file);
+		String oldValue = this.store.putIfAbsent(key, newValue);
+		if (oldValue == null) { // not in store
+			return true;
+		}
+		// same value in store
+		return !isEqual(file, oldValue) && this.store.replace(key, oldValue, newValue);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @since 4.0.4
@@ -96,14 +125,18 @@ public abstract class AbstractPersistentAcceptOnceFileListFilter<F> extends Abst
 	public void rollback(F file, List<F> files) {
 		// If file must be removed all subsequent files should be removed as well
 		boolean rollingBack = false;
+		boolean removed = false;
 		for (F fileToRollback : files) {
 			if (fileToRollback.equals(file)) {
 				rollingBack = true;
 			}
 			if (rollingBack) {
-				remove(fileToRollback);
+				removed |= this.store.remove(buildKey(fileToRollback)) != null;
 			}
 		}
+		if (removed) {
+			flushIfNeeded();
+		}
 	}
 
 	@Override
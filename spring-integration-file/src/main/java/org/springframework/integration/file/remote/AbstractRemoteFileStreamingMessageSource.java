@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,10 +26,12 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.expression.Expression;
 import org.springframework.expression.common.LiteralExpression;
 import org.springframework.integration.IntegrationMessageHeaderAccessor;
@@ -70,6 +72,14 @@ public abstract class AbstractRemoteFileStreamingMessageSource<F>
 	 */
 	private volatile FileListFilter<F> filter;
 
+	private volatile int chunkSize;
+
+	private volatile int readAheadChunks;
+
+	private volatile int maxChunkAttempts = 3;
+
+	private volatile Executor readAheadExecutor;
+
 	protected AbstractRemoteFileStreamingMessageSource(RemoteFileTemplate<F> template,
 			Comparator<AbstractFileInfo<F>> comparator) {
 		this.remoteFileTemplate = template;
@@ -112,6 +122,65 @@ public abstract class AbstractRemoteFileStreamingMessageSource<F>
 		this.filter = filter;
 	}
 
+	/**
+	 * Set the size of the chunks in which the remote files are read. When greater than
+	 * 0, the payload is an {@link InputStream} that reads each chunk with a ranged read
+	 * (for example {@code REST} with FTP, an offset with SFTP) on a session that is
+	 * released as soon as the chunk has been read, instead of holding a session until the
+	 * stream is closed; the stream itself is the
+	 * {@link IntegrationMessageHeaderAccessor#CLOSEABLE_RESOURCE closeable resource}.
+	 * Use a {@link org.springframework.integration.file.remote.session.CachingSessionFactory}
+	 * to bound the number of sessions. Since the transfer of a chunk is aborted before
+	 * the end of the file, the state of the session is then unknown (for example, the
+	 * FTP control connection), so the session is discarded rather than returned to the
+	 * cache; use a chunk size large enough for the cost of establishing a new session.
+	 * Default 0 (the file is read with a single session).
+	 * @param chunkSize the chunk size.
+	 * @since 5.0
+	 */
+	public void setChunkSize(int chunkSize) {
+		Assert.isTrue(chunkSize >= 0, "'chunkSize' cannot be negative");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Set the number of chunks read ahead of the consumer, on the
+	 * {@link #setReadAheadExecutor(Executor) read ahead executor}, when a
+	 * {@link #setChunkSize(int) chunk size} is set. Default 0 (chunks are read when the
+	 * consumer needs them).
+	 * @param readAheadChunks the number of chunks.
+	 * @since 5.0
+	 */
+	public void setReadAheadChunks(int readAheadChunks) {
+		Assert.isTrue(readAheadChunks >= 0, "'readAheadChunks' cannot be negative");
+		this.readAheadChunks = readAheadChunks;
+	}
+
+	/**
+	 * Set the maximum number of attempts to read a chunk, when a
+	 * {@link #setChunkSize(int) chunk size} is set; after a failure, the session is
+	 * discarded and the transfer resumes from the start of the chunk on a new session.
+	 * Default 3.
+	 * @param maxChunkAttempts the maximum number of attempts.
+	 * @since 5.0
+	 */
+	public void setMaxChunkAttempts(int maxChunkAttempts) {
+		Assert.isTrue(maxChunkAttempts > 0, "'maxChunkAttempts' must be greater than 0");
+		this.maxChunkAttempts = maxChunkAttempts;
+	}
+
+	/**
+	 * Set the executor used to read chunks ahead of the consumer. Default
+	 * {@link SimpleAsyncTaskExecutor}.
+	 * @param readAheadExecutor the executor.
+	 * @since 5.0
+	 * @see #setReadAheadChunks(int)
+	 */
+	public void setReadAheadExecutor(Executor readAheadExecutor) {
+		Assert.notNull(readAheadExecutor, "'readAheadExecutor' cannot be null");
+		this.readAheadExecutor = readAheadExecutor;
+	}
+
 	protected RemoteFileTemplate<F> getRemoteFileTemplate() {
 		return this.remoteFileTemplate;
 	}
@@ -119,6 +188,9 @@ public abstract class AbstractRemoteFileStreamingMessageSource<F>
 	@Override
 	public final void afterPropertiesSet() {
 		Assert.state(this.remoteDirectoryExpression != null, "'remoteDirectoryExpression' must not be null");
+		if (this.chunkSize > 0 && this.readAheadChunks > 0 && this.readAheadExecutor == null) {
+			this.readAheadExecutor = new SimpleAsyncTaskExecutor("remoteFileReadAhead-");
+		}
 		doInit();
 	}
 
@@ -134,6 +206,15 @@ public abstract class AbstractRemoteFileStreamingMessageSource<F>
 		AbstractFileInfo<F> file = poll();
 		if (file != null) {
 			String remotePath = remotePath(file);
+			if (this.chunkSize > 0) {
+				InputStream stream = new ChunkedRemoteFileInputStream<>(this.remoteFileTemplate, remotePath,
+						this.chunkSize, this.maxChunkAttempts, this.readAheadChunks, this.readAheadExecutor);
+				return getMessageBuilderFactory().withPayload(stream)
+						.setHeader(IntegrationMessageHeaderAccessor.CLOSEABLE_RESOURCE, stream)
+						.setHeader(FileHeaders.REMOTE_DIRECTORY, file.getRemoteDirectory())
+						.setHeader(FileHeaders.REMOTE_FILE, file.getFilename())
+						.build();
+			}
 			Session<?> session = this.remoteFileTemplate.getSession();
 			try {
 				return getMessageBuilderFactory().withPayload(session.readRaw(remotePath))
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
+import org.springframework.integration.file.remote.session.Session;
+
+/**
+ * An {@link InputStream} that reads a remote file in chunks, each chunk being read
+ * with a ranged read ({@link Session#readRaw(String, long)}) on a session obtained from
+ * the template and released as soon as the chunk has been read, so that no session is
+ * held while the stream is consumed.
+ * <p>
+ * If a chunk cannot be read, the session is discarded and the chunk is read again, on
+ * a new session, from the same offset. A session on which the transfer stopped before
+ * the end of the file, or could not be finalized, is discarded rather than returned to
+ * the cache. If read-ahead is enabled, chunks are read on the executor into a bounded
+ * buffer, ahead of the consumer.
+ *
+ * @param <F> the file type.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+class ChunkedRemoteFileInputStream<F> extends InputStream {
+
+	private static final Log logger = LogFactory.getLog(ChunkedRemoteFileInputStream.class);
+
+	private final RemoteFileTemplate<F> template;
+
+	private final String remotePath;
+
+	private final int chunkSize;
+
+	private final int maxAttempts;
+
+	private final BlockingQueue<Object> readAhead;
+
+	private volatile boolean closed;
+
+	private long offset;
+
+	private byte[] chunk;
+
+	private int position;
+
+	private boolean last;
+
+	ChunkedRemoteFileInputStream(RemoteFileTemplate<F> template, String remotePath, int chunkSize,
+			int maxAttempts, int readAheadChunks, Executor executor) {
+
+		this.template = template;
+		this.remotePath = remotePath;
+		this.chunkSize = chunkSize;
+		this.maxAttempts = maxAttempts;
+		if (readAheadChunks > 0) {
+			this.readAhead = new LinkedBlockingQueue<>(readAheadChunks);
+			executor.execute(this::readChunksAhead);
+		}
+		else {
+			this.readAhead = null;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill()) {
+			return -1;
+		}
+		return this.chunk[this.position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		int count = Math.min(len, this.chunk.length - this.position);
+		System.arraycopy(this.chunk, this.position, bytes, off, count);
+		this.position += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return this.chunk == null ? 0 : this.chunk.length - this.position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.closed = true;
+		if (this.readAhead != null) {
+			// unblock the reader, if it is waiting for space
+			this.readAhead.clear();
+		}
+	}
+
+	/**
+	 * Make sure the current chunk has bytes to read.
+	 * @return false at the end of the file.
+	 */
+	private boolean fill() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream closed");
+		}
+		while (this.chunk == null || this.position >= this.chunk.length) {
+			if (this.last) {
+				return false;
+			}
+			this.chunk = this.readAhead != null ? takeChunk() : readChunk(this.offset);
+			this.offset += this.chunk.length;
+			this.position = 0;
+			this.last = this.chunk.length < this.chunkSize;
+		}
+		return true;
+	}
+
+	private byte[] takeChunk() throws IOException {
+		Object next;
+		try {
+			next = this.readAhead.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + this.remotePath);
+		}
+		if (next instanceof IOException) {
+			throw (IOException) next;
+		}
+		return (byte[]) next;
+	}
+
+	private void readChunksAhead() {
+		long offset = 0;
+		try {
+			while (!this.closed) {
+				byte[] chunk = readChunk(offset);
+				offset += chunk.length;
+				if (!put(chunk) || chunk.length < this.chunkSize) {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			put(e);
+		}
+	}
+
+	private boolean put(Object item) {
+		try {
+			while (!this.closed) {
+				if (this.readAhead.offer(item, 100, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Read the chunk starting at the offset, resuming from the offset on a new session
+	 * after a failure.
+	 */
+	private byte[] readChunk(long offset) throws IOException {
+		int attempt = 0;
+		while (true) {
+			try {
+				return this.template.execute(session -> readChunk(session, offset));
+			}
+			catch (RuntimeException e) {
+				if (++attempt >= this.maxAttempts || this.closed) {
+					throw new IOException("Failed to read " + this.remotePath + " at offset " + offset, e);
+				}
+				if (logger.isWarnEnabled()) {
+					logger.warn("Failed to read " + this.remotePath + " at offset " + offset + "; resuming", e);
+				}
+			}
+		}
+	}
+
+	private byte[] readChunk(Session<F> session, long offset) throws IOException {
+		byte[] buffer = new byte[this.chunkSize];
+		int length = 0;
+		boolean complete = false;
+		InputStream inputStream = session.readRaw(this.remotePath, offset);
+		try {
+			int count;
+			while (length < buffer.length && (count = inputStream.read(buffer, length, buffer.length - length)) >= 0) {
+				length += count;
+			}
+			complete = length < buffer.length || inputStream.read() < 0;
+		}
+		finally {
+			inputStream.close();
+			try {
+				complete &= session.finalizeRaw();
+			}
+			catch (IOException e) {
+				complete = false;
+				if (logger.isDebugEnabled()) {
+					logger.debug("finalizeRaw failed after reading " + this.remotePath + " at offset " + offset, e);
+				}
+			}
+			if (!complete) {
+				discard(session);
+			}
+		}
+		if (length < buffer.length) {
+			byte[] shortChunk = new byte[length];
+			System.arraycopy(buffer, 0, shortChunk, 0, length);
+			return shortChunk;
+		}
+		return buffer;
+	}
+
+	/**
+	 * The transfer was aborted before the end of the file, or could not be completed, so
+	 * the state of the session is unknown; make sure it is closed rather than reused.
+	 */
+	@SuppressWarnings("rawtypes")
+	private void discard(Session<F> session) {
+		if (session instanceof CachingSessionFactory<?>.CachedSession) {
+			((CachingSessionFactory.CachedSession) session).dirty();
+		}
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,9 +28,22 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.common.LiteralExpression;
@@ -42,6 +55,7 @@ import org.springframework.integration.file.filters.FileListFilter;
 import org.springframework.integration.file.remote.AbstractFileInfo;
 import org.springframework.integration.file.remote.MessageSessionCallback;
 import org.springframework.integration.file.remote.RemoteFileTemplate;
+import org.springframework.integration.file.remote.SessionCallback;
 import org.springframework.integration.file.remote.session.Session;
 import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.file.support.FileExistsMode;
@@ -232,6 +246,10 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 
 	private volatile Integer chmod;
 
+	private volatile int parallelism = 1;
+
+	private volatile Executor taskExecutor;
+
 	/**
 	 * Construct an instance using the provided session factory and callback for
 	 * performing operations on the session.
@@ -482,6 +500,35 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		return false;
 	}
 
+	/**
+	 * Set the number of concurrent transfers (mget, mput) or directory listings
+	 * (recursive ls and mget). When greater than 1, the work is distributed across
+	 * this number of sessions; use a
+	 * {@link org.springframework.integration.file.remote.session.CachingSessionFactory}
+	 * with a session cache size of at least this value. The reply is the same as with
+	 * sequential operations (results in the order of the listing). Default 1.
+	 * @param parallelism the parallelism.
+	 * @since 5.0
+	 * @see #setTaskExecutor(Executor)
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "'parallelism' must be greater than 0");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Set the executor used for concurrent operations when the
+	 * {@link #setParallelism(int) parallelism} is greater than 1; one operation runs on
+	 * the calling thread, the others on this executor. Default
+	 * {@link SimpleAsyncTaskExecutor}.
+	 * @param taskExecutor the executor.
+	 * @since 5.0
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		Assert.notNull(taskExecutor, "'taskExecutor' cannot be null");
+		this.taskExecutor = taskExecutor;
+	}
+
 	@Override
 	protected void doInit() {
 		Assert.state(this.command != null || this.messageSessionCallback != null,
@@ -678,6 +725,9 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		if (!file.isDirectory()) {
 			return this.doPut(requestMessage);
 		}
+		else if (this.parallelism > 1) {
+			return putLocalDirectoryInParallel(requestMessage, file);
+		}
 		else {
 			return putLocalDirectory(requestMessage, file, null);
 		}
@@ -728,6 +778,93 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		return replies;
 	}
 
+	/**
+	 * Send the files of the directory (and subdirectories, if recursive) concurrently;
+	 * the first file of each directory is sent before the others, so the remote
+	 * directories are created only once.
+	 */
+	private List<String> putLocalDirectoryInParallel(Message<?> requestMessage, File directory) {
+		Map<File, String> filesToPut = new LinkedHashMap<>();
+		collectFilesToPut(directory, null, filesToPut);
+		List<File> files = new ArrayList<>(filesToPut.keySet());
+		String[] paths = new String[files.size()];
+		long start = System.currentTimeMillis();
+		AtomicInteger next = new AtomicInteger();
+		Set<String> createdDirectories = new HashSet<>();
+		List<Integer> deferred = new ArrayList<>();
+		Callable<Void> task = () -> {
+			int index;
+			while ((index = next.getAndIncrement()) < deferred.size()) {
+				int i = deferred.get(index);
+				try {
+					paths[i] = putFile(requestMessage, files.get(i), filesToPut.get(files.get(i)));
+				}
+				catch (RuntimeException e) {
+					next.set(deferred.size());
+					throw e;
+				}
+			}
+			return null;
+		};
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				if (createdDirectories.add(String.valueOf(filesToPut.get(files.get(i))))) {
+					paths[i] = putFile(requestMessage, files.get(i), filesToPut.get(files.get(i)));
+				}
+				else {
+					deferred.add(i);
+				}
+			}
+			runInParallel(Math.min(this.parallelism, deferred.size()), task, task);
+		}
+		catch (Exception e) {
+			List<String> replies = nonNull(paths);
+			if (replies.size() > 0) {
+				throw new PartialSuccessException(requestMessage, "Partially successful 'mput' operation", e, replies,
+						files);
+			}
+			else if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			else {
+				throw new MessageHandlingException(requestMessage, "Failed to process 'mput'", e);
+			}
+		}
+		if (logger.isDebugEnabled()) {
+			List<File> transferred = new ArrayList<>();
+			for (int i = 0; i < paths.length; i++) {
+				if (paths[i] != null) {
+					transferred.add(files.get(i));
+				}
+			}
+			logTransferRate("mput", transferred, start);
+		}
+		return nonNull(paths);
+	}
+
+	private void collectFilesToPut(File directory, String subDirectory, Map<File, String> filesToPut) {
+		for (File file : this.filterMputFiles(directory.listFiles())) {
+			if (!file.isDirectory()) {
+				filesToPut.put(file, subDirectory);
+			}
+			else if (this.options.contains(Option.RECURSIVE)) {
+				collectFilesToPut(file, (StringUtils.hasText(subDirectory) ?
+						subDirectory + this.remoteFileTemplate.getRemoteFileSeparator() : "")
+						+ file.getName(), filesToPut);
+			}
+		}
+	}
+
+	private String putFile(Message<?> requestMessage, File file, String subDirectory) {
+		String path = this.doPut(this.getMessageBuilderFactory().withPayload(file)
+				.copyHeaders(requestMessage.getHeaders())
+				.build(), subDirectory);
+		if (path == null && logger.isDebugEnabled()) { //NOSONAR - false positive
+			logger.debug("File " + file.getAbsolutePath() + " removed before transfer; ignoring");
+		}
+		return path;
+	}
+
 	protected List<?> ls(Session<F> session, String dir) throws IOException {
 		List<F> lsFiles = listFilesInRemoteDir(session, dir, "");
 		if (!this.options.contains(Option.LINKS)) {
@@ -759,13 +896,91 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 	}
 
 	private List<F> listFilesInRemoteDir(Session<F> session, String directory, String subDirectory) throws IOException {
-		List<F> lsFiles = new ArrayList<F>();
-		String remoteDirectory = buildRemotePath(directory, subDirectory);
+		if (this.parallelism > 1 && this.options.contains(Option.RECURSIVE)) {
+			Map<String, Collection<F>> listings = listRemoteDirsInParallel(session, directory, subDirectory);
+			return assembleListing(listings::get, subDirectory);
+		}
+		return assembleListing(sub -> listFilteredFiles(session, directory, sub), subDirectory);
+	}
+
+	private Collection<F> listFilteredFiles(Session<F> session, String directory, String subDirectory)
+			throws IOException {
+
+		F[] files = session.list(buildRemotePath(directory, subDirectory));
+		if (ObjectUtils.isEmpty(files)) {
+			return null;
+		}
+		return this.filterFiles(files);
+	}
+
+	/**
+	 * List the directory tree breadth-first, each directory being listed by the first
+	 * available of {@code parallelism} sessions.
+	 * @return the filtered files of each directory, by subdirectory.
+	 */
+	private Map<String, Collection<F>> listRemoteDirsInParallel(Session<F> session, String directory,
+			String subDirectory) throws IOException {
+
+		Map<String, Collection<F>> listings = new ConcurrentHashMap<>();
+		BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+		AtomicInteger pending = new AtomicInteger(1);
+		AtomicBoolean failed = new AtomicBoolean();
+		queue.add(subDirectory);
+		SessionCallback<F, Void> callback = s -> {
+			while (pending.get() > 0 && !failed.get()) {
+				String sub;
+				try {
+					sub = queue.poll(10, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					failed.set(true);
+					throw new MessagingException("Interrupted while listing " + directory, e);
+				}
+				if (sub != null) {
+					try {
+						Collection<F> files = listFilteredFiles(s, directory, sub);
+						if (files != null) {
+							listings.put(sub, files);
+							for (F file : files) {
+								String fileName = getFilename(file);
+								if (file != null && isDirectory(file) && !".".equals(fileName)
+										&& !"..".equals(fileName)) {
+									pending.incrementAndGet();
+									queue.add(sub + fileName + this.remoteFileTemplate.getRemoteFileSeparator());
+								}
+							}
+						}
+					}
+					catch (IOException | RuntimeException e) {
+						failed.set(true);
+						throw e;
+					}
+					finally {
+						pending.decrementAndGet();
+					}
+				}
+			}
+			return null;
+		};
+		try {
+			runInParallel(this.parallelism, () -> callback.doInSession(session),
+					() -> this.remoteFileTemplate.execute(callback));
+		}
+		catch (IOException | RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new MessagingException("Failed to list " + directory, e);
+		}
+		return listings;
+	}
 
-		F[] files = session.list(remoteDirectory);
+	private List<F> assembleListing(DirectoryLister<F> lister, String subDirectory) throws IOException {
+		List<F> lsFiles = new ArrayList<F>();
 		boolean recursion = this.options.contains(Option.RECURSIVE);
-		if (!ObjectUtils.isEmpty(files)) {
-			Collection<F> filteredFiles = this.filterFiles(files);
+		Collection<F> filteredFiles = lister.list(subDirectory);
+		if (filteredFiles != null) {
 			for (F file : filteredFiles) {
 				String fileName = this.getFilename(file);
 				if (file != null) {
@@ -778,7 +993,7 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 						}
 					}
 					if (recursion && this.isDirectory(file) && !(".".equals(fileName)) && !("..".equals(fileName))) {
-						lsFiles.addAll(listFilesInRemoteDir(session, directory, subDirectory + fileName
+						lsFiles.addAll(assembleListing(lister, subDirectory + fileName
 								+ this.remoteFileTemplate.getRemoteFileSeparator()));
 					}
 				}
@@ -940,6 +1155,9 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 					+ (remoteDirectory != null ? remoteDirectory : "Client Working Directory")
 					+ " with pattern " + remoteFilename);
 		}
+		if (this.parallelism > 1) {
+			return mGetInParallel(message, session, remoteDirectory, remoteFiles);
+		}
 		try {
 			for (AbstractFileInfo<F> lsEntry : remoteFiles) {
 				if (lsEntry.isDirectory()) {
@@ -986,6 +1204,9 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 					+ (remoteDirectory != null ? remoteDirectory : "Client Working Directory")
 					+ " with pattern " + remoteFilename);
 		}
+		if (this.parallelism > 1) {
+			return mGetInParallel(message, session, remoteDirectory, fileNames);
+		}
 		try {
 			for (AbstractFileInfo<F> lsEntry : fileNames) {
 				String fullFileName = remoteDirectory != null
@@ -1022,6 +1243,137 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		return files;
 	}
 
+	/**
+	 * Get the files on up to {@code parallelism} sessions (including the current one);
+	 * the results are in the order of the listing, regardless of completion order.
+	 */
+	private List<File> mGetInParallel(Message<?> message, Session<F> session, String remoteDirectory,
+			List<AbstractFileInfo<F>> remoteFiles) throws IOException {
+
+		File[] results = new File[remoteFiles.size()];
+		AtomicInteger next = new AtomicInteger();
+		long start = System.currentTimeMillis();
+		SessionCallback<F, Void> callback = s -> {
+			int i;
+			while ((i = next.getAndIncrement()) < remoteFiles.size()) {
+				AbstractFileInfo<F> lsEntry = remoteFiles.get(i);
+				if (lsEntry.isDirectory()) {
+					continue;
+				}
+				String fullFileName = remoteDirectory != null
+						? remoteDirectory + getFilename(lsEntry)
+						: getFilename(lsEntry);
+				String fileName = getRemoteFilename(fullFileName);
+				String actualRemoteDirectory = getRemoteDirectory(fullFileName, fileName);
+				try {
+					results[i] = get(message, s, actualRemoteDirectory, fullFileName, fileName, false);
+				}
+				catch (IOException | RuntimeException e) {
+					next.set(remoteFiles.size());
+					throw e;
+				}
+			}
+			return null;
+		};
+		try {
+			runInParallel(Math.min(this.parallelism, remoteFiles.size()), () -> callback.doInSession(session),
+					() -> this.remoteFileTemplate.execute(callback));
+		}
+		catch (Exception e) {
+			List<File> files = nonNull(results);
+			if (files.size() > 0) {
+				throw new PartialSuccessException(message,
+						"Partially successful 'mget' operation on "
+								+ (remoteDirectory != null ? remoteDirectory : "Client Working Directory"),
+						e, files, remoteFiles);
+			}
+			else if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			else if (e instanceof IOException) {
+				throw (IOException) e;
+			}
+			else {
+				throw new MessagingException("Failed to process MGET", e);
+			}
+		}
+		List<File> files = nonNull(results);
+		logTransferRate("mget", files, start);
+		return files;
+	}
+
+	/**
+	 * Run the caller task on the calling thread and {@code workers - 1} worker tasks
+	 * on the task executor; wait for all of them to complete and rethrow the first
+	 * exception, if any.
+	 */
+	private void runInParallel(int workers, Callable<?> callerTask, Callable<?> workerTask) throws Exception {
+		List<FutureTask<?>> futures = new ArrayList<>();
+		Executor executor = this.taskExecutor;
+		if (workers > 1 && executor == null) {
+			executor = new SimpleAsyncTaskExecutor((getComponentName() != null ? getComponentName() : "remoteFile") + "-");
+			this.taskExecutor = executor;
+		}
+		for (int i = 1; i < workers; i++) {
+			FutureTask<?> future = new FutureTask<>(workerTask);
+			executor.execute(future);
+			futures.add(future);
+		}
+		Exception failure = null;
+		if (workers > 0) {
+			try {
+				callerTask.call();
+			}
+			catch (Exception e) {
+				failure = e;
+			}
+		}
+		for (FutureTask<?> future : futures) {
+			try {
+				future.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (FutureTask<?> toCancel : futures) {
+					toCancel.cancel(true);
+				}
+				throw e;
+			}
+			catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof Exception
+							? (Exception) e.getCause()
+							: new MessagingException("Remote file operation failed", e.getCause());
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static <T> List<T> nonNull(T[] results) {
+		List<T> list = new ArrayList<>(results.length);
+		for (T result : results) {
+			if (result != null) {
+				list.add(result);
+			}
+		}
+		return list;
+	}
+
+	private void logTransferRate(String operation, List<File> files, long start) {
+		if (logger.isDebugEnabled()) {
+			long elapsed = Math.max(System.currentTimeMillis() - start, 1);
+			long bytes = 0;
+			for (File file : files) {
+				bytes += file.length();
+			}
+			logger.debug(operation + " transferred " + files.size() + " files (" + bytes + " bytes) in " + elapsed
+					+ " ms with " + this.parallelism + " sessions; " + (bytes * 1000 / elapsed / 1024) + " KB/s");
+		}
+	}
+
 	private String getRemoteDirectory(String remoteFilePath, String remoteFilename) {
 		String remoteDir = remoteFilePath.substring(0, remoteFilePath.lastIndexOf(remoteFilename));
 		if (remoteDir.length() == 0) {
@@ -1054,7 +1406,8 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 		String localDirPath = this.localDirectoryExpression.getValue(evaluationContext, message, String.class);
 		File localDir = new File(localDirPath);
 		if (!localDir.exists()) {
-			Assert.isTrue(localDir.mkdirs(), "Failed to make local directory: " + localDir);
+			// another transfer may create it concurrently
+			Assert.isTrue(localDir.mkdirs() || localDir.isDirectory(), "Failed to make local directory: " + localDir);
 		}
 		return localDir;
 	}
@@ -1082,4 +1435,11 @@ public abstract class AbstractRemoteFileOutboundGateway<F> extends AbstractReply
 
 	abstract protected F enhanceNameWithSubDirectory(F file, String directory);
 
+	@FunctionalInterface
+	private interface DirectoryLister<F> {
+
+		Collection<F> list(String subDirectory) throws IOException;
+
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -268,6 +268,11 @@ public class CachingSessionFactory<F> implements SessionFactory<F>, DisposableBe
 			return this.targetSession.readRaw(source);
 		}
 
+		@Override
+		public InputStream readRaw(String source, long offset) throws IOException {
+			return this.targetSession.readRaw(source, offset);
+		}
+
 		@Override
 		public boolean finalizeRaw() throws IOException {
 			return this.targetSession.finalizeRaw();
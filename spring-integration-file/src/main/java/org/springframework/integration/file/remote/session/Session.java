@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -87,6 +87,34 @@ public interface Session<F> extends Closeable {
 	 */
 	InputStream readRaw(String source) throws IOException;
 
+	/**
+	 * Retrieve a remote file as a raw {@link InputStream}, starting at the offset. The
+	 * default implementation skips the first {@code offset} bytes of the stream returned
+	 * by {@link #readRaw(String)}; implementations should override it if the protocol
+	 * supports ranged reads. {@link #finalizeRaw()} must be invoked after closing the
+	 * stream, which may be closed before the end of the file.
+	 * @param source The path of the remote file.
+	 * @param offset The offset of the first byte to read.
+	 * @return The raw inputStream.
+	 * @throws IOException Any IOException.
+	 * @since 5.0
+	 */
+	default InputStream readRaw(String source, long offset) throws IOException {
+		InputStream inputStream = readRaw(source);
+		long remaining = offset;
+		while (remaining > 0) {
+			long skipped = inputStream.skip(remaining);
+			if (skipped <= 0) {
+				if (inputStream.read() < 0) {
+					break;
+				}
+				skipped = 1;
+			}
+			remaining -= skipped;
+		}
+		return inputStream;
+	}
+
 	/**
 	 * Invoke after closing the InputStream from {@link #readRaw(String)}.
 	 * Required by some session providers.
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -25,6 +25,16 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -33,6 +43,7 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.common.LiteralExpression;
@@ -101,6 +112,16 @@ public abstract class AbstractInboundFileSynchronizer<F>
 	 */
 	private volatile boolean  preserveTimestamp;
 
+	private volatile int parallelism = 1;
+
+	private volatile int maxTransferAttempts = 1;
+
+	private volatile long transferRetryInterval = 1000;
+
+	private volatile Executor taskExecutor;
+
+	private final AtomicLong transferredCount = new AtomicLong();
+
 	private BeanFactory beanFactory;
 
 	/**
@@ -185,6 +206,60 @@ public abstract class AbstractInboundFileSynchronizer<F>
 		this.preserveTimestamp = preserveTimestamp;
 	}
 
+	/**
+	 * Set the number of files transferred concurrently. Each concurrent transfer uses
+	 * its own session, so the session factory should be a
+	 * {@link org.springframework.integration.file.remote.session.CachingSessionFactory}
+	 * with a session cache size of at least this value. Default 1.
+	 * @param parallelism the parallelism.
+	 * @since 5.0
+	 * @see #setTaskExecutor(Executor)
+	 */
+	public void setParallelism(int parallelism) {
+		Assert.isTrue(parallelism > 0, "'parallelism' must be greater than 0");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Set the maximum number of consecutive failed attempts of a transfer (including
+	 * failures to obtain a session); a failed transfer is retried with a new session,
+	 * after the {@link #setTransferRetryInterval(long) retry interval}. When the last
+	 * attempt fails, the synchronization stops and the files that have not been
+	 * transferred are rolled back from the filter, if it is a
+	 * {@link ReversibleFileListFilter}. Default 1.
+	 * @param maxTransferAttempts the maximum number of attempts.
+	 * @since 5.0
+	 */
+	public void setMaxTransferAttempts(int maxTransferAttempts) {
+		Assert.isTrue(maxTransferAttempts > 0, "'maxTransferAttempts' must be greater than 0");
+		this.maxTransferAttempts = maxTransferAttempts;
+	}
+
+	/**
+	 * Set the time to wait before the first retry of a failed transfer, in
+	 * milliseconds; the time is doubled for each consecutive failure. Default 1000.
+	 * @param transferRetryInterval the interval.
+	 * @since 5.0
+	 * @see #setMaxTransferAttempts(int)
+	 */
+	public void setTransferRetryInterval(long transferRetryInterval) {
+		Assert.isTrue(transferRetryInterval >= 0, "'transferRetryInterval' cannot be negative");
+		this.transferRetryInterval = transferRetryInterval;
+	}
+
+	/**
+	 * Set the executor used for concurrent transfers, when the
+	 * {@link #setParallelism(int) parallelism} is greater than 1; one transfer runs on
+	 * the calling thread, the others on this executor. Default
+	 * {@link SimpleAsyncTaskExecutor}.
+	 * @param taskExecutor the executor.
+	 * @since 5.0
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		Assert.notNull(taskExecutor, "'taskExecutor' cannot be null");
+		this.taskExecutor = taskExecutor;
+	}
+
 	@Override
 	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
 		this.beanFactory = beanFactory;
@@ -226,6 +301,15 @@ public abstract class AbstractInboundFileSynchronizer<F>
 		synchronizeToLocalDirectory(localDirectory, Integer.MIN_VALUE);
 	}
 
+	/**
+	 * Return the number of files transferred to the local directory since this
+	 * synchronizer was created.
+	 * @return the count.
+	 */
+	long getTransferredCount() {
+		return this.transferredCount.get();
+	}
+
 	@Override
 	public void synchronizeToLocalDirectory(final File localDirectory, final int maxFetchSize) {
 		if (maxFetchSize == 0) {
@@ -236,48 +320,197 @@ public abstract class AbstractInboundFileSynchronizer<F>
 		}
 		final String remoteDirectory = this.remoteDirectoryExpression.getValue(this.evaluationContext, String.class);
 		try {
-			int transferred = this.remoteFileTemplate.execute(session -> {
-				F[] files = session.list(remoteDirectory);
-				if (!ObjectUtils.isEmpty(files)) {
-					List<F> filteredFiles = filterFiles(files);
-					if (maxFetchSize >= 0 && filteredFiles.size() > maxFetchSize) {
-						rollbackFromFileToListEnd(filteredFiles, filteredFiles.get(maxFetchSize));
-						List<F> newList = new ArrayList<>(maxFetchSize);
-						for (int i = 0; i < maxFetchSize; i++) {
-							newList.add(filteredFiles.get(i));
+			int transferred;
+			if (this.parallelism > 1 || this.maxTransferAttempts > 1) {
+				transferred = transferConcurrently(remoteDirectory, localDirectory, maxFetchSize);
+			}
+			else {
+				transferred = transferSequentially(remoteDirectory, localDirectory, maxFetchSize);
+			}
+			if (this.logger.isDebugEnabled()) {
+				this.logger.debug(transferred + " files transferred");
+			}
+		}
+		catch (Exception e) {
+			throw new MessagingException("Problem occurred while synchronizing remote to local directory", e);
+		}
+	}
+
+	private List<F> listFiles(Session<F> session, String remoteDirectory, int maxFetchSize) throws IOException {
+		F[] files = session.list(remoteDirectory);
+		if (ObjectUtils.isEmpty(files)) {
+			return null;
+		}
+		List<F> filteredFiles = filterFiles(files);
+		if (maxFetchSize >= 0 && filteredFiles.size() > maxFetchSize) {
+			rollbackFromFileToListEnd(filteredFiles, filteredFiles.get(maxFetchSize));
+			List<F> newList = new ArrayList<>(maxFetchSize);
+			for (int i = 0; i < maxFetchSize; i++) {
+				newList.add(filteredFiles.get(i));
+			}
+			filteredFiles = newList;
+		}
+		return filteredFiles;
+	}
+
+	private int transferSequentially(String remoteDirectory, File localDirectory, int maxFetchSize) {
+		return this.remoteFileTemplate.execute(session -> {
+			List<F> filteredFiles = listFiles(session, remoteDirectory, maxFetchSize);
+			if (filteredFiles != null) {
+				for (F file : filteredFiles) {
+					try {
+						if (file != null) {
+							copyFileToLocalDirectory(
+									remoteDirectory, file, localDirectory,
+									session);
+							this.transferredCount.incrementAndGet();
 						}
-						filteredFiles = newList;
 					}
-					for (F file : filteredFiles) {
-						try {
-							if (file != null) {
-								copyFileToLocalDirectory(
-										remoteDirectory, file, localDirectory,
-										session);
-							}
-						}
-						catch (RuntimeException e1) {
-							rollbackFromFileToListEnd(filteredFiles, file);
-							throw e1;
-						}
-						catch (IOException e2) {
-							rollbackFromFileToListEnd(filteredFiles, file);
-							throw e2;
-						}
+					catch (RuntimeException e1) {
+						rollbackFromFileToListEnd(filteredFiles, file);
+						throw e1;
+					}
+					catch (IOException e2) {
+						rollbackFromFileToListEnd(filteredFiles, file);
+						throw e2;
 					}
-					return filteredFiles.size();
 				}
-				else {
-					return 0;
+				return filteredFiles.size();
+			}
+			else {
+				return 0;
+			}
+		});
+	}
+
+	/**
+	 * List the files on one session, then transfer them on up to {@code parallelism}
+	 * sessions, retrying failed transfers on new sessions.
+	 */
+	private int transferConcurrently(String remoteDirectory, File localDirectory, int maxFetchSize) {
+		List<F> filteredFiles =
+				this.remoteFileTemplate.execute(session -> listFiles(session, remoteDirectory, maxFetchSize));
+		if (filteredFiles == null || filteredFiles.isEmpty()) {
+			return 0;
+		}
+		Queue<F> queue = new ConcurrentLinkedQueue<>();
+		for (F file : filteredFiles) {
+			if (file != null) {
+				queue.add(file);
+			}
+		}
+		Set<F> transferred = ConcurrentHashMap.newKeySet();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		int workers = Math.min(this.parallelism, queue.size());
+		List<FutureTask<Void>> tasks = new ArrayList<>(workers - 1);
+		if (workers > 1) {
+			Executor executor = this.taskExecutor;
+			if (executor == null) {
+				executor = new SimpleAsyncTaskExecutor("remoteFileSync-");
+				this.taskExecutor = executor;
+			}
+			for (int i = 1; i < workers; i++) {
+				FutureTask<Void> task = new FutureTask<>(() ->
+						transferFiles(remoteDirectory, localDirectory, queue, transferred, failure), null);
+				executor.execute(task);
+				tasks.add(task);
+			}
+		}
+		transferFiles(remoteDirectory, localDirectory, queue, transferred, failure);
+		for (FutureTask<Void> task : tasks) {
+			try {
+				task.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failure.compareAndSet(null, new MessagingException("Interrupted while waiting for transfers", e));
+			}
+			catch (ExecutionException e) {
+				failure.compareAndSet(null, new MessagingException("Transfer failed", e.getCause()));
+			}
+		}
+		RuntimeException exception = failure.get();
+		if (exception != null) {
+			List<F> notTransferred = new ArrayList<>();
+			for (F file : filteredFiles) {
+				if (file != null && !transferred.contains(file)) {
+					notTransferred.add(file);
 				}
-			});
-			if (this.logger.isDebugEnabled()) {
-				this.logger.debug(transferred + " files transferred");
 			}
+			if (!notTransferred.isEmpty()) {
+				rollbackFromFileToListEnd(notTransferred, notTransferred.get(0));
+			}
+			throw exception;
 		}
-		catch (Exception e) {
-			throw new MessagingException("Problem occurred while synchronizing remote to local directory", e);
+		return filteredFiles.size();
+	}
+
+	/**
+	 * Transfer files from the queue on one session until the queue is empty or a
+	 * transfer has failed for good; when a transfer (or obtaining the session) fails,
+	 * the session is discarded and the file is retried on a new session, after a
+	 * backoff, until {@code maxTransferAttempts} consecutive attempts have failed.
+	 */
+	private void transferFiles(String remoteDirectory, File localDirectory, Queue<F> queue, Set<F> transferred,
+			AtomicReference<RuntimeException> failure) {
+
+		F retry = null;
+		int attempts = 0;
+		while (failure.get() == null) {
+			final F first = retry;
+			final AtomicReference<F> current = new AtomicReference<>(first);
+			final AtomicBoolean progress = new AtomicBoolean();
+			try {
+				this.remoteFileTemplate.execute(session -> {
+					F file = first != null ? first : queue.poll();
+					while (file != null && failure.get() == null) {
+						current.set(file);
+						copyFileToLocalDirectory(remoteDirectory, file, localDirectory, session);
+						transferred.add(file);
+						this.transferredCount.incrementAndGet();
+						progress.set(true);
+						file = queue.poll();
+					}
+					return null;
+				});
+				return;
+			}
+			catch (RuntimeException e) {
+				attempts = progress.get() ? 1 : attempts + 1;
+				if (attempts >= this.maxTransferAttempts) {
+					failure.compareAndSet(null, e);
+					return;
+				}
+				F file = current.get();
+				if (this.logger.isWarnEnabled()) {
+					this.logger.warn("Transfer attempt " + attempts + " of "
+							+ (file != null ? getFilename(file) : "a file") + " failed; retrying", e);
+				}
+				retry = file;
+				if (!backOff(attempts)) {
+					failure.compareAndSet(null, new MessagingException("Interrupted while waiting to retry", e));
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait before the next attempt.
+	 * @return false if interrupted.
+	 */
+	private boolean backOff(int attempts) {
+		long interval = this.transferRetryInterval << Math.min(attempts - 1, 16);
+		if (interval > 0) {
+			try {
+				Thread.sleep(interval);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
 		}
+		return true;
 	}
 
 	protected void rollbackFromFileToListEnd(List<F> filteredFiles, F file) {
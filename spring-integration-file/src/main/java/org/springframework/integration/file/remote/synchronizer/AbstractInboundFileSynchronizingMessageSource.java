@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,10 +21,14 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.context.Lifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.integration.endpoint.AbstractFetchLimitingMessageSource;
 import org.springframework.integration.file.FileReadingMessageSource;
 import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
@@ -84,6 +88,18 @@ public abstract class AbstractInboundFileSynchronizingMessageSource<F>
 
 	private volatile FileListFilter<File> localFileListFilter = new AcceptOnceFileListFilter<File>();
 
+	private volatile int prefetchCount;
+
+	private volatile Executor prefetchExecutor;
+
+	/**
+	 * The number of messages emitted, compared with the number of files transferred by
+	 * the synchronizer to determine how many files remain to be emitted.
+	 */
+	private final AtomicLong received = new AtomicLong();
+
+	private final AtomicBoolean prefetching = new AtomicBoolean();
+
 
 	public AbstractInboundFileSynchronizingMessageSource(AbstractInboundFileSynchronizer<F> synchronizer) {
 		this(synchronizer, null);
@@ -125,6 +141,33 @@ public abstract class AbstractInboundFileSynchronizingMessageSource<F>
 		this.localFileListFilter = localFileListFilter;
 	}
 
+	/**
+	 * Set the number of files to keep synchronized in the local directory ahead of the
+	 * poller. When greater than 0, each time a message is emitted and fewer than this
+	 * number of synchronized files remain to be emitted, a synchronization of the
+	 * missing number of files (limited by the max fetch size) is started on the
+	 * {@link #setPrefetchExecutor(Executor) prefetch executor}, so that the remote
+	 * transfers overlap with the processing of the messages. Default 0 (files are only
+	 * synchronized on the polling thread, when the local directory has no more files).
+	 * @param prefetchCount the prefetch count.
+	 * @since 5.0
+	 */
+	public void setPrefetchCount(int prefetchCount) {
+		Assert.isTrue(prefetchCount >= 0, "'prefetchCount' cannot be negative");
+		this.prefetchCount = prefetchCount;
+	}
+
+	/**
+	 * Set the executor used to prefetch files. Default {@link SimpleAsyncTaskExecutor}.
+	 * @param prefetchExecutor the executor.
+	 * @since 5.0
+	 * @see #setPrefetchCount(int)
+	 */
+	public void setPrefetchExecutor(Executor prefetchExecutor) {
+		Assert.notNull(prefetchExecutor, "'prefetchExecutor' cannot be null");
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		super.afterPropertiesSet();
@@ -148,6 +191,9 @@ public abstract class AbstractInboundFileSynchronizingMessageSource<F>
 			}
 			this.fileSource.afterPropertiesSet();
 			this.synchronizer.afterPropertiesSet();
+			if (this.prefetchCount > 0 && this.prefetchExecutor == null) {
+				this.prefetchExecutor = new SimpleAsyncTaskExecutor("remoteFilePrefetch-");
+			}
 		}
 		catch (RuntimeException e) {
 			throw e;
@@ -184,18 +230,61 @@ public abstract class AbstractInboundFileSynchronizingMessageSource<F>
 	 * If the result is null, it attempts to sync up with the remote directory to populate the file source.
 	 * At most, maxFetchSize files will be fetched.
 	 * Then, it polls the file source again and returns the result, whether or not it is null.
+	 * If a {@link #setPrefetchCount(int) prefetch count} is set, the local directory is
+	 * replenished in the background after a message is emitted; while a background
+	 * synchronization is in progress, the poll returns null if the local directory has
+	 * no more files.
 	 * @param maxFetchSize the maximum files to fetch.
 	 */
 	@Override
 	public final Message<File> doReceive(int maxFetchSize) {
 		Message<File> message = this.fileSource.receive();
 		if (message == null) {
+			if (this.prefetching.get()) {
+				return null;
+			}
+			// files rejected by the local filter are never emitted
+			this.received.set(this.synchronizer.getTransferredCount());
 			this.synchronizer.synchronizeToLocalDirectory(this.localDirectory, maxFetchSize);
 			message = this.fileSource.receive();
 		}
+		if (message != null) {
+			this.received.incrementAndGet();
+			if (this.prefetchCount > 0) {
+				prefetch(maxFetchSize);
+			}
+		}
 		return message;
 	}
 
+	private void prefetch(int maxFetchSize) {
+		long outstanding = this.synchronizer.getTransferredCount() - this.received.get();
+		int missing = (int) Math.max(this.prefetchCount - outstanding, 0);
+		if (maxFetchSize >= 0) {
+			missing = Math.min(missing, maxFetchSize);
+		}
+		if (missing > 0 && this.prefetching.compareAndSet(false, true)) {
+			final int fetchSize = missing;
+			try {
+				this.prefetchExecutor.execute(() -> {
+					try {
+						this.synchronizer.synchronizeToLocalDirectory(this.localDirectory, fetchSize);
+					}
+					catch (RuntimeException e) {
+						logger.error("Failed to prefetch remote files", e);
+					}
+					finally {
+						this.prefetching.set(false);
+					}
+				});
+			}
+			catch (RuntimeException e) {
+				this.prefetching.set(false);
+				logger.error("Failed to start prefetching remote files", e);
+			}
+		}
+	}
+
 	private FileListFilter<File> buildFilter() {
 		Pattern completePattern = Pattern.compile("^.*(?<!" + this.synchronizer.getTemporaryFileSuffix() + ")$");
 		return new CompositeFileListFilter<File>(Arrays.asList(
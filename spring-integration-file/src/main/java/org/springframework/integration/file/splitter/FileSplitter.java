@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 the original author or authors.
+ * Copyright 2015-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,16 +27,29 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.integration.IntegrationMessageHeaderAccessor;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.splitter.FileSplitter.FileMarker.Mark;
+import org.springframework.integration.handler.ReplyRequiredException;
 import org.springframework.integration.splitter.AbstractMessageSplitter;
 import org.springframework.integration.support.AbstractIntegrationMessageBuilder;
 import org.springframework.integration.support.json.JsonObjectMapper;
@@ -58,6 +71,15 @@ import org.springframework.util.StringUtils;
  *  Can accept {@link String} as file path, {@link File}, {@link Reader} or {@link InputStream}
  *  as payload type.
  *  All other types are ignored and returned to the {@link AbstractMessageSplitter} as is.
+ * <p>
+ * When {@link #setMemoryMapped(boolean) memoryMapped} is true, {@link File} (and file path)
+ * payloads are memory-mapped and scanned for line delimiters on the raw bytes, without
+ * decoding the file through a {@link Reader}; the lines are emitted as {@code byte[]},
+ * read-only {@link ByteBuffer} slices of the mapped file, or {@link String}s, depending
+ * on the {@link #setMappedPayloadType(MappedPayloadType) mappedPayloadType}. If a
+ * {@link #setTaskExecutor(Executor) taskExecutor} is also provided, the file is divided
+ * into {@link #setChunkSize(long) chunks} aligned to line boundaries, which are split,
+ * and their lines sent, in parallel.
  *
  * @author Artem Bilan
  * @author Gary Russell
@@ -76,6 +98,16 @@ public class FileSplitter extends AbstractMessageSplitter {
 
 	private Charset charset;
 
+	private boolean memoryMapped;
+
+	private MappedPayloadType mappedPayloadType = MappedPayloadType.BYTES;
+
+	private int mappedRegionSize = Integer.MAX_VALUE;
+
+	private Executor taskExecutor;
+
+	private long chunkSize = 32 * 1024 * 1024;
+
 	/**
 	 * Construct a splitter where the {@link #splitMessage(Message)} method returns
 	 * an iterator and the file is read line-by-line during iteration.
@@ -143,15 +175,121 @@ public class FileSplitter extends AbstractMessageSplitter {
 		this.charset = charset;
 	}
 
+	/**
+	 * Set to true to memory-map {@link File} (and file path) payloads and scan the raw
+	 * bytes for line delimiters ({@code \n} or {@code \r\n}), instead of reading the
+	 * file through a {@link Reader}. The file's {@link #setCharset(Charset) charset}
+	 * (the platform default if not set) must be ASCII compatible, encoding the delimiters
+	 * as single bytes (e.g. UTF-8, ISO-8859-1), which rules out UTF-16; otherwise an
+	 * {@link IllegalStateException} is thrown. Other payload types are read as usual.
+	 * @param memoryMapped true to memory-map files.
+	 * @since 5.0
+	 * @see #setMappedPayloadType(MappedPayloadType)
+	 */
+	public void setMemoryMapped(boolean memoryMapped) {
+		this.memoryMapped = memoryMapped;
+	}
+
+	/**
+	 * Set the type of the line payloads when {@link #setMemoryMapped(boolean) memoryMapped}
+	 * is true. Default {@link MappedPayloadType#BYTES}.
+	 * @param mappedPayloadType the payload type.
+	 * @since 5.0
+	 */
+	public void setMappedPayloadType(MappedPayloadType mappedPayloadType) {
+		Assert.notNull(mappedPayloadType, "'mappedPayloadType' cannot be null");
+		this.mappedPayloadType = mappedPayloadType;
+	}
+
+	/**
+	 * Set the maximum size of the regions in which a file is mapped when
+	 * {@link #setMemoryMapped(boolean) memoryMapped} is true; lines cannot be longer than
+	 * this. Default {@link Integer#MAX_VALUE}.
+	 * @param mappedRegionSize the region size.
+	 * @since 5.0
+	 */
+	public void setMappedRegionSize(int mappedRegionSize) {
+		Assert.isTrue(mappedRegionSize > 0, "'mappedRegionSize' must be greater than 0");
+		this.mappedRegionSize = mappedRegionSize;
+	}
+
+	/**
+	 * Set an executor on which to split files in parallel when
+	 * {@link #setMemoryMapped(boolean) memoryMapped} is true. The file is divided into
+	 * {@link #setChunkSize(long) chunks} aligned to line boundaries; each chunk is split,
+	 * and its lines sent to the output channel, on an executor thread, so the lines of
+	 * different chunks are interleaved. When {@link #setApplySequence(boolean)
+	 * applySequence} is true, the lines of each chunk are counted first, so that each
+	 * line carries its position in the file as the {@code sequenceNumber}, and the
+	 * {@code sequenceSize} is the number of lines (plus the markers, if enabled); a
+	 * downstream resequencer can then restore the order, or an aggregator detect that
+	 * all lines have been processed. When it is false, the counting pass is skipped.
+	 * The calling thread waits until the whole file has been split; the
+	 * {@code iterator} constructor argument does not apply.
+	 * <p>
+	 * Since the calling thread blocks until the chunks have been processed, the executor
+	 * must not be a bounded executor that also runs the splitter itself (for example
+	 * the executor of an {@code ExecutorChannel} feeding it): if all its threads are
+	 * blocked in the splitter, the chunk tasks never run and the flow deadlocks. Use a
+	 * dedicated executor.
+	 * @param taskExecutor the executor.
+	 * @since 5.0
+	 */
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	/**
+	 * Set the size of the chunks when splitting in parallel; the chunk boundaries are
+	 * moved forward to the start of the next line. Default 32Mb.
+	 * @param chunkSize the chunk size.
+	 * @since 5.0
+	 * @see #setTaskExecutor(Executor)
+	 */
+	public void setChunkSize(long chunkSize) {
+		Assert.isTrue(chunkSize > 0, "'chunkSize' must be greater than 0");
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	protected void doInit() {
+		if (this.memoryMapped) {
+			assertAsciiCompatible();
+		}
+	}
+
+	@Override
+	protected boolean isAsync() {
+		// when splitting in parallel, the lines are sent by the executor threads and no result is returned
+		return super.isAsync() || (this.memoryMapped && this.taskExecutor != null);
+	}
+
 	@Override
 	protected Object splitMessage(final Message<?> message) {
 		Object payload = message.getPayload();
 
 		Reader reader = null;
 
+		LineReader lineReader = null;
+
 		final String filePath;
 
-		if (payload instanceof String) {
+		if (this.memoryMapped && (payload instanceof String || payload instanceof File)) {
+			assertAsciiCompatible();
+			File file = payload instanceof String ? new File((String) payload) : (File) payload;
+			filePath = payload instanceof String ? (String) payload : file.getAbsolutePath();
+			if (this.taskExecutor != null) {
+				return splitInParallel(message, file, filePath);
+			}
+			try {
+				FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				lineReader = new MappedLineReader(channel, 0, channel.size(), message);
+			}
+			catch (IOException e) {
+				throw new MessageHandlingException(message, "failed to read file [" + payload + "]", e);
+			}
+		}
+		else if (payload instanceof String) {
 			try {
 				reader = new FileReader((String) payload);
 				filePath = (String) payload;
@@ -191,22 +329,36 @@ public class FileSplitter extends AbstractMessageSplitter {
 			return message;
 		}
 
-		final BufferedReader bufferedReader = new BufferedReader(reader) {
+		if (lineReader == null) {
+			final BufferedReader bufferedReader = new BufferedReader(reader) {
 
-			@Override
-			public void close() throws IOException {
-				try {
-					super.close();
-				}
-				finally {
-					Closeable closeableResource = new IntegrationMessageHeaderAccessor(message).getCloseableResource();
-					if (closeableResource != null) {
-						closeableResource.close();
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					}
+					finally {
+						closeResource(message);
 					}
 				}
-			}
 
-		};
+			};
+			lineReader = new LineReader() {
+
+				@Override
+				public Object readLine() throws IOException {
+					return bufferedReader.readLine();
+				}
+
+				@Override
+				public void close() throws IOException {
+					bufferedReader.close();
+				}
+
+			};
+		}
+
+		final LineReader lineSource = lineReader;
 
 		Iterator<Object> iterator = new Iterator<Object>() {
 
@@ -218,7 +370,7 @@ public class FileSplitter extends AbstractMessageSplitter {
 
 			boolean done;
 
-			String line;
+			Object line;
 
 			long lineCount;
 
@@ -229,7 +381,7 @@ public class FileSplitter extends AbstractMessageSplitter {
 				this.hasNextCalled = true;
 				try {
 					if (this.line == null && !this.done) {
-						this.line = bufferedReader.readLine();
+						this.line = lineSource.readLine();
 					}
 					boolean ready = !this.done && this.line != null;
 					if (!ready) {
@@ -239,13 +391,13 @@ public class FileSplitter extends AbstractMessageSplitter {
 								this.done = true;
 							}
 						}
-						bufferedReader.close();
+						lineSource.close();
 					}
 					return this.sof || ready || this.eof;
 				}
 				catch (IOException e) {
 					try {
-						bufferedReader.close();
+						lineSource.close();
 						this.done = true;
 					}
 					catch (IOException e1) {
@@ -263,16 +415,16 @@ public class FileSplitter extends AbstractMessageSplitter {
 				this.hasNextCalled = false;
 				if (this.sof) {
 					this.sof = false;
-					return markerToReturn(new FileMarker(filePath, Mark.START, 0));
+					return markerBuilder(new FileMarker(filePath, Mark.START, 0), message);
 				}
 				if (this.eof) {
 					this.eof = false;
 					this.markers = false;
 					this.done = true;
-					return markerToReturn(new FileMarker(filePath, Mark.END, this.lineCount));
+					return markerBuilder(new FileMarker(filePath, Mark.END, this.lineCount), message);
 				}
 				if (this.line != null) {
-					String line = this.line;
+					Object line = this.line;
 					this.line = null;
 					this.lineCount++;
 					return line;
@@ -283,23 +435,6 @@ public class FileSplitter extends AbstractMessageSplitter {
 				}
 			}
 
-			private AbstractIntegrationMessageBuilder<Object> markerToReturn(FileMarker fileMarker) {
-				Object payload;
-				if (FileSplitter.this.markersJson) {
-					try {
-						payload = objectMapper.toJson(fileMarker);
-					}
-					catch (Exception e) {
-						throw new MessageHandlingException(message, "Failed to convert marker to JSON", e);
-					}
-				}
-				else {
-					payload = fileMarker;
-				}
-				return getMessageBuilderFactory().withPayload(payload)
-						.setHeader(FileHeaders.MARKER, fileMarker.mark.name());
-			}
-
 		};
 
 		if (this.iterator) {
@@ -314,6 +449,212 @@ public class FileSplitter extends AbstractMessageSplitter {
 		}
 	}
 
+	private AbstractIntegrationMessageBuilder<Object> markerBuilder(FileMarker fileMarker, Message<?> message) {
+		Object payload;
+		if (this.markersJson) {
+			try {
+				payload = objectMapper.toJson(fileMarker);
+			}
+			catch (Exception e) {
+				throw new MessageHandlingException(message, "Failed to convert marker to JSON", e);
+			}
+		}
+		else {
+			payload = fileMarker;
+		}
+		return getMessageBuilderFactory().withPayload(payload)
+				.setHeader(FileHeaders.MARKER, fileMarker.mark.name());
+	}
+
+	/**
+	 * The raw bytes are scanned for {@code \r} and {@code \n}, which is only valid when
+	 * the charset encodes them as the equivalent ASCII bytes.
+	 */
+	private void assertAsciiCompatible() {
+		Charset charset = this.charset != null ? this.charset : Charset.defaultCharset();
+		Assert.state(Arrays.equals("\r\n".getBytes(charset), new byte[] { '\r', '\n' }),
+				"'memoryMapped' requires an ASCII compatible charset (e.g. UTF-8, ISO-8859-1), not " + charset);
+	}
+
+	private Object splitInParallel(Message<?> message, File file, String filePath) {
+		Map<String, Object> headers = new HashMap<>(message.getHeaders());
+		addHeaders(message, headers);
+		Object correlationId = message.getHeaders().getId();
+		boolean applySequence = isApplySequence();
+		int markerCount = this.markers ? 1 : 0;
+		AtomicBoolean failed = new AtomicBoolean();
+		long lineCount = 0;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			List<Long> boundaries = chunkBoundaries(channel);
+			int chunks = boundaries.size() - 1;
+			long[] firstSequence = new long[chunks];
+			int sequenceSize = 0;
+			if (applySequence) {
+				List<FutureTask<Long>> counts = new ArrayList<>(chunks);
+				for (int i = 0; i < chunks; i++) {
+					long start = boundaries.get(i);
+					long end = boundaries.get(i + 1);
+					counts.add(execute(() -> countLines(channel, start, end)));
+				}
+				long total = 0;
+				List<Long> chunkCounts = awaitAll(counts, failed, message);
+				for (int i = 0; i < chunks; i++) {
+					firstSequence[i] = total + markerCount + 1;
+					total += chunkCounts.get(i);
+				}
+				if (total + 2 * markerCount > Integer.MAX_VALUE) {
+					throw new MessageHandlingException(message, "Too many lines to apply sequence details");
+				}
+				sequenceSize = (int) (total + 2 * markerCount);
+			}
+			if (this.markers) {
+				sendMarker(new FileMarker(filePath, Mark.START, 0), message, headers, correlationId, 1,
+						sequenceSize);
+			}
+			List<FutureTask<Long>> sends = new ArrayList<>(chunks);
+			for (int i = 0; i < chunks; i++) {
+				ChunkSender sender = new ChunkSender(new MappedLineReader(channel, boundaries.get(i),
+						boundaries.get(i + 1), null), message, headers, correlationId, firstSequence[i],
+						sequenceSize, failed);
+				sends.add(execute(sender));
+			}
+			for (Long count : awaitAll(sends, failed, message)) {
+				lineCount += count;
+			}
+			if (this.markers) {
+				sendMarker(new FileMarker(filePath, Mark.END, lineCount), message, headers, correlationId,
+						sequenceSize, sequenceSize);
+			}
+		}
+		catch (IOException e) {
+			throw new MessageHandlingException(message, "failed to read file [" + message.getPayload() + "]", e);
+		}
+		finally {
+			try {
+				closeResource(message);
+			}
+			catch (IOException e) {
+				// ignored
+			}
+		}
+		if (lineCount == 0 && !this.markers && getRequiresReply()) {
+			throw new ReplyRequiredException(message, "No reply produced by handler '" +
+					getComponentName() + "', and its 'requiresReply' property is set to true.");
+		}
+		return null;
+	}
+
+	private FutureTask<Long> execute(Callable<Long> callable) {
+		FutureTask<Long> task = new FutureTask<>(callable);
+		this.taskExecutor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Wait for all the tasks; if any fails, the others are told to stop and the first
+	 * failure is thrown when they have all finished.
+	 */
+	private List<Long> awaitAll(List<FutureTask<Long>> tasks, AtomicBoolean failed, Message<?> message) {
+		List<Long> results = new ArrayList<>(tasks.size());
+		Throwable failure = null;
+		for (FutureTask<Long> task : tasks) {
+			try {
+				results.add(task.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed.set(true);
+				failure = failure == null ? e : failure;
+			}
+			catch (ExecutionException e) {
+				failed.set(true);
+				failure = failure == null ? e.getCause() : failure;
+			}
+		}
+		if (failure instanceof MessageHandlingException) {
+			throw (MessageHandlingException) failure;
+		}
+		else if (failure != null) {
+			throw new MessageHandlingException(message, "Failed to split file in parallel", failure);
+		}
+		return results;
+	}
+
+	private void sendMarker(FileMarker fileMarker, Message<?> message, Map<String, Object> headers,
+			Object correlationId, int sequenceNumber, int sequenceSize) {
+		AbstractIntegrationMessageBuilder<?> builder = markerBuilder(fileMarker, message);
+		builder.copyHeadersIfAbsent(headers);
+		if (isApplySequence()) {
+			builder.pushSequenceDetails(correlationId, sequenceNumber, sequenceSize);
+		}
+		produceOutput(Collections.singletonList(builder).iterator(), message);
+	}
+
+	/**
+	 * Divide the file into chunks of about {@link #setChunkSize(long) chunkSize} bytes,
+	 * each ending after a line delimiter (except the last).
+	 * @return the boundaries, including 0 and the file size.
+	 */
+	private List<Long> chunkBoundaries(FileChannel channel) throws IOException {
+		long size = channel.size();
+		List<Long> boundaries = new ArrayList<>();
+		boundaries.add(0L);
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long nominal = this.chunkSize;
+		while (nominal < size) {
+			long boundary = nextLineStart(channel, nominal - 1, size, buffer);
+			if (boundary >= size) {
+				break;
+			}
+			boundaries.add(boundary);
+			nominal = boundary + this.chunkSize;
+		}
+		boundaries.add(size);
+		return boundaries;
+	}
+
+	private static long nextLineStart(FileChannel channel, long from, long size, ByteBuffer buffer)
+			throws IOException {
+		long position = from;
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Count the lines in a chunk: the delimiters plus, at the end of the file, a last
+	 * line without a delimiter.
+	 */
+	private long countLines(FileChannel channel, long start, long end) throws IOException {
+		long count = 0;
+		long position = start;
+		byte last = '\n';
+		while (position < end) {
+			long length = Math.min(end - position, this.mappedRegionSize);
+			ByteBuffer region = channel.map(MapMode.READ_ONLY, position, length);
+			int limit = region.limit();
+			for (int i = 0; i < limit; i++) {
+				if (region.get(i) == '\n') {
+					count++;
+				}
+			}
+			last = region.get(limit - 1);
+			position += length;
+		}
+		return last == '\n' ? count : count + 1;
+	}
+
 	@Override
 	protected boolean willAddHeaders(Message<?> message) {
 		Object payload = message.getPayload();
@@ -339,6 +680,13 @@ public class FileSplitter extends AbstractMessageSplitter {
 		}
 	}
 
+	private static void closeResource(Message<?> message) throws IOException {
+		Closeable closeableResource = new IntegrationMessageHeaderAccessor(message).getCloseableResource();
+		if (closeableResource != null) {
+			closeableResource.close();
+		}
+	}
+
 	private String buildPathFromMessage(Message<?> message, String defaultPath) {
 		String remoteDir = (String) message.getHeaders().get(FileHeaders.REMOTE_DIRECTORY);
 		String remoteFile = (String) message.getHeaders().get(FileHeaders.REMOTE_FILE);
@@ -402,6 +750,194 @@ public class FileSplitter extends AbstractMessageSplitter {
 			}
 		}
 
+	}
+
+	/**
+	 * The type of the line payloads when files are memory-mapped.
+	 * @since 5.0
+	 */
+	public enum MappedPayloadType {
+
+		/**
+		 * A {@code byte[]} copy of the line.
+		 */
+		BYTES,
+
+		/**
+		 * A read-only {@link ByteBuffer} slice of the mapped file; no data is copied.
+		 */
+		BYTE_BUFFER,
+
+		/**
+		 * A {@link String}, decoded with the {@link FileSplitter#setCharset(Charset) charset}
+		 * only when the line is emitted.
+		 */
+		STRING
+
+	}
+
+	private interface LineReader extends Closeable {
+
+		/**
+		 * @return the next line, or null at the end of the data.
+		 * @throws IOException an IO exception.
+		 */
+		Object readLine() throws IOException;
+
+	}
+
+	/**
+	 * Reads lines from a file that is mapped in regions of at most
+	 * {@link FileSplitter#setMappedRegionSize(int) mappedRegionSize} bytes; when a line
+	 * spans the end of a region, the next region is mapped from the start of the line.
+	 */
+	private final class MappedLineReader implements LineReader {
+
+		private final FileChannel channel;
+
+		private final long end;
+
+		private final Message<?> message;
+
+		private final MappedPayloadType payloadType = FileSplitter.this.mappedPayloadType;
+
+		private final Charset charset = FileSplitter.this.charset != null
+				? FileSplitter.this.charset
+				: Charset.defaultCharset();
+
+		private ByteBuffer region;
+
+		private long regionStart;
+
+		private int position;
+
+		/**
+		 * @param channel the channel.
+		 * @param start the offset of the first line.
+		 * @param end the offset after the last line.
+		 * @param message the request message when the reader owns the channel, which is
+		 * then closed (as well as any closeable resource) when the reader is closed.
+		 */
+		MappedLineReader(FileChannel channel, long start, long end, Message<?> message) {
+			this.channel = channel;
+			this.regionStart = start;
+			this.end = end;
+			this.message = message;
+		}
+
+		@Override
+		public Object readLine() throws IOException {
+			while (this.regionStart + this.position < this.end) {
+				if (this.region == null || this.position >= this.region.limit()) {
+					map(this.regionStart + this.position);
+				}
+				ByteBuffer region = this.region;
+				int start = this.position;
+				int limit = region.limit();
+				for (int i = start; i < limit; i++) {
+					if (region.get(i) == '\n') {
+						this.position = i + 1;
+						return toPayload(region, start, i);
+					}
+				}
+				if (this.regionStart + limit >= this.end) {
+					// last line, without a delimiter
+					this.position = limit;
+					return toPayload(region, start, limit);
+				}
+				if (start == 0) {
+					throw new IOException("Line at offset " + this.regionStart
+							+ " is longer than the mapped region size " + region.limit());
+				}
+				map(this.regionStart + start);
+			}
+			return null;
+		}
+
+		private void map(long start) throws IOException {
+			long length = Math.min(this.end - start, FileSplitter.this.mappedRegionSize);
+			this.region = this.channel.map(MapMode.READ_ONLY, start, length);
+			this.regionStart = start;
+			this.position = 0;
+		}
+
+		private Object toPayload(ByteBuffer region, int start, int end) {
+			if (end > start && region.get(end - 1) == '\r') {
+				end--;
+			}
+			ByteBuffer line = region.duplicate();
+			line.limit(end);
+			line.position(start);
+			if (MappedPayloadType.BYTE_BUFFER.equals(this.payloadType)) {
+				return line.slice();
+			}
+			byte[] bytes = new byte[end - start];
+			line.get(bytes);
+			return MappedPayloadType.STRING.equals(this.payloadType) ? new String(bytes, this.charset) : bytes;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (this.message != null) {
+				try {
+					// the mapped regions remain valid after the channel is closed
+					this.channel.close();
+				}
+				finally {
+					closeResource(this.message);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Sends the lines of a chunk, with sequence details when they are applied.
+	 */
+	private final class ChunkSender implements Callable<Long> {
+
+		private final MappedLineReader reader;
+
+		private final Message<?> message;
+
+		private final Map<String, Object> headers;
+
+		private final Object correlationId;
+
+		private final long firstSequence;
+
+		private final int sequenceSize;
+
+		private final AtomicBoolean failed;
+
+		ChunkSender(MappedLineReader reader, Message<?> message, Map<String, Object> headers,
+				Object correlationId, long firstSequence, int sequenceSize, AtomicBoolean failed) {
+			this.reader = reader;
+			this.message = message;
+			this.headers = headers;
+			this.correlationId = correlationId;
+			this.firstSequence = firstSequence;
+			this.sequenceSize = sequenceSize;
+			this.failed = failed;
+		}
+
+		@Override
+		public Long call() throws Exception {
+			boolean applySequence = isApplySequence();
+			long count = 0;
+			Object line;
+			while (!this.failed.get() && (line = this.reader.readLine()) != null) {
+				AbstractIntegrationMessageBuilder<?> builder = getMessageBuilderFactory().withPayload(line);
+				builder.copyHeadersIfAbsent(this.headers);
+				if (applySequence) {
+					builder.pushSequenceDetails(this.correlationId, (int) (this.firstSequence + count),
+							this.sequenceSize);
+				}
+				produceOutput(Collections.singletonList(builder).iterator(), this.message);
+				count++;
+			}
+			return count;
+		}
 
 	}
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.support;
+
+/**
+ * When writing files through a {@link java.nio.channels.FileChannel}, this enumeration
+ * indicates when the written data is forced to the storage device.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public enum FsyncPolicy {
+
+	/**
+	 * Never force; the data is written to the device when the operating system
+	 * decides to.
+	 */
+	NONE,
+
+	/**
+	 * Force after each message is written (a message payload may be a batch of
+	 * records).
+	 */
+	BATCH,
+
+	/**
+	 * Force open files each time the flush task runs when
+	 * {@link FileExistsMode#APPEND_NO_FLUSH} is being used, and when a file is closed.
+	 */
+	INTERVAL
+
+}
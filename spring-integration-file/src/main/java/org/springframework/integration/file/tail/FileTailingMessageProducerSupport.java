@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.file.tail;
 
 import java.io.File;
+import java.util.List;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -122,7 +123,20 @@ public abstract class FileTailingMessageProducerSupport extends MessageProducerS
 	}
 
 	protected void send(String line) {
-		Message<?> message = this.getMessageBuilderFactory().withPayload(line)
+		doSend(line);
+	}
+
+	/**
+	 * Send a message with the lines as a payload.
+	 * @param lines the lines.
+	 * @since 5.0
+	 */
+	protected void send(List<String> lines) {
+		doSend(lines);
+	}
+
+	private void doSend(Object payload) {
+		Message<?> message = this.getMessageBuilderFactory().withPayload(payload)
 				.setHeader(FileHeaders.FILENAME, this.file.getName())
 				.setHeader(FileHeaders.ORIGINAL_FILE, this.file)
 				.build();
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.tail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.integration.metadata.MetadataStore;
+import org.springframework.util.Assert;
+
+/**
+ * File tailer that reads the file with a {@link FileChannel}, without a native
+ * {@code tail} process or a dedicated thread: the file is polled by a task scheduled
+ * on the {@link #setTaskScheduler(org.springframework.scheduling.TaskScheduler) task
+ * scheduler}, so many files can be tailed by a small pool of threads.
+ * <p>
+ * Only complete lines are emitted; by default, each line is sent as a {@code String}
+ * payload. When {@link #setMaxBatchSize(int) maxBatchSize} is greater than 1, the lines
+ * read in a poll are sent as {@code List<String>} payloads of up to that many lines.
+ * <p>
+ * Rotation (the file is renamed or deleted, then created again) is detected by
+ * comparing the file key (or the creation time, on platforms without file keys) of
+ * the path with that of the open file; the remaining lines of the old file are
+ * emitted, then the new file is tailed from its beginning. If the file becomes shorter
+ * than the current position, it has been truncated, and is tailed from its beginning.
+ * <p>
+ * If a {@link #setMetadataStore(MetadataStore) metadata store} is provided, the offset
+ * of the last line sent (and the file key) is stored in it after each buffer of lines
+ * has been sent, and tailing resumes from that offset when the adapter is started
+ * again, provided the file is the same (at-least-once delivery: the lines of at most
+ * one buffer are sent again after a failure).
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class NioFileTailingMessageProducer extends FileTailingMessageProducerSupport {
+
+	private final Object monitor = new Object();
+
+	private volatile long pollingDelay = 1000;
+
+	private volatile boolean end = true;
+
+	private volatile int maxBatchSize = 1;
+
+	private volatile int bufferSize = 64 * 1024;
+
+	private volatile Charset charset = StandardCharsets.UTF_8;
+
+	private volatile MetadataStore metadataStore;
+
+	private volatile String metadataKey;
+
+	private volatile ScheduledFuture<?> pollingTask;
+
+	private FileChannel channel;
+
+	private Object fileIdentity;
+
+	private long position;
+
+	private long committed;
+
+	private boolean opened;
+
+	private ByteBuffer buffer;
+
+	private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+	private long lastMissingFileAlert;
+
+	/**
+	 * The delay between checks of the file for new content in milliseconds. Default
+	 * 1000.
+	 * @param pollingDelay The delay.
+	 */
+	public void setPollingDelay(long pollingDelay) {
+		Assert.isTrue(pollingDelay > 0, "'pollingDelay' must be > 0");
+		this.pollingDelay = pollingDelay;
+	}
+
+	/**
+	 * If true, tail from the end of the file, otherwise include all lines from the
+	 * beginning. Only applies if the file exists when the adapter is started and no
+	 * offset is found in the metadata store; files that appear later (for example
+	 * after a rotation) are always tailed from the beginning. Default true.
+	 * @param end true or false
+	 */
+	public void setEnd(boolean end) {
+		this.end = end;
+	}
+
+	/**
+	 * The maximum number of lines in a message; when greater than 1, the payloads are
+	 * {@code List<String>}. Default 1.
+	 * @param maxBatchSize the max batch size.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		Assert.isTrue(maxBatchSize > 0, "'maxBatchSize' must be > 0");
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * The size of the buffer used to read the file. Default 64k.
+	 * @param bufferSize the buffer size.
+	 */
+	public void setBufferSize(int bufferSize) {
+		Assert.isTrue(bufferSize > 0, "'bufferSize' must be > 0");
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * The charset of the file; it must encode the line delimiters as single bytes.
+	 * Default UTF-8.
+	 * @param charset the charset.
+	 */
+	public void setCharset(Charset charset) {
+		Assert.notNull(charset, "'charset' cannot be null");
+		this.charset = charset;
+	}
+
+	/**
+	 * A metadata store in which the offset of the last line sent is kept.
+	 * @param metadataStore the store.
+	 */
+	public void setMetadataStore(MetadataStore metadataStore) {
+		this.metadataStore = metadataStore;
+	}
+
+	/**
+	 * The key of the offset in the metadata store. Default {@code "tail:"} followed by
+	 * the absolute path of the file.
+	 * @param metadataKey the key.
+	 */
+	public void setMetadataKey(String metadataKey) {
+		this.metadataKey = metadataKey;
+	}
+
+	@Override
+	public String getComponentType() {
+		return super.getComponentType() + " (NIO)";
+	}
+
+	@Override
+	protected void doStart() {
+		super.doStart();
+		synchronized (this.monitor) {
+			this.buffer = ByteBuffer.allocate(this.bufferSize);
+			this.opened = false;
+			this.fileIdentity = null;
+		}
+		this.pollingTask = getTaskScheduler().scheduleWithFixedDelay(this::poll, this.pollingDelay);
+	}
+
+	@Override
+	protected void doStop() {
+		super.doStop();
+		if (this.pollingTask != null) {
+			this.pollingTask.cancel(false);
+			this.pollingTask = null;
+		}
+		synchronized (this.monitor) {
+			closeChannel();
+		}
+	}
+
+	private void poll() {
+		synchronized (this.monitor) {
+			if (!isRunning()) {
+				return;
+			}
+			try {
+				if (this.channel == null && !open()) {
+					return;
+				}
+				if (checkRotation()) {
+					read();
+				}
+			}
+			catch (Exception e) {
+				publish("Failed to tail " + getFile().getAbsolutePath() + ": " + e.getMessage());
+				if (logger.isDebugEnabled()) {
+					logger.debug("Failed to tail " + getFile().getAbsolutePath(), e);
+				}
+				// reopened on the next poll, from the last line sent
+				closeChannel();
+			}
+		}
+	}
+
+	private boolean open() throws IOException {
+		Path path = getFile().toPath();
+		BasicFileAttributes attributes = readAttributes(path);
+		if (attributes == null) {
+			long now = System.currentTimeMillis();
+			if (now - this.lastMissingFileAlert >= getMissingFileDelay()) {
+				this.lastMissingFileAlert = now;
+				publish("File not found: " + getFile().getAbsolutePath());
+			}
+			this.opened = true;
+			return false;
+		}
+		Object identity = identity(attributes);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		long size = channel.size();
+		long start;
+		if (identity.equals(this.fileIdentity) && this.committed <= size) {
+			start = this.committed;
+		}
+		else {
+			Long stored = storedOffset(identity);
+			if (stored != null && stored <= size) {
+				start = stored;
+			}
+			else {
+				start = !this.opened && this.end ? size : 0;
+			}
+		}
+		this.channel = channel;
+		this.fileIdentity = identity;
+		this.position = start;
+		this.committed = start;
+		this.partialLine.reset();
+		this.opened = true;
+		return true;
+	}
+
+	/**
+	 * Detect rotation and truncation.
+	 * @return false if the file has been rotated and the new file does not exist yet.
+	 */
+	private boolean checkRotation() throws IOException {
+		BasicFileAttributes attributes = readAttributes(getFile().toPath());
+		if (attributes == null || !identity(attributes).equals(this.fileIdentity)) {
+			read();
+			if (this.partialLine.size() > 0) {
+				List<String> lines = new ArrayList<>(1);
+				lines.add(decode(this.partialLine.toByteArray(), 0, this.partialLine.size()));
+				this.partialLine.reset();
+				sendLines(lines);
+			}
+			closeChannel();
+			this.fileIdentity = null;
+			this.committed = 0;
+			removeStoredOffset();
+			publish("File rotated: " + getFile().getAbsolutePath());
+			return attributes != null && open();
+		}
+		if (this.channel.size() < this.position) {
+			publish("File truncated: " + getFile().getAbsolutePath());
+			this.position = 0;
+			this.committed = 0;
+			this.partialLine.reset();
+		}
+		return true;
+	}
+
+	private void read() throws IOException {
+		ByteBuffer buffer = this.buffer;
+		buffer.clear();
+		List<String> lines = new ArrayList<>();
+		int count;
+		while ((count = this.channel.read(buffer, this.position)) > 0) {
+			long bufferOffset = this.position;
+			this.position += count;
+			byte[] bytes = buffer.array();
+			int lineStart = 0;
+			long lastLineEnd = -1;
+			for (int i = 0; i < count; i++) {
+				if (bytes[i] == '\n') {
+					lines.add(line(bytes, lineStart, i));
+					lineStart = i + 1;
+					lastLineEnd = bufferOffset + lineStart;
+					if (lines.size() >= this.maxBatchSize) {
+						sendLines(lines);
+						lines = new ArrayList<>();
+						this.committed = lastLineEnd;
+					}
+				}
+			}
+			this.partialLine.write(bytes, lineStart, count - lineStart);
+			if (!lines.isEmpty()) {
+				sendLines(lines);
+				lines = new ArrayList<>();
+			}
+			if (lastLineEnd >= 0) {
+				this.committed = lastLineEnd;
+				storeOffset();
+			}
+			buffer.clear();
+		}
+	}
+
+	private String line(byte[] bytes, int start, int end) {
+		if (this.partialLine.size() > 0) {
+			this.partialLine.write(bytes, start, end - start);
+			byte[] line = this.partialLine.toByteArray();
+			this.partialLine.reset();
+			return decode(line, 0, line.length);
+		}
+		return decode(bytes, start, end);
+	}
+
+	private String decode(byte[] bytes, int start, int end) {
+		int length = end - start;
+		if (length > 0 && bytes[end - 1] == '\r') {
+			length--;
+		}
+		return new String(bytes, start, length, this.charset);
+	}
+
+	private void sendLines(List<String> lines) {
+		if (this.maxBatchSize == 1) {
+			for (String line : lines) {
+				send(line);
+			}
+		}
+		else {
+			send(lines);
+		}
+	}
+
+	private void closeChannel() {
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			}
+			catch (IOException e) {
+				// ignore
+			}
+			this.channel = null;
+		}
+	}
+
+	private String metadataKey() {
+		return this.metadataKey != null ? this.metadataKey : "tail:" + getFile().getAbsolutePath();
+	}
+
+	private Long storedOffset(Object identity) {
+		if (this.metadataStore == null) {
+			return null;
+		}
+		String value = this.metadataStore.get(metadataKey());
+		if (value == null) {
+			return null;
+		}
+		int colon = value.indexOf(':');
+		if (colon < 0 || !value.substring(colon + 1).equals(identity.toString())) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value.substring(0, colon));
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private void storeOffset() {
+		if (this.metadataStore != null) {
+			this.metadataStore.put(metadataKey(), this.committed + ":" + this.fileIdentity);
+		}
+	}
+
+	private void removeStoredOffset() {
+		if (this.metadataStore != null) {
+			this.metadataStore.remove(metadataKey());
+		}
+	}
+
+	private static BasicFileAttributes readAttributes(Path path) throws IOException {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private static Object identity(BasicFileAttributes attributes) {
+		Object fileKey = attributes.fileKey();
+		return fileKey != null ? fileKey : attributes.creationTime().toMillis();
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.integration.channel.NullChannel;
+import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class FileWritingMessageHandlerPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(FileWritingMessageHandlerPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Rule
+	public TemporaryFolder temp = new TemporaryFolder();
+
+	@Test
+	public void noFlushAppendConcurrentThroughput() throws Exception {
+		int threads = 16;
+		int files = 400;
+		int writesPerThread = 10000;
+		File tempFolder = this.temp.newFolder();
+		FileWritingMessageHandler handler = noFlushHandler(tempFolder);
+		handler.setFlushInterval(100);
+		handler.afterPropertiesSet();
+		handler.start();
+		final Message<?>[] messages = new Message<?>[files];
+		for (int i = 0; i < files; i++) {
+			messages[i] = MessageBuilder.withPayload("0123456789").setHeader("file", "file" + i).build();
+		}
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		final CountDownLatch latch = new CountDownLatch(threads);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < threads; i++) {
+			final int offset = i;
+			exec.execute(() -> {
+				for (int j = 0; j < writesPerThread; j++) {
+					handler.handleMessage(messages[(j + offset) % files]);
+				}
+				latch.countDown();
+			});
+		}
+		assertTrue(latch.await(60, TimeUnit.SECONDS));
+		handler.stop();
+		long time = System.currentTimeMillis() - start;
+		exec.shutdownNow();
+		long total = 0;
+		for (int i = 0; i < files; i++) {
+			total += new File(tempFolder, "file" + i).length();
+		}
+		assertEquals(10L * threads * writesPerThread, total);
+		logger.debug(String.format("%d appends to %d files on %d threads: %d ms (%d/s)",
+				threads * writesPerThread, files, threads, time,
+				threads * writesPerThread * 1000L / Math.max(time, 1)));
+	}
+
+	@Test
+	public void fileChannelBatchThroughput() throws Exception {
+		int records = 200000;
+		int batchSize = 100;
+		File tempFolder = this.temp.newFolder();
+		FileWritingMessageHandler handler = noFlushHandler(tempFolder);
+		handler.setAppendNewLine(true);
+		handler.afterPropertiesSet();
+		handler.start();
+		Message<?> message = MessageBuilder.withPayload("0123456789").setHeader("file", "streams").build();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < records; i++) {
+			handler.handleMessage(message);
+		}
+		handler.stop();
+		long streamTime = System.currentTimeMillis() - start;
+
+		handler = noFlushHandler(tempFolder);
+		handler.setAppendNewLine(true);
+		handler.setUseFileChannel(true);
+		handler.setPreallocateSize(1024 * 1024);
+		handler.afterPropertiesSet();
+		handler.start();
+		List<String> batch = new ArrayList<>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			batch.add("0123456789");
+		}
+		message = MessageBuilder.withPayload(batch).setHeader("file", "channel").build();
+		start = System.currentTimeMillis();
+		for (int i = 0; i < records / batchSize; i++) {
+			handler.handleMessage(message);
+		}
+		handler.stop();
+		long channelTime = System.currentTimeMillis() - start;
+		assertEquals(new File(tempFolder, "streams").length(), new File(tempFolder, "channel").length());
+		logger.debug(String.format("%d records; streams: %d ms (%d/s), file channel, batches of %d: %d ms (%d/s)",
+				records, streamTime, records * 1000L / Math.max(streamTime, 1), batchSize,
+				channelTime, records * 1000L / Math.max(channelTime, 1)));
+	}
+
+	private FileWritingMessageHandler noFlushHandler(File tempFolder) {
+		FileWritingMessageHandler handler = new FileWritingMessageHandler(tempFolder);
+		handler.setFileExistsMode(FileExistsMode.APPEND_NO_FLUSH);
+		handler.setFileNameGenerator(message -> message.getHeaders().get("file", String.class));
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.afterPropertiesSet();
+		handler.setTaskScheduler(taskScheduler);
+		handler.setOutputChannel(new NullChannel());
+		handler.setBeanFactory(mock(BeanFactory.class));
+		return handler;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,6 +23,7 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotSame;
@@ -37,6 +38,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
@@ -51,6 +53,7 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.integration.channel.NullChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.file.support.FsyncPolicy;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.test.util.TestUtils;
 import org.springframework.messaging.Message;
@@ -492,6 +495,127 @@ public class FileWritingMessageHandlerTests {
 		assertTrue(called.get());
 	}
 
+	@Test
+	public void noFlushAppendMaxOpenFiles() throws Exception {
+		File tempFolder = this.temp.newFolder();
+		FileWritingMessageHandler handler = noFlushHandler(tempFolder);
+		handler.setMaxOpenFiles(3);
+		handler.afterPropertiesSet();
+		handler.start();
+		Map<?, ?> fileStates = TestUtils.getPropertyValue(handler, "fileStates", Map.class);
+		for (int i = 0; i < 5; i++) {
+			handler.handleMessage(MessageBuilder.withPayload("foo").setHeader("file", "foo" + i).build());
+			assertThat(fileStates.size(), lessThanOrEqualTo(3));
+		}
+		// the least recently written files were flushed
+		assertEquals(3L, new File(tempFolder, "foo0").length());
+		assertEquals(3L, new File(tempFolder, "foo1").length());
+		assertEquals(0L, new File(tempFolder, "foo4").length());
+		handler.handleMessage(MessageBuilder.withPayload("bar").setHeader("file", "foo0").build());
+		assertThat(fileStates.size(), lessThanOrEqualTo(3));
+		handler.stop();
+		assertEquals(0, fileStates.size());
+		assertEquals(6L, new File(tempFolder, "foo0").length());
+		for (int i = 1; i < 5; i++) {
+			assertEquals(3L, new File(tempFolder, "foo" + i).length());
+		}
+	}
+
+	@Test
+	public void fileChannelPayloadTypes() throws Exception {
+		File tempFolder = this.temp.newFolder();
+		FileWritingMessageHandler handler = new FileWritingMessageHandler(tempFolder);
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setFileNameGenerator(message -> "foo.txt");
+		handler.setUseFileChannel(true);
+		handler.setAppendNewLine(true);
+		handler.setFsyncPolicy(FsyncPolicy.BATCH);
+		handler.setCharset(DEFAULT_ENCODING);
+		handler.setOutputChannel(new NullChannel());
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.handleMessage(new GenericMessage<>(this.sourceFile));
+		handler.handleMessage(new GenericMessage<>(new ByteArrayInputStream("foo".getBytes())));
+		handler.handleMessage(new GenericMessage<>("bar".getBytes()));
+		handler.handleMessage(new GenericMessage<>("baz"));
+		handler.handleMessage(new GenericMessage<>(Arrays.asList("qux", "fiz".getBytes(), "buz")));
+		String nl = System.getProperty("line.separator");
+		assertFileContentIs(new File(tempFolder, "foo.txt"),
+				SAMPLE_CONTENT + nl + "foo" + nl + "bar" + nl + "baz" + nl + "qux" + nl + "fiz" + nl + "buz" + nl);
+		assertTrue(this.sourceFile.exists());
+		try {
+			handler.handleMessage(new GenericMessage<>(Arrays.asList("foo", 1)));
+			fail("Expected exception");
+		}
+		catch (MessageHandlingException e) {
+			assertThat(e.getCause().getMessage(), containsString("Collection elements must be byte[] or String"));
+		}
+
+		handler.setFileExistsMode(FileExistsMode.REPLACE);
+		handler.handleMessage(new GenericMessage<>(Arrays.asList("foo", "bar")));
+		assertFileContentIs(new File(tempFolder, "foo.txt"), "foo" + nl + "bar" + nl);
+	}
+
+	@Test
+	public void fileChannelNoFlushAppendPreallocate() throws Exception {
+		File tempFolder = this.temp.newFolder();
+		FileWritingMessageHandler handler = noFlushHandler(tempFolder);
+		handler.setUseFileChannel(true);
+		handler.setPreallocateSize(4096);
+		handler.setFsyncPolicy(FsyncPolicy.INTERVAL);
+		handler.setFlushInterval(30000);
+		handler.afterPropertiesSet();
+		handler.start();
+		File file = new File(tempFolder, "foo");
+		handler.handleMessage(MessageBuilder.withPayload("foo").setHeader("file", "foo").build());
+		handler.handleMessage(MessageBuilder.withPayload(Arrays.asList("bar", "baz")).setHeader("file", "foo").build());
+		handler.handleMessage(MessageBuilder.withPayload(new ByteArrayInputStream("qux".getBytes()))
+				.setHeader("file", "foo").build());
+		assertEquals(3L + 4096, file.length());
+		handler.handleMessage(MessageBuilder.withPayload(new byte[5000]).setHeader("file", "foo").build());
+		assertEquals(5012L + 4096, file.length());
+		handler.stop();
+		assertEquals(5012L, file.length());
+		byte[] content = FileCopyUtils.copyToByteArray(file);
+		assertEquals("foobarbazqux", new String(content, 0, 12));
+
+		handler.setPreallocateSize(0);
+		handler.start();
+		handler.handleMessage(MessageBuilder.withPayload("fiz").setHeader("file", "foo").build());
+		handler.stop();
+		assertEquals(5015L, file.length());
+	}
+
+	@Test
+	public void fileChannelAppendDoesNotPreallocate() throws Exception {
+		File tempFolder = this.temp.newFolder();
+		FileWritingMessageHandler handler = new FileWritingMessageHandler(tempFolder);
+		handler.setFileExistsMode(FileExistsMode.APPEND);
+		handler.setFileNameGenerator(message -> "foo");
+		handler.setUseFileChannel(true);
+		handler.setPreallocateSize(4096);
+		handler.setOutputChannel(new NullChannel());
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		File file = new File(tempFolder, "foo");
+		handler.handleMessage(new GenericMessage<>("foo"));
+		assertEquals(3L, file.length());
+		handler.handleMessage(new GenericMessage<>(Arrays.asList("bar", "baz")));
+		assertEquals(9L, file.length());
+	}
+
+	private FileWritingMessageHandler noFlushHandler(File tempFolder) {
+		FileWritingMessageHandler handler = new FileWritingMessageHandler(tempFolder);
+		handler.setFileExistsMode(FileExistsMode.APPEND_NO_FLUSH);
+		handler.setFileNameGenerator(message -> message.getHeaders().get("file", String.class));
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.afterPropertiesSet();
+		handler.setTaskScheduler(taskScheduler);
+		handler.setOutputChannel(new NullChannel());
+		handler.setBeanFactory(mock(BeanFactory.class));
+		return handler;
+	}
+
 	void assertFileContentIsMatching(Message<?> result) throws IOException {
 		assertFileContentIs(result, SAMPLE_CONTENT);
 	}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class IncrementalDirectoryScannerPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(IncrementalDirectoryScannerPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRescanPerformance() throws Exception {
+		File root = this.folder.newFolder("root");
+		int directories = 50;
+		int filesPerDirectory = 400;
+		for (int i = 0; i < directories; i++) {
+			File directory = new File(root, "dir" + i + File.separator + "sub");
+			assertTrue(directory.mkdirs());
+			for (int j = 0; j < filesPerDirectory; j++) {
+				assertTrue(new File(directory, "file" + j).createNewFile());
+			}
+		}
+		int total = directories * filesPerDirectory;
+
+		AcceptOnceFileListFilter<File> acceptOnce = new AcceptOnceFileListFilter<>();
+		assertEquals(total, acceptOnce.filterFiles(walk(root)).size());
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, acceptOnce.filterFiles(walk(root)).size());
+		}
+		long walkTime = (System.currentTimeMillis() - start) / 5;
+
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		assertEquals(total, scanner.listFiles(root).size());
+		start = System.currentTimeMillis();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, scanner.listFiles(root).size());
+		}
+		long incrementalTime = (System.currentTimeMillis() - start) / 5;
+
+		scanner.setSkipUnchangedDirectories(true);
+		start = System.currentTimeMillis();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, scanner.listFiles(root).size());
+		}
+		long skipTime = (System.currentTimeMillis() - start) / 5;
+		logger.debug(String.format("Rescan of %d files: walkFileTree + accept once: %d ms, incremental: %d ms, "
+				+ "incremental skipping unchanged directories: %d ms", total, walkTime, incrementalTime, skipTime));
+	}
+
+	private File[] walk(File root) throws IOException {
+		final List<File> files = new ArrayList<>();
+		Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				files.add(file.toFile());
+				return FileVisitResult.CONTINUE;
+			}
+
+		});
+		return files.toArray(new File[files.size()]);
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.integration.file.filters.CompositeFileListFilter;
+import org.springframework.integration.file.filters.IgnoreHiddenFileListFilter;
+import org.springframework.integration.file.filters.ResettableFileListFilter;
+import org.springframework.messaging.Message;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class IncrementalDirectoryScannerTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testDeltas() throws Exception {
+		File root = this.folder.newFolder("root");
+		File foo = new File(root, "foo");
+		File bar = new File(foo, "bar");
+		assertTrue(bar.mkdirs());
+		File top = newFile(root, "top.txt");
+		File foo1 = newFile(foo, "foo1.txt");
+		File bar1 = newFile(bar, "bar1.txt");
+		newFile(root, ".hidden");
+		List<File> removed = new ArrayList<>();
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		scanner.setFilter(new CompositeFileListFilter<File>()
+				.addFilter(new IgnoreHiddenFileListFilter())
+				.addFilter(new ResettableFileListFilter<File>() {
+
+					@Override
+					public List<File> filterFiles(File[] files) {
+						return Arrays.asList(files);
+					}
+
+					@Override
+					public boolean remove(File fileToRemove) {
+						return removed.add(fileToRemove);
+					}
+
+				}));
+		assertThat(scanner.listFiles(root), containsInAnyOrder(top, foo1, bar1));
+		assertEquals(0, scanner.listFiles(root).size());
+
+		File foo2 = newFile(foo, "foo2.txt");
+		try (FileOutputStream out = new FileOutputStream(bar1, true)) {
+			out.write('x');
+		}
+		assertTrue(top.delete());
+		assertThat(scanner.listFiles(root), containsInAnyOrder(foo2, bar1));
+		assertThat(removed, contains(top));
+		assertEquals(0, scanner.listFiles(root).size());
+
+		assertTrue(bar1.delete());
+		assertTrue(bar.delete());
+		assertEquals(0, scanner.listFiles(root).size());
+		assertThat(removed, contains(top, bar1));
+	}
+
+	@Test
+	public void testSnapshotFileAndSkipUnchanged() throws Exception {
+		File root = this.folder.newFolder("root");
+		File foo = new File(root, "foo");
+		assertTrue(foo.mkdir());
+		File top = newFile(root, "top.txt");
+		File foo1 = newFile(foo, "foo1.txt");
+		File snapshot = new File(this.folder.getRoot(), "snapshot");
+		IncrementalDirectoryScanner scanner = new IncrementalDirectoryScanner();
+		scanner.setSnapshotFile(snapshot);
+		assertThat(scanner.listFiles(root), containsInAnyOrder(top, foo1));
+		assertTrue(snapshot.exists());
+
+		File foo2 = newFile(foo, "foo2.txt");
+		foo.setLastModified(foo.lastModified() + 5000);
+		scanner = new IncrementalDirectoryScanner();
+		scanner.setSnapshotFile(snapshot);
+		scanner.setSkipUnchangedDirectories(true);
+		assertThat(scanner.listFiles(root), contains(foo2));
+
+		// modified in place; the directory is not listed again
+		top.setLastModified(top.lastModified() + 5000);
+		assertEquals(0, scanner.listFiles(root).size());
+		scanner.setSkipUnchangedDirectories(false);
+		assertThat(scanner.listFiles(root), contains(top));
+	}
+
+	@Test
+	public void testWithMessageSource() throws Exception {
+		File root = this.folder.newFolder("root");
+		File foo = new File(root, "foo");
+		assertTrue(foo.mkdir());
+		File foo1 = newFile(foo, "foo1.txt");
+		FileReadingMessageSource source = new FileReadingMessageSource();
+		source.setDirectory(root);
+		source.setScanner(new IncrementalDirectoryScanner());
+		source.setBeanFactory(mock(BeanFactory.class));
+		source.afterPropertiesSet();
+		Message<File> received = source.receive();
+		assertEquals(foo1, received.getPayload());
+		assertEquals("foo" + File.separator + "foo1.txt", received.getHeaders().get(FileHeaders.RELATIVE_PATH));
+		assertNull(source.receive());
+	}
+
+	private File newFile(File directory, String name) throws IOException {
+		File file = new File(directory, name);
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write(name.getBytes());
+		}
+		return file;
+	}
+
+}
@@ -20,6 +20,7 @@ import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
@@ -27,6 +28,7 @@ import static org.mockito.Mockito.mock;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -208,4 +210,56 @@ public class WatchServiceDirectoryScannerTests {
 		fileReadingMessageSource.stop();
 	}
 
+	@Test
+	public void testOverflowRecovery() throws Exception {
+		FileReadingMessageSource fileReadingMessageSource = new FileReadingMessageSource();
+		fileReadingMessageSource.setDirectory(this.folder.getRoot());
+		fileReadingMessageSource.setUseWatchService(true);
+		fileReadingMessageSource.setBeanFactory(mock(BeanFactory.class));
+		fileReadingMessageSource.afterPropertiesSet();
+		fileReadingMessageSource.start();
+		List<File> received = new ArrayList<File>();
+		Set<File> expected = new HashSet<File>(Arrays.asList(this.top1, this.foo1, this.bar1));
+		receive(fileReadingMessageSource, received, expected.size());
+
+		// more than 512 pending events for the root directory key: see AbstractWatchKey#signalEvent
+		for (int i = 0; i < 600; i++) {
+			expected.add(this.folder.newFile("" + i));
+		}
+		// the creation of this directory is lost in the overflow, so it must be walked
+		File qux = this.folder.newFolder("qux");
+		expected.add(File.createTempFile("qux", ".txt", qux));
+		// events are not lost for an already registered subdirectory
+		expected.add(File.createTempFile("foo", ".txt", this.foo));
+		receive(fileReadingMessageSource, received, expected.size());
+
+		// and the new directory is now watched
+		File qux2 = File.createTempFile("qux", ".txt", qux);
+		expected.add(qux2);
+		receive(fileReadingMessageSource, received, expected.size());
+		Thread.sleep(500);
+		assertNull(fileReadingMessageSource.receive());
+
+		assertEquals(expected.size(), received.size());
+		assertEquals(expected, new HashSet<File>(received));
+		fileReadingMessageSource.stop();
+	}
+
+	private static void receive(FileReadingMessageSource source, List<File> received, int count)
+			throws InterruptedException {
+
+		int n = 0;
+		while (n < 300 && received.size() < count) {
+			Message<File> message = source.receive();
+			if (message != null) {
+				received.add(message.getPayload());
+			}
+			else {
+				n++;
+				Thread.sleep(100);
+			}
+		}
+		assertEquals(count, received.size());
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -41,6 +41,7 @@ import org.springframework.integration.file.DefaultFileNameGenerator;
 import org.springframework.integration.file.FileWritingMessageHandler;
 import org.springframework.integration.file.FileWritingMessageHandler.MessageFlushPredicate;
 import org.springframework.integration.file.support.FileExistsMode;
+import org.springframework.integration.file.support.FsyncPolicy;
 import org.springframework.integration.handler.advice.AbstractRequestHandlerAdvice;
 import org.springframework.integration.test.util.TestUtils;
 import org.springframework.messaging.Message;
@@ -184,6 +185,10 @@ public class FileOutboundChannelAdapterParserTests {
 		DirectFieldAccessor handlerAccessor = new DirectFieldAccessor(handler);
 		assertEquals(4096, handlerAccessor.getPropertyValue("bufferSize"));
 		assertEquals(12345L, handlerAccessor.getPropertyValue("flushInterval"));
+		assertEquals(100, handlerAccessor.getPropertyValue("maxOpenFiles"));
+		assertEquals(true, handlerAccessor.getPropertyValue("useFileChannel"));
+		assertEquals(65536L, handlerAccessor.getPropertyValue("preallocateSize"));
+		assertEquals(FsyncPolicy.INTERVAL, handlerAccessor.getPropertyValue("fsyncPolicy"));
 		assertEquals(FileExistsMode.APPEND_NO_FLUSH, handlerAccessor.getPropertyValue("fileExistsMode"));
 		assertSame(this.predicate, handlerAccessor.getPropertyValue("flushPredicate"));
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 the original author or authors.
+ * Copyright 2015-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,9 +18,11 @@ package org.springframework.integration.file.config;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.charset.Charset;
+import java.util.concurrent.Executor;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -56,6 +58,9 @@ public class FileSplitterParserTests {
 	@Autowired
 	private MessageChannel out;
 
+	@Autowired
+	private Executor exec;
+
 	@Test
 	public void testComplete() {
 		assertFalse(TestUtils.getPropertyValue(this.splitter, "iterator", Boolean.class));
@@ -64,6 +69,11 @@ public class FileSplitterParserTests {
 		assertTrue(TestUtils.getPropertyValue(this.splitter, "requiresReply", Boolean.class));
 		assertTrue(TestUtils.getPropertyValue(this.splitter, "applySequence", Boolean.class));
 		assertEquals(Charset.forName("UTF-8"), TestUtils.getPropertyValue(this.splitter, "charset"));
+		assertTrue(TestUtils.getPropertyValue(this.splitter, "memoryMapped", Boolean.class));
+		assertEquals(FileSplitter.MappedPayloadType.STRING,
+				TestUtils.getPropertyValue(this.splitter, "mappedPayloadType"));
+		assertSame(this.exec, TestUtils.getPropertyValue(this.splitter, "taskExecutor"));
+		assertEquals(1024L, TestUtils.getPropertyValue(this.splitter, "chunkSize"));
 		assertEquals(5L, TestUtils.getPropertyValue(this.splitter, "messagingTemplate.sendTimeout"));
 		assertEquals(this.out, TestUtils.getPropertyValue(this.splitter, "outputChannel"));
 		assertEquals(2, TestUtils.getPropertyValue(this.splitter, "order"));
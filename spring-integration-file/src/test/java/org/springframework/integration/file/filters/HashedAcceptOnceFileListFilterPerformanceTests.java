@@ -0,0 +1,92 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.filters;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.integration.metadata.SimpleMetadataStore;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class HashedAcceptOnceFileListFilterPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(HashedAcceptOnceFileListFilterPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Test
+	public void testScanPerformance() {
+		StringBuilder results = new StringBuilder("rescan times (ms) - in-memory, persistent, hashed:");
+		for (int count : new int[] { 10000, 100000, 1000000 }) {
+			String[] files = new String[count];
+			for (int i = 0; i < count; i++) {
+				files[i] = "/var/data/incoming/some/deep/directory/structure/file-" + i + ".csv";
+			}
+			AcceptOnceFileListFilter<String> inMemory = new AcceptOnceFileListFilter<>();
+			AbstractPersistentAcceptOnceFileListFilter<String> persistent =
+					new AbstractPersistentAcceptOnceFileListFilter<String>(new SimpleMetadataStore(), "perf:") {
+
+						@Override
+						protected long modified(String file) {
+							return 1L;
+						}
+
+						@Override
+						protected String fileName(String file) {
+							return file;
+						}
+
+					};
+			AbstractHashedAcceptOnceFileListFilter<String> hashed = new AbstractHashedAcceptOnceFileListFilter<String>() {
+
+				@Override
+				protected long modified(String file) {
+					return 1L;
+				}
+
+				@Override
+				protected String fileName(String file) {
+					return file;
+				}
+
+			};
+			results.append(String.format(" %d files: %d, %d, %d;", count, rescan(inMemory, files),
+					rescan(persistent, files), rescan(hashed, files)));
+		}
+		logger.debug(results.toString());
+	}
+
+	private long rescan(FileListFilter<String> filter, String[] files) {
+		assertEquals(files.length, filter.filterFiles(files).size());
+		long start = System.nanoTime();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, filter.filterFiles(files).size());
+		}
+		return (System.nanoTime() - start) / 3000000;
+	}
+
+}
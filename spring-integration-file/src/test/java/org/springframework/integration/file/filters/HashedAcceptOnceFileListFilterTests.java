@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.filters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class HashedAcceptOnceFileListFilterTests extends AcceptOnceFileListFilterTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Override
+	@Test
+	public void testRollback() {
+		doTestRollback(new StringFilter(new HashMap<>()));
+	}
+
+	@Test
+	public void testModifiedAndRemove() {
+		Map<String, Long> modified = new HashMap<>();
+		StringFilter filter = new StringFilter(modified);
+		String[] files = new String[50000];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = "file" + i;
+			modified.put(files[i], 1L);
+		}
+		assertEquals(files.length, filter.filterFiles(files).size());
+		assertEquals(files.length, filter.size());
+		assertEquals(0, filter.filterFiles(files).size());
+		modified.put("file42", 2L);
+		assertEquals("file42", filter.filterFiles(files).get(0));
+		assertEquals(0, filter.filterFiles(files).size());
+		for (int i = 0; i < files.length; i += 2) {
+			assertTrue(filter.remove(files[i]));
+		}
+		assertFalse(filter.remove("file0"));
+		assertFalse(filter.remove("other"));
+		assertEquals(files.length / 2, filter.size());
+		List<String> passed = filter.filterFiles(files);
+		assertEquals(files.length / 2, passed.size());
+		for (String file : passed) {
+			assertEquals(0, Integer.parseInt(file.substring(4)) % 2);
+		}
+		assertEquals(0, filter.filterFiles(files).size());
+	}
+
+	@Test
+	public void testIndexFile() throws Exception {
+		File index = new File(this.folder.getRoot(), "index");
+		File[] files = new File[3000];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = this.folder.newFile("file" + i);
+		}
+		FileSystemHashedAcceptOnceFileListFilter filter = new FileSystemHashedAcceptOnceFileListFilter(index);
+		assertEquals(files.length, filter.filterFiles(files).size());
+		assertFalse(index.exists());
+		filter.remove(files[1]);
+		filter.close();
+		assertTrue(index.exists());
+		assertEquals(12 + 16 * (files.length - 1), index.length());
+
+		filter = new FileSystemHashedAcceptOnceFileListFilter(index);
+		assertEquals(files.length - 1, filter.size());
+		assertArrayEquals(new File[] { files[1] }, filter.filterFiles(files).toArray());
+		files[2].setLastModified(files[2].lastModified() + 5000);
+		filter.setFlushOnUpdate(true);
+		long lastWritten = index.lastModified();
+		Thread.sleep(10);
+		assertArrayEquals(new File[] { files[2] }, filter.filterFiles(files).toArray());
+		assertTrue(index.lastModified() >= lastWritten);
+		assertEquals(12 + 16 * files.length, index.length());
+
+		filter = new FileSystemHashedAcceptOnceFileListFilter(index);
+		assertEquals(0, filter.filterFiles(files).size());
+	}
+
+	private static class StringFilter extends AbstractHashedAcceptOnceFileListFilter<String> {
+
+		private final Map<String, Long> modified;
+
+		StringFilter(Map<String, Long> modified) {
+			this.modified = modified;
+		}
+
+		@Override
+		protected long modified(String file) {
+			Long modified = this.modified == null ? null : this.modified.get(file);
+			return modified == null ? 1L : modified;
+		}
+
+		@Override
+		protected String fileName(String file) {
+			return file;
+		}
+
+	}
+
+}
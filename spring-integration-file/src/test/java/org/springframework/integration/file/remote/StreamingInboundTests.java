@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,9 +16,14 @@
 
 package org.springframework.integration.file.remote;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.BDDMockito.willThrow;
 import static org.mockito.Mockito.mock;
@@ -26,12 +31,16 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -42,6 +51,7 @@ import org.springframework.integration.IntegrationMessageHeaderAccessor;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.file.remote.session.Session;
 import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.file.splitter.FileSplitter;
@@ -171,6 +181,144 @@ public class StreamingInboundTests {
 		verify(new IntegrationMessageHeaderAccessor(receivedStream).getCloseableResource(), times(3)).close();
 	}
 
+	@Test
+	public void testChunked() throws Exception {
+		byte[] content = content(10000);
+		List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+		CachingSessionFactory<String> sessionFactory =
+				new CachingSessionFactory<>(rangedSessionFactory(content, offsets, -1), 1);
+		sessionFactory.setSessionWaitTimeout(100);
+		Streamer streamer = new Streamer(new StringRemoteFileTemplate(sessionFactory), null);
+		streamer.setBeanFactory(mock(BeanFactory.class));
+		streamer.setRemoteDirectory("/foo");
+		streamer.setChunkSize(1000);
+		streamer.afterPropertiesSet();
+		Message<InputStream> received = streamer.receive();
+		InputStream stream = received.getPayload();
+		assertSame(stream, new IntegrationMessageHeaderAccessor(received).getCloseableResource());
+		byte[] start = new byte[1500];
+		assertEquals(1000, stream.read(start));
+		assertEquals(500, stream.read(start, 1000, 500));
+
+		// the session is released between chunks
+		sessionFactory.getSession().close();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(start);
+		copy(stream, out);
+		assertArrayEquals(content, out.toByteArray());
+		assertEquals(Arrays.asList(0L, 1000L, 2000L, 3000L, 4000L, 5000L, 6000L, 7000L, 8000L, 9000L, 10000L),
+				offsets);
+		stream.close();
+		sessionFactory.destroy();
+	}
+
+	@Test
+	public void testChunkedResume() throws Exception {
+		byte[] content = content(5500);
+		List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+		Streamer streamer = new Streamer(new StringRemoteFileTemplate(rangedSessionFactory(content, offsets, 3000)),
+				null);
+		streamer.setBeanFactory(mock(BeanFactory.class));
+		streamer.setRemoteDirectory("/foo");
+		streamer.setChunkSize(1000);
+		streamer.afterPropertiesSet();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream stream = streamer.receive().getPayload()) {
+			copy(stream, out);
+		}
+		assertArrayEquals(content, out.toByteArray());
+		assertEquals(Arrays.asList(0L, 1000L, 2000L, 3000L, 3000L, 4000L, 5000L), offsets);
+	}
+
+	@Test
+	public void testChunkedDiscardsAbortedSessions() throws Exception {
+		byte[] content = content(2500);
+		List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+		SessionFactory<String> targetFactory = rangedSessionFactory(content, offsets, -1);
+		Session<String> target = targetFactory.getSession();
+		given(target.finalizeRaw()).willReturn(true, true, false);
+		CachingSessionFactory<String> sessionFactory = new CachingSessionFactory<>(targetFactory, 1);
+		Streamer streamer = new Streamer(new StringRemoteFileTemplate(sessionFactory), null);
+		streamer.setBeanFactory(mock(BeanFactory.class));
+		streamer.setRemoteDirectory("/foo");
+		streamer.setChunkSize(1000);
+		streamer.afterPropertiesSet();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream stream = streamer.receive().getPayload()) {
+			copy(stream, out);
+		}
+		assertArrayEquals(content, out.toByteArray());
+		// the first two transfers are aborted, the last one cannot be finalized
+		assertEquals(Arrays.asList(0L, 1000L, 2000L), offsets);
+		verify(target, times(3)).close();
+		sessionFactory.destroy();
+	}
+
+	@Test
+	public void testChunkedReadAhead() throws Exception {
+		byte[] content = content(10000);
+		List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+		Streamer streamer = new Streamer(new StringRemoteFileTemplate(rangedSessionFactory(content, offsets, -1)),
+				null);
+		streamer.setBeanFactory(mock(BeanFactory.class));
+		streamer.setRemoteDirectory("/foo");
+		streamer.setChunkSize(1000);
+		streamer.setReadAheadChunks(2);
+		streamer.afterPropertiesSet();
+		InputStream stream = streamer.receive().getPayload();
+		int n = 0;
+		while (offsets.size() < 3 && n++ < 100) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(100);
+		// two chunks in the buffer, one waiting for space
+		assertEquals(3, offsets.size());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		copy(stream, out);
+		assertArrayEquals(content, out.toByteArray());
+		assertEquals(11, offsets.size());
+		stream.close();
+	}
+
+	private static byte[] content(int length) {
+		byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) i;
+		}
+		return content;
+	}
+
+	private static void copy(InputStream stream, ByteArrayOutputStream out) throws IOException {
+		byte[] buffer = new byte[700];
+		int len;
+		while ((len = stream.read(buffer)) >= 0) {
+			out.write(buffer, 0, len);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SessionFactory<String> rangedSessionFactory(byte[] content, List<Long> offsets, long failAt)
+			throws IOException {
+
+		Session<String> session = mock(Session.class);
+		willReturn(new String[] { "/foo/foo" }).given(session).list("/foo");
+		given(session.isOpen()).willReturn(true);
+		AtomicBoolean failed = new AtomicBoolean();
+		willAnswer(invocation -> {
+			long offset = invocation.getArgument(1);
+			offsets.add(offset);
+			if (offset == failAt && !failed.getAndSet(true)) {
+				throw new IOException("fail");
+			}
+			return new ByteArrayInputStream(content, (int) offset, content.length - (int) offset);
+		}).given(session).readRaw(eq("/foo/foo"), anyLong());
+		given(session.finalizeRaw()).willReturn(true);
+		SessionFactory<String> sessionFactory = mock(SessionFactory.class);
+		given(sessionFactory.getSession()).willReturn(session);
+		return sessionFactory;
+	}
+
 	public static class Streamer extends AbstractRemoteFileStreamingMessageSource<String> {
 
 		protected Streamer(RemoteFileTemplate<String> template, Comparator<AbstractFileInfo<String>> comparator) {
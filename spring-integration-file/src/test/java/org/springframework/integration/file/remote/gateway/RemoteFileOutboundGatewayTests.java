@@ -47,9 +47,15 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -67,6 +73,7 @@ import org.springframework.integration.file.remote.session.Session;
 import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.file.support.FileExistsMode;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.PartialSuccessException;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHandlingException;
 import org.springframework.messaging.MessagingException;
@@ -82,6 +89,8 @@ import org.springframework.messaging.support.GenericMessage;
 @SuppressWarnings("rawtypes")
 public class RemoteFileOutboundGatewayTests {
 
+	private static final Log logger = LogFactory.getLog(RemoteFileOutboundGatewayTests.class);
+
 	private static final SpelExpressionParser PARSER = new SpelExpressionParser();
 
 	private final String tmpDir = System.getProperty("java.io.tmpdir");
@@ -200,6 +209,103 @@ public class RemoteFileOutboundGatewayTests {
 				out.getHeaders().get(FileHeaders.REMOTE_DIRECTORY));
 	}
 
+	@Test
+	public void testMGetParallel() throws Exception {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getSession()).thenAnswer(invocation -> new TestSession() {
+
+			@Override
+			public void read(String source, OutputStream outputStream) throws IOException {
+				maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(10);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				active.decrementAndGet();
+				outputStream.write(source.getBytes());
+			}
+
+			@Override
+			public TestLsEntry[] list(String path) throws IOException {
+				TestLsEntry[] entries = new TestLsEntry[40];
+				for (int i = 0; i < entries.length; i++) {
+					entries[i] = new TestLsEntry("f" + (char) ('A' + i), 123, false, false, 1234, "-r--r--r--");
+				}
+				return entries;
+			}
+
+		});
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway(sessionFactory, "mget", "payload");
+		File localDirectory = this.tempFolder.newFolder();
+		gw.setLocalDirectory(localDirectory);
+		gw.setFileExistsMode(FileExistsMode.REPLACE);
+		gw.afterPropertiesSet();
+		long start = System.currentTimeMillis();
+		gw.handleRequestMessage(new GenericMessage<String>("testremote/*"));
+		long sequential = System.currentTimeMillis() - start;
+		assertEquals(1, maxActive.get());
+
+		gw.setParallelism(4);
+		start = System.currentTimeMillis();
+		@SuppressWarnings("unchecked")
+		Message<List<File>> out = (Message<List<File>>) gw
+				.handleRequestMessage(new GenericMessage<String>("testremote/*"));
+		long parallel = System.currentTimeMillis() - start;
+		assertEquals(4, maxActive.get());
+		assertEquals(40, out.getPayload().size());
+		for (int i = 0; i < 40; i++) {
+			File file = out.getPayload().get(i);
+			assertEquals("f" + (char) ('A' + i), file.getName());
+			assertContents("testremote/" + file.getName(), file);
+		}
+		verify(sessionFactory, times(5)).getSession();
+		logger.debug(String.format("mget of 40 files, 10 ms each; sequential: %d ms, 4 sessions: %d ms",
+				sequential, parallel));
+	}
+
+	@Test
+	public void testMGetParallelPartialSuccess() throws Exception {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		when(sessionFactory.getSession()).thenAnswer(invocation -> new TestSession() {
+
+			@Override
+			public void read(String source, OutputStream outputStream) throws IOException {
+				if (source.endsWith("f5")) {
+					throw new IOException("fail");
+				}
+				outputStream.write("testData".getBytes());
+			}
+
+			@Override
+			public TestLsEntry[] list(String path) throws IOException {
+				TestLsEntry[] entries = new TestLsEntry[10];
+				for (int i = 0; i < entries.length; i++) {
+					entries[i] = new TestLsEntry("f" + i, 123, false, false, 1234, "-r--r--r--");
+				}
+				return entries;
+			}
+
+		});
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway(sessionFactory, "mget", "payload");
+		gw.setLocalDirectory(this.tempFolder.newFolder());
+		gw.setParallelism(2);
+		gw.afterPropertiesSet();
+		try {
+			gw.handleRequestMessage(new GenericMessage<String>("testremote/*"));
+			fail("Expected PartialSuccessException");
+		}
+		catch (PartialSuccessException e) {
+			assertThat(e.getDerivedInput().size(), equalTo(10));
+			assertTrue(e.getPartialResults().size() > 0);
+			assertTrue(e.getPartialResults().size() < 10);
+			assertThat(e.getCause().getMessage(), containsString("fail"));
+		}
+	}
+
 	@Test
 	public void testMGetSingle() throws Exception {
 		SessionFactory sessionFactory = mock(SessionFactory.class);
@@ -403,6 +509,32 @@ public class RemoteFileOutboundGatewayTests {
 				out.getHeaders().get(FileHeaders.REMOTE_DIRECTORY));
 	}
 
+	@Test
+	public void testLs_f_R_parallel() throws Exception {
+		SessionFactory sessionFactory = mock(SessionFactory.class);
+		Session session = mock(Session.class);
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway(sessionFactory, "ls", "payload");
+		gw.setOptions("-f -R");
+		gw.setParallelism(3);
+		gw.afterPropertiesSet();
+		when(sessionFactory.getSession()).thenReturn(session);
+		TestLsEntry[] level1 = level1List();
+		TestLsEntry[] level2 = level2List();
+		TestLsEntry[] level3 = level3List();
+		when(session.list("testremote/x/")).thenReturn(level1);
+		when(session.list("testremote/x/d1/")).thenReturn(level2);
+		when(session.list("testremote/x/d1/d2/")).thenReturn(level3);
+		@SuppressWarnings("unchecked")
+		Message<List<TestLsEntry>> out = (Message<List<TestLsEntry>>) gw
+				.handleRequestMessage(new GenericMessage<String>("testremote/x"));
+		assertEquals(4, out.getPayload().size());
+		assertEquals("f1", out.getPayload().get(0).getFilename());
+		assertEquals("d1/d2/f4", out.getPayload().get(1).getFilename());
+		assertEquals("d1/f3", out.getPayload().get(2).getFilename());
+		assertEquals("f2", out.getPayload().get(3).getFilename());
+		verify(sessionFactory, times(3)).getSession();
+	}
+
 	@Test
 	public void testLs_f_R_dirs() throws Exception {
 		SessionFactory sessionFactory = mock(SessionFactory.class);
@@ -966,6 +1098,47 @@ public class RemoteFileOutboundGatewayTests {
 				equalTo("foo/baz.txt"), equalTo("foo/qux.txt"), equalTo("foo/" + dir1.getName() + "/" + file3.getName())));
 	}
 
+	@Test
+	public void testMputParallel() throws Exception {
+		@SuppressWarnings("unchecked")
+		SessionFactory<TestLsEntry> sessionFactory = mock(SessionFactory.class);
+		Set<String> written = ConcurrentHashMap.newKeySet();
+		when(sessionFactory.getSession()).thenAnswer(invocation -> new TestSession() {
+
+			@Override
+			public void write(InputStream inputStream, String destination) throws IOException {
+				written.add(destination);
+			}
+
+		});
+		RemoteFileTemplate<TestLsEntry> template = new RemoteFileTemplate<TestLsEntry>(sessionFactory);
+		template.setRemoteDirectoryExpression(new LiteralExpression("foo/"));
+		template.setUseTemporaryFileName(false);
+		template.setBeanFactory(mock(BeanFactory.class));
+		template.afterPropertiesSet();
+		TestRemoteFileOutboundGateway gw = new TestRemoteFileOutboundGateway(template, "mput", null);
+		gw.setOptions("-R");
+		gw.setParallelism(3);
+		gw.setFileExistsMode(FileExistsMode.REPLACE);
+		gw.afterPropertiesSet();
+		Set<String> expected = new HashSet<>();
+		for (int i = 0; i < 10; i++) {
+			this.tempFolder.newFile("f" + i + ".txt");
+			expected.add("foo/f" + i + ".txt");
+		}
+		File dir = this.tempFolder.newFolder("sub");
+		for (int i = 0; i < 5; i++) {
+			new File(dir, "g" + i + ".txt").createNewFile();
+			expected.add("foo/sub/g" + i + ".txt");
+		}
+		@SuppressWarnings("unchecked")
+		List<String> out = (List<String>) gw.handleRequestMessage(MessageBuilder.withPayload(this.tempFolder.getRoot())
+				.build());
+		assertEquals(15, out.size());
+		assertEquals(expected, new HashSet<>(out));
+		assertEquals(expected, written);
+	}
+
 	abstract static class TestSession implements Session<TestLsEntry> {
 
 		private boolean open;
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2015 the original author or authors.
+ * Copyright 2014-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,8 +17,10 @@
 package org.springframework.integration.file.remote.synchronizer;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 
@@ -26,16 +28,27 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.file.remote.session.Session;
 import org.springframework.integration.file.remote.session.SessionFactory;
+import org.springframework.messaging.Message;
 import org.springframework.messaging.MessagingException;
 
 /**
@@ -46,6 +59,11 @@ import org.springframework.messaging.MessagingException;
  */
 public class AbstractRemoteFileSynchronizerTests {
 
+	private static final Log logger = LogFactory.getLog(AbstractRemoteFileSynchronizerTests.class);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testRollback() throws Exception {
 		final AtomicBoolean failWhenCopyingBar = new AtomicBoolean(true);
@@ -139,6 +157,210 @@ public class AbstractRemoteFileSynchronizerTests {
 		sync.close();
 	}
 
+	@Test
+	public void testParallelTransfers() throws Exception {
+		String[] files = files(40);
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger maxActive = new AtomicInteger();
+		Set<String> transferred = ConcurrentHashMap.newKeySet();
+		CachingSessionFactory<String> sf = new CachingSessionFactory<>(new StringSessionFactory(files), 4);
+		AbstractInboundFileSynchronizer<String> sync = createSynchronizer(sf, (file, localDirectory) -> {
+			int current = active.incrementAndGet();
+			maxActive.accumulateAndGet(current, Math::max);
+			try {
+				Thread.sleep(10);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			active.decrementAndGet();
+			assertTrue(transferred.add(file));
+		});
+
+		long start = System.currentTimeMillis();
+		sync.synchronizeToLocalDirectory(mock(File.class));
+		long sequential = System.currentTimeMillis() - start;
+		assertEquals(40, transferred.size());
+		assertEquals(1, maxActive.get());
+
+		transferred.clear();
+		sync.setFilter(new AcceptOnceFileListFilter<>());
+		sync.setParallelism(4);
+		start = System.currentTimeMillis();
+		sync.synchronizeToLocalDirectory(mock(File.class));
+		long parallel = System.currentTimeMillis() - start;
+		assertEquals(40, transferred.size());
+		assertEquals(4, maxActive.get());
+		logger.debug(String.format("40 files, 10 ms each; sequential: %d ms, 4 sessions: %d ms", sequential, parallel));
+		sync.close();
+		sf.destroy();
+	}
+
+	@Test
+	public void testParallelTransferRetryAndRollback() throws Exception {
+		String[] files = files(20);
+		AtomicInteger copies = new AtomicInteger();
+		Set<String> transferred = ConcurrentHashMap.newKeySet();
+		AtomicBoolean failOnce = new AtomicBoolean(true);
+		AtomicBoolean fail = new AtomicBoolean(true);
+		CountDownLatch file3Transferred = new CountDownLatch(1);
+		CachingSessionFactory<String> sf = new CachingSessionFactory<>(new StringSessionFactory(files), 2);
+		AbstractInboundFileSynchronizer<String> sync = createSynchronizer(sf, (file, localDirectory) -> {
+			if ("file3".equals(file) && failOnce.getAndSet(false)) {
+				throw new IOException("fail once");
+			}
+			if ("file15".equals(file) && fail.get()) {
+				// make sure file3 is retried before the synchronization fails
+				try {
+					assertTrue(file3Transferred.await(10, TimeUnit.SECONDS));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new IOException("fail");
+			}
+			copies.incrementAndGet();
+			assertTrue(transferred.add(file));
+			if ("file3".equals(file)) {
+				file3Transferred.countDown();
+			}
+		});
+		sync.setParallelism(2);
+		sync.setMaxTransferAttempts(2);
+		sync.setTransferRetryInterval(10);
+
+		try {
+			sync.synchronizeToLocalDirectory(mock(File.class));
+			fail("Expected exception");
+		}
+		catch (MessagingException e) {
+			assertThat(e.getCause().getCause(), instanceOf(IOException.class));
+			assertEquals("fail", e.getCause().getCause().getMessage());
+		}
+		assertTrue(transferred.contains("file3"));
+		assertTrue(transferred.size() < 20);
+
+		fail.set(false);
+		sync.synchronizeToLocalDirectory(mock(File.class));
+		assertEquals(20, transferred.size());
+		assertEquals(20, copies.get());
+		sync.close();
+		sf.destroy();
+	}
+
+	@Test(timeout = 10000)
+	public void testParallelTransferSessionFailures() throws Exception {
+		AtomicInteger sessions = new AtomicInteger();
+		SessionFactory<String> sf = () -> {
+			if (sessions.incrementAndGet() > 1) {
+				throw new IllegalStateException("server down");
+			}
+			return new StringSession(files(10));
+		};
+		AbstractInboundFileSynchronizer<String> sync = createSynchronizer(sf, (file, localDirectory) -> { });
+		sync.setParallelism(2);
+		sync.setMaxTransferAttempts(3);
+		sync.setTransferRetryInterval(50);
+
+		long start = System.currentTimeMillis();
+		try {
+			sync.synchronizeToLocalDirectory(mock(File.class));
+			fail("Expected exception");
+		}
+		catch (MessagingException e) {
+			assertThat(e.getCause().getCause(), instanceOf(IllegalStateException.class));
+			assertEquals("server down", e.getCause().getCause().getMessage());
+		}
+		// listing, then up to 3 attempts per worker, with 50 and 100 ms backoffs
+		assertThat(sessions.get(), lessThanOrEqualTo(7));
+		assertTrue(System.currentTimeMillis() - start >= 150);
+		sync.close();
+	}
+
+	@Test
+	public void testPrefetch() throws Exception {
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+		AbstractInboundFileSynchronizer<String> sync =
+				createSynchronizer(new StringSessionFactory(files(10)), (file, localDirectory) -> {
+					threads.add(Thread.currentThread().getName());
+					new File(localDirectory, file).createNewFile();
+				});
+
+		AbstractInboundFileSynchronizingMessageSource<String> source =
+				new AbstractInboundFileSynchronizingMessageSource<String>(sync) {
+
+			@Override
+			public String getComponentType() {
+				return "foo";
+			}
+
+		};
+		source.setLocalDirectory(this.folder.newFolder());
+		source.setBeanFactory(mock(BeanFactory.class));
+		source.setMaxFetchSize(2);
+		source.setPrefetchCount(3);
+		source.afterPropertiesSet();
+
+		Set<String> received = new HashSet<>();
+		int polls = 0;
+		while (received.size() < 10 && polls++ < 1000) {
+			Message<File> message = source.receive();
+			if (message != null) {
+				received.add(message.getPayload().getName());
+			}
+			else {
+				Thread.sleep(10);
+			}
+		}
+		assertEquals(10, received.size());
+		assertTrue(threads.contains(Thread.currentThread().getName()));
+		assertTrue(threads.stream().anyMatch(t -> t.startsWith("remoteFilePrefetch-")));
+		Message<File> message = source.receive();
+		if (message != null) {
+			fail("Unexpected message " + message);
+		}
+		sync.close();
+	}
+
+	private static String[] files(int count) {
+		String[] files = new String[count];
+		for (int i = 0; i < count; i++) {
+			files[i] = "file" + i;
+		}
+		return files;
+	}
+
+	private AbstractInboundFileSynchronizer<String> createSynchronizer(SessionFactory<String> sf, Copier copier) {
+		AbstractInboundFileSynchronizer<String> sync = new AbstractInboundFileSynchronizer<String>(sf) {
+
+			@Override
+			protected boolean isFile(String file) {
+				return true;
+			}
+
+			@Override
+			protected String getFilename(String file) {
+				return file;
+			}
+
+			@Override
+			protected long getModified(String file) {
+				return 0;
+			}
+
+			@Override
+			protected void copyFileToLocalDirectory(String remoteDirectoryPath, String remoteFile, File localDirectory,
+					Session<String> session) throws IOException {
+				copier.copy(remoteFile, localDirectory);
+			}
+
+		};
+		sync.setFilter(new AcceptOnceFileListFilter<String>());
+		sync.setRemoteDirectory("foo");
+		sync.setBeanFactory(mock(BeanFactory.class));
+		return sync;
+	}
+
 	private AbstractInboundFileSynchronizer<String> createLimitingSynchronizer(final AtomicInteger count) {
 		SessionFactory<String> sf = new StringSessionFactory();
 		AbstractInboundFileSynchronizer<String> sync = new AbstractInboundFileSynchronizer<String>(sf) {
@@ -171,17 +393,39 @@ public class AbstractRemoteFileSynchronizerTests {
 		return sync;
 	}
 
+	private interface Copier {
+
+		void copy(String file, File localDirectory) throws IOException;
+
+	}
+
 	private class StringSessionFactory implements SessionFactory<String> {
 
+		private final String[] files;
+
+		StringSessionFactory() {
+			this(new String[] {"foo", "bar", "baz"});
+		}
+
+		StringSessionFactory(String[] files) {
+			this.files = files;
+		}
+
 		@Override
 		public Session<String> getSession() {
-			return new StringSession();
+			return new StringSession(this.files);
 		}
 
 	}
 
 	private class StringSession implements Session<String> {
 
+		private final String[] files;
+
+		StringSession(String[] files) {
+			this.files = files;
+		}
+
 		@Override
 		public boolean remove(String path) throws IOException {
 			return true;
@@ -189,7 +433,7 @@ public class AbstractRemoteFileSynchronizerTests {
 
 		@Override
 		public String[] list(String path) throws IOException {
-			return new String[] {"foo", "bar", "baz"};
+			return this.files.clone();
 		}
 
 		@Override
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.splitter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class FileSplitterPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(FileSplitterPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Test
+	public void testMemoryMappedThroughput() throws Exception {
+		int lines = 500000;
+		File file = File.createTempFile("mapped", ".csv");
+		file.deleteOnExit();
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+			for (int i = 0; i < lines; i++) {
+				writer.write(i + ",foo,bar,baz,qux,äöüß\n");
+			}
+		}
+		AtomicInteger count = new AtomicInteger();
+		MessageChannel counter = (message, timeout) -> {
+			count.incrementAndGet();
+			return true;
+		};
+		FileSplitter splitter = new FileSplitter();
+		splitter.setCharset(Charset.forName("UTF-8"));
+		splitter.setOutputChannel(counter);
+		long start = System.currentTimeMillis();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		long readerTime = System.currentTimeMillis() - start;
+		assertEquals(lines, count.getAndSet(0));
+
+		splitter.setMemoryMapped(true);
+		splitter.setMappedPayloadType(FileSplitter.MappedPayloadType.BYTE_BUFFER);
+		start = System.currentTimeMillis();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		long mappedTime = System.currentTimeMillis() - start;
+		assertEquals(lines, count.get());
+		logger.debug(String.format("%d lines (%d bytes); reader: %d ms, memory-mapped: %d ms",
+				lines, file.length(), readerTime, mappedTime));
+	}
+
+	@Test
+	public void testParallelThroughput() throws Exception {
+		int lines = 1000000;
+		File file = File.createTempFile("parallel", ".csv");
+		file.deleteOnExit();
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+			for (int i = 0; i < lines; i++) {
+				writer.write(i + ",foo,bar,baz,qux,äöüß\n");
+			}
+		}
+		AtomicInteger count = new AtomicInteger();
+		MessageChannel counter = (message, timeout) -> {
+			count.incrementAndGet();
+			return true;
+		};
+		FileSplitter splitter = new FileSplitter();
+		splitter.setMemoryMapped(true);
+		splitter.setMappedPayloadType(FileSplitter.MappedPayloadType.STRING);
+		splitter.setCharset(Charset.forName("UTF-8"));
+		splitter.setOutputChannel(counter);
+		long start = System.currentTimeMillis();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		long sequentialTime = System.currentTimeMillis() - start;
+		assertEquals(lines, count.getAndSet(0));
+
+		ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+		exec.setCorePoolSize(4);
+		exec.afterPropertiesSet();
+		splitter.setTaskExecutor(exec);
+		splitter.setChunkSize(1024 * 1024);
+		start = System.currentTimeMillis();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		long parallelTime = System.currentTimeMillis() - start;
+		assertEquals(lines, count.getAndSet(0));
+
+		splitter.setApplySequence(false);
+		start = System.currentTimeMillis();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		long unorderedTime = System.currentTimeMillis() - start;
+		assertEquals(lines, count.get());
+		exec.destroy();
+		logger.debug(String.format("%d lines (%d bytes); sequential: %d ms, parallel (4 threads) with sequence: "
+				+ "%d ms, without sequence: %d ms", lines, file.length(), sequentialTime, parallelTime,
+				unorderedTime));
+	}
+
+}
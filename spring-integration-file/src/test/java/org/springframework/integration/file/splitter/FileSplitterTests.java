@@ -1,5 +1,5 @@
 /*
- * Copyright 2015-2016 the original author or authors.
+ * Copyright 2015-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,8 +22,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -31,8 +34,12 @@ import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.BitSet;
 import java.util.Date;
 
 import org.junit.AfterClass;
@@ -40,6 +47,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -50,13 +58,16 @@ import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.config.EnableIntegration;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.splitter.FileSplitter.FileMarker;
+import org.springframework.integration.handler.ReplyRequiredException;
 import org.springframework.integration.support.json.JsonObjectMapper;
 import org.springframework.integration.support.json.JsonObjectMapperProvider;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHandlingException;
 import org.springframework.messaging.PollableChannel;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
@@ -264,6 +275,159 @@ public class FileSplitterTests {
 		assertEquals(2, fileMarker.getLineCount());
 	}
 
+	@Test
+	public void testMemoryMapped() throws Exception {
+		File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+		FileCopyUtils.copy("foo\r\nbarbaz\n\näöüß".getBytes("UTF-8"), file);
+		QueueChannel outputChannel = new QueueChannel();
+		FileSplitter splitter = new FileSplitter(true, true);
+		splitter.setMemoryMapped(true);
+		splitter.setMappedRegionSize(8);
+		splitter.setOutputChannel(outputChannel);
+		splitter.handleMessage(new GenericMessage<File>(file));
+		Message<?> received = outputChannel.receive(0);
+		assertEquals("START", received.getHeaders().get(FileHeaders.MARKER));
+		assertEquals("foo", new String((byte[]) outputChannel.receive(0).getPayload(), "UTF-8"));
+		assertEquals("barbaz", new String((byte[]) outputChannel.receive(0).getPayload(), "UTF-8"));
+		assertEquals(0, ((byte[]) outputChannel.receive(0).getPayload()).length);
+		assertEquals("äöüß", new String((byte[]) outputChannel.receive(0).getPayload(), "UTF-8"));
+		received = outputChannel.receive(0);
+		assertEquals("END", received.getHeaders().get(FileHeaders.MARKER));
+		assertEquals(4, ((FileMarker) received.getPayload()).getLineCount());
+		assertNull(outputChannel.receive(0));
+
+		splitter = new FileSplitter(false);
+		splitter.setMemoryMapped(true);
+		splitter.setMappedPayloadType(FileSplitter.MappedPayloadType.BYTE_BUFFER);
+		splitter.setOutputChannel(outputChannel);
+		splitter.handleMessage(new GenericMessage<String>(file.getAbsolutePath()));
+		received = outputChannel.receive(0);
+		assertThat(received.getPayload(), instanceOf(ByteBuffer.class));
+		ByteBuffer buffer = (ByteBuffer) received.getPayload();
+		assertTrue(buffer.isReadOnly());
+		assertEquals(3, buffer.remaining());
+		assertEquals((byte) 'f', buffer.get(0));
+		assertEquals(4, received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE));
+		assertEquals(file, received.getHeaders().get(FileHeaders.ORIGINAL_FILE));
+		assertEquals(6, ((ByteBuffer) outputChannel.receive(0).getPayload()).remaining());
+
+		splitter.setMappedPayloadType(FileSplitter.MappedPayloadType.STRING);
+		splitter.setCharset(Charset.forName("UTF-8"));
+		outputChannel.clear();
+		splitter.handleMessage(new GenericMessage<File>(file));
+		assertEquals("foo", outputChannel.receive(0).getPayload());
+		assertEquals("barbaz", outputChannel.receive(0).getPayload());
+		assertEquals("", outputChannel.receive(0).getPayload());
+		assertEquals("äöüß", outputChannel.receive(0).getPayload());
+		assertNull(outputChannel.receive(0));
+
+		splitter.setMappedRegionSize(4);
+		try {
+			splitter.handleMessage(new GenericMessage<File>(file));
+			fail("Expected exception");
+		}
+		catch (MessageHandlingException e) {
+			assertThat(e.getCause().getMessage(), containsString("longer than the mapped region size 4"));
+		}
+	}
+
+	@Test
+	public void testMemoryMappedRequiresAsciiCompatibleCharset() throws Exception {
+		File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+		FileCopyUtils.copy("foo\nbar".getBytes("UTF-16"), file);
+		FileSplitter splitter = new FileSplitter();
+		splitter.setMemoryMapped(true);
+		splitter.setCharset(Charset.forName("UTF-16"));
+		splitter.setOutputChannel(new QueueChannel());
+		try {
+			splitter.handleMessage(new GenericMessage<File>(file));
+			fail("Expected exception");
+		}
+		catch (MessageHandlingException e) {
+			assertThat(e.getCause().getMessage(), containsString("requires an ASCII compatible charset"));
+		}
+		splitter.setBeanFactory(mock(BeanFactory.class));
+		try {
+			splitter.afterPropertiesSet();
+			fail("Expected exception");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("UTF-16"));
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		int lines = 10000;
+		File file = File.createTempFile("parallel", ".txt");
+		file.deleteOnExit();
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"))) {
+			for (int i = 0; i < lines; i++) {
+				writer.write(i + (i % 7 == 0 ? "" : ",some data") + (i < lines - 1 ? "\n" : ""));
+			}
+		}
+		ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+		exec.setCorePoolSize(4);
+		exec.afterPropertiesSet();
+		QueueChannel outputChannel = new QueueChannel();
+		FileSplitter splitter = new FileSplitter(true, true);
+		splitter.setApplySequence(true);
+		splitter.setMemoryMapped(true);
+		splitter.setMappedPayloadType(FileSplitter.MappedPayloadType.STRING);
+		splitter.setTaskExecutor(exec);
+		splitter.setChunkSize(1000);
+		splitter.setOutputChannel(outputChannel);
+		splitter.handleMessage(new GenericMessage<File>(file));
+		Message<?> received = outputChannel.receive(0);
+		assertEquals("START", received.getHeaders().get(FileHeaders.MARKER));
+		assertEquals(1, received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER));
+		assertEquals(lines + 2, received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE));
+		BitSet seen = new BitSet();
+		for (int i = 0; i < lines; i++) {
+			received = outputChannel.receive(0);
+			String payload = (String) received.getPayload();
+			int line = Integer.parseInt(payload.split(",")[0]);
+			assertEquals(line + 2, received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER));
+			assertEquals(lines + 2, received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_SIZE));
+			assertEquals(file, received.getHeaders().get(FileHeaders.ORIGINAL_FILE));
+			seen.set(line);
+		}
+		assertEquals(lines, seen.cardinality());
+		received = outputChannel.receive(0);
+		assertEquals("END", received.getHeaders().get(FileHeaders.MARKER));
+		assertEquals(lines, ((FileMarker) received.getPayload()).getLineCount());
+		assertEquals(lines + 2, received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER));
+		assertNull(outputChannel.receive(0));
+
+		splitter = new FileSplitter();
+		splitter.setApplySequence(false);
+		splitter.setMemoryMapped(true);
+		splitter.setTaskExecutor(exec);
+		splitter.setChunkSize(1000);
+		splitter.setOutputChannel(outputChannel);
+		splitter.handleMessage(new GenericMessage<File>(file));
+		for (int i = 0; i < lines; i++) {
+			received = outputChannel.receive(0);
+			assertThat(received.getPayload(), instanceOf(byte[].class));
+			assertNull(received.getHeaders().get(IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER));
+		}
+		assertNull(outputChannel.receive(0));
+
+		splitter.setRequiresReply(true);
+		File empty = File.createTempFile("empty", ".txt");
+		empty.deleteOnExit();
+		try {
+			splitter.handleMessage(new GenericMessage<File>(empty));
+			fail("Expected ReplyRequiredException");
+		}
+		catch (ReplyRequiredException e) {
+			// expected
+		}
+		exec.destroy();
+	}
+
 	@Configuration
 	@EnableIntegration
 	@ImportResource("classpath:org/springframework/integration/file/splitter/FileSplitterTests-context.xml")
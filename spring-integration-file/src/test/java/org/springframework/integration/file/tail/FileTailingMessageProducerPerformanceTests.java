@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.file.tail;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class FileTailingMessageProducerPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(FileTailingMessageProducerPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FileTailingMessageProducerSupport adapter;
+
+	@After
+	public void tearDown() {
+		if (this.adapter != null) {
+			this.adapter.stop();
+		}
+	}
+
+	@Test
+	public void testThroughput() throws Exception {
+		int count = 200000;
+		File file = new File(this.folder.getRoot(), "throughput");
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+			for (int i = 0; i < count; i++) {
+				out.write(("2017-01-01 00:00:00.000 INFO [main] o.s.i.Foo : log line " + i + "\n").getBytes());
+			}
+		}
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.afterPropertiesSet();
+
+		ApacheCommonsFileTailingMessageProducer apache = new ApacheCommonsFileTailingMessageProducer();
+		apache.setPollingDelay(10);
+		apache.setEnd(false);
+		long apacheTime = timeTail(apache, file, taskScheduler, count);
+
+		NioFileTailingMessageProducer nio = new NioFileTailingMessageProducer();
+		nio.setPollingDelay(10);
+		nio.setEnd(false);
+		long nioTime = timeTail(nio, file, taskScheduler, count);
+
+		nio = new NioFileTailingMessageProducer();
+		nio.setPollingDelay(10);
+		nio.setEnd(false);
+		nio.setMaxBatchSize(1000);
+		long batchTime = timeTail(nio, file, taskScheduler, count);
+
+		logger.debug(String.format("Tailing %d lines; Apache: %d ms, NIO: %d ms, NIO batched (1000): %d ms",
+				count, apacheTime, nioTime, batchTime));
+		taskScheduler.destroy();
+	}
+
+	private long timeTail(FileTailingMessageProducerSupport adapter, File file, ThreadPoolTaskScheduler scheduler,
+			int count) throws InterruptedException {
+		this.adapter = adapter;
+		AtomicInteger received = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		adapter.setOutputChannel((message, timeout) -> {
+			int lines = message.getPayload() instanceof List ? ((List<?>) message.getPayload()).size() : 1;
+			if (received.addAndGet(lines) == count) {
+				latch.countDown();
+			}
+			return true;
+		});
+		adapter.setFile(file);
+		adapter.setTaskScheduler(scheduler);
+		adapter.setBeanFactory(mock(BeanFactory.class));
+		adapter.afterPropertiesSet();
+		long start = System.currentTimeMillis();
+		adapter.start();
+		assertTrue(latch.await(60, TimeUnit.SECONDS));
+		long time = System.currentTimeMillis() - start;
+		adapter.stop();
+		return time;
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,9 +17,12 @@
 package org.springframework.integration.file.tail;
 
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -50,6 +53,7 @@ import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.file.FileHeaders;
 import org.springframework.integration.file.tail.FileTailingMessageProducerSupport.FileTailingEvent;
 import org.springframework.integration.file.tail.FileTailingMessageProducerSupport.FileTailingIdleEvent;
+import org.springframework.integration.metadata.SimpleMetadataStore;
 import org.springframework.messaging.Message;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
@@ -106,6 +110,78 @@ public class FileTailingMessageProducerTests {
 		testGuts(adapter, "tailer");
 	}
 
+	@Test
+	public void testNio() throws Exception {
+		NioFileTailingMessageProducer adapter = new NioFileTailingMessageProducer();
+		adapter.setPollingDelay(100);
+		adapter.setEnd(false);
+		testGuts(adapter, "pollingTask");
+	}
+
+	@Test
+	public void testNioBatchesOffsetsAndTruncation() throws Exception {
+		File file = new File(this.testDir, "nio");
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			for (int i = 0; i < 10; i++) {
+				out.write(("line" + i + "\r\n").getBytes());
+			}
+			out.write("partial".getBytes());
+		}
+		SimpleMetadataStore store = new SimpleMetadataStore();
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.afterPropertiesSet();
+		QueueChannel outputChannel = new QueueChannel();
+		NioFileTailingMessageProducer adapter = new NioFileTailingMessageProducer();
+		this.adapter = adapter;
+		adapter.setFile(file);
+		adapter.setEnd(false);
+		adapter.setPollingDelay(50);
+		adapter.setMaxBatchSize(4);
+		adapter.setBufferSize(16);
+		adapter.setMetadataStore(store);
+		adapter.setTaskScheduler(taskScheduler);
+		adapter.setOutputChannel(outputChannel);
+		adapter.setBeanFactory(mock(BeanFactory.class));
+		adapter.afterPropertiesSet();
+		adapter.start();
+		List<String> lines = new ArrayList<>();
+		while (lines.size() < 10) {
+			Message<?> message = outputChannel.receive(10000);
+			assertNotNull(message);
+			@SuppressWarnings("unchecked")
+			List<String> payload = (List<String>) message.getPayload();
+			assertThat(payload.size(), lessThanOrEqualTo(4));
+			lines.addAll(payload);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertEquals("line" + i, lines.get(i));
+		}
+		assertNull(outputChannel.receive(200));
+		String key = "tail:" + file.getAbsolutePath();
+		assertThat(store.get(key), startsWith("70:"));
+		adapter.stop();
+
+		try (FileOutputStream out = new FileOutputStream(file, true)) {
+			out.write(" line\nline11\n".getBytes());
+		}
+		adapter.setMaxBatchSize(1);
+		adapter.start();
+		assertEquals("partial line", outputChannel.receive(10000).getPayload());
+		assertEquals("line11", outputChannel.receive(10000).getPayload());
+		int n = 0;
+		while (n++ < 100 && !store.get(key).startsWith("90:")) {
+			Thread.sleep(100);
+		}
+		assertThat(store.get(key), startsWith("90:"));
+
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			out.write("truncated\n".getBytes());
+		}
+		assertEquals("truncated", outputChannel.receive(10000).getPayload());
+		adapter.stop();
+		file.delete();
+	}
+
 	@Test
 	@TailAvailable
 	public void canRecalculateCommandWhenFileOrOptionsChanged() throws IOException {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -100,6 +100,21 @@ public class FtpSession implements Session<FTPFile> {
 		return inputStream;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * <p>Uses the {@code REST} command to start the transfer at the offset.
+	 */
+	@Override
+	public InputStream readRaw(String source, long offset) throws IOException {
+		this.client.setRestartOffset(offset);
+		try {
+			return readRaw(source);
+		}
+		finally {
+			this.client.setRestartOffset(0);
+		}
+	}
+
 	@Override
 	public boolean finalizeRaw() throws IOException {
 		if (!this.readingRaw.compareAndSet(true, false)) {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
 
 import java.io.InputStream;
 
@@ -27,6 +28,7 @@ import org.apache.commons.net.ftp.FTPFile;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -35,6 +37,7 @@ import org.springframework.integration.annotation.Transformer;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.config.EnableIntegration;
 import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.file.remote.session.CachingSessionFactory;
 import org.springframework.integration.file.remote.session.SessionFactory;
 import org.springframework.integration.ftp.FtpTestSupport;
 import org.springframework.integration.ftp.filters.FtpPersistentAcceptOnceFileListFilter;
@@ -47,6 +50,7 @@ import org.springframework.messaging.PollableChannel;
 import org.springframework.scheduling.support.PeriodicTrigger;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.StreamUtils;
 
 /**
  * @author Gary Russell
@@ -73,6 +77,29 @@ public class FtpStreamingMessageSourceTests extends FtpTestSupport {
 		assertNull(this.data.receive(10));
 	}
 
+	@Test
+	public void testChunkedRangedReads() throws Exception {
+		CachingSessionFactory<FTPFile> sessionFactory = new CachingSessionFactory<>(sessionFactory(), 1);
+		FtpStreamingMessageSource messageSource =
+				new FtpStreamingMessageSource(new FtpRemoteFileTemplate(sessionFactory), null);
+		messageSource.setRemoteDirectory("ftpSource/");
+		messageSource.setBeanFactory(mock(BeanFactory.class));
+		messageSource.setChunkSize(3);
+		messageSource.setReadAheadChunks(1);
+		messageSource.afterPropertiesSet();
+		Message<InputStream> received = messageSource.receive();
+		assertNotNull(received);
+		try (InputStream stream = received.getPayload()) {
+			assertThat(new String(StreamUtils.copyToByteArray(stream)), equalTo("source1"));
+		}
+		received = messageSource.receive();
+		assertNotNull(received);
+		try (InputStream stream = received.getPayload()) {
+			assertThat(new String(StreamUtils.copyToByteArray(stream)), equalTo("source2"));
+		}
+		sessionFactory.destroy();
+	}
+
 	@Configuration
 	@EnableIntegration
 	public static class Config {
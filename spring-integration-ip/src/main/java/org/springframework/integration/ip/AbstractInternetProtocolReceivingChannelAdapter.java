@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -123,7 +123,7 @@ public abstract class AbstractInternetProtocolReceivingChannelAdapter
 	 */
 	protected void checkTaskExecutor(final String threadName) {
 		if (this.active && this.taskExecutor == null) {
-			Executor executor = Executors.newFixedThreadPool(this.poolSize, new ThreadFactory() {
+			Executor executor = Executors.newFixedThreadPool(getDefaultTaskExecutorPoolSize(), new ThreadFactory() {
 				@Override
 				public Thread newThread(Runnable runner) {
 					Thread thread = new Thread(runner);
@@ -136,6 +136,16 @@ public abstract class AbstractInternetProtocolReceivingChannelAdapter
 		}
 	}
 
+	/**
+	 * Return the number of threads of the default task executor; by default, the
+	 * {@link #setPoolSize(int) pool size}.
+	 * @return the number of threads.
+	 * @since 5.0
+	 */
+	protected int getDefaultTaskExecutorPoolSize() {
+		return this.poolSize;
+	}
+
 	@Override
 	protected void doStop() {
 		this.active = false;
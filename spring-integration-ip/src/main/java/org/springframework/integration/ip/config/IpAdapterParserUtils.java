@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -72,6 +72,32 @@ public abstract class IpAdapterParserUtils {
 
 	static final String USING_DIRECT_BUFFERS = "using-direct-buffers";
 
+	static final String DESERIALIZE_FROM_BUFFER = "deserialize-from-buffer";
+
+	static final String BUFFER_POOL = "buffer-pool";
+
+	static final String RECEIVER_COUNT = "receiver-count";
+
+	static final String RECEIVE_BATCH_SIZE = "receive-batch-size";
+
+	static final String REUSE_PORT = "reuse-port";
+
+	static final String SEND_BATCH_SIZE = "send-batch-size";
+
+	static final String SEND_QUEUE_CAPACITY = "send-queue-capacity";
+
+	static final String WORKER_SELECTOR_COUNT = "worker-selector-count";
+
+	static final String READ_INLINE = "read-inline";
+
+	static final String WRITE_BATCH_SIZE = "write-batch-size";
+
+	static final String WRITE_BATCH_DELAY = "write-batch-delay";
+
+	static final String READ_PAUSE_THRESHOLD = "read-pause-threshold";
+
+	static final String READ_RESUME_THRESHOLD = "read-resume-threshold";
+
 	static final String SO_LINGER = "so-linger";
 
 	static final String SO_TCP_NODELAY = "so-tcp-no-delay";
@@ -104,6 +130,10 @@ public abstract class IpAdapterParserUtils {
 
 	public static final String REPLY_CHANNEL = "reply-channel";
 
+	public static final String CORRELATION_STRATEGY = "correlation-strategy";
+
+	public static final String ASYNC = "async";
+
 	public static final String LOOKUP_HOST = "lookup-host";
 
 	public static final String APPLY_SEQUENCE = "apply-sequence";
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -46,6 +46,7 @@ import org.springframework.integration.ip.tcp.connection.TcpSSLContextSupport;
 import org.springframework.integration.ip.tcp.connection.TcpSocketFactorySupport;
 import org.springframework.integration.ip.tcp.connection.TcpSocketSupport;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayCrLfSerializer;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.util.Assert;
 
 /**
@@ -104,6 +105,22 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 
 	private volatile boolean usingDirectBuffers;
 
+	private volatile boolean deserializeFromBuffer;
+
+	private volatile ByteBufferPool bufferPool;
+
+	private volatile int workerSelectorCount;
+
+	private volatile boolean readInline;
+
+	private volatile int writeBatchSize;
+
+	private volatile int writeBatchDelay;
+
+	private volatile int readPauseThreshold;
+
+	private volatile int readResumeThreshold;
+
 	private volatile String beanName;
 
 	private volatile boolean applySequence;
@@ -157,6 +174,14 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 				this.setCommonAttributes(connectionFactory);
 				this.setServerAttributes(connectionFactory);
 				connectionFactory.setUsingDirectBuffers(this.usingDirectBuffers);
+				connectionFactory.setDeserializeFromBuffer(this.deserializeFromBuffer);
+				connectionFactory.setBufferPool(this.bufferPool);
+				connectionFactory.setWriteBatchSize(this.writeBatchSize);
+				connectionFactory.setWriteBatchDelay(this.writeBatchDelay);
+				connectionFactory.setReadPauseThreshold(this.readPauseThreshold);
+				connectionFactory.setReadResumeThreshold(this.readResumeThreshold);
+				connectionFactory.setWorkerSelectorCount(this.workerSelectorCount);
+				connectionFactory.setReadInline(this.readInline);
 				connectionFactory.setTcpNioConnectionSupport(this.obtainNioConnectionSupport());
 				this.connectionFactory = connectionFactory;
 			}
@@ -165,6 +190,12 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 						this.host, this.port);
 				this.setCommonAttributes(connectionFactory);
 				connectionFactory.setUsingDirectBuffers(this.usingDirectBuffers);
+				connectionFactory.setDeserializeFromBuffer(this.deserializeFromBuffer);
+				connectionFactory.setBufferPool(this.bufferPool);
+				connectionFactory.setWriteBatchSize(this.writeBatchSize);
+				connectionFactory.setWriteBatchDelay(this.writeBatchDelay);
+				connectionFactory.setReadPauseThreshold(this.readPauseThreshold);
+				connectionFactory.setReadResumeThreshold(this.readResumeThreshold);
 				connectionFactory.setTcpNioConnectionSupport(this.obtainNioConnectionSupport());
 				this.connectionFactory = connectionFactory;
 			}
@@ -347,6 +378,78 @@ public class TcpConnectionFactoryFactoryBean extends AbstractFactoryBean<Abstrac
 		this.usingDirectBuffers = usingDirectBuffers;
 	}
 
+	/**
+	 * @param deserializeFromBuffer the deserializeFromBuffer to set.
+	 * @since 5.0
+	 * @see TcpNioServerConnectionFactory#setDeserializeFromBuffer(boolean)
+	 */
+	public void setDeserializeFromBuffer(boolean deserializeFromBuffer) {
+		this.deserializeFromBuffer = deserializeFromBuffer;
+	}
+
+	/**
+	 * @param bufferPool the bufferPool to set.
+	 * @since 5.0
+	 * @see TcpNioServerConnectionFactory#setBufferPool(ByteBufferPool)
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * @param workerSelectorCount the workerSelectorCount to set.
+	 * @since 5.0
+	 * @see TcpNioServerConnectionFactory#setWorkerSelectorCount(int)
+	 */
+	public void setWorkerSelectorCount(int workerSelectorCount) {
+		this.workerSelectorCount = workerSelectorCount;
+	}
+
+	/**
+	 * @param readInline the readInline to set.
+	 * @since 5.0
+	 * @see TcpNioServerConnectionFactory#setReadInline(boolean)
+	 */
+	public void setReadInline(boolean readInline) {
+		this.readInline = readInline;
+	}
+
+	/**
+	 * @param writeBatchSize the writeBatchSize to set.
+	 * @since 5.0
+	 * @see TcpNioConnection#setWriteBatchSize(int)
+	 */
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	/**
+	 * @param writeBatchDelay the writeBatchDelay to set.
+	 * @since 5.0
+	 * @see TcpNioConnection#setWriteBatchDelay(int)
+	 */
+	public void setWriteBatchDelay(int writeBatchDelay) {
+		this.writeBatchDelay = writeBatchDelay;
+	}
+
+	/**
+	 * @param readPauseThreshold the readPauseThreshold to set.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadPauseThreshold(int)
+	 */
+	public void setReadPauseThreshold(int readPauseThreshold) {
+		this.readPauseThreshold = readPauseThreshold;
+	}
+
+	/**
+	 * @param readResumeThreshold the readResumeThreshold to set.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadResumeThreshold(int)
+	 */
+	public void setReadResumeThreshold(int readResumeThreshold) {
+		this.readResumeThreshold = readResumeThreshold;
+	}
+
 	/**
 	 * @param taskExecutor The task executor.
 	 * @see AbstractConnectionFactory#setTaskExecutor(java.util.concurrent.Executor)
@@ -55,6 +55,9 @@ public class TcpOutboundGatewayParser extends AbstractConsumerEndpointParser {
 		}
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
 				IpAdapterParserUtils.REPLY_TIMEOUT, "sendTimeout");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element,
+				IpAdapterParserUtils.CORRELATION_STRATEGY);
+		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element, IpAdapterParserUtils.ASYNC);
 		return builder;
 	}
 
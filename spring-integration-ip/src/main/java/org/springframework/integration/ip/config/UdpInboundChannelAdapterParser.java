@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,6 +24,8 @@ import org.springframework.beans.factory.xml.ParserContext;
 import org.springframework.integration.config.xml.AbstractChannelAdapterParser;
 import org.springframework.integration.config.xml.IntegrationNamespaceUtils;
 import org.springframework.integration.ip.udp.MulticastReceivingChannelAdapter;
+import org.springframework.integration.ip.udp.NioMulticastReceivingChannelAdapter;
+import org.springframework.integration.ip.udp.NioUnicastReceivingChannelAdapter;
 import org.springframework.integration.ip.udp.UnicastReceivingChannelAdapter;
 import org.springframework.util.StringUtils;
 
@@ -51,6 +53,23 @@ public class UdpInboundChannelAdapterParser extends AbstractChannelAdapterParser
 				IpAdapterParserUtils.TASK_EXECUTOR);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
 				IpAdapterParserUtils.LOOKUP_HOST);
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element,
+				IpAdapterParserUtils.BUFFER_POOL);
+		if ("true".equals(element.getAttribute(IpAdapterParserUtils.USING_NIO))) {
+			IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
+					IpAdapterParserUtils.RECEIVER_COUNT);
+			IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
+					IpAdapterParserUtils.RECEIVE_BATCH_SIZE);
+			IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
+					IpAdapterParserUtils.REUSE_PORT);
+		}
+		else if (element.hasAttribute(IpAdapterParserUtils.RECEIVER_COUNT)
+				|| element.hasAttribute(IpAdapterParserUtils.RECEIVE_BATCH_SIZE)
+				|| element.hasAttribute(IpAdapterParserUtils.REUSE_PORT)) {
+			parserContext.getReaderContext().error(IpAdapterParserUtils.RECEIVER_COUNT + ", "
+					+ IpAdapterParserUtils.RECEIVE_BATCH_SIZE + " and " + IpAdapterParserUtils.REUSE_PORT
+					+ " require " + IpAdapterParserUtils.USING_NIO + "=\"true\"", element);
+		}
 		return builder.getBeanDefinition();
 	}
 
@@ -63,11 +82,16 @@ public class UdpInboundChannelAdapterParser extends AbstractChannelAdapterParser
 	private BeanDefinitionBuilder parseUdp(Element element, ParserContext parserContext) {
 		BeanDefinitionBuilder builder;
 		String multicast = IpAdapterParserUtils.getMulticast(element);
+		boolean nio = "true".equals(element.getAttribute(IpAdapterParserUtils.USING_NIO));
 		if (multicast.equals("false")) {
-			builder = BeanDefinitionBuilder.genericBeanDefinition(UnicastReceivingChannelAdapter.class);
+			builder = BeanDefinitionBuilder.genericBeanDefinition(nio
+					? NioUnicastReceivingChannelAdapter.class
+					: UnicastReceivingChannelAdapter.class);
 		}
 		else {
-			builder = BeanDefinitionBuilder.genericBeanDefinition(MulticastReceivingChannelAdapter.class);
+			builder = BeanDefinitionBuilder.genericBeanDefinition(nio
+					? NioMulticastReceivingChannelAdapter.class
+					: MulticastReceivingChannelAdapter.class);
 			String mcAddress = element
 					.getAttribute(IpAdapterParserUtils.MULTICAST_ADDRESS);
 			if (!StringUtils.hasText(mcAddress)) {
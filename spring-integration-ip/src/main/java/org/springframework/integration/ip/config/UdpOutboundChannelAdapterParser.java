@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -55,6 +55,10 @@ public class UdpOutboundChannelAdapterParser extends AbstractOutboundChannelAdap
 		}
 		else {
 			builder = BeanDefinitionBuilder.genericBeanDefinition(UnicastSendingMessageHandler.class);
+			IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
+					IpAdapterParserUtils.SEND_BATCH_SIZE);
+			IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
+					IpAdapterParserUtils.SEND_QUEUE_CAPACITY);
 		}
 		IpAdapterParserUtils.addDestinationConfigToConstructor(element, builder, parserContext);
 		IpAdapterParserUtils.addConstructorValueIfAttributeDefined(builder, element, IpAdapterParserUtils.CHECK_LENGTH);
@@ -84,6 +88,8 @@ public class UdpOutboundChannelAdapterParser extends AbstractOutboundChannelAdap
 				IpAdapterParserUtils.TASK_EXECUTOR);
 		IntegrationNamespaceUtils.setValueIfAttributeDefined(builder, element,
 				"socket-expression", "socketExpressionString");
+		IntegrationNamespaceUtils.setReferenceIfAttributeDefined(builder, element,
+				IpAdapterParserUtils.BUFFER_POOL);
 		return builder;
 	}
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2001-2016 the original author or authors.
+ * Copyright 2001-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,9 +16,12 @@
 
 package org.springframework.integration.ip.tcp;
 
+import java.util.Date;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -30,6 +33,8 @@ import org.springframework.expression.Expression;
 import org.springframework.expression.common.LiteralExpression;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.integration.MessageTimeoutException;
+import org.springframework.integration.aggregator.CorrelationStrategy;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.expression.ExpressionUtils;
 import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
 import org.springframework.integration.ip.IpHeaders;
@@ -44,13 +49,23 @@ import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.util.Assert;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 /**
  * TCP outbound gateway that uses a client connection factory. If the factory is configured
  * for single-use connections, each request is sent on a new connection; if the factory does not use
  * single use connections, each request is blocked until the previous response is received
- * (or times out). Asynchronous requests/responses over the same connection are not
- * supported - use a pair of outbound/inbound adapters for that use case.
+ * (or times out).
+ * <p>
+ * When a {@link CorrelationStrategy} is provided, requests are multiplexed instead: any
+ * number of requests can be in flight on the shared connection at the same time, and
+ * replies are correlated with the key that the strategy extracts from the reply (for
+ * example, from a header mapped from the wire format, or from a field of the payload
+ * produced by the deserializer). With {@link #setAsync(boolean) async} the gateway then
+ * returns a {@link org.springframework.util.concurrent.ListenableFuture} rather than
+ * blocking the calling thread until the reply arrives. When the connection is closed,
+ * the futures of its requests in flight are failed after a short delay, so a reply
+ * received before the close (but processed after it) can still complete them.
  * <p>
  * {@link SmartLifecycle} methods delegate to the underlying {@link AbstractConnectionFactory}
  *
@@ -61,12 +76,16 @@ import org.springframework.util.Assert;
 public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 		implements TcpSender, TcpListener, Lifecycle {
 
+	private static final long SECOND_CHANCE_DELAY = 2000;
+
 	private volatile AbstractClientConnectionFactory connectionFactory;
 
 	private volatile boolean isSingleUse;
 
 	private final Map<String, AsyncReply> pendingReplies = new ConcurrentHashMap<String, AsyncReply>();
 
+	private final Map<Object, AsyncReply> multiplexedReplies = new ConcurrentHashMap<Object, AsyncReply>();
+
 	private final Semaphore semaphore = new Semaphore(1, true);
 
 	private volatile Expression remoteTimeoutExpression = new LiteralExpression("10000");
@@ -75,6 +94,10 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 
 	private volatile EvaluationContext evaluationContext = new StandardEvaluationContext();
 
+	private volatile CorrelationStrategy correlationStrategy;
+
+	private volatile CorrelationStrategy replyCorrelationStrategy;
+
 	/**
 	 * @param requestTimeout the requestTimeout to set
 	 */
@@ -100,6 +123,31 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 		this.evaluationContext = evaluationContext;
 	}
 
+	/**
+	 * Set a {@link CorrelationStrategy} to multiplex requests over the shared connection;
+	 * it is used to determine the correlation key of each request and, unless a
+	 * {@link #setReplyCorrelationStrategy(CorrelationStrategy) reply correlation strategy}
+	 * is provided, of each reply. Keys of requests in flight must be unique. Requires a
+	 * connection factory that does not use single-use connections.
+	 * @param correlationStrategy the correlation strategy.
+	 * @since 5.0
+	 */
+	public void setCorrelationStrategy(CorrelationStrategy correlationStrategy) {
+		this.correlationStrategy = correlationStrategy;
+	}
+
+	/**
+	 * Set a {@link CorrelationStrategy} to determine the correlation key of replies when
+	 * multiplexing, if it differs from the one used for requests (for example, when the
+	 * key is extracted from a field of the deserialized reply payload).
+	 * @param replyCorrelationStrategy the reply correlation strategy.
+	 * @since 5.0
+	 * @see #setCorrelationStrategy(CorrelationStrategy)
+	 */
+	public void setReplyCorrelationStrategy(CorrelationStrategy replyCorrelationStrategy) {
+		this.replyCorrelationStrategy = replyCorrelationStrategy;
+	}
+
 	@Override
 	protected void doInit() {
 		super.doInit();
@@ -107,12 +155,27 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 		if (this.evaluationContext == null) {
 			this.evaluationContext = ExpressionUtils.createStandardEvaluationContext(getBeanFactory());
 		}
+		if (this.correlationStrategy != null) {
+			Assert.state(this.connectionFactory == null || !this.isSingleUse,
+					"Multiplexing requires a connection factory that does not use single-use connections");
+			if (this.replyCorrelationStrategy == null) {
+				this.replyCorrelationStrategy = this.correlationStrategy;
+			}
+		}
+	}
+
+	@Override
+	protected String getTaskSchedulerPoolBeanName() {
+		return IntegrationContextUtils.TIMER_TASK_SCHEDULER_BEAN_NAME;
 	}
 
 	@Override
 	protected Object handleRequestMessage(Message<?> requestMessage) {
 		Assert.notNull(this.connectionFactory, this.getClass().getName() +
 				" requires a client connection factory");
+		if (this.correlationStrategy != null) {
+			return handleMultiplexedRequestMessage(requestMessage);
+		}
 		boolean haveSemaphore = false;
 		TcpConnection connection = null;
 		String connectionId = null;
@@ -176,8 +239,83 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 		}
 	}
 
+	private Object handleMultiplexedRequestMessage(final Message<?> requestMessage) {
+		final Object correlationKey = this.correlationStrategy.getCorrelationKey(requestMessage);
+		if (correlationKey == null) {
+			throw new MessagingException(requestMessage, "Cannot multiplex request - no correlation key");
+		}
+		boolean async = isAsync();
+		TcpConnection connection = null;
+		AsyncReply reply = null;
+		boolean sent = false;
+		try {
+			connection = this.connectionFactory.getConnection();
+			long remoteTimeout = this.remoteTimeoutExpression.getValue(this.evaluationContext, requestMessage,
+					Long.class);
+			reply = new AsyncReply(remoteTimeout, connection.getConnectionId(),
+					async ? new SettableListenableFuture<Message<?>>() : null);
+			if (this.multiplexedReplies.putIfAbsent(correlationKey, reply) != null) {
+				reply = null;
+				throw new MessagingException(requestMessage,
+						"Cannot multiplex request - a request with correlation key " + correlationKey
+								+ " is already in flight");
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Added pending reply " + correlationKey + " on " + reply.connectionId);
+			}
+			connection.send(requestMessage);
+			sent = true;
+			if (async) {
+				scheduleRemoteTimeout(requestMessage, correlationKey, reply);
+				return reply.future;
+			}
+			Message<?> replyMessage = reply.getReply();
+			if (replyMessage == null) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Remote Timeout for " + correlationKey + " on " + reply.connectionId);
+				}
+				// other requests are in flight on the connection - leave it open
+				throw new MessageTimeoutException(requestMessage, "Timed out waiting for response");
+			}
+			return replyMessage;
+		}
+		catch (Exception e) {
+			logger.error("Tcp Gateway exception", e);
+			if (e instanceof MessagingException) {
+				throw (MessagingException) e;
+			}
+			throw new MessagingException("Failed to send or receive", e);
+		}
+		finally {
+			if (reply != null && (!async || !sent)) {
+				this.multiplexedReplies.remove(correlationKey, reply);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Removed pending reply " + correlationKey);
+				}
+			}
+		}
+	}
+
+	private void scheduleRemoteTimeout(final Message<?> requestMessage, final Object correlationKey,
+			final AsyncReply reply) {
+		Assert.state(getTaskScheduler() != null, "An async multiplexing gateway requires a task scheduler");
+		final ScheduledFuture<?> timeout = getTaskScheduler().schedule(() -> {
+			if (this.multiplexedReplies.remove(correlationKey, reply)) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Remote Timeout for " + correlationKey + " on " + reply.connectionId);
+				}
+				reply.future.setException(new MessageTimeoutException(requestMessage,
+						"Timed out waiting for response"));
+			}
+		}, new Date(System.currentTimeMillis() + reply.remoteTimeout));
+		reply.future.addCallback(result -> timeout.cancel(false), ex -> timeout.cancel(false));
+	}
+
 	@Override
 	public boolean onMessage(Message<?> message) {
+		if (this.correlationStrategy != null) {
+			return onMultiplexedMessage(message);
+		}
 		String connectionId = (String) message.getHeaders().get(IpHeaders.CONNECTION_ID);
 		if (connectionId == null) {
 			logger.error("Cannot correlate response - no connection id");
@@ -207,6 +345,61 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 		return false;
 	}
 
+	private boolean onMultiplexedMessage(Message<?> message) {
+		String connectionId = (String) message.getHeaders().get(IpHeaders.CONNECTION_ID);
+		if (message instanceof ErrorMessage) {
+			if (connectionId != null) {
+				failPendingReplies(connectionId, message);
+			}
+			return false;
+		}
+		Object correlationKey = this.replyCorrelationStrategy.getCorrelationKey(message);
+		AsyncReply reply = correlationKey == null ? null : this.multiplexedReplies.remove(correlationKey);
+		if (reply == null) {
+			String errorMessage = "Cannot correlate response - no pending reply for " + correlationKey;
+			logger.error(errorMessage);
+			publishNoConnectionEvent(message, connectionId, errorMessage);
+			return false;
+		}
+		if (logger.isTraceEnabled()) {
+			logger.trace("onMessage: " + correlationKey + "(" + message + ")");
+		}
+		reply.setReply(message);
+		return false;
+	}
+
+	/**
+	 * Convey an error to all the requests in flight on a connection.
+	 * As for the blocking requests, which wait for a second chance, the futures are only
+	 * failed after a delay, unless a good reply (e.g. read before the close on another NIO
+	 * thread) completes them in the meantime.
+	 */
+	private void failPendingReplies(String connectionId, Message<?> errorMessage) {
+		for (Entry<Object, AsyncReply> entry : this.multiplexedReplies.entrySet()) {
+			AsyncReply reply = entry.getValue();
+			if (connectionId.equals(reply.connectionId)) {
+				if (reply.future != null) {
+					failAfterSecondChance(entry.getKey(), reply, errorMessage);
+				}
+				else {
+					reply.setReply(errorMessage);
+				}
+			}
+		}
+	}
+
+	private void failAfterSecondChance(final Object correlationKey, final AsyncReply reply,
+			final Message<?> errorMessage) {
+		if (!reply.failureScheduled) {
+			reply.failureScheduled = true;
+			getTaskScheduler().schedule(() -> {
+				if (this.multiplexedReplies.remove(correlationKey, reply)) {
+					reply.setReply(errorMessage);
+				}
+			}, new Date(System.currentTimeMillis() + SECOND_CHANCE_DELAY));
+		}
+	}
+
 	private void publishNoConnectionEvent(Message<?> message, String connectionId, String errorMessage) {
 		ApplicationEventPublisher applicationEventPublisher = this.connectionFactory.getApplicationEventPublisher();
 		if (applicationEventPublisher != null) {
@@ -229,7 +422,10 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 
 	@Override
 	public void removeDeadConnection(TcpConnection connection) {
-		// do nothing - no asynchronous multiplexing supported
+		if (this.correlationStrategy != null && !this.multiplexedReplies.isEmpty()) {
+			failPendingReplies(connection.getConnectionId(), new ErrorMessage(
+					new MessagingException("Connection " + connection.getConnectionId() + " closed")));
+		}
 	}
 
 	/**
@@ -282,12 +478,24 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 
 		private final long remoteTimeout;
 
+		private final String connectionId;
+
+		private final SettableListenableFuture<Message<?>> future;
+
 		private volatile Message<?> reply;
 
+		private volatile boolean failureScheduled;
+
 		private AsyncReply(long remoteTimeout) {
+			this(remoteTimeout, null, null);
+		}
+
+		private AsyncReply(long remoteTimeout, String connectionId, SettableListenableFuture<Message<?>> future) {
 			this.latch = new CountDownLatch(1);
 			this.secondChanceLatch = new CountDownLatch(1);
 			this.remoteTimeout = remoteTimeout;
+			this.connectionId = connectionId;
+			this.future = future;
 		}
 
 		/**
@@ -312,7 +520,7 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 					 * before the reply, on a different thread.
 					 */
 					logger.debug("second chance");
-					this.secondChanceLatch.await(2, TimeUnit.SECONDS); // NOSONAR don't care about result
+					this.secondChanceLatch.await(SECOND_CHANCE_DELAY, TimeUnit.MILLISECONDS); // NOSONAR don't care about result
 					waitForMessageAfterError = false;
 				}
 				else if (this.reply.getPayload() instanceof MessagingException) {
@@ -328,10 +536,21 @@ public class TcpOutboundGateway extends AbstractReplyProducingMessageHandler
 		/**
 		 * We have a race condition when a socket is closed right after the reply is received. The close "error"
 		 * might arrive before the actual reply. Overwrite an error with a good reply, but not vice-versa.
+		 * A future is completed immediately; the gateway delays the errors for futures instead.
 		 * @param reply the reply message.
 		 */
 		public void setReply(Message<?> reply) {
-			if (this.reply == null) {
+			if (this.future != null) {
+				if (reply instanceof ErrorMessage) {
+					Object payload = reply.getPayload();
+					this.future.setException(payload instanceof MessagingException ? (MessagingException) payload
+							: new MessagingException("Exception while awaiting reply", (Throwable) payload));
+				}
+				else {
+					this.future.set(reply);
+				}
+			}
+			else if (this.reply == null) {
 				this.reply = reply;
 				this.latch.countDown();
 			}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,6 +28,7 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +42,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
@@ -117,7 +119,9 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 
 	protected final Object lifecycleMonitor = new Object();
 
-	private volatile long nextCheckForClosedNioConnections;
+	private final AtomicLong nextCheckForClosedNioConnections = new AtomicLong();
+
+	private final AtomicLong nextHarvestOfClosedConnections = new AtomicLong();
 
 	private volatile int nioHarvestInterval = DEFAULT_NIO_HARVEST_INTERVAL;
 
@@ -127,6 +131,8 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 
 	private volatile long readDelay = DEFAULT_READ_DELAY;
 
+	private final AtomicLong readPauses = new AtomicLong();
+
 	private volatile Integer sslHandshakeTimeout;
 
 	public AbstractConnectionFactory(int port) {
@@ -495,6 +501,16 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 		this.readDelay = readDelay;
 	}
 
+	/**
+	 * @return the number of times reading was paused on an NIO connection created by
+	 * this factory because too much data was waiting to be assembled into messages.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadPauseThreshold(int)
+	 */
+	public long getReadPauseCount() {
+		return this.readPauses.get();
+	}
+
 	@Override
 	protected void onInit() throws Exception {
 		super.onInit();
@@ -612,12 +628,35 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 	 */
 	protected void processNioSelections(int selectionCount, final Selector selector, ServerSocketChannel server,
 			Map<SocketChannel, TcpNioConnection> connections) throws IOException {
+
+		processNioSelections(selectionCount, selector, server, connections, this.nextCheckForClosedNioConnections);
+	}
+
+	/**
+	 * Times out any expired connections then, if {@code selectionCount > 0},
+	 * processes the selected keys.
+	 * Removes closed connections from the connections field, and from the connections parameter.
+	 * Used when several selectors share the factory, each with its own connections and
+	 * its own time of the next check for closed connections.
+	 * @param selectionCount Number of IO Events, if 0 we were probably woken up by a close.
+	 * @param selector The selector.
+	 * @param server The server socket channel.
+	 * @param connections Map of connections.
+	 * @param nextCheckForClosedConnections the time of the next check for closed
+	 * connections in the map, updated by this method.
+	 * @throws IOException Any IOException.
+	 * @since 5.0
+	 */
+	protected void processNioSelections(int selectionCount, final Selector selector, ServerSocketChannel server,
+			Map<SocketChannel, TcpNioConnection> connections, AtomicLong nextCheckForClosedConnections)
+			throws IOException {
+
 		final long now = System.currentTimeMillis();
 		rescheduleDelayedReads(selector, now);
 		if (this.soTimeout > 0 ||
-				now >= this.nextCheckForClosedNioConnections ||
+				now >= nextCheckForClosedConnections.get() ||
 				selectionCount == 0) {
-			this.nextCheckForClosedNioConnections = now + this.nioHarvestInterval;
+			nextCheckForClosedConnections.set(now + this.nioHarvestInterval);
 			Iterator<Entry<SocketChannel, TcpNioConnection>> it = connections.entrySet().iterator();
 			while (it.hasNext()) {
 				SocketChannel channel = it.next().getKey();
@@ -627,7 +666,8 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 				}
 				else if (this.soTimeout > 0) {
 					TcpNioConnection connection = connections.get(channel);
-					if (now - connection.getLastRead() >= this.soTimeout) {
+					// a connection with paused reads is not idle; it has data waiting to be assembled
+					if (!connection.isReadPaused() && now - connection.getLastRead() >= this.soTimeout) {
 						/*
 						 * For client connections, we have to wait for 2 timeouts if the last
 						 * send was within the current timeout.
@@ -653,7 +693,12 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 				}
 			}
 		}
-		this.harvestClosedConnections();
+		long nextHarvest = this.nextHarvestOfClosedConnections.get();
+		// the connections are shared by the selectors; only one of them harvests at a time
+		if ((now >= nextHarvest || selectionCount == 0)
+				&& this.nextHarvestOfClosedConnections.compareAndSet(nextHarvest, now + this.nioHarvestInterval)) {
+			this.harvestClosedConnections();
+		}
 		if (logger.isTraceEnabled()) {
 			if (this.host == null) {
 				logger.trace("Port " + this.port + " SelectionCount: " + selectionCount);
@@ -672,6 +717,11 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 					if (!key.isValid()) {
 						logger.debug("Selection key no longer valid");
 					}
+					else if (key.isReadable() && isReadInline((TcpNioConnection) key.attachment())) {
+						TcpNioConnection connection = (TcpNioConnection) key.attachment();
+						connection.setLastRead(System.currentTimeMillis());
+						readInline(key, connection);
+					}
 					else if (key.isReadable()) {
 						key.interestOps(key.interestOps() - SelectionKey.OP_READ);
 						final TcpNioConnection connection;
@@ -700,8 +750,16 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 								}
 								if (!delayed) {
 									if (key.channel().isOpen()) {
-										key.interestOps(SelectionKey.OP_READ);
-										selector.wakeup();
+										if (connection.deferReadInterest(key)) {
+											// the connection sets the interest when ready
+										}
+										else if (connection.pauseReadingIfNecessary(key)) {
+											this.readPauses.incrementAndGet();
+										}
+										else {
+											key.interestOps(SelectionKey.OP_READ);
+											selector.wakeup();
+										}
 									}
 									else {
 										connection.sendExceptionToListener(new EOFException("Connection is closed"));
@@ -737,6 +795,54 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 		}
 	}
 
+	/**
+	 * Return true if a read for the connection should be performed on the selector
+	 * thread instead of being handed off to the task executor. Only safe when the
+	 * read never blocks, e.g. when the connection decodes frames directly from its
+	 * read buffer. The listener's {@code onMessage} is then also invoked on the
+	 * selector thread, so a slow listener delays the reads of all the connections of
+	 * that selector. Default false.
+	 * @param connection the connection.
+	 * @return true to read on the selector thread.
+	 * @since 5.0
+	 */
+	protected boolean isReadInline(TcpNioConnection connection) {
+		return false;
+	}
+
+	private void readInline(SelectionKey key, TcpNioConnection connection) {
+		try {
+			connection.readPacket();
+		}
+		catch (Exception e) {
+			if (connection.isOpen()) {
+				logger.error("Exception on read " + connection.getConnectionId() + " " + e.getMessage());
+				connection.close();
+			}
+			else {
+				logger.debug("Connection closed");
+			}
+		}
+		if (!key.channel().isOpen()) {
+			connection.sendExceptionToListener(new EOFException("Connection is closed"));
+		}
+	}
+
+	/**
+	 * @param connections the connections.
+	 * @return the number of open connections with paused reads.
+	 * @since 5.0
+	 */
+	protected static int pausedCount(Map<SocketChannel, TcpNioConnection> connections) {
+		int count = 0;
+		for (TcpNioConnection connection : connections.values().toArray(new TcpNioConnection[0])) {
+			if (connection.isReadPaused() && connection.isOpen()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
 	protected void delayRead(Selector selector, long now, final SelectionKey key) {
 		TcpNioConnection connection = (TcpNioConnection) key.attachment();
 		if (!this.delayedReads.add(new PendingIO(now, key))) { // should never happen - unbounded queue
@@ -760,13 +866,23 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 	 */
 	private void rescheduleDelayedReads(Selector selector, long now) {
 		boolean wakeSelector = false;
+		Set<Selector> otherSelectors = null;
 		try {
 			while (this.delayedReads.size() > 0) {
 				if (this.delayedReads.peek().failedAt + this.readDelay < now) {
 					PendingIO pendingRead = this.delayedReads.take();
 					if (pendingRead.key.channel().isOpen()) {
 						pendingRead.key.interestOps(SelectionKey.OP_READ);
-						wakeSelector = true;
+						if (pendingRead.key.selector() == selector) {
+							wakeSelector = true;
+						}
+						else {
+							// the key belongs to another (worker) selector
+							if (otherSelectors == null) {
+								otherSelectors = new HashSet<>();
+							}
+							otherSelectors.add(pendingRead.key.selector());
+						}
 						if (logger.isDebugEnabled()) {
 							logger.debug("Rescheduling delayed read for " + ((TcpNioConnection) pendingRead.key.attachment()).getConnectionId());
 						}
@@ -788,6 +904,11 @@ public abstract class AbstractConnectionFactory extends IntegrationObjectSupport
 			if (wakeSelector) {
 				selector.wakeup();
 			}
+			if (otherSelectors != null) {
+				for (Selector other : otherSelectors) {
+					other.wakeup();
+				}
+			}
 		}
 	}
 
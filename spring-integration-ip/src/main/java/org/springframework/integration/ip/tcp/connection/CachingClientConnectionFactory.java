@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,16 +19,21 @@ package org.springframework.integration.ip.tcp.connection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.ip.IpHeaders;
 import org.springframework.integration.support.AbstractIntegrationMessageBuilder;
+import org.springframework.integration.util.ConfigurablePool;
+import org.springframework.integration.util.LockFreePool;
 import org.springframework.integration.util.SimplePool;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.util.Assert;
 
 /**
  * Connection factory that caches connections from the underlying target factory. The underlying
@@ -44,7 +49,11 @@ public class CachingClientConnectionFactory extends AbstractClientConnectionFact
 
 	private final AbstractClientConnectionFactory targetConnectionFactory;
 
-	private final SimplePool<TcpConnectionSupport> pool;
+	private final ConfigurablePool<TcpConnectionSupport> pool;
+
+	private volatile long idleConnectionValidationInterval;
+
+	private volatile ScheduledFuture<?> validationTask;
 
 	/**
 	 * Construct a caching connection factory that delegates to the provided factory, with
@@ -53,11 +62,27 @@ public class CachingClientConnectionFactory extends AbstractClientConnectionFact
 	 * @param poolSize the number of connections to allow.
 	 */
 	public CachingClientConnectionFactory(AbstractClientConnectionFactory target, int poolSize) {
+		this(target, poolSize, false);
+	}
+
+	/**
+	 * Construct a caching connection factory that delegates to the provided factory, with
+	 * the provided pool size. When {@code lockFree} is true, connections are cached in a
+	 * {@link LockFreePool} instead of a {@link SimplePool}, avoiding contention when
+	 * the factory is used by many concurrent threads (e.g. a {@code TcpOutboundGateway}
+	 * with many callers).
+	 * @param target the target factory.
+	 * @param poolSize the number of connections to allow.
+	 * @param lockFree true to use a {@link LockFreePool}.
+	 * @since 5.0
+	 */
+	public CachingClientConnectionFactory(AbstractClientConnectionFactory target, int poolSize,
+			boolean lockFree) {
 		super("", 0);
 		// override single-use to true so the target creates multiple connections
 		target.setSingleUse(true);
 		this.targetConnectionFactory = target;
-		this.pool = new SimplePool<TcpConnectionSupport>(poolSize,
+		SimplePool.PoolItemCallback<TcpConnectionSupport> callback =
 				new SimplePool.PoolItemCallback<TcpConnectionSupport>() {
 
 					@Override
@@ -80,12 +105,15 @@ public class CachingClientConnectionFactory extends AbstractClientConnectionFact
 						connection.close();
 					}
 
-				});
+				};
+		this.pool = lockFree
+				? new LockFreePool<TcpConnectionSupport>(poolSize, callback)
+				: new SimplePool<TcpConnectionSupport>(poolSize, callback);
 	}
 
 	/**
 	 * @param connectionWaitTimeout the new timeout.
-	 * @see SimplePool#setWaitTimeout(long)
+	 * @see ConfigurablePool#setWaitTimeout(long)
 	 */
 	public void setConnectionWaitTimeout(int connectionWaitTimeout) {
 		this.pool.setWaitTimeout(connectionWaitTimeout);
@@ -93,12 +121,28 @@ public class CachingClientConnectionFactory extends AbstractClientConnectionFact
 
 	/**
 	 * @param poolSize the new pool size.
-	 * @see SimplePool#setPoolSize(int)
+	 * @see ConfigurablePool#setPoolSize(int)
 	 */
 	public void setPoolSize(int poolSize) {
 		this.pool.setPoolSize(poolSize);
 	}
 
+	/**
+	 * Set the interval (in milliseconds) at which idle connections are checked, in the
+	 * background, and closed connections are removed from the pool, so that requests
+	 * don't encounter them. Requires the lock-free pool (see
+	 * {@link #CachingClientConnectionFactory(AbstractClientConnectionFactory, int, boolean)}
+	 * and a task scheduler. Default 0 - idle connections are only checked when they are
+	 * retrieved from the pool.
+	 * @param idleConnectionValidationInterval the interval.
+	 * @since 5.0
+	 */
+	public void setIdleConnectionValidationInterval(long idleConnectionValidationInterval) {
+		Assert.isTrue(idleConnectionValidationInterval <= 0 || this.pool instanceof LockFreePool,
+				"Idle connection validation requires the lock-free pool");
+		this.idleConnectionValidationInterval = idleConnectionValidationInterval;
+	}
+
 	/**
 	 * @see SimplePool#getPoolSize()
 	 * @return the pool size.
@@ -380,14 +424,29 @@ public class CachingClientConnectionFactory extends AbstractClientConnectionFact
 		setActive(true);
 		this.targetConnectionFactory.start();
 		super.start();
+		if (this.idleConnectionValidationInterval > 0 && this.validationTask == null) {
+			Assert.state(getTaskScheduler() != null, "Idle connection validation requires a task scheduler");
+			final LockFreePool<TcpConnectionSupport> lockFreePool = (LockFreePool<TcpConnectionSupport>) this.pool;
+			this.validationTask = getTaskScheduler().scheduleAtFixedRate(lockFreePool::removeStaleIdleItems,
+					this.idleConnectionValidationInterval);
+		}
 	}
 
 	@Override
 	public synchronized void stop() {
+		if (this.validationTask != null) {
+			this.validationTask.cancel(false);
+			this.validationTask = null;
+		}
 		this.targetConnectionFactory.stop();
 		this.pool.removeAllIdleItems();
 	}
 
+	@Override
+	protected String getTaskSchedulerPoolBeanName() {
+		return IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME;
+	}
+
 	private final class CachedConnection extends TcpConnectionInterceptorSupport {
 
 		private final AtomicBoolean released = new AtomicBoolean();
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,8 +17,11 @@
 package org.springframework.integration.ip.tcp.connection;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
 import java.security.GeneralSecurityException;
+import java.util.concurrent.Executor;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -37,6 +40,10 @@ public class DefaultTcpNioSSLConnectionSupport implements TcpNioConnectionSuppor
 
 	private volatile SSLContext sslContext;
 
+	private volatile boolean sessionResumption;
+
+	private volatile Executor delegatedTaskExecutor;
+
 	public DefaultTcpNioSSLConnectionSupport(TcpSSLContextSupport sslContextSupport) {
 		Assert.notNull(sslContextSupport, "TcpSSLContextSupport must not be null");
 		try {
@@ -48,16 +55,50 @@ public class DefaultTcpNioSSLConnectionSupport implements TcpNioConnectionSuppor
 		Assert.notNull(this.sslContext, "SSLContext retrieved from context support must not be null");
 	}
 
+	/**
+	 * Set to true to create client engines with the peer's host and port, so that a
+	 * session cached by the {@link SSLContext} can be resumed (with an abbreviated
+	 * handshake) when connecting again to the same server. Default false.
+	 * @param sessionResumption true to enable session resumption for client
+	 * connections.
+	 * @since 5.0
+	 * @see DefaultTcpSSLContextSupport#setSessionCacheSize(int)
+	 */
+	public void setSessionResumption(boolean sessionResumption) {
+		this.sessionResumption = sessionResumption;
+	}
+
+	/**
+	 * Set an executor on which to run the delegated tasks of SSL handshakes, rather
+	 * than on the thread reading from the socket.
+	 * @param delegatedTaskExecutor the executor.
+	 * @since 5.0
+	 * @see TcpNioSSLConnection#setDelegatedTaskExecutor(Executor)
+	 */
+	public void setDelegatedTaskExecutor(Executor delegatedTaskExecutor) {
+		this.delegatedTaskExecutor = delegatedTaskExecutor;
+	}
+
 	/**
 	 * Creates a {@link TcpNioSSLConnection}.
 	 */
 	@Override
 	public TcpNioConnection createNewConnection(SocketChannel socketChannel, boolean server, boolean lookupHost,
 			ApplicationEventPublisher applicationEventPublisher, String connectionFactoryName) throws Exception {
-		SSLEngine sslEngine = this.sslContext.createSSLEngine();
+		SSLEngine sslEngine;
+		SocketAddress peer = socketChannel.getRemoteAddress();
+		if (this.sessionResumption && !server && peer instanceof InetSocketAddress) {
+			// the session cache is keyed by the peer's host and port
+			InetSocketAddress address = (InetSocketAddress) peer;
+			sslEngine = this.sslContext.createSSLEngine(address.getHostString(), address.getPort());
+		}
+		else {
+			sslEngine = this.sslContext.createSSLEngine();
+		}
 		postProcessSSLEngine(sslEngine);
 		TcpNioSSLConnection tcpNioSSLConnection = new TcpNioSSLConnection(socketChannel, server, lookupHost,
 				applicationEventPublisher, connectionFactoryName, sslEngine);
+		tcpNioSSLConnection.setDelegatedTaskExecutor(this.delegatedTaskExecutor);
 		tcpNioSSLConnection.init();
 		return tcpNioSSLConnection;
 	}
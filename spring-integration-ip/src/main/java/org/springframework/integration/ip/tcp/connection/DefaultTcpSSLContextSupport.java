@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import java.security.KeyStore;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManagerFactory;
 
 import org.springframework.core.io.Resource;
@@ -48,6 +49,10 @@ public class DefaultTcpSSLContextSupport implements TcpSSLContextSupport {
 
 	private volatile String protocol = "TLS";
 
+	private volatile int sessionCacheSize = -1;
+
+	private volatile int sessionTimeout = -1;
+
 	/**
 	 * Prepares for the creation of an SSLContext using the supplied
 	 * key/trust stores and passwords.
@@ -86,6 +91,9 @@ public class DefaultTcpSSLContextSupport implements TcpSSLContextSupport {
 
 		sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
 
+		configureSessionContext(sslContext.getServerSessionContext());
+		configureSessionContext(sslContext.getClientSessionContext());
+
 		return sslContext;
 
 	}
@@ -99,4 +107,41 @@ public class DefaultTcpSSLContextSupport implements TcpSSLContextSupport {
 		this.protocol = protocol;
 	}
 
+	/**
+	 * Set the maximum number of sessions cached by the client and server session
+	 * contexts; cached sessions can be resumed by an abbreviated handshake, which
+	 * avoids the expensive key exchange when a peer reconnects. 0 means no limit.
+	 * Default: the JSSE default.
+	 * @param sessionCacheSize the cache size.
+	 * @since 5.0
+	 * @see SSLSessionContext#setSessionCacheSize(int)
+	 */
+	public void setSessionCacheSize(int sessionCacheSize) {
+		Assert.isTrue(sessionCacheSize >= 0, "'sessionCacheSize' cannot be negative");
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * Set the time (in seconds) for which cached sessions can be resumed. 0 means no
+	 * limit. Default: the JSSE default.
+	 * @param sessionTimeout the timeout.
+	 * @since 5.0
+	 * @see SSLSessionContext#setSessionTimeout(int)
+	 */
+	public void setSessionTimeout(int sessionTimeout) {
+		Assert.isTrue(sessionTimeout >= 0, "'sessionTimeout' cannot be negative");
+		this.sessionTimeout = sessionTimeout;
+	}
+
+	private void configureSessionContext(SSLSessionContext sessionContext) {
+		if (sessionContext != null) {
+			if (this.sessionCacheSize >= 0) {
+				sessionContext.setSessionCacheSize(this.sessionCacheSize);
+			}
+			if (this.sessionTimeout >= 0) {
+				sessionContext.setSessionTimeout(this.sessionTimeout);
+			}
+		}
+	}
+
 }
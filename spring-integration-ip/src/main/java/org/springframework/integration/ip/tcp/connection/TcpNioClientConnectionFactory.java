@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,6 +30,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.scheduling.SchedulingAwareRunnable;
 import org.springframework.util.Assert;
 
@@ -46,6 +47,18 @@ public class TcpNioClientConnectionFactory extends
 
 	private volatile boolean usingDirectBuffers;
 
+	private volatile boolean deserializeFromBuffer;
+
+	private volatile ByteBufferPool bufferPool;
+
+	private volatile int writeBatchSize;
+
+	private volatile int writeBatchDelay;
+
+	private volatile int readPauseThreshold;
+
+	private volatile int readResumeThreshold;
+
 	private volatile Selector selector;
 
 	private final Map<SocketChannel, TcpNioConnection> channelMap = new ConcurrentHashMap<SocketChannel, TcpNioConnection>();
@@ -87,6 +100,12 @@ public class TcpNioClientConnectionFactory extends
 		TcpNioConnection connection = this.tcpNioConnectionSupport.createNewConnection(
 				socketChannel, false, this.isLookupHost(), this.getApplicationEventPublisher(), this.getComponentName());
 		connection.setUsingDirectBuffers(this.usingDirectBuffers);
+		connection.setDeserializeFromBuffer(this.deserializeFromBuffer);
+		connection.setBufferPool(this.bufferPool);
+		connection.setWriteBatchSize(this.writeBatchSize);
+		connection.setWriteBatchDelay(this.writeBatchDelay);
+		connection.setReadPauseThreshold(this.readPauseThreshold);
+		connection.setReadResumeThreshold(this.readResumeThreshold);
 		connection.setTaskExecutor(this.getTaskExecutor());
 		if (getSslHandshakeTimeout() != null && connection instanceof TcpNioSSLConnection) {
 			((TcpNioSSLConnection) connection).setHandshakeTimeout(getSslHandshakeTimeout());
@@ -113,6 +132,86 @@ public class TcpNioClientConnectionFactory extends
 		this.usingDirectBuffers = usingDirectBuffers;
 	}
 
+	/**
+	 * When set to true, and the deserializer is a
+	 * {@link org.springframework.integration.ip.tcp.serializer.ByteBufferDeserializer},
+	 * connections created by this factory decode frames directly from the read buffer
+	 * and send the messages to the listener on the reading thread.
+	 * @param deserializeFromBuffer true to decode from the read buffer.
+	 * @since 5.0
+	 * @see TcpNioConnection#setDeserializeFromBuffer(boolean)
+	 */
+	public void setDeserializeFromBuffer(boolean deserializeFromBuffer) {
+		this.deserializeFromBuffer = deserializeFromBuffer;
+	}
+
+	/**
+	 * Set a {@link ByteBufferPool} from which connections created by this factory
+	 * obtain their read buffers.
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 * @see TcpNioConnection#setBufferPool(ByteBufferPool)
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Set the write batch size for connections created by this factory; when greater
+	 * than zero, messages sent concurrently on a connection are written together with
+	 * a gathering write.
+	 * @param writeBatchSize the batch size in bytes.
+	 * @since 5.0
+	 * @see TcpNioConnection#setWriteBatchSize(int)
+	 */
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	/**
+	 * Set the time (in milliseconds) connections created by this factory wait for more
+	 * messages before writing a batch smaller than the write batch size.
+	 * @param writeBatchDelay the delay.
+	 * @since 5.0
+	 * @see TcpNioConnection#setWriteBatchDelay(int)
+	 */
+	public void setWriteBatchDelay(int writeBatchDelay) {
+		this.writeBatchDelay = writeBatchDelay;
+	}
+
+	/**
+	 * Set the number of bytes waiting to be assembled into messages at which
+	 * connections created by this factory stop reading from the socket; reading
+	 * resumes when the pending data falls to the resume threshold.
+	 * @param readPauseThreshold the threshold in bytes.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadPauseThreshold(int)
+	 */
+	public void setReadPauseThreshold(int readPauseThreshold) {
+		this.readPauseThreshold = readPauseThreshold;
+	}
+
+	/**
+	 * Set the number of pending bytes at or below which paused connections created by
+	 * this factory resume reading. Default half the pause threshold.
+	 * @param readResumeThreshold the threshold in bytes.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadResumeThreshold(int)
+	 */
+	public void setReadResumeThreshold(int readResumeThreshold) {
+		this.readResumeThreshold = readResumeThreshold;
+	}
+
+	/**
+	 * @return the number of open connections that have paused reading because too
+	 * much data is waiting to be assembled into messages.
+	 * @since 5.0
+	 * @see #setReadPauseThreshold(int)
+	 */
+	public int getPausedConnectionCount() {
+		return pausedCount(this.channelMap);
+	}
+
 	public void setTcpNioConnectionSupport(TcpNioConnectionSupport tcpNioSupport) {
 		Assert.notNull(tcpNioSupport, "TcpNioSupport must not be null");
 		this.tcpNioConnectionSupport = tcpNioSupport;
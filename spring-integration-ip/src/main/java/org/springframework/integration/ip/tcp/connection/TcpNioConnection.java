@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,15 +17,19 @@
 package org.springframework.integration.ip.tcp.connection;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -33,14 +37,20 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ssl.SSLSession;
 
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.ip.tcp.serializer.ByteBufferDeserializer;
 import org.springframework.integration.ip.tcp.serializer.SoftEndOfStreamException;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.util.CompositeExecutor;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessagingException;
@@ -88,6 +98,42 @@ public class TcpNioConnection extends TcpConnectionSupport {
 
 	private volatile boolean timedOut;
 
+	private volatile boolean deserializeFromBuffer;
+
+	private volatile ByteBufferDeserializer<?> bufferDeserializer;
+
+	private ByteBuffer frameBuffer;
+
+	private Object bufferPayload;
+
+	private volatile ByteBufferPool bufferPool;
+
+	private final Object bufferMonitor = new Object();
+
+	private boolean reading;
+
+	private boolean buffersReleased;
+
+	private volatile int writeBatchSize;
+
+	private volatile int writeBatchDelay;
+
+	private final Object writeBatchMonitor = new Object();
+
+	private WriteBatch pendingWriteBatch;
+
+	private boolean writingBatch;
+
+	private volatile int readPauseThreshold;
+
+	private volatile int readResumeThreshold;
+
+	private final AtomicBoolean readPaused = new AtomicBoolean();
+
+	private final AtomicLong readPauseCount = new AtomicLong();
+
+	private volatile SelectionKey pausedKey;
+
 	/**
 	 * Constructs a TcpNetConnection for the SocketChannel.
 	 * @param socketChannel The socketChannel.
@@ -114,6 +160,185 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		this.pipeTimeout = pipeTimeout;
 	}
 
+	/**
+	 * If true, and the deserializer is a {@link ByteBufferDeserializer}, frames are
+	 * decoded directly from the read buffer and the resulting messages are sent to
+	 * the listener on the reading thread, instead of being assembled from an
+	 * {@link InputStream} on a separate thread. Other deserializers always use the
+	 * stream.
+	 * @param deserializeFromBuffer true to decode from the read buffer.
+	 * @since 5.0
+	 */
+	public void setDeserializeFromBuffer(boolean deserializeFromBuffer) {
+		this.deserializeFromBuffer = deserializeFromBuffer;
+	}
+
+	/**
+	 * @return true if frames are decoded directly from the read buffer, in which case
+	 * a read never blocks waiting for an assembler thread.
+	 * @since 5.0
+	 * @see #setDeserializeFromBuffer(boolean)
+	 */
+	protected boolean isDeserializingFromBuffer() {
+		return this.deserializeFromBuffer && getDeserializer() instanceof ByteBufferDeserializer;
+	}
+
+	/**
+	 * Set a {@link ByteBufferPool} from which to obtain the read buffers; they are
+	 * returned to the pool when the connection is closed.
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	protected ByteBufferPool getBufferPool() {
+		return this.bufferPool;
+	}
+
+	/**
+	 * Set the write batch size; when greater than zero, messages sent concurrently on
+	 * this connection are serialized into a batch, and written with a single gathering
+	 * write (and, with SSL, encrypted together into as few records as possible), when
+	 * no other batch is being written. Each send still returns when its message has
+	 * been written. A batch is written as soon as the previous batch has been written
+	 * (flush-on-idle) or, with a {@link #setWriteBatchDelay(int) batch delay}, when it
+	 * reaches this size or the delay expires. Default 0 - each message is written
+	 * immediately.
+	 * @param writeBatchSize the batch size in bytes.
+	 * @since 5.0
+	 */
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	/**
+	 * Set the time (in milliseconds) to wait for more messages before writing a batch
+	 * that is smaller than the {@link #setWriteBatchSize(int) batch size}. Increases
+	 * the latency of each send by up to this delay. Default 0 - write as soon as no
+	 * other batch is being written.
+	 * @param writeBatchDelay the delay.
+	 * @since 5.0
+	 */
+	public void setWriteBatchDelay(int writeBatchDelay) {
+		this.writeBatchDelay = writeBatchDelay;
+	}
+
+	/**
+	 * Set the number of bytes, read from the socket but not yet assembled into
+	 * messages, at which reading from the socket is paused; reading resumes when the
+	 * pending data falls to the {@link #setReadResumeThreshold(int) resume threshold}.
+	 * While paused, the selector no longer selects the connection for reading, so data
+	 * backs up in the socket buffers (and TCP flow control eventually slows the
+	 * sender); the reading thread never blocks waiting for the assembler. Only applies
+	 * to messages assembled from the {@link InputStream}; it must be set before the
+	 * connection is used. Default 0 - the reading thread blocks (for up to the pipe
+	 * timeout) when 5 buffers are waiting to be assembled.
+	 * @param readPauseThreshold the threshold in bytes.
+	 * @since 5.0
+	 */
+	public void setReadPauseThreshold(int readPauseThreshold) {
+		this.readPauseThreshold = readPauseThreshold;
+	}
+
+	/**
+	 * Set the number of pending bytes at or below which reading is resumed after it
+	 * was paused. Default 0 - half the {@link #setReadPauseThreshold(int) pause
+	 * threshold}.
+	 * @param readResumeThreshold the threshold in bytes.
+	 * @since 5.0
+	 */
+	public void setReadResumeThreshold(int readResumeThreshold) {
+		this.readResumeThreshold = readResumeThreshold;
+	}
+
+	/**
+	 * @return true if reading from the socket is currently paused because too much
+	 * data is waiting to be assembled.
+	 * @since 5.0
+	 * @see #setReadPauseThreshold(int)
+	 */
+	public boolean isReadPaused() {
+		return this.readPaused.get();
+	}
+
+	/**
+	 * @return the number of times reading from the socket was paused.
+	 * @since 5.0
+	 * @see #setReadPauseThreshold(int)
+	 */
+	public long getReadPauseCount() {
+		return this.readPauseCount.get();
+	}
+
+	/**
+	 * Invoked by the factory after a read, before the connection is selected for
+	 * reading again; pauses reading if the data waiting to be assembled exceeds the
+	 * {@link #setReadPauseThreshold(int) threshold}. The assembler sets the key's
+	 * interest in reads when the data has drained.
+	 * @param key the connection's selection key.
+	 * @return true if reading is paused, in which case the caller must not set the
+	 * key's interest in reads.
+	 * @since 5.0
+	 */
+	boolean pauseReadingIfNecessary(SelectionKey key) {
+		int threshold = this.readPauseThreshold;
+		if (threshold <= 0 || pendingBytes() < threshold) {
+			return false;
+		}
+		this.pausedKey = key;
+		this.readPaused.set(true);
+		this.readPauseCount.incrementAndGet();
+		if (logger.isDebugEnabled()) {
+			logger.debug(getConnectionId() + " Pausing reads; pending: " + pendingBytes());
+		}
+		// the assembler may have drained the data before it could see the pause
+		if (pendingBytes() <= resumeThreshold()) {
+			return !this.readPaused.compareAndSet(true, false);
+		}
+		return true;
+	}
+
+	/**
+	 * Invoked by the factory after a read, before {@link #pauseReadingIfNecessary(SelectionKey)};
+	 * subclasses can return true when reading has to wait for some other activity, in
+	 * which case they are responsible for setting the key's interest in reads.
+	 * @param key the connection's selection key.
+	 * @return true if the caller must not set the key's interest in reads.
+	 * @since 5.0
+	 */
+	boolean deferReadInterest(SelectionKey key) {
+		return false;
+	}
+
+	private void resumeReadingIfNecessary() {
+		if (this.readPaused.get() && pendingBytes() <= resumeThreshold()
+				&& this.readPaused.compareAndSet(true, false)) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(getConnectionId() + " Resuming reads; pending: " + pendingBytes());
+			}
+			SelectionKey key = this.pausedKey;
+			try {
+				key.interestOps(SelectionKey.OP_READ);
+				key.selector().wakeup();
+			}
+			catch (CancelledKeyException e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug(getConnectionId() + " Selection key cancelled; cannot resume reads");
+				}
+			}
+		}
+	}
+
+	private int pendingBytes() {
+		return this.channelInputStream.available.get();
+	}
+
+	private int resumeThreshold() {
+		return this.readResumeThreshold > 0 ? this.readResumeThreshold : this.readPauseThreshold / 2;
+	}
+
 	@Override
 	public void close() {
 		this.setNoReadErrorOnClose(true);
@@ -131,9 +356,35 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		}
 		catch (Exception e) {
 		}
+		synchronized (this.bufferMonitor) {
+			if (!this.reading) {
+				releaseBuffers();
+			}
+		}
 		super.close();
 	}
 
+	private void releaseBuffers() {
+		ByteBufferPool pool = this.bufferPool;
+		if (pool != null && !this.buffersReleased) {
+			this.buffersReleased = true;
+			releaseBuffers(pool);
+		}
+	}
+
+	/**
+	 * Return the buffers obtained from the pool; invoked once, after the connection
+	 * is closed and no read is in progress.
+	 * @param pool the pool.
+	 * @since 5.0
+	 */
+	protected void releaseBuffers(ByteBufferPool pool) {
+		pool.release(this.rawBuffer);
+		this.rawBuffer = null;
+		pool.release(this.frameBuffer);
+		this.frameBuffer = null;
+	}
+
 	@Override
 	public boolean isOpen() {
 		return this.socketChannel.isOpen();
@@ -142,6 +393,10 @@ public class TcpNioConnection extends TcpConnectionSupport {
 	@Override
 	@SuppressWarnings("unchecked")
 	public void send(Message<?> message) throws Exception {
+		if (this.writeBatchSize > 0) {
+			sendCoalesced(message);
+			return;
+		}
 		synchronized (this.socketChannel) {
 			if (this.bufferedOutputStream == null) {
 				int writeBufferSize = this.socketChannel.socket().getSendBufferSize();
@@ -165,8 +420,111 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		}
 	}
 
+	/**
+	 * Serialize the message and add it to the pending batch; the first sender to find
+	 * no batch being written becomes the writer for the pending batch and, after the
+	 * (optional) batch delay, writes all the messages in the batch with a single
+	 * gathering write. Returns when the batch containing the message has been written.
+	 * @param message the message.
+	 * @throws Exception any exception.
+	 */
+	@SuppressWarnings("unchecked")
+	private void sendCoalesced(Message<?> message) throws Exception {
+		Object object = this.getMapper().fromMessage(message);
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try {
+			((Serializer<Object>) this.getSerializer()).serialize(object, serialized);
+		}
+		catch (Exception e) {
+			this.publishConnectionExceptionEvent(new MessagingException(message, "Failed TCP serialization", e));
+			this.closeConnection(true);
+			throw e;
+		}
+		this.lastSend = System.currentTimeMillis();
+		WriteBatch batch;
+		boolean writer = false;
+		synchronized (this.writeBatchMonitor) {
+			batch = this.pendingWriteBatch;
+			if (batch == null) {
+				batch = new WriteBatch();
+				this.pendingWriteBatch = batch;
+			}
+			batch.add(serialized.toByteArray());
+			if (batch.size >= this.writeBatchSize) {
+				this.writeBatchMonitor.notifyAll();
+			}
+			while (!batch.done && this.writingBatch) {
+				this.writeBatchMonitor.wait();
+			}
+			if (!batch.done) {
+				writer = true;
+				this.writingBatch = true;
+				awaitBatch(batch);
+				this.pendingWriteBatch = null;
+			}
+		}
+		if (writer) {
+			writeBatch(batch);
+		}
+		if (batch.failure != null) {
+			throw batch.failure;
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug(getConnectionId() + " Message sent " + message);
+		}
+	}
+
+	/**
+	 * Wait for more messages to be added to the batch, until it reaches the batch size
+	 * or the batch delay expires. Called with the batch monitor held.
+	 * @param batch the batch.
+	 */
+	private void awaitBatch(WriteBatch batch) {
+		long delay = this.writeBatchDelay;
+		if (delay <= 0) {
+			return;
+		}
+		long deadline = System.currentTimeMillis() + delay;
+		try {
+			while (batch.size < this.writeBatchSize && delay > 0) {
+				this.writeBatchMonitor.wait(delay);
+				delay = deadline - System.currentTimeMillis();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void writeBatch(WriteBatch batch) {
+		try {
+			if (logger.isDebugEnabled()) {
+				logger.debug(getConnectionId() + " writing batch of " + batch.buffers.size()
+						+ " messages, " + batch.size + " bytes");
+			}
+			getChannelOutputStream().doWrite(batch.buffers.toArray(new ByteBuffer[batch.buffers.size()]));
+		}
+		catch (Exception e) {
+			batch.failure = e;
+			this.publishConnectionExceptionEvent(e);
+			this.closeConnection(true);
+		}
+		finally {
+			synchronized (this.writeBatchMonitor) {
+				batch.done = true;
+				this.writingBatch = false;
+				this.writeBatchMonitor.notifyAll();
+			}
+		}
+	}
+
 	@Override
 	public Object getPayload() throws Exception {
+		if (this.bufferDeserializer != null) {
+			Object payload = this.bufferPayload;
+			this.bufferPayload = null;
+			return payload;
+		}
 		return this.getDeserializer().deserialize(this.channelInputStream);
 	}
 
@@ -187,14 +545,19 @@ public class TcpNioConnection extends TcpConnectionSupport {
 
 	/**
 	 * Allocates a ByteBuffer of the requested length using normal or
-	 * direct buffers, depending on the usingDirectBuffers field.
+	 * direct buffers, depending on the usingDirectBuffers field. When a
+	 * {@link ByteBufferPool} is provided, the buffer is obtained from the pool
+	 * and its capacity may exceed the requested length.
 	 *
 	 * @param length The buffer length.
 	 * @return The buffer.
 	 */
 	protected ByteBuffer allocate(int length) {
 		ByteBuffer buffer;
-		if (this.usingDirectBuffers) {
+		if (this.bufferPool != null) {
+			buffer = this.bufferPool.acquire(length, this.usingDirectBuffers);
+		}
+		else if (this.usingDirectBuffers) {
 			buffer = ByteBuffer.allocateDirect(length);
 		}
 		else {
@@ -222,6 +585,9 @@ public class TcpNioConnection extends TcpConnectionSupport {
 				try {
 					if (dataAvailable()) {
 						Message<?> message = convert();
+						if (this.readPauseThreshold > 0) {
+							resumeReadingIfNecessary();
+						}
 						if (dataAvailable()) {
 							// there is more data in the pipe; run another assembler
 							// to assemble the next message, while we send ours
@@ -391,6 +757,14 @@ public class TcpNioConnection extends TcpConnectionSupport {
 	private void doRead() throws Exception {
 		if (this.rawBuffer == null) {
 			this.rawBuffer = allocate(this.maxMessageSize);
+			Deserializer<?> deserializer = getDeserializer();
+			if (this.deserializeFromBuffer && deserializer instanceof ByteBufferDeserializer) {
+				this.bufferDeserializer = (ByteBufferDeserializer<?>) deserializer;
+			}
+		}
+		if (this.bufferDeserializer != null) {
+			doReadToBuffer();
+			return;
 		}
 
 		this.writingLatch = new CountDownLatch(1);
@@ -436,8 +810,93 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		}
 	}
 
+	private void doReadToBuffer() throws Exception {
+		try {
+			int len = this.socketChannel.read(this.rawBuffer);
+			if (len < 0) {
+				this.closeConnection(true);
+				return;
+			}
+			this.rawBuffer.flip();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Read " + len + " into raw buffer");
+			}
+			this.sendToPipe(this.rawBuffer);
+		}
+		catch (Exception e) {
+			this.publishConnectionExceptionEvent(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Decode and dispatch all complete frames in the buffer; the remaining bytes of a
+	 * partial frame are retained in the read buffer (or, for data that is not read
+	 * directly into the read buffer, e.g. decrypted data, in a frame buffer).
+	 * @param buffer the buffer in read mode.
+	 */
+	private void deserializeFromBuffer(ByteBuffer buffer) {
+		ByteBuffer frames = buffer;
+		if (buffer != this.rawBuffer) {
+			if (this.frameBuffer == null) {
+				this.frameBuffer = allocate(Math.max(this.maxMessageSize, buffer.remaining()));
+			}
+			else if (this.frameBuffer.remaining() < buffer.remaining()) {
+				this.frameBuffer = grow(this.frameBuffer, this.frameBuffer.position() + buffer.remaining());
+			}
+			this.frameBuffer.put(buffer);
+			this.frameBuffer.flip();
+			frames = this.frameBuffer;
+		}
+		try {
+			Object payload;
+			while ((payload = this.bufferDeserializer.deserialize(frames)) != null) {
+				this.bufferPayload = payload;
+				Message<?> message = this.getMapper().toMessage(this);
+				if (message != null) {
+					sendToChannel(message);
+				}
+			}
+		}
+		catch (Exception e) {
+			if (!this.isNoReadErrorOnClose()) {
+				logger.error("Read exception " + this.getConnectionId() + " " + e.getClass().getSimpleName()
+						+ ":" + e.getCause() + ":" + e.getMessage());
+			}
+			this.closeConnection(true);
+			this.sendExceptionToListener(e);
+			frames.clear();
+			return;
+		}
+		frames.compact();
+		if (!frames.hasRemaining()) {
+			// a partial frame fills the buffer; the deserializer rejects frames over its max size
+			ByteBuffer bigger = grow(frames, frames.capacity() * 2);
+			if (frames == this.rawBuffer) {
+				this.rawBuffer = bigger;
+			}
+			else {
+				this.frameBuffer = bigger;
+			}
+		}
+	}
+
+	private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		ByteBuffer bigger = allocate(capacity);
+		buffer.flip();
+		bigger.put(buffer);
+		if (this.bufferPool != null) {
+			this.bufferPool.release(buffer);
+		}
+		return bigger;
+	}
+
 	protected void sendToPipe(ByteBuffer rawBuffer) throws IOException {
 		Assert.notNull(rawBuffer, "rawBuffer cannot be null");
+		if (this.bufferDeserializer != null) {
+			deserializeFromBuffer(rawBuffer);
+			return;
+		}
 		if (logger.isTraceEnabled()) {
 			logger.trace(this.getConnectionId() + " Sending " + rawBuffer.limit() + " to pipe");
 		}
@@ -478,6 +937,12 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		if (logger.isDebugEnabled()) {
 			logger.debug(this.getConnectionId() + " Reading...");
 		}
+		synchronized (this.bufferMonitor) {
+			if (this.buffersReleased) {
+				return;
+			}
+			this.reading = true;
+		}
 		try {
 			doRead();
 		}
@@ -496,6 +961,14 @@ public class TcpNioConnection extends TcpConnectionSupport {
 					e.getMessage(), e);
 			this.closeConnection(true);
 		}
+		finally {
+			synchronized (this.bufferMonitor) {
+				this.reading = false;
+				if (!isOpen()) {
+					releaseBuffers();
+				}
+			}
+		}
 	}
 
 	/**
@@ -559,6 +1032,30 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		return this.lastSend;
 	}
 
+	/**
+	 * Serialized messages waiting to be written together.
+	 */
+	private static final class WriteBatch {
+
+		private final List<ByteBuffer> buffers = new ArrayList<>();
+
+		private int size;
+
+		private boolean done;
+
+		private Exception failure;
+
+		WriteBatch() {
+			super();
+		}
+
+		void add(byte[] bytes) {
+			this.buffers.add(ByteBuffer.wrap(bytes));
+			this.size += bytes.length;
+		}
+
+	}
+
 	/**
 	 * OutputStream to wrap a SocketChannel; implements timeout on write.
 	 *
@@ -607,20 +1104,53 @@ public class TcpNioConnection extends TcpConnectionSupport {
 			if (remaining == 0) {
 				return;
 			}
+			registerForWrite();
+			while (remaining > 0) {
+				awaitWritable();
+				TcpNioConnection.this.socketChannel.write(buffer);
+				remaining = buffer.remaining();
+			}
+		}
+
+		/**
+		 * Write the buffers with gathering writes.
+		 * @param buffers the buffers.
+		 * @throws IOException an IOException.
+		 * @since 5.0
+		 */
+		protected synchronized void doWrite(ByteBuffer[] buffers) throws IOException {
+			long remaining = 0;
+			for (ByteBuffer buffer : buffers) {
+				remaining += buffer.remaining();
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug(getConnectionId() + " writing " + remaining + " from " + buffers.length + " buffers");
+			}
+			remaining -= TcpNioConnection.this.socketChannel.write(buffers);
+			if (remaining == 0) {
+				return;
+			}
+			registerForWrite();
+			while (remaining > 0) {
+				awaitWritable();
+				remaining -= TcpNioConnection.this.socketChannel.write(buffers);
+			}
+		}
+
+		private void registerForWrite() throws IOException {
 			if (this.selector == null) {
 				this.selector = Selector.open();
 				this.soTimeout = TcpNioConnection.this.socketChannel.socket().getSoTimeout();
 			}
 			TcpNioConnection.this.socketChannel.register(this.selector, SelectionKey.OP_WRITE);
-			while (remaining > 0) {
-				int selectionCount = this.selector.select(this.soTimeout);
-				if (selectionCount == 0) {
-					throw new SocketTimeoutException("Timeout on write");
-				}
-				this.selector.selectedKeys().clear();
-				TcpNioConnection.this.socketChannel.write(buffer);
-				remaining = buffer.remaining();
+		}
+
+		private void awaitWritable() throws IOException {
+			int selectionCount = this.selector.select(this.soTimeout);
+			if (selectionCount == 0) {
+				throw new SocketTimeoutException("Timeout on write");
 			}
+			this.selector.selectedKeys().clear();
 		}
 
 	}
@@ -629,14 +1159,17 @@ public class TcpNioConnection extends TcpConnectionSupport {
 	 * Provides an InputStream to receive data from {@link SocketChannel#read(ByteBuffer)}
 	 * operations. Each new buffer is added to a BlockingQueue; when the reading thread
 	 * exhausts the current buffer, it retrieves the next from the queue.
-	 * Writes block for up to the pipeTimeout if 5 buffers are queued to be read.
+	 * Writes block for up to the pipeTimeout if 5 buffers are queued to be read,
+	 * unless reads are flow controlled with a read pause threshold.
 	 *
 	 */
 	class ChannelInputStream extends InputStream {
 
 		private static final int BUFFER_LIMIT = 5;
 
-		private final BlockingQueue<byte[]> buffers = new LinkedBlockingQueue<byte[]>(BUFFER_LIMIT);
+		private final BlockingQueue<byte[]> buffers = new LinkedBlockingQueue<byte[]>();
+
+		private final Semaphore bufferSpace = new Semaphore(BUFFER_LIMIT);
 
 		private volatile byte[] currentBuffer;
 
@@ -701,6 +1234,10 @@ public class TcpNioConnection extends TcpConnectionSupport {
 		}
 
 		private byte[] getNextBuffer() throws IOException {
+			boolean flowControlled = TcpNioConnection.this.readPauseThreshold > 0;
+			if (flowControlled) {
+				resumeReadingIfNecessary();
+			}
 			byte[] buffer = null;
 			while (buffer == null) {
 				try {
@@ -714,11 +1251,15 @@ public class TcpNioConnection extends TcpConnectionSupport {
 					throw new IOException("Interrupted while waiting for data", e);
 				}
 			}
+			if (!flowControlled) {
+				this.bufferSpace.release();
+			}
 			return buffer;
 		}
 
 		/**
-		 * Blocks if the blocking queue already contains 5 buffers.
+		 * Blocks if the blocking queue already contains 5 buffers, unless reads are
+		 * flow controlled.
 		 * @param array
 		 * @param bytesToWrite
 		 * @throws IOException
@@ -733,9 +1274,11 @@ public class TcpNioConnection extends TcpConnectionSupport {
 					TcpNioConnection.this.writingLatch.countDown();
 				}
 				try {
-					if (!this.buffers.offer(buffer, TcpNioConnection.this.pipeTimeout, TimeUnit.MILLISECONDS)) {
+					if (TcpNioConnection.this.readPauseThreshold <= 0 && !this.bufferSpace
+							.tryAcquire(TcpNioConnection.this.pipeTimeout, TimeUnit.MILLISECONDS)) {
 						throw new IOException("Timed out waiting for buffer space");
 					}
+					this.buffers.add(buffer);
 				}
 				catch (InterruptedException e) {
 					Thread.currentThread().interrupt();
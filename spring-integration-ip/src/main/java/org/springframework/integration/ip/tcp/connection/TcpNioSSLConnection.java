@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,9 +18,15 @@ package org.springframework.integration.ip.tcp.connection;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
@@ -31,6 +37,7 @@ import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
 
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.messaging.MessagingException;
 import org.springframework.util.Assert;
 
@@ -47,7 +54,11 @@ import org.springframework.util.Assert;
  * encrypt/decrypt the data.<p>
  * Also, it may be deemed necessary to re-perform handshaking.<p>
  * This class supports the management of handshaking as necessary, both from the
- * initiating and receiving peers.
+ * initiating and receiving peers.<p>
+ * The (CPU intensive) delegated tasks of the handshake are run on the reading thread
+ * unless a {@link #setDelegatedTaskExecutor(Executor) delegated task executor} is
+ * provided; reading from the socket is then suspended until the tasks are complete,
+ * and the handshake is continued on the executor thread.
  * @author Gary Russell
  * @since 2.2
  *
@@ -56,6 +67,14 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 
 	private static final int DEFAULT_HANDSHAKE_TIMEOUT = 30;
 
+	private static final int TASKS_IDLE = 0;
+
+	private static final int TASKS_RUNNING = 1;
+
+	private static final int TASKS_READ_SUSPENDED = 2;
+
+	private static final int TASKS_DONE = 3;
+
 	private final SSLEngine sslEngine;
 
 	private volatile ByteBuffer decoded;
@@ -76,6 +95,16 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 
 	private SSLHandshakeException sslFatal;
 
+	private volatile Executor delegatedTaskExecutor;
+
+	private final AtomicInteger delegatedTaskState = new AtomicInteger(TASKS_IDLE);
+
+	private volatile CountDownLatch delegatedTasksLatch;
+
+	private volatile SelectionKey suspendedKey;
+
+	private volatile boolean pooledEncryptionBuffers;
+
 	public TcpNioSSLConnection(SocketChannel socketChannel, boolean server, boolean lookupHost,
 			ApplicationEventPublisher applicationEventPublisher, String connectionFactoryName,
 			SSLEngine sslEngine) throws Exception {
@@ -92,6 +121,40 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 		this.handshakeTimeout = handshakeTimeout;
 	}
 
+	/**
+	 * Set an executor on which to run the delegated tasks of the handshake, instead of
+	 * running them on the thread reading from the socket; with many concurrent
+	 * handshakes, this limits the number of threads performing the (CPU intensive)
+	 * tasks, and keeps the reading threads available for other connections.
+	 * @param delegatedTaskExecutor the executor.
+	 * @since 5.0
+	 */
+	public void setDelegatedTaskExecutor(Executor delegatedTaskExecutor) {
+		this.delegatedTaskExecutor = delegatedTaskExecutor;
+	}
+
+	/**
+	 * When a pool is provided before the connection is used, the encryption and
+	 * decryption buffers are obtained from the pool, sized for the session's packet
+	 * and application buffer sizes, rather than allocated (and grown) per connection.
+	 */
+	@Override
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		super.setBufferPool(bufferPool);
+		if (bufferPool != null && this.decoded != null && !this.pooledEncryptionBuffers) {
+			// initialized before the pool was provided
+			acquirePooledBuffers(bufferPool);
+		}
+	}
+
+	private void acquirePooledBuffers(ByteBufferPool pool) {
+		this.pooledEncryptionBuffers = true;
+		SSLSession session = this.sslEngine.getSession();
+		// avoid an overflow on the first unwrap/wrap
+		this.decoded = pool.acquire(session.getApplicationBufferSize(), isUsingDirectBuffers());
+		this.encoded = pool.acquire(session.getPacketBufferSize(), isUsingDirectBuffers());
+	}
+
 	@Override
 	public SSLSession getSslSession() {
 		return this.sslEngine.getSession();
@@ -126,7 +189,8 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 			}
 		}
 		this.needMoreNetworkData = false;
-		if (result.getStatus() == Status.BUFFER_UNDERFLOW) {
+		if (result.getStatus() == Status.BUFFER_UNDERFLOW || this.delegatedTaskState.get() != TASKS_IDLE) {
+			// retain a partial packet, or the data to be decoded when the delegated tasks are complete
 			networkBuffer.compact();
 		}
 		else {
@@ -150,6 +214,10 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 		HandshakeStatus handshakeStatus = this.sslEngine.getHandshakeStatus();
 		switch (handshakeStatus) {
 		case NEED_TASK:
+			if (runTasksAsync()) {
+				this.needMoreNetworkData = true;
+				return result;
+			}
 			runTasks();
 			break;
 		case NEED_UNWRAP:
@@ -162,7 +230,8 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 			}
 			Status status = result.getStatus();
 			if (status == Status.BUFFER_OVERFLOW) {
-				this.decoded = this.allocateEncryptionBuffer(this.sslEngine.getSession().getApplicationBufferSize());
+				this.decoded = growEncryptionBuffer(this.decoded,
+						this.sslEngine.getSession().getApplicationBufferSize());
 			}
 			if (result.bytesProduced() > 0) {
 				this.decoded.flip();
@@ -177,7 +246,8 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 					logger.debug("After wrap: " + resultToString(result));
 				}
 				if (result.getStatus() == Status.BUFFER_OVERFLOW) {
-					this.encoded = this.allocateEncryptionBuffer(this.sslEngine.getSession().getPacketBufferSize());
+					this.encoded = growEncryptionBuffer(this.encoded,
+							this.sslEngine.getSession().getPacketBufferSize());
 				}
 				else {
 					this.encoded.flip();
@@ -226,6 +296,101 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 		}
 	}
 
+	/**
+	 * Run the delegated tasks on the delegated task executor, if any; reading is
+	 * suspended (see {@link #deferReadInterest(SelectionKey)}) until they are complete.
+	 * @return true if the tasks were handed off.
+	 */
+	private boolean runTasksAsync() {
+		Executor executor = this.delegatedTaskExecutor;
+		if (executor == null) {
+			return false;
+		}
+		final CountDownLatch latch = new CountDownLatch(1);
+		this.delegatedTasksLatch = latch;
+		this.delegatedTaskState.set(TASKS_RUNNING);
+		try {
+			executor.execute(() -> {
+				try {
+					runTasks();
+				}
+				finally {
+					latch.countDown();
+					if (!this.delegatedTaskState.compareAndSet(TASKS_RUNNING, TASKS_DONE)) {
+						// reading was suspended before the tasks completed
+						continueHandshake();
+					}
+				}
+			});
+			return true;
+		}
+		catch (RejectedExecutionException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(getConnectionId() + " Delegated task executor rejected the tasks; running them inline");
+			}
+			this.delegatedTaskState.set(TASKS_IDLE);
+			latch.countDown();
+			return false;
+		}
+	}
+
+	/**
+	 * When the delegated tasks are running (or have completed since the read), defer
+	 * setting the interest in reads; the handshake is continued on the executor thread
+	 * when the tasks are complete.
+	 */
+	@Override
+	boolean deferReadInterest(SelectionKey key) {
+		if (this.delegatedTaskState.get() == TASKS_IDLE) {
+			return false;
+		}
+		this.suspendedKey = key;
+		if (!this.delegatedTaskState.compareAndSet(TASKS_RUNNING, TASKS_READ_SUSPENDED)) {
+			// the tasks are already complete
+			continueHandshake();
+		}
+		return true;
+	}
+
+	/**
+	 * Decode the network data retained while the delegated tasks were running (and
+	 * any data received since), then set the interest in reads again.
+	 */
+	private void continueHandshake() {
+		SelectionKey key = this.suspendedKey;
+		this.delegatedTaskState.set(TASKS_IDLE);
+		readPacket();
+		try {
+			if (key.channel().isOpen() && !deferReadInterest(key) && !pauseReadingIfNecessary(key)) {
+				key.interestOps(SelectionKey.OP_READ);
+				key.selector().wakeup();
+			}
+		}
+		catch (CancelledKeyException e) {
+			if (logger.isDebugEnabled()) {
+				logger.debug(getConnectionId() + " Selection key cancelled during handshake");
+			}
+		}
+	}
+
+	/**
+	 * Wait for delegated tasks running on the delegated task executor.
+	 */
+	private void awaitDelegatedTasks() {
+		CountDownLatch latch = this.delegatedTasksLatch;
+		if (latch != null && this.sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+			try {
+				if (!latch.await(this.handshakeTimeout, TimeUnit.SECONDS)) {
+					throw new MessagingException("SSL Handshaking taking too long");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MessagingException("Interrupted during SSL Handshaking");
+			}
+		}
+	}
+
 	/**
 	 * Determines whether {@link #runTasks()} is needed and invokes if so.
 	 */
@@ -234,8 +399,11 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 			if (logger.isDebugEnabled()) {
 				logger.debug("Running tasks if needed " + resultToString(result));
 			}
-			if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+			if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK
+					|| this.sslEngine.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
 				runTasks();
+				// the reading thread may have handed the tasks off to the delegated task executor
+				awaitDelegatedTasks();
 			}
 		}
 		HandshakeStatus handshakeStatus = this.sslEngine.getHandshakeStatus();
@@ -252,8 +420,14 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 	 */
 	public void init() throws IOException {
 		if (this.decoded == null) {
-			this.decoded = allocateEncryptionBuffer(2048);
-			this.encoded = allocateEncryptionBuffer(2048);
+			ByteBufferPool pool = getBufferPool();
+			if (pool != null) {
+				acquirePooledBuffers(pool);
+			}
+			else {
+				this.decoded = allocateEncryptionBuffer(2048);
+				this.encoded = allocateEncryptionBuffer(2048);
+			}
 			this.initilizeEngine();
 		}
 	}
@@ -267,6 +441,15 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 		}
 	}
 
+	private ByteBuffer growEncryptionBuffer(ByteBuffer buffer, int size) {
+		ByteBufferPool pool = getBufferPool();
+		if (pool != null && this.pooledEncryptionBuffers) {
+			pool.release(buffer);
+			return pool.acquire(size, isUsingDirectBuffers());
+		}
+		return allocateEncryptionBuffer(size);
+	}
+
 	private void initilizeEngine() throws IOException {
 		boolean client = !this.isServer();
 		this.sslEngine.setUseClientMode(client);
@@ -301,6 +484,23 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 		this.semaphore.release();
 	}
 
+	/**
+	 * Also returns the decryption and encryption buffers, if they were obtained from
+	 * the pool; the encryption buffer is shared with sending threads.
+	 */
+	@Override
+	protected void releaseBuffers(ByteBufferPool pool) {
+		super.releaseBuffers(pool);
+		if (this.pooledEncryptionBuffers) {
+			pool.release(this.decoded);
+			this.decoded = null;
+			synchronized (getSSLChannelOutputStream()) {
+				pool.release(this.encoded);
+				this.encoded = null;
+			}
+		}
+	}
+
 	/**
 	 * Subclass of {@link TcpNioConnection.ChannelOutputStream} to handle encryption
 	 * of outbound data. Wraps an instance of the superclass, which is invoked to
@@ -352,6 +552,32 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 			}
 		}
 
+		/**
+		 * Combines the buffers so that the plain text is encrypted into as few SSL
+		 * records as possible, instead of (at least) one record per buffer.
+		 */
+		@Override
+		protected synchronized void doWrite(ByteBuffer[] plainText) throws IOException {
+			int size = 0;
+			for (ByteBuffer buffer : plainText) {
+				size += buffer.remaining();
+			}
+			ByteBufferPool pool = getBufferPool();
+			ByteBuffer combined = pool != null ? pool.acquire(size, false) : ByteBuffer.allocate(size);
+			for (ByteBuffer buffer : plainText) {
+				combined.put(buffer);
+			}
+			combined.flip();
+			try {
+				doWrite(combined);
+			}
+			finally {
+				if (pool != null) {
+					pool.release(combined);
+				}
+			}
+		}
+
 		/**
 		 * Handles SSL handshaking; when network data is needed from the peer, suspends
 		 * until that data is received.
@@ -421,6 +647,9 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 		 */
 		private SSLEngineResult encode(ByteBuffer plainText)
 				throws SSLException, IOException {
+			if (TcpNioSSLConnection.this.encoded == null) {
+				throw new IOException("Connection is closed");
+			}
 			TcpNioSSLConnection.this.encoded.clear();
 			SSLEngineResult result = TcpNioSSLConnection.this.sslEngine.wrap(plainText, TcpNioSSLConnection.this.encoded);
 			if (logger.isDebugEnabled()) {
@@ -429,7 +658,8 @@ public class TcpNioSSLConnection extends TcpNioConnection {
 						+ " Plaintext buffer @" + plainText.position() + "/" + plainText.limit());
 			}
 			if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
-				TcpNioSSLConnection.this.encoded = allocateEncryptionBuffer(TcpNioSSLConnection.this.sslEngine.getSession().getPacketBufferSize());
+				TcpNioSSLConnection.this.encoded = growEncryptionBuffer(TcpNioSSLConnection.this.encoded,
+						TcpNioSSLConnection.this.sslEngine.getSession().getPacketBufferSize());
 				result = TcpNioSSLConnection.this.sslEngine.wrap(plainText, TcpNioSSLConnection.this.encoded);
 			}
 			return result;
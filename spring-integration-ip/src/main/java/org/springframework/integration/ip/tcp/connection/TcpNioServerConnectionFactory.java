@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -29,13 +30,26 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.integration.ip.util.ByteBufferPool;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
 import org.springframework.util.Assert;
 
-/**
 /**
  * Implements a server connection factory that produces {@link TcpNioConnection}s using
  * a {@link ServerSocketChannel}. Must have a {@link TcpListener} registered.
+ * <p>
+ * By default, a single selector accepts new connections and detects when data is
+ * available on all connections. When {@link #setWorkerSelectorCount(int) worker
+ * selectors} are configured, the server selector only accepts connections and
+ * assigns each one (round robin) to a worker selector, which handles all reads for
+ * that connection for its lifetime.
  *
  * @author Gary Russell
  * @author Artem Bilan
@@ -48,6 +62,28 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 
 	private volatile boolean usingDirectBuffers;
 
+	private volatile boolean deserializeFromBuffer;
+
+	private volatile ByteBufferPool bufferPool;
+
+	private volatile int writeBatchSize;
+
+	private volatile int writeBatchDelay;
+
+	private volatile int readPauseThreshold;
+
+	private volatile int readResumeThreshold;
+
+	private volatile int workerSelectorCount;
+
+	private volatile boolean readInline;
+
+	private volatile SelectorWorker[] workers;
+
+	private int nextWorker;
+
+	private final SelectorStats serverSelectorStats = new SelectorStats();
+
 	private final Map<SocketChannel, TcpNioConnection> channelMap = new HashMap<SocketChannel, TcpNioConnection>();
 
 	private volatile Selector selector;
@@ -132,10 +168,11 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 			}
 			else {
 				this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+				this.selector = selector;
+				startWorkers();
 				setListening(true);
 				publishServerListeningEvent(getPort());
-				this.selector = selector;
-				doSelect(this.serverChannel, selector);
+				doSelect(this.serverChannel, selector, this.channelMap, this.serverSelectorStats);
 			}
 		}
 		catch (IOException e) {
@@ -150,6 +187,28 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		}
 	}
 
+	private void startWorkers() throws IOException {
+		int count = this.workerSelectorCount;
+		if (count == 0) {
+			this.workers = null;
+			return;
+		}
+		SelectorWorker[] workers = new SelectorWorker[count];
+		for (int i = 0; i < count; i++) {
+			workers[i] = new SelectorWorker(Selector.open());
+		}
+		this.workers = workers;
+		this.nextWorker = 0;
+		for (SelectorWorker worker : workers) {
+			try {
+				getTaskExecutor().execute(worker);
+			}
+			catch (RejectedExecutionException e) {
+				throw new IOException("Insufficient threads to run " + count + " worker selectors", e);
+			}
+		}
+	}
+
 	/**
 	 * Listens for incoming connections and for notifications that a connected
 	 * socket is ready for reading.
@@ -158,11 +217,16 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 	 * When a socket is ready for reading, unregisters the read interest and
 	 * schedules a call to doRead which reads all available data. When the read
 	 * is complete, the socket is again registered for read interest.
-	 * @param server the ServerSocketChannel to select
+	 * Also used by the worker selectors, which only handle reads.
+	 * @param server the ServerSocketChannel to select; null for a worker selector.
 	 * @param selector the Selector multiplexor
+	 * @param channels the connections registered with the selector.
+	 * @param stats the statistics for the selector.
 	 * @throws IOException
 	 */
-	private void doSelect(ServerSocketChannel server, final Selector selector) throws IOException {
+	private void doSelect(ServerSocketChannel server, final Selector selector,
+			Map<SocketChannel, TcpNioConnection> channels, SelectorStats stats) throws IOException {
+
 		while (isActive()) {
 			int soTimeout = getSoTimeout();
 			int selectionCount = 0;
@@ -175,7 +239,18 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 					logger.trace("Delayed reads: " + getDelayedReads().size() + " timeout " + timeout);
 				}
 				selectionCount = selector.select(timeout);
-				processNioSelections(selectionCount, selector, server, this.channelMap);
+				long start = System.nanoTime();
+				if (stats.worker != null) {
+					stats.worker.registerPending();
+				}
+				if (stats.worker != null) {
+					processNioSelections(selectionCount, selector, server, channels,
+							stats.worker.nextCheckForClosedConnections);
+				}
+				else {
+					processNioSelections(selectionCount, selector, server, channels);
+				}
+				stats.record(System.nanoTime() - start);
 			}
 			catch (CancelledKeyException cke) {
 				logger.debug("CancelledKeyException during Selector.select()");
@@ -221,8 +296,16 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 				if (getSslHandshakeTimeout() != null && connection instanceof TcpNioSSLConnection) {
 					((TcpNioSSLConnection) connection).setHandshakeTimeout(getSslHandshakeTimeout());
 				}
-				this.channelMap.put(channel, connection);
-				channel.register(selector, SelectionKey.OP_READ, connection);
+				SelectorWorker[] workers = this.workers;
+				if (workers == null) {
+					this.channelMap.put(channel, connection);
+					channel.register(selector, SelectionKey.OP_READ, connection);
+				}
+				else {
+					SelectorWorker worker = workers[this.nextWorker];
+					this.nextWorker = (this.nextWorker + 1) % workers.length;
+					worker.register(channel, connection);
+				}
 				connection.publishConnectionOpenEvent();
 			}
 			catch (Exception e) {
@@ -237,6 +320,12 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 			TcpNioConnection connection = this.tcpNioConnectionSupport.createNewConnection(socketChannel, true,
 							isLookupHost(), getApplicationEventPublisher(), getComponentName());
 			connection.setUsingDirectBuffers(this.usingDirectBuffers);
+			connection.setDeserializeFromBuffer(this.deserializeFromBuffer);
+			connection.setBufferPool(this.bufferPool);
+			connection.setWriteBatchSize(this.writeBatchSize);
+			connection.setWriteBatchDelay(this.writeBatchDelay);
+			connection.setReadPauseThreshold(this.readPauseThreshold);
+			connection.setReadResumeThreshold(this.readResumeThreshold);
 			TcpConnectionSupport wrappedConnection = wrapConnection(connection);
 			initializeConnection(wrappedConnection, socketChannel.socket());
 			return connection;
@@ -247,6 +336,12 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		}
 	}
 
+	@Override
+	protected boolean isReadInline(TcpNioConnection connection) {
+		return this.readInline && connection.isDeserializingFromBuffer()
+				&& !(connection instanceof TcpNioSSLConnection);
+	}
+
 	@Override
 	public void stop() {
 		setActive(false);
@@ -258,6 +353,17 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 				logger.error("Error closing selector", e);
 			}
 		}
+		SelectorWorker[] workers = this.workers;
+		if (workers != null) {
+			for (SelectorWorker worker : workers) {
+				try {
+					worker.selector.close();
+				}
+				catch (Exception e) {
+					logger.error("Error closing worker selector", e);
+				}
+			}
+		}
 		if (this.serverChannel != null) {
 			try {
 				this.serverChannel.close();
@@ -276,6 +382,107 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 		this.usingDirectBuffers = usingDirectBuffers;
 	}
 
+	/**
+	 * When set to true, and the deserializer is a
+	 * {@link org.springframework.integration.ip.tcp.serializer.ByteBufferDeserializer},
+	 * connections created by this factory decode frames directly from the read buffer
+	 * and send the messages to the listener on the reading thread.
+	 * @param deserializeFromBuffer true to decode from the read buffer.
+	 * @since 5.0
+	 * @see TcpNioConnection#setDeserializeFromBuffer(boolean)
+	 */
+	public void setDeserializeFromBuffer(boolean deserializeFromBuffer) {
+		this.deserializeFromBuffer = deserializeFromBuffer;
+	}
+
+	/**
+	 * Set a {@link ByteBufferPool} from which connections created by this factory
+	 * obtain their read buffers.
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 * @see TcpNioConnection#setBufferPool(ByteBufferPool)
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Set the write batch size for connections created by this factory; when greater
+	 * than zero, messages sent concurrently on a connection are written together with
+	 * a gathering write.
+	 * @param writeBatchSize the batch size in bytes.
+	 * @since 5.0
+	 * @see TcpNioConnection#setWriteBatchSize(int)
+	 */
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	/**
+	 * Set the time (in milliseconds) connections created by this factory wait for more
+	 * messages before writing a batch smaller than the write batch size.
+	 * @param writeBatchDelay the delay.
+	 * @since 5.0
+	 * @see TcpNioConnection#setWriteBatchDelay(int)
+	 */
+	public void setWriteBatchDelay(int writeBatchDelay) {
+		this.writeBatchDelay = writeBatchDelay;
+	}
+
+	/**
+	 * Set the number of bytes waiting to be assembled into messages at which
+	 * connections created by this factory stop reading from the socket, so that a slow
+	 * consumer cannot block the reading threads; reading resumes when the pending
+	 * data falls to the resume threshold.
+	 * @param readPauseThreshold the threshold in bytes.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadPauseThreshold(int)
+	 */
+	public void setReadPauseThreshold(int readPauseThreshold) {
+		this.readPauseThreshold = readPauseThreshold;
+	}
+
+	/**
+	 * Set the number of pending bytes at or below which paused connections created by
+	 * this factory resume reading. Default half the pause threshold.
+	 * @param readResumeThreshold the threshold in bytes.
+	 * @since 5.0
+	 * @see TcpNioConnection#setReadResumeThreshold(int)
+	 */
+	public void setReadResumeThreshold(int readResumeThreshold) {
+		this.readResumeThreshold = readResumeThreshold;
+	}
+
+	/**
+	 * Set the number of worker selectors. When greater than zero, the server selector
+	 * only accepts new connections; each connection is assigned to one of the worker
+	 * selectors, which detects when data is available for that connection for its
+	 * lifetime. Each worker selector permanently occupies one task executor thread.
+	 * Default 0 - a single selector accepts connections and handles all reads.
+	 * @param workerSelectorCount the number of worker selectors.
+	 * @since 5.0
+	 */
+	public void setWorkerSelectorCount(int workerSelectorCount) {
+		Assert.isTrue(workerSelectorCount >= 0, "'workerSelectorCount' cannot be negative");
+		this.workerSelectorCount = workerSelectorCount;
+	}
+
+	/**
+	 * When true, reads are performed on the selector thread instead of being handed
+	 * off to the task executor, avoiding a thread hop per read. Only applies to
+	 * (non-SSL) connections that {@link #setDeserializeFromBuffer(boolean) deserialize
+	 * from the read buffer}; the listener's {@code onMessage} is invoked on the selector
+	 * thread, so it must not block: while it runs, no other connection handled by the
+	 * same selector (worker) is read. Suitable for small frames that are processed quickly, or handed
+	 * off to another thread by the listener; usually combined with
+	 * {@link #setWorkerSelectorCount(int) worker selectors}. Default false.
+	 * @param readInline true to read on the selector thread.
+	 * @since 5.0
+	 */
+	public void setReadInline(boolean readInline) {
+		this.readInline = readInline;
+	}
+
 	public void setTcpNioConnectionSupport(TcpNioConnectionSupport tcpNioSupport) {
 		Assert.notNull(tcpNioSupport, "TcpNioSupport must not be null");
 		this.tcpNioConnectionSupport = tcpNioSupport;
@@ -296,10 +503,242 @@ public class TcpNioServerConnectionFactory extends AbstractServerConnectionFacto
 	}
 
 	/**
-	 * @return the connections
+	 * @return the connections; when using worker selectors, a snapshot of the
+	 * connections registered with all the worker selectors.
 	 */
 	protected Map<SocketChannel, TcpNioConnection> getConnections() {
-		return this.channelMap;
+		SelectorWorker[] workers = this.workers;
+		if (workers == null) {
+			return this.channelMap;
+		}
+		Map<SocketChannel, TcpNioConnection> connections = new HashMap<>();
+		for (SelectorWorker worker : workers) {
+			connections.putAll(worker.channels);
+		}
+		return connections;
+	}
+
+	/**
+	 * @return the number of open connections registered with the selector(s).
+	 * @since 5.0
+	 */
+	@ManagedAttribute
+	public int getSelectorConnectionCount() {
+		int count = 0;
+		for (int selectorCount : getSelectorConnectionCounts()) {
+			count += selectorCount;
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of open connections registered with each worker selector,
+	 * or with the server selector when there are no worker selectors.
+	 * @since 5.0
+	 */
+	@ManagedAttribute
+	public int[] getSelectorConnectionCounts() {
+		SelectorWorker[] workers = this.workers;
+		if (workers == null) {
+			return new int[] { openCount(this.channelMap) };
+		}
+		int[] counts = new int[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			counts[i] = openCount(workers[i].channels);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the number of open connections that have paused reading because too
+	 * much data is waiting to be assembled into messages.
+	 * @since 5.0
+	 * @see #setReadPauseThreshold(int)
+	 */
+	@ManagedAttribute
+	public int getPausedConnectionCount() {
+		return pausedCount(getConnections());
+	}
+
+	/**
+	 * @return the number of times reading was paused on a connection.
+	 * @since 5.0
+	 * @see #setReadPauseThreshold(int)
+	 */
+	@Override
+	@ManagedAttribute
+	public long getReadPauseCount() {
+		return super.getReadPauseCount();
+	}
+
+	/**
+	 * @return the maximum time, in milliseconds, taken by a selector to process the
+	 * results of a single select (accepts, read dispatching and, when reading inline,
+	 * the reads themselves) since the last reset, across all selectors.
+	 * @since 5.0
+	 */
+	@ManagedAttribute
+	public double getMaxSelectorLatency() {
+		long max = 0;
+		for (SelectorStats stats : allSelectorStats()) {
+			max = Math.max(max, stats.maxNanos.get());
+		}
+		return toMillis(max);
+	}
+
+	/**
+	 * @return the mean time, in milliseconds, taken by a selector to process the
+	 * results of a single select since the last reset, across all selectors.
+	 * @since 5.0
+	 */
+	@ManagedAttribute
+	public double getMeanSelectorLatency() {
+		long count = 0;
+		long total = 0;
+		for (SelectorStats stats : allSelectorStats()) {
+			count += stats.count.get();
+			total += stats.totalNanos.get();
+		}
+		return count > 0 ? toMillis(total) / count : 0;
+	}
+
+	/**
+	 * Reset the selector latency statistics.
+	 * @since 5.0
+	 */
+	@ManagedOperation
+	public void resetSelectorLatency() {
+		for (SelectorStats stats : allSelectorStats()) {
+			stats.reset();
+		}
+	}
+
+	private SelectorStats[] allSelectorStats() {
+		SelectorWorker[] workers = this.workers;
+		int count = workers == null ? 0 : workers.length;
+		SelectorStats[] stats = new SelectorStats[count + 1];
+		stats[0] = this.serverSelectorStats;
+		for (int i = 0; i < count; i++) {
+			stats[i + 1] = workers[i].stats;
+		}
+		return stats;
+	}
+
+	private static int openCount(Map<SocketChannel, TcpNioConnection> channels) {
+		int count = 0;
+		for (SocketChannel channel : channels.keySet().toArray(new SocketChannel[0])) {
+			if (channel.isOpen()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+	/**
+	 * A selector that handles reads for the connections assigned to it by the
+	 * server selector.
+	 */
+	private final class SelectorWorker implements Runnable {
+
+		private final Selector selector;
+
+		private final Map<SocketChannel, TcpNioConnection> channels = new ConcurrentHashMap<>();
+
+		private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+
+		private final SelectorStats stats = new SelectorStats(this);
+
+		private final AtomicLong nextCheckForClosedConnections = new AtomicLong();
+
+		SelectorWorker(Selector selector) {
+			this.selector = selector;
+		}
+
+		void register(SocketChannel channel, TcpNioConnection connection) {
+			this.channels.put(channel, connection);
+			this.registrations.add(channel);
+			this.selector.wakeup();
+		}
+
+		/**
+		 * Register the connections assigned since the last select; channels can only
+		 * be registered without blocking on the selector's own thread.
+		 */
+		void registerPending() {
+			SocketChannel channel;
+			while ((channel = this.registrations.poll()) != null) {
+				TcpNioConnection connection = this.channels.get(channel);
+				if (connection != null) {
+					try {
+						channel.register(this.selector, SelectionKey.OP_READ, connection);
+					}
+					catch (ClosedChannelException e) {
+						if (logger.isDebugEnabled()) {
+							logger.debug(connection.getConnectionId() + " closed before registration");
+						}
+					}
+				}
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				doSelect(null, this.selector, this.channels, this.stats);
+			}
+			catch (Exception e) {
+				if (isActive()) {
+					logger.error("Error on worker selector; port = " + getPort(), e);
+					publishServerExceptionEvent(e);
+				}
+			}
+			finally {
+				for (TcpNioConnection connection : this.channels.values()) {
+					connection.close();
+				}
+				this.channels.clear();
+			}
+		}
+
+	}
+
+	private static final class SelectorStats {
+
+		private final SelectorWorker worker;
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong totalNanos = new AtomicLong();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		SelectorStats() {
+			this(null);
+		}
+
+		SelectorStats(SelectorWorker worker) {
+			this.worker = worker;
+		}
+
+		void record(long nanos) {
+			this.count.incrementAndGet();
+			this.totalNanos.addAndGet(nanos);
+			long max = this.maxNanos.get();
+			while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+				max = this.maxNanos.get();
+			}
+		}
+
+		void reset() {
+			this.count.set(0);
+			this.totalNanos.set(0);
+			this.maxNanos.set(0);
+		}
+
 	}
 
 }
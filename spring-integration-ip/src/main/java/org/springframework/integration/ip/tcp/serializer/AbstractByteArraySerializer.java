@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,7 @@
 package org.springframework.integration.ip.tcp.serializer;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -85,4 +86,64 @@ public abstract class AbstractByteArraySerializer implements
 		}
 	}
 
+	/**
+	 * Publish a {@link TcpDeserializationExceptionEvent} containing the remaining
+	 * (up to the max message size) bytes of the buffer; the buffer is not modified.
+	 * @param cause the cause.
+	 * @param buffer the buffer being decoded.
+	 * @since 5.0
+	 */
+	protected void publishEvent(Exception cause, ByteBuffer buffer) {
+		ByteBuffer duplicate = buffer.duplicate();
+		byte[] bytes = new byte[Math.min(duplicate.remaining(), this.maxMessageSize)];
+		duplicate.get(bytes);
+		publishEvent(cause, bytes, bytes.length);
+	}
+
+	/**
+	 * Find the next occurrence of the byte in the buffer, between the
+	 * provided index and the buffer's limit.
+	 * @param buffer the buffer.
+	 * @param from the index to start from.
+	 * @param bite the byte to find.
+	 * @return the index or -1 if not found.
+	 * @since 5.0
+	 */
+	protected static int indexOf(ByteBuffer buffer, int from, byte bite) {
+		int limit = buffer.limit();
+		if (buffer.hasArray()) {
+			byte[] array = buffer.array();
+			int offset = buffer.arrayOffset();
+			for (int i = from; i < limit; i++) {
+				if (array[offset + i] == bite) {
+					return i;
+				}
+			}
+		}
+		else {
+			for (int i = from; i < limit; i++) {
+				if (buffer.get(i) == bite) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Copy the bytes between the buffer's position and the provided index into a new
+	 * array and set the buffer's position to {@code next}.
+	 * @param buffer the buffer.
+	 * @param end the (exclusive) end of the data.
+	 * @param next the position of the next frame.
+	 * @return the data.
+	 * @since 5.0
+	 */
+	protected static byte[] extract(ByteBuffer buffer, int end, int next) {
+		byte[] bytes = new byte[end - buffer.position()];
+		buffer.get(bytes);
+		buffer.position(next);
+		return bytes;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,13 +19,15 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.util.SimplePool;
 import org.springframework.integration.util.SimplePool.PoolItemCallback;
 import org.springframework.util.Assert;
 
 /**
  * Base class for deserializers that cannot determine the buffer size needed.
- * Optionally pools buffers.
+ * Optionally pools buffers, either in a dedicated pool or in a shared
+ * {@link ByteBufferPool}.
  *
  * @author Gary Russell
  * @since 4.3
@@ -37,6 +39,8 @@ public abstract class AbstractPooledBufferByteArraySerializer extends AbstractBy
 
 	private long poolWaitTimeout = Long.MAX_VALUE;
 
+	private ByteBufferPool bufferPool;
+
 	/**
 	 * Set the pool size for deserialization buffers.
 	 * @param size the size, -1 for unlimited.
@@ -44,6 +48,7 @@ public abstract class AbstractPooledBufferByteArraySerializer extends AbstractBy
 	 */
 	public void setPoolSize(int size) {
 		Assert.isNull(this.pool, "Cannot change pool size once set");
+		Assert.isNull(this.bufferPool, "Cannot set a pool size when a 'bufferPool' is provided");
 		this.pool = new SimplePool<byte[]>(size, new PoolItemCallback<byte[]>() {
 
 			@Override
@@ -75,14 +80,35 @@ public abstract class AbstractPooledBufferByteArraySerializer extends AbstractBy
 		}
 	}
 
+	/**
+	 * Obtain the deserialization buffers from a shared {@link ByteBufferPool}
+	 * instead of a dedicated pool; the buffers obtained may be larger than the
+	 * max message size, which is still enforced.
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		Assert.isNull(this.pool, "Cannot set a 'bufferPool' when a pool size is provided");
+		this.bufferPool = bufferPool;
+	}
+
 	@Override
 	public final byte[] deserialize(InputStream inputStream) throws IOException {
-		byte[] buffer = this.pool == null ? new byte[this.maxMessageSize] : this.pool.getItem();
+		byte[] buffer;
+		if (this.bufferPool != null) {
+			buffer = this.bufferPool.acquireArray(this.maxMessageSize);
+		}
+		else {
+			buffer = this.pool == null ? new byte[this.maxMessageSize] : this.pool.getItem();
+		}
 		try {
 			return doDeserialize(inputStream, buffer);
 		}
 		finally {
-			if (this.pool != null) {
+			if (this.bufferPool != null) {
+				this.bufferPool.releaseArray(buffer);
+			}
+			else if (this.pool != null) {
 				this.pool.releaseItem(buffer);
 			}
 		}
@@ -90,7 +116,7 @@ public abstract class AbstractPooledBufferByteArraySerializer extends AbstractBy
 
 	/**
 	 * @param inputStream the input stream.
-	 * @param buffer the raw working buffer (maxMessageSize).
+	 * @param buffer the raw working buffer (at least maxMessageSize).
 	 * @return the decoded bytes.
 	 * @throws IOException an io exception.
 	 * @since 4.3
@@ -106,7 +132,7 @@ public abstract class AbstractPooledBufferByteArraySerializer extends AbstractBy
 	 * already the correct size and there is no pool.
 	 */
 	protected byte[] copyToSizedArray(byte[] buffer, int size) {
-		if (size == buffer.length && this.pool == null) {
+		if (size == buffer.length && this.pool == null && this.bufferPool == null) {
 			return buffer;
 		}
 		byte[] assembledData = new byte[size];
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,16 +19,19 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Reads data in an InputStream to a byte[]; data must be terminated by \r\n
  * (not included in resulting byte[]).
  * Writes a byte[] to an OutputStream and adds \r\n.
+ * Also decodes frames directly from a {@link ByteBuffer}.
  *
  * @author Gary Russell
  * @since 2.0
  */
-public class ByteArrayCrLfSerializer extends AbstractPooledBufferByteArraySerializer {
+public class ByteArrayCrLfSerializer extends AbstractPooledBufferByteArraySerializer
+		implements ByteBufferDeserializer<byte[]> {
 
 	/**
 	 * A single reusable instance.
@@ -85,6 +88,22 @@ public class ByteArrayCrLfSerializer extends AbstractPooledBufferByteArraySerial
 		}
 	}
 
+	@Override
+	public byte[] deserialize(ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+		int lf = indexOf(buffer, start + 1, (byte) '\n');
+		while (lf > 0 && buffer.get(lf - 1) != '\r') {
+			lf = indexOf(buffer, lf + 1, (byte) '\n');
+		}
+		int length = lf < 0 ? buffer.limit() - start : lf - start;
+		if (length >= this.maxMessageSize) {
+			IOException e = new IOException("CRLF not found before max message length: " + this.maxMessageSize);
+			publishEvent(e, buffer);
+			throw e;
+		}
+		return lf < 0 ? null : extract(buffer, lf - 1, lf + 1);
+	}
+
 	/**
 	 * Writes the byte[] to the stream and appends \r\n.
 	 */
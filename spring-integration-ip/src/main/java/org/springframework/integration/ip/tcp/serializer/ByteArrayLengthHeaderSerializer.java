@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -38,12 +38,14 @@ import org.apache.commons.logging.LogFactory;
  * Other options are an unsigned byte, and unsigned short.
  *
  * For other header formats, override {@link #readHeader(InputStream)} and
- * {@link #writeHeader(OutputStream, int)}.
+ * {@link #writeHeader(OutputStream, int)} (and {@link #readHeader(ByteBuffer)} when
+ * decoding directly from a {@link ByteBuffer}).
  *
  * @author Gary Russell
  * @since 2.0
  */
-public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer {
+public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer
+		implements ByteBufferDeserializer<byte[]> {
 
 
 	/**
@@ -123,6 +125,44 @@ public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer
 		}
 	}
 
+	/**
+	 * Decodes the header and, if the complete frame is available, copies the data
+	 * part into a new byte[]. Throws an IOException if the length field exceeds
+	 * the maxMessageSize.
+	 * @param buffer The buffer.
+	 * @return the data or null if the frame is incomplete.
+	 * @throws IOException Any IOException.
+	 * @since 5.0
+	 */
+	@Override
+	public byte[] deserialize(ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+		if (buffer.remaining() < this.headerSize) {
+			return null;
+		}
+		try {
+			int messageLength = readHeader(buffer);
+			if (messageLength > this.maxMessageSize) {
+				throw new IOException("Message length " + messageLength +
+						" exceeds max message length: " + this.maxMessageSize);
+			}
+			int end = start + this.headerSize + messageLength;
+			if (buffer.limit() < end) {
+				return null;
+			}
+			buffer.position(start + this.headerSize);
+			return extract(buffer, end, end);
+		}
+		catch (IOException e) {
+			publishEvent(e, buffer);
+			throw e;
+		}
+		catch (RuntimeException e) {
+			publishEvent(e, buffer);
+			throw e;
+		}
+	}
+
 	/**
 	 * Writes the byte[] to the output stream, preceded by a 4 byte
 	 * length in network byte order (big endian).
@@ -254,4 +294,36 @@ public class ByteArrayLengthHeaderSerializer extends AbstractByteArraySerializer
 		}
 	}
 
+	/**
+	 * Decodes the header at the buffer's position and returns the length of the
+	 * data part; the buffer's position is not changed. Only called when at least
+	 * the header size bytes are available.
+	 * @param buffer The buffer.
+	 * @return The length of the data part.
+	 * @since 5.0
+	 */
+	protected int readHeader(ByteBuffer buffer) {
+		int position = buffer.position();
+		int messageLength;
+		switch (this.headerSize) {
+			case HEADER_SIZE_INT:
+				messageLength = buffer.getInt(position);
+				if (messageLength < 0) {
+					throw new IllegalArgumentException("Length header:"
+							+ messageLength
+							+ " is negative");
+				}
+				break;
+			case HEADER_SIZE_UNSIGNED_BYTE:
+				messageLength = buffer.get(position) & 0xff;
+				break;
+			case HEADER_SIZE_UNSIGNED_SHORT:
+				messageLength = buffer.getShort(position) & 0xffff;
+				break;
+			default:
+				throw new IllegalArgumentException("Bad header size:" + this.headerSize);
+		}
+		return messageLength;
+	}
+
 }
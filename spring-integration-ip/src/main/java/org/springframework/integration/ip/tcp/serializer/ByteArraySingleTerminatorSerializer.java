@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,16 +19,19 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Reads data in an InputStream to a byte[]; data must be terminated by a single
  * byte (not included in resulting byte[]).
  * Writes a byte[] to an OutputStream and adds the terminator.
+ * Also decodes frames directly from a {@link ByteBuffer}.
  *
  * @author Gary Russell
  * @since 2.2
  */
-public class ByteArraySingleTerminatorSerializer extends AbstractPooledBufferByteArraySerializer {
+public class ByteArraySingleTerminatorSerializer extends AbstractPooledBufferByteArraySerializer
+		implements ByteBufferDeserializer<byte[]> {
 
 	private final byte terminator;
 
@@ -81,6 +84,21 @@ public class ByteArraySingleTerminatorSerializer extends AbstractPooledBufferByt
 		}
 	}
 
+	@Override
+	public byte[] deserialize(ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+		int end = indexOf(buffer, start, this.terminator);
+		int length = end < 0 ? buffer.limit() - start : end - start;
+		if (length >= this.maxMessageSize) {
+			IOException e = new IOException("Terminator '0x" + Integer.toHexString(this.terminator & 0xff)
+					+ "' not found before max message length: "
+					+ this.maxMessageSize);
+			publishEvent(e, buffer);
+			throw e;
+		}
+		return end < 0 ? null : extract(buffer, end, end + 1);
+	}
+
 	/**
 	 * Writes the byte[] to the stream and appends the terminator.
 	 */
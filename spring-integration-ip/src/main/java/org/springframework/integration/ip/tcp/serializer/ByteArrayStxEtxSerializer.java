@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package org.springframework.integration.ip.tcp.serializer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.springframework.integration.mapping.MessageMappingException;
 
@@ -26,11 +27,13 @@ import org.springframework.integration.mapping.MessageMappingException;
  * Reads data in an InputStream to a byte[]; data must be prefixed by &lt;stx&gt; and
  * terminated by &lt;etx&gt; (not included in resulting byte[]).
  * Writes a byte[] to an OutputStream prefixed by &lt;stx&gt; terminated by &lt;etx&gt;
+ * Also decodes frames directly from a {@link ByteBuffer}.
  *
  * @author Gary Russell
  * @since 2.0
  */
-public class ByteArrayStxEtxSerializer extends AbstractPooledBufferByteArraySerializer {
+public class ByteArrayStxEtxSerializer extends AbstractPooledBufferByteArraySerializer
+		implements ByteBufferDeserializer<byte[]> {
 
 	/**
 	 * A single reusable instance.
@@ -80,6 +83,31 @@ public class ByteArrayStxEtxSerializer extends AbstractPooledBufferByteArraySeri
 		}
 	}
 
+	@Override
+	public byte[] deserialize(ByteBuffer buffer) throws IOException {
+		if (!buffer.hasRemaining()) {
+			return null;
+		}
+		int start = buffer.position();
+		if (buffer.get(start) != STX) {
+			MessageMappingException e = new MessageMappingException("Expected STX to begin message");
+			publishEvent(e, buffer);
+			throw e;
+		}
+		int end = indexOf(buffer, start + 1, (byte) ETX);
+		int length = end < 0 ? buffer.limit() - start - 1 : end - start - 1;
+		if (length >= this.maxMessageSize) {
+			IOException e = new IOException("ETX not found before max message length: " + this.maxMessageSize);
+			publishEvent(e, buffer);
+			throw e;
+		}
+		if (end < 0) {
+			return null;
+		}
+		buffer.position(start + 1);
+		return extract(buffer, end, end + 1);
+	}
+
 	/**
 	 * Writes the byte[] to the stream, prefixed by an ASCII STX character and
 	 * terminated with an ASCII ETX character.
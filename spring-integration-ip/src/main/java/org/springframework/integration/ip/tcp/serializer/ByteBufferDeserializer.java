@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.springframework.core.serializer.Deserializer;
+
+/**
+ * A {@link Deserializer} that can also decode objects directly from a
+ * {@link ByteBuffer}, avoiding the intermediate copies and the byte-by-byte
+ * reads of the {@link java.io.InputStream} API. Used by the
+ * {@link org.springframework.integration.ip.tcp.connection.TcpNioConnection}
+ * when {@code deserializeFromBuffer} is enabled on the connection factory;
+ * the stream API is used otherwise.
+ *
+ * @param <T> the type of the decoded object.
+ *
+ * @author agent
+ * @since 5.0
+ */
+public interface ByteBufferDeserializer<T> extends Deserializer<T> {
+
+	/**
+	 * Decode the next object from the buffer. The buffer is in read mode; on
+	 * success, its position is advanced past the decoded frame. If the buffer
+	 * does not (yet) contain a complete frame, the position is left unchanged
+	 * and null is returned, so the caller can read more data and try again.
+	 * @param buffer the buffer.
+	 * @return the object or null if more data is needed.
+	 * @throws IOException if the frame is invalid or exceeds the maximum message size.
+	 */
+	T deserialize(ByteBuffer buffer) throws IOException;
+
+}
@@ -0,0 +1,453 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.integration.codec.Codec;
+import org.springframework.integration.codec.kryo.KryoClassListRegistrar;
+import org.springframework.integration.codec.kryo.KryoRegistrar;
+import org.springframework.integration.codec.kryo.PojoCodec;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+import org.springframework.util.PatternMatchUtils;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Registration;
+
+/**
+ * Serializes a {@link Message} (selected headers and the payload) in a compact,
+ * length-prefixed binary format; deserializes the format to a {@link Message}.
+ * Headers are encoded with a {@link Codec}, by default a Kryo codec that requires class
+ * registration, so that a peer cannot make the receiver instantiate arbitrary types:
+ * header values are limited to the Kryo default types ({@code String}, primitive
+ * wrappers), {@link HashMap}, {@link ArrayList}, {@link UUID} and {@link Date}, and to
+ * the types registered by the {@link KryoRegistrar}s passed to the constructor.
+ * {@code byte[]} and {@code String} payloads are written directly to the stream; other
+ * payloads are encoded with the codec, and are only accepted if their type is one of the
+ * {@link #setAllowedTypes(Class...) allowed types} (by default, the types registered by
+ * the {@link KryoRegistrar}s); the type name read from the stream is never used to load
+ * a class.
+ * <p>
+ * {@link InputStream} and {@link File} payloads are streamed in
+ * {@link #setChunkSize(int) chunks}, without buffering the whole payload; on the
+ * receiving side, they are assembled into a {@code byte[]} or, if a
+ * {@link #setSpoolDirectory(File) spool directory} is provided, written to a temporary
+ * {@link File} which becomes the payload.
+ * <p>
+ * Use in conjunction with a
+ * {@link org.springframework.integration.ip.tcp.connection.MessageConvertingTcpMessageMapper}
+ * and a {@link org.springframework.integration.support.converter.PassThruMessageConverter},
+ * so that the whole message is passed to the serializer.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class CodecMessageSerializer implements Serializer<Message<?>>, Deserializer<Message<?>> {
+
+	private static final int BYTES = 0;
+
+	private static final int STRING = 1;
+
+	private static final int OBJECT = 2;
+
+	private static final int STREAM = 3;
+
+	private static final Charset UTF_8 = StandardCharsets.UTF_8;
+
+	private static final int HEADER_TYPES_REGISTRATION_ID = 30;
+
+	private static final List<Class<?>> HEADER_TYPES =
+			Arrays.<Class<?>>asList(HashMap.class, ArrayList.class, UUID.class, Date.class);
+
+	protected final Log logger = LogFactory.getLog(this.getClass());
+
+	private final Codec codec;
+
+	private volatile String[] headerPatterns = { "*" };
+
+	private volatile int maxMessageSize = 2048;
+
+	private volatile int chunkSize = 64 * 1024;
+
+	private volatile long maxSpoolSize = 10 * 1024 * 1024;
+
+	private volatile File spoolDirectory;
+
+	private volatile Map<String, Class<?>> allowedTypes = Collections.emptyMap();
+
+	/**
+	 * Construct an instance using a Kryo codec that requires class registration;
+	 * codec-encoded payloads are not accepted.
+	 */
+	public CodecMessageSerializer() {
+		this(Collections.<KryoRegistrar>emptyList());
+	}
+
+	/**
+	 * Construct an instance using a Kryo codec that requires class registration, with
+	 * the types registered by the registrars (which must not use the registration ids
+	 * 30 to 33) added to the default header types; the registered types are the allowed
+	 * payload types. The registrars must be identical on both sides.
+	 * @param kryoRegistrars the registrars.
+	 */
+	public CodecMessageSerializer(List<KryoRegistrar> kryoRegistrars) {
+		Assert.notNull(kryoRegistrars, "'kryoRegistrars' cannot be null");
+		List<KryoRegistrar> registrars = new ArrayList<>(kryoRegistrars);
+		KryoClassListRegistrar headerTypes = new KryoClassListRegistrar(HEADER_TYPES);
+		headerTypes.setInitialValue(HEADER_TYPES_REGISTRATION_ID);
+		registrars.add(headerTypes);
+		this.codec = new RegistrationRequiredCodec(registrars);
+		List<Class<?>> types = new ArrayList<>();
+		for (KryoRegistrar registrar : kryoRegistrars) {
+			for (Registration registration : registrar.getRegistrations()) {
+				types.add(registration.getType());
+			}
+		}
+		setAllowedTypes(types.toArray(new Class<?>[types.size()]));
+	}
+
+	/**
+	 * Construct an instance using the provided codec; the codec is responsible for
+	 * restricting the types of the decoded header values (for example a Kryo codec
+	 * requiring class registration). Codec-encoded payloads are only accepted if
+	 * their types are {@link #setAllowedTypes(Class...) allowed}.
+	 * @param codec the codec.
+	 */
+	public CodecMessageSerializer(Codec codec) {
+		Assert.notNull(codec, "'codec' cannot be null");
+		this.codec = codec;
+	}
+
+	/**
+	 * Set the patterns of the headers to transfer, for example {@code "correlationId"}
+	 * or {@code "app_*"}. Default {@code "*"}; the {@code id} and {@code timestamp}
+	 * headers are never transferred, nor are {@code replyChannel} and
+	 * {@code errorChannel} headers, unless they are channel names.
+	 * @param headerPatterns the patterns.
+	 * @see PatternMatchUtils#simpleMatch(String, String)
+	 */
+	public void setHeaderPatterns(String... headerPatterns) {
+		Assert.notNull(headerPatterns, "'headerPatterns' cannot be null");
+		this.headerPatterns = headerPatterns;
+	}
+
+	/**
+	 * The maximum supported length of the encoded headers and of a (non-streamed)
+	 * payload, and the maximum size of a streamed payload when it is assembled into
+	 * a {@code byte[]}. Default 2048.
+	 * @param maxMessageSize the max message size.
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		this.maxMessageSize = maxMessageSize;
+	}
+
+	/**
+	 * The size of the chunks in which {@link InputStream} and {@link File} payloads
+	 * are written. Default 64k.
+	 * @param chunkSize the chunk size.
+	 */
+	public void setChunkSize(int chunkSize) {
+		Assert.isTrue(chunkSize > 0, "'chunkSize' must be greater than 0");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Set a directory in which received streamed payloads are written; the payload of
+	 * the deserialized message is then the (temporary) {@link File}, which the
+	 * application is responsible for deleting. By default, streamed payloads are
+	 * assembled into a {@code byte[]}.
+	 * @param spoolDirectory the directory.
+	 */
+	public void setSpoolDirectory(File spoolDirectory) {
+		Assert.isTrue(spoolDirectory == null || spoolDirectory.isDirectory(), "'spoolDirectory' must be a directory");
+		this.spoolDirectory = spoolDirectory;
+	}
+
+	/**
+	 * The maximum size of a streamed payload written to the
+	 * {@link #setSpoolDirectory(File) spool directory}. Default 10Mb.
+	 * @param maxSpoolSize the max spool size.
+	 */
+	public void setMaxSpoolSize(long maxSpoolSize) {
+		Assert.isTrue(maxSpoolSize > 0, "'maxSpoolSize' must be greater than 0");
+		this.maxSpoolSize = maxSpoolSize;
+	}
+
+	/**
+	 * Set the types of the codec-encoded payloads accepted by the deserializer (exact
+	 * types, not subtypes); payloads of other types are rejected before anything is
+	 * decoded. When using the default codec, the types must also be registered with
+	 * Kryo. Replaces the types registered by the constructor's registrars, if any.
+	 * @param allowedTypes the types.
+	 */
+	public void setAllowedTypes(Class<?>... allowedTypes) {
+		Assert.notNull(allowedTypes, "'allowedTypes' cannot be null");
+		Map<String, Class<?>> types = new HashMap<>();
+		for (Class<?> type : allowedTypes) {
+			types.put(type.getName(), type);
+		}
+		this.allowedTypes = types;
+	}
+
+	@Override
+	public void serialize(Message<?> message, OutputStream outputStream) throws IOException {
+		DataOutputStream output = new DataOutputStream(outputStream);
+		Object payload = message.getPayload();
+		int type = payload instanceof byte[] ? BYTES
+				: payload instanceof String ? STRING
+				: payload instanceof InputStream || payload instanceof File ? STREAM
+				: OBJECT;
+		output.writeByte(type);
+		Map<String, Object> headers = mapHeaders(message.getHeaders());
+		if (headers.isEmpty()) {
+			output.writeInt(0);
+		}
+		else {
+			writeBlock(this.codec.encode(headers), output);
+		}
+		switch (type) {
+		case BYTES:
+			writeBlock((byte[]) payload, output);
+			break;
+		case STRING:
+			writeBlock(((String) payload).getBytes(UTF_8), output);
+			break;
+		case STREAM:
+			if (payload instanceof File) {
+				try (InputStream inputStream = new FileInputStream((File) payload)) {
+					writeChunks(inputStream, output);
+				}
+			}
+			else {
+				writeChunks((InputStream) payload, output);
+			}
+			break;
+		default:
+			output.writeUTF(payload.getClass().getName());
+			writeBlock(this.codec.encode(payload), output);
+		}
+	}
+
+	private Map<String, Object> mapHeaders(MessageHeaders messageHeaders) {
+		Map<String, Object> headers = new HashMap<>();
+		for (Entry<String, Object> entry : messageHeaders.entrySet()) {
+			String name = entry.getKey();
+			if (MessageHeaders.ID.equals(name) || MessageHeaders.TIMESTAMP.equals(name)) {
+				continue;
+			}
+			if ((MessageHeaders.REPLY_CHANNEL.equals(name) || MessageHeaders.ERROR_CHANNEL.equals(name))
+					&& !(entry.getValue() instanceof String)) {
+				continue;
+			}
+			if (PatternMatchUtils.simpleMatch(this.headerPatterns, name)) {
+				headers.put(name, entry.getValue());
+			}
+		}
+		return headers;
+	}
+
+	private void writeBlock(byte[] bytes, DataOutputStream output) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private void writeChunks(InputStream inputStream, DataOutputStream output) throws IOException {
+		byte[] chunk = new byte[this.chunkSize];
+		int len;
+		while ((len = inputStream.read(chunk)) >= 0) {
+			if (len > 0) {
+				output.writeInt(len);
+				output.write(chunk, 0, len);
+			}
+		}
+		output.writeInt(0);
+	}
+
+	@Override
+	public Message<?> deserialize(InputStream inputStream) throws IOException {
+		int type = inputStream.read();
+		if (type < 0) {
+			throw new SoftEndOfStreamException("Stream closed between payloads");
+		}
+		DataInputStream input = new DataInputStream(inputStream);
+		byte[] headerBytes = readBlock(input);
+		Object payload;
+		switch (type) {
+		case BYTES:
+			payload = readBlock(input);
+			break;
+		case STRING:
+			payload = new String(readBlock(input), UTF_8);
+			break;
+		case STREAM:
+			payload = this.spoolDirectory != null ? readChunksToFile(input) : readChunks(input);
+			break;
+		case OBJECT:
+			String className = input.readUTF();
+			Class<?> payloadType = this.allowedTypes.get(className);
+			if (payloadType == null) {
+				throw new IOException("Payload type " + className + " is not allowed");
+			}
+			payload = this.codec.decode(readBlock(input), payloadType);
+			break;
+		default:
+			throw new IOException("Unknown payload type " + type);
+		}
+		MessageBuilder<Object> builder = MessageBuilder.withPayload(payload);
+		if (headerBytes.length > 0) {
+			@SuppressWarnings("unchecked")
+			Map<String, Object> headers = this.codec.decode(headerBytes, HashMap.class);
+			builder.copyHeaders(headers);
+		}
+		return builder.build();
+	}
+
+	private byte[] readBlock(DataInputStream input) throws IOException {
+		int length = readLength(input);
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	private int readLength(DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid length: " + length);
+		}
+		if (length > this.maxMessageSize) {
+			throw new IOException("Message length " + length + " exceeds max message length: "
+					+ this.maxMessageSize);
+		}
+		return length;
+	}
+
+	private byte[] readChunks(DataInputStream input) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] chunk = new byte[Math.min(this.chunkSize, this.maxMessageSize)];
+		int length;
+		while ((length = readChunkLength(input, bytes.size(), this.maxMessageSize)) > 0) {
+			while (length > 0) {
+				int len = Math.min(length, chunk.length);
+				input.readFully(chunk, 0, len);
+				bytes.write(chunk, 0, len);
+				length -= len;
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private File readChunksToFile(DataInputStream input) throws IOException {
+		File file = File.createTempFile("tcp", ".payload", this.spoolDirectory);
+		boolean complete = false;
+		try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), this.chunkSize)) {
+			byte[] chunk = new byte[this.chunkSize];
+			long total = 0;
+			int length;
+			while ((length = readChunkLength(input, total, this.maxSpoolSize)) > 0) {
+				total += length;
+				while (length > 0) {
+					int len = input.read(chunk, 0, Math.min(length, chunk.length));
+					if (len < 0) {
+						throw new IOException("Socket closed during message assembly");
+					}
+					outputStream.write(chunk, 0, len);
+					length -= len;
+				}
+			}
+			complete = true;
+		}
+		finally {
+			if (!complete && !file.delete() && this.logger.isDebugEnabled()) {
+				this.logger.debug("Failed to delete " + file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Read the length of the next chunk; 0 marks the end of the payload.
+	 */
+	private int readChunkLength(DataInputStream input, long total, long maxSize) throws IOException {
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid chunk length: " + length);
+		}
+		if (total + length > maxSize) {
+			throw new IOException("Message length " + (total + length) + " exceeds max message length: "
+					+ maxSize);
+		}
+		return length;
+	}
+
+	/**
+	 * A {@link PojoCodec} that only encodes and decodes registered types; class names
+	 * found in the input are not even loaded.
+	 */
+	private static final class RegistrationRequiredCodec extends PojoCodec {
+
+		private static final ClassLoader NO_CLASSES = new ClassLoader(null) {
+
+			@Override
+			protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+				throw new ClassNotFoundException("Class is not registered: " + name);
+			}
+
+		};
+
+		RegistrationRequiredCodec(List<KryoRegistrar> kryoRegistrars) {
+			super(kryoRegistrars);
+		}
+
+		@Override
+		protected void configureKryoInstance(Kryo kryo) {
+			super.configureKryoInstance(kryo);
+			kryo.setRegistrationRequired(true);
+			kryo.setClassLoader(NO_CLASSES);
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,6 +27,7 @@ import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.integration.ip.IpHeaders;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.ip.util.RegexUtils;
 import org.springframework.integration.mapping.InboundMessageMapper;
 import org.springframework.integration.mapping.MessageMappingException;
@@ -87,6 +88,8 @@ public class DatagramPacketMessageMapper implements InboundMessageMapper<Datagra
 
 	private BeanFactory beanFactory;
 
+	private volatile ByteBufferPool bufferPool;
+
 	public void setCharset(String charset) {
 		this.charset = charset;
 	}
@@ -110,6 +113,18 @@ public class DatagramPacketMessageMapper implements InboundMessageMapper<Datagra
 		this.lookupHost = lookupHost;
 	}
 
+	/**
+	 * Set a {@link ByteBufferPool} from which to obtain the packet buffers when the
+	 * payload has to be copied (length check or acknowledgment); such buffers can be
+	 * returned to the pool with {@link #release(DatagramPacket)} after the packet
+	 * has been sent.
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
 	@Override
 	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
 		this.beanFactory = beanFactory;
@@ -135,23 +150,44 @@ public class DatagramPacketMessageMapper implements InboundMessageMapper<Datagra
 		}
 		byte[] bytes = getPayloadAsBytes(message);
 		if (this.lengthCheck) {
-			ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 4);
+			ByteBuffer buffer = allocate(bytes.length + 4);
 			// insert the length (not including the length bytes)
 			// default ByteOrder is	ByteOrder.BIG_ENDIAN (network byte order)
 			buffer.putInt(bytes.length);
 			buffer.put(bytes);
-			bytes = buffer.array();
+			return new DatagramPacket(buffer.array(), buffer.position());
 		}
 		return new DatagramPacket(bytes, bytes.length);
 	}
 
+	/**
+	 * Return the data of a packet created by {@link #fromMessage(Message)} to the
+	 * {@link ByteBufferPool}, if it was obtained from it; the packet must not be
+	 * used afterwards.
+	 * @param packet the packet.
+	 * @since 5.0
+	 * @see #setBufferPool(ByteBufferPool)
+	 */
+	public void release(DatagramPacket packet) {
+		if (this.bufferPool != null && (this.lengthCheck || this.acknowledge)) {
+			this.bufferPool.releaseArray(packet.getData());
+		}
+	}
+
+	private ByteBuffer allocate(int size) {
+		if (this.bufferPool != null) {
+			return this.bufferPool.acquire(size, false);
+		}
+		return ByteBuffer.allocate(size);
+	}
+
 	/**
 	 * Prefix raw byte[] from message with 'acknowledge to' and 'message id' "headers".
 	 */
 	private DatagramPacket fromMessageWithAck(Message<?> message) throws Exception {
 		Assert.hasLength(this.ackAddress);
 		byte[] bytes = getPayloadAsBytes(message);
-		ByteBuffer buffer = ByteBuffer.allocate(100 + bytes.length);
+		ByteBuffer buffer = allocate(100 + bytes.length);
 		if (this.lengthCheck) {
 			buffer.putInt(0); // placeholder for length
 		}
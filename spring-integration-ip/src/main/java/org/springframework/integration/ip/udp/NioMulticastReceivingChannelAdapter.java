@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.udp;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
+
+/**
+ * A {@link NioUnicastReceivingChannelAdapter} that joins a multicast group.
+ *
+ * @author agent
+ * @since 5.0
+ */
+public class NioMulticastReceivingChannelAdapter extends NioUnicastReceivingChannelAdapter {
+
+	private final String group;
+
+	/**
+	 * Constructs a NioMulticastReceivingChannelAdapter that listens for packets on the
+	 * specified multichannel address (group) and port.
+	 * @param group The multichannel address.
+	 * @param port The port.
+	 */
+	public NioMulticastReceivingChannelAdapter(String group, int port) {
+		super(port);
+		this.group = group;
+	}
+
+	/**
+	 * Constructs a NioMulticastReceivingChannelAdapter that listens for packets on the
+	 * specified multichannel address (group) and port. Enables setting the lengthCheck
+	 * option, which expects a length to precede the incoming packets.
+	 * @param group The multichannel address.
+	 * @param port The port.
+	 * @param lengthCheck If true, enables the lengthCheck Option.
+	 */
+	public NioMulticastReceivingChannelAdapter(String group, int port, boolean lengthCheck) {
+		super(port, lengthCheck);
+		this.group = group;
+	}
+
+	@Override
+	protected DatagramChannel openChannel() throws IOException {
+		DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		return channel;
+	}
+
+	@Override
+	protected InetSocketAddress getBindAddress(int port) {
+		// the local address selects the interface on which to join the group
+		return new InetSocketAddress(port);
+	}
+
+	@Override
+	protected void channelBound(DatagramChannel channel) throws IOException {
+		NetworkInterface nic = getNetworkInterface();
+		channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, nic);
+		channel.join(InetAddress.getByName(this.group), nic);
+	}
+
+	private NetworkInterface getNetworkInterface() throws IOException {
+		String localAddress = getLocalAddress();
+		if (localAddress != null) {
+			NetworkInterface nic = NetworkInterface.getByInetAddress(InetAddress.getByName(localAddress));
+			if (nic == null) {
+				throw new SocketException("No network interface for " + localAddress);
+			}
+			return nic;
+		}
+		Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+		while (interfaces.hasMoreElements()) {
+			NetworkInterface nic = interfaces.nextElement();
+			if (nic.isUp() && nic.supportsMulticast() && !nic.isLoopback() && hasIpv4Address(nic)) {
+				return nic;
+			}
+		}
+		throw new SocketException("No multicast capable network interface found; set the 'localAddress'");
+	}
+
+	private boolean hasIpv4Address(NetworkInterface nic) {
+		Enumeration<InetAddress> addresses = nic.getInetAddresses();
+		while (addresses.hasMoreElements()) {
+			if (addresses.nextElement() instanceof Inet4Address) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.udp;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.integration.ip.util.ByteBufferPool;
+import org.springframework.messaging.MessagingException;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * A channel adapter to receive incoming UDP packets using a non-blocking
+ * {@link DatagramChannel} and a {@link Selector}, rather than a blocking
+ * {@link DatagramSocket}. Each receiver thread reads into a reusable direct buffer and
+ * drains up to {@link #setReceiveBatchSize(int) receiveBatchSize} packets per wake up;
+ * the packets of a batch are mapped to messages and sent on a single task executor
+ * thread.
+ * <p>
+ * Several receiver threads can be configured; when {@link #setReusePort(boolean)
+ * reusePort} is true and the platform supports {@code SO_REUSEPORT}, each receiver
+ * has its own channel bound to the port and the kernel distributes the packets;
+ * otherwise, the receivers share one channel. Each receiver occupies a task executor
+ * thread while the adapter is running, so the default task executor has
+ * {@link #setReceiverCount(int) receiverCount} threads for the receivers in addition to
+ * the {@link #setPoolSize(int) pool size} threads for sending the messages; a provided
+ * task executor must have more threads than the receiver count, otherwise the
+ * messages are never sent.
+ * <p>
+ * Packet format (length check, acknowledgments) is the same as for the
+ * {@link UnicastReceivingChannelAdapter}.
+ *
+ * @author agent
+ * @since 5.0
+ */
+public class NioUnicastReceivingChannelAdapter extends UnicastReceivingChannelAdapter {
+
+	private static final SocketOption<Boolean> SO_REUSEPORT = findReusePortOption();
+
+	private final Set<Selector> selectors = new CopyOnWriteArraySet<>();
+
+	private final AtomicLong receivedPacketCount = new AtomicLong();
+
+	private volatile int receiverCount = 1;
+
+	private volatile int receiveBatchSize = 64;
+
+	private volatile boolean reusePort;
+
+	private volatile DatagramChannel[] channels;
+
+	/**
+	 * Constructs a NioUnicastReceivingChannelAdapter that listens on the specified port.
+	 * @param port The port.
+	 */
+	public NioUnicastReceivingChannelAdapter(int port) {
+		super(port);
+	}
+
+	/**
+	 * Constructs a NioUnicastReceivingChannelAdapter that listens for packets on
+	 * the specified port. Enables setting the lengthCheck option, which expects
+	 * a length to precede the incoming packets.
+	 * @param port The port.
+	 * @param lengthCheck If true, enables the lengthCheck Option.
+	 */
+	public NioUnicastReceivingChannelAdapter(int port, boolean lengthCheck) {
+		super(port, lengthCheck);
+	}
+
+	/**
+	 * Set the number of receiver threads. Default 1. The default task executor is
+	 * sized accordingly.
+	 * @param receiverCount the receiver count.
+	 */
+	public void setReceiverCount(int receiverCount) {
+		Assert.isTrue(receiverCount > 0, "'receiverCount' must be greater than 0");
+		this.receiverCount = receiverCount;
+	}
+
+	/**
+	 * Set the maximum number of packets a receiver reads before handing them off to
+	 * the task executor. Default 64.
+	 * @param receiveBatchSize the batch size.
+	 */
+	public void setReceiveBatchSize(int receiveBatchSize) {
+		Assert.isTrue(receiveBatchSize > 0, "'receiveBatchSize' must be greater than 0");
+		this.receiveBatchSize = receiveBatchSize;
+	}
+
+	/**
+	 * Set to true to give each receiver its own channel, bound to the same port with
+	 * {@code SO_REUSEPORT}, if the platform supports it. Default false.
+	 * @param reusePort true to reuse the port.
+	 */
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+
+	/**
+	 * @return true if the platform supports {@code SO_REUSEPORT}.
+	 */
+	public static boolean isReusePortSupported() {
+		return SO_REUSEPORT != null;
+	}
+
+	/**
+	 * @return the number of packets received since the adapter was created.
+	 */
+	public long getReceivedPacketCount() {
+		return this.receivedPacketCount.get();
+	}
+
+	@Override
+	protected int getDefaultTaskExecutorPoolSize() {
+		// the receivers block their threads; the pool size is for sending the messages
+		return this.receiverCount + super.getDefaultTaskExecutorPoolSize();
+	}
+
+	@Override
+	public synchronized DatagramSocket getSocket() {
+		if (this.channels == null) {
+			try {
+				this.channels = openChannels();
+				setSocket(this.channels[0].socket());
+			}
+			catch (IOException e) {
+				throw new MessagingException("failed to create DatagramChannel", e);
+			}
+		}
+		return this.channels[0].socket();
+	}
+
+	private DatagramChannel[] openChannels() throws IOException {
+		boolean reuse = this.reusePort && this.receiverCount > 1;
+		if (reuse && SO_REUSEPORT == null) {
+			logger.info("SO_REUSEPORT is not supported on this platform; the receivers will share one channel");
+			reuse = false;
+		}
+		DatagramChannel[] channels = new DatagramChannel[reuse ? this.receiverCount : 1];
+		int port = super.getPort();
+		try {
+			for (int i = 0; i < channels.length; i++) {
+				DatagramChannel channel = openChannel();
+				channels[i] = channel;
+				if (reuse) {
+					channel.setOption(SO_REUSEPORT, true);
+				}
+				setSocketAttributes(channel.socket());
+				channel.bind(getBindAddress(port));
+				// when the port is ephemeral, the other channels bind to the one that was assigned
+				port = channel.socket().getLocalPort();
+				channel.configureBlocking(false);
+				channelBound(channel);
+			}
+		}
+		catch (IOException e) {
+			for (DatagramChannel channel : channels) {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+			throw e;
+		}
+		return channels;
+	}
+
+	/**
+	 * Open the channel; subclasses can override to open it for a specific protocol
+	 * family or to set additional options before it is bound.
+	 * @return the channel.
+	 * @throws IOException an IO exception.
+	 */
+	protected DatagramChannel openChannel() throws IOException {
+		return DatagramChannel.open();
+	}
+
+	/**
+	 * Return the address to which the channel is bound; by default, the
+	 * {@link #setLocalAddress(String) local address}, if any, or the wildcard address.
+	 * @param port the port.
+	 * @return the address.
+	 * @throws IOException an IO exception.
+	 */
+	protected InetSocketAddress getBindAddress(int port) throws IOException {
+		String localAddress = getLocalAddress();
+		return localAddress == null
+				? new InetSocketAddress(port)
+				: new InetSocketAddress(InetAddress.getByName(localAddress), port);
+	}
+
+	/**
+	 * Invoked after the channel is bound; subclasses can override to, for example,
+	 * join a multicast group.
+	 * @param channel the channel.
+	 * @throws IOException an IO exception.
+	 */
+	protected void channelBound(DatagramChannel channel) throws IOException {
+	}
+
+	@Override
+	public void run() {
+		getSocket();
+		DatagramChannel[] channels = this.channels;
+
+		if (logger.isDebugEnabled()) {
+			logger.debug("UDP Receiver running on port:" + this.getPort() + " with " + this.receiverCount
+					+ " receiver(s) on " + channels.length + " channel(s)");
+		}
+
+		Executor taskExecutor = getTaskExecutor();
+		for (int i = 1; i < this.receiverCount; i++) {
+			final DatagramChannel channel = channels[i % channels.length];
+			try {
+				taskExecutor.execute(() -> receive(channel));
+			}
+			catch (RejectedExecutionException e) {
+				logger.error("Failed to start receiver " + i + "; the task executor has too few threads", e);
+			}
+		}
+		setListening(true);
+		receive(channels[0]);
+		this.setListening(false);
+	}
+
+	private void receive(DatagramChannel channel) {
+		Selector selector = null;
+		try {
+			selector = Selector.open();
+			this.selectors.add(selector);
+			channel.register(selector, SelectionKey.OP_READ);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(getReceiveBufferSize());
+			while (isActive()) {
+				selector.select(1000);
+				selector.selectedKeys().clear();
+				List<DatagramPacket> batch = readBatch(channel, buffer);
+				if (batch != null) {
+					dispatch(batch);
+				}
+			}
+		}
+		catch (ClosedChannelException e) {
+			// stopped
+		}
+		catch (IOException e) {
+			if (isActive()) {
+				logger.error("Error on UDP receiver", e);
+				stop();
+			}
+		}
+		finally {
+			if (selector != null) {
+				this.selectors.remove(selector);
+				try {
+					selector.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	private List<DatagramPacket> readBatch(DatagramChannel channel, ByteBuffer buffer) throws IOException {
+		List<DatagramPacket> batch = null;
+		ByteBufferPool bufferPool = getBufferPool();
+		SocketAddress sender;
+		while ((batch == null || batch.size() < this.receiveBatchSize)
+				&& (sender = channel.receive(buffer)) != null) {
+			buffer.flip();
+			int length = buffer.remaining();
+			byte[] data = bufferPool != null ? bufferPool.acquireArray(length) : new byte[length];
+			buffer.get(data, 0, length);
+			buffer.clear();
+			if (batch == null) {
+				batch = new ArrayList<>(this.receiveBatchSize);
+			}
+			batch.add(new DatagramPacket(data, length, sender));
+		}
+		if (batch != null) {
+			this.receivedPacketCount.addAndGet(batch.size());
+		}
+		return batch;
+	}
+
+	private void dispatch(final List<DatagramPacket> batch) {
+		Executor taskExecutor = getTaskExecutor();
+		if (taskExecutor != null) {
+			try {
+				taskExecutor.execute(() -> batch.forEach(this::doSend));
+				return;
+			}
+			catch (RejectedExecutionException e) {
+				if (logger.isDebugEnabled()) {
+					logger.debug("Adapter stopped, sending on receiver thread");
+				}
+			}
+		}
+		batch.forEach(this::doSend);
+	}
+
+	@Override
+	protected void doStop() {
+		DatagramChannel[] channels = this.channels;
+		this.channels = null;
+		super.doStop();
+		if (channels != null) {
+			for (DatagramChannel channel : channels) {
+				try {
+					channel.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		for (Selector selector : this.selectors) {
+			selector.wakeup();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> findReusePortOption() {
+		// StandardSocketOptions.SO_REUSEPORT is only available on Java 9 and later
+		Field field = ReflectionUtils.findField(StandardSocketOptions.class, "SO_REUSEPORT");
+		if (field == null) {
+			return null;
+		}
+		SocketOption<Boolean> option = (SocketOption<Boolean>) ReflectionUtils.getField(field, null);
+		try (DatagramChannel channel = DatagramChannel.open()) {
+			return channel.supportedOptions().contains(option) ? option : null;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+}
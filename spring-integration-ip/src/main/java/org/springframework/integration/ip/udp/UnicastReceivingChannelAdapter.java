@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -30,6 +30,7 @@ import java.util.regex.Pattern;
 
 import org.springframework.integration.ip.AbstractInternetProtocolReceivingChannelAdapter;
 import org.springframework.integration.ip.IpHeaders;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.MessagingException;
@@ -50,6 +51,8 @@ public class UnicastReceivingChannelAdapter extends AbstractInternetProtocolRece
 
 	private volatile int soSendBufferSize = -1;
 
+	private volatile ByteBufferPool bufferPool;
+
 	private static Pattern addressPattern = Pattern.compile("([^:]*):([0-9]*)");
 
 
@@ -83,6 +86,24 @@ public class UnicastReceivingChannelAdapter extends AbstractInternetProtocolRece
 		this.mapper.setLengthCheck(lengthCheck);
 	}
 
+	/**
+	 * Set a {@link ByteBufferPool} from which to obtain the receive buffers; a
+	 * buffer is returned to the pool once the packet has been mapped to a message.
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * @return the buffer pool, if any.
+	 * @since 5.0
+	 */
+	protected ByteBufferPool getBufferPool() {
+		return this.bufferPool;
+	}
+
 	@Override
 	public boolean isLongLived() {
 		return true;
@@ -193,6 +214,11 @@ public class UnicastReceivingChannelAdapter extends AbstractInternetProtocolRece
 		catch (Exception e) {
 			logger.error("Failed to map packet to message ", e);
 		}
+		finally {
+			if (this.bufferPool != null) {
+				this.bufferPool.releaseArray(packet.getData());
+			}
+		}
 		if (message != null) {
 			if (message.getHeaders().containsKey(IpHeaders.ACK_ADDRESS)) {
 				sendAck(message);
@@ -203,8 +229,11 @@ public class UnicastReceivingChannelAdapter extends AbstractInternetProtocolRece
 
 	protected DatagramPacket receive() throws Exception {
 		DatagramSocket socket = this.getSocket();
-		final byte[] buffer = new byte[this.getReceiveBufferSize()];
-		DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+		int receiveBufferSize = this.getReceiveBufferSize();
+		final byte[] buffer = this.bufferPool != null
+				? this.bufferPool.acquireArray(receiveBufferSize)
+				: new byte[receiveBufferSize];
+		DatagramPacket packet = new DatagramPacket(buffer, receiveBufferSize);
 		socket.receive(packet);
 		return packet;
 	}
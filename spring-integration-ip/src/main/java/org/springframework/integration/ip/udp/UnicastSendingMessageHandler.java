@@ -1,5 +1,5 @@
 /*
- * Copyright 2001-2016 the original author or authors.
+ * Copyright 2001-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -24,9 +24,15 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -34,11 +40,13 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.ip.AbstractInternetProtocolSendingMessageHandler;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageDeliveryException;
 import org.springframework.messaging.MessageHandlingException;
@@ -52,6 +60,11 @@ import org.springframework.util.Assert;
  * Messages can be basic, with no support for reliability, can be prefixed
  * by a length so the receiving end can detect truncation, and can require
  * a UDP acknowledgment to confirm delivery.
+ * <p>
+ * When a {@link #setSendBatchSize(int) sendBatchSize} is set, messages are queued
+ * and a single sender thread sends them in batches over a {@link DatagramChannel},
+ * with a reusable direct buffer, so that the calling threads do not block on the
+ * socket; acknowledgments are not supported in this mode.
  *
  * @author Gary Russell
  * @author Marcin Pilaczynski
@@ -101,6 +114,14 @@ public class UnicastSendingMessageHandler extends
 
 	private EvaluationContext evaluationContext;
 
+	private final AtomicLong sentPacketCount = new AtomicLong();
+
+	private volatile int sendBatchSize;
+
+	private volatile int sendQueueCapacity = 10000;
+
+	private volatile BatchSender batchSender;
+
 	/**
 	 * Basic constructor; no reliability; no acknowledgment.
 	 * @param host Destination host.
@@ -226,8 +247,42 @@ public class UnicastSendingMessageHandler extends
 		this.mapper.setLengthCheck(lengthCheck);
 	}
 
+	/**
+	 * Set the maximum number of queued messages the sender thread sends in one batch;
+	 * when greater than 0, messages are queued and sent asynchronously over a
+	 * {@link DatagramChannel}. Default 0 (messages are sent on the calling thread).
+	 * @param sendBatchSize the batch size.
+	 * @since 5.0
+	 */
+	public void setSendBatchSize(int sendBatchSize) {
+		this.sendBatchSize = sendBatchSize;
+	}
+
+	/**
+	 * Set the capacity of the queue used when batching; when the queue is full, sending
+	 * a message fails with a {@link MessageDeliveryException}. Default 10000.
+	 * @param sendQueueCapacity the capacity.
+	 * @since 5.0
+	 * @see #setSendBatchSize(int)
+	 */
+	public void setSendQueueCapacity(int sendQueueCapacity) {
+		Assert.isTrue(sendQueueCapacity > 0, "'sendQueueCapacity' must be greater than 0");
+		this.sendQueueCapacity = sendQueueCapacity;
+	}
+
+	/**
+	 * @return the number of packets sent since the handler was created.
+	 * @since 5.0
+	 */
+	public long getSentPacketCount() {
+		return this.sentPacketCount.get();
+	}
+
 	@Override
 	public void doStart() {
+		if (this.sendBatchSize > 0) {
+			startBatchSender();
+		}
 		if (this.acknowledge) {
 			if (this.taskExecutor == null) {
 				Executor executor = Executors
@@ -252,6 +307,11 @@ public class UnicastSendingMessageHandler extends
 
 	@Override
 	protected void doStop() {
+		BatchSender batchSender = this.batchSender;
+		if (batchSender != null) {
+			this.batchSender = null;
+			batchSender.running = false;
+		}
 		this.closeSocketIfNeeded();
 		if (!this.taskExecutorSet && this.taskExecutor != null) {
 			((ExecutorService) this.taskExecutor).shutdown();
@@ -262,6 +322,14 @@ public class UnicastSendingMessageHandler extends
 	@Override
 	public void handleMessageInternal(Message<?> message) throws MessageHandlingException,
 			MessageDeliveryException {
+		if (this.sendBatchSize > 0) {
+			BatchSender batchSender = this.batchSender;
+			Assert.state(batchSender != null, "When 'sendBatchSize' is set, adapter must be running");
+			if (!batchSender.queue.offer(message)) {
+				throw new MessageDeliveryException(message, "The UDP send queue is full");
+			}
+			return;
+		}
 		if (this.acknowledge) {
 			Assert.state(this.isRunning(), "When 'acknowledge' is enabled, adapter must be running");
 			startAckThread();
@@ -337,6 +405,22 @@ public class UnicastSendingMessageHandler extends
 		else {
 			socket = getSocket();
 		}
+		SocketAddress destinationAddress = resolveDestinationAddress(message);
+		DatagramPacket packet = this.mapper.fromMessage(message);
+		try {
+			packet.setSocketAddress(destinationAddress);
+			socket.send(packet);
+			this.sentPacketCount.incrementAndGet();
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sent packet for message " + message + " to " + packet.getSocketAddress());
+			}
+		}
+		finally {
+			this.mapper.release(packet);
+		}
+	}
+
+	private SocketAddress resolveDestinationAddress(Message<?> message) throws Exception {
 		SocketAddress destinationAddress;
 		if (this.destinationExpression != null) {
 			Object destination = this.destinationExpression.getValue(this.evaluationContext, message);
@@ -358,12 +442,40 @@ public class UnicastSendingMessageHandler extends
 		else {
 			destinationAddress = getDestinationAddress();
 		}
-		DatagramPacket packet = this.mapper.fromMessage(message);
-		packet.setSocketAddress(destinationAddress);
-		socket.send(packet);
-		if (logger.isDebugEnabled()) {
-			logger.debug("Sent packet for message " + message + " to " + packet.getSocketAddress());
+		return destinationAddress;
+	}
+
+	private void startBatchSender() {
+		DatagramChannel channel = null;
+		try {
+			channel = DatagramChannel.open();
+			setSocketAttributes(channel.socket());
+			if (this.localAddress != null) {
+				channel.bind(new InetSocketAddress(InetAddress.getByName(this.localAddress), 0));
+			}
 		}
+		catch (IOException e) {
+			if (channel != null) {
+				try {
+					channel.close();
+				}
+				catch (IOException e1) {
+					// ignore
+				}
+			}
+			throw new MessagingException("Failed to open the UDP send channel", e);
+		}
+		if (this.taskExecutor == null) {
+			this.taskExecutor = Executors.newSingleThreadExecutor(runner -> {
+				Thread thread = new Thread(runner);
+				thread.setName("UDP-Sender");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		BatchSender batchSender = new BatchSender(new ArrayBlockingQueue<>(this.sendQueueCapacity), channel);
+		this.batchSender = batchSender;
+		this.taskExecutor.execute(batchSender);
 	}
 
 	protected void setSocket(DatagramSocket socket) {
@@ -418,6 +530,17 @@ public class UnicastSendingMessageHandler extends
 		this.localAddress = localAddress;
 	}
 
+	/**
+	 * Set a {@link ByteBufferPool} from which to obtain the packet buffers when the
+	 * payload is copied (length check or acknowledgment).
+	 * @param bufferPool the pool.
+	 * @since 5.0
+	 * @see DatagramPacketMessageMapper#setBufferPool(ByteBufferPool)
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.mapper.setBufferPool(bufferPool);
+	}
+
 	public void setTaskExecutor(Executor taskExecutor) {
 		Assert.notNull(taskExecutor, "'taskExecutor' cannot be null");
 		this.taskExecutor = taskExecutor;
@@ -487,6 +610,10 @@ public class UnicastSendingMessageHandler extends
 		if (this.socketExpression != null) {
 			Assert.state(!this.acknowledge, "'acknowledge' must be false when using a socket expression");
 		}
+		if (this.sendBatchSize > 0) {
+			Assert.state(!this.acknowledge && this.socketExpression == null,
+					"'acknowledge' and a socket expression are not supported with a 'sendBatchSize'");
+		}
 	}
 
 	protected void setSocketAttributes(DatagramSocket socket) throws SocketException {
@@ -544,4 +671,83 @@ public class UnicastSendingMessageHandler extends
 		}
 	}
 
+	/**
+	 * Sends the queued messages; a new instance is used each time the handler is
+	 * started. When stopped, the messages that are already queued are sent before the
+	 * channel is closed.
+	 */
+	private final class BatchSender implements Runnable {
+
+		private final BlockingQueue<Message<?>> queue;
+
+		private final DatagramChannel channel;
+
+		private volatile boolean running = true;
+
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(2048);
+
+		BatchSender(BlockingQueue<Message<?>> queue, DatagramChannel channel) {
+			this.queue = queue;
+			this.channel = channel;
+		}
+
+		@Override
+		public void run() {
+			List<Message<?>> batch = new ArrayList<>();
+			try {
+				while (this.running || !this.queue.isEmpty()) {
+					Message<?> message = this.queue.poll(100, TimeUnit.MILLISECONDS);
+					if (message != null) {
+						batch.add(message);
+						this.queue.drainTo(batch, UnicastSendingMessageHandler.this.sendBatchSize - 1);
+						for (Message<?> toSend : batch) {
+							send(toSend);
+						}
+						batch.clear();
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				try {
+					this.channel.close();
+				}
+				catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		private void send(Message<?> message) {
+			DatagramPacket packet = null;
+			try {
+				SocketAddress destinationAddress = resolveDestinationAddress(message);
+				packet = UnicastSendingMessageHandler.this.mapper.fromMessage(message);
+				int length = packet.getLength();
+				if (this.buffer.capacity() < length) {
+					this.buffer = ByteBuffer.allocateDirect(length);
+				}
+				this.buffer.clear();
+				this.buffer.put(packet.getData(), packet.getOffset(), length);
+				this.buffer.flip();
+				this.channel.send(this.buffer, destinationAddress);
+				UnicastSendingMessageHandler.this.sentPacketCount.incrementAndGet();
+				if (logger.isDebugEnabled()) {
+					logger.debug("Sent packet for message " + message + " to " + destinationAddress);
+				}
+			}
+			catch (Exception e) {
+				logger.error("Failed to send UDP packet for " + message, e);
+			}
+			finally {
+				if (packet != null) {
+					UnicastSendingMessageHandler.this.mapper.release(packet);
+				}
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+/**
+ * A pool of heap and direct {@link ByteBuffer}s, organized in power of two size
+ * classes, that can be shared by the TCP connections, the UDP adapters and the
+ * deserializers. Requests are rounded up to the next size class; requests larger
+ * than the maximum buffer size are allocated (and discarded on release) without
+ * pooling. Each size class retains at most {@code maxPooledPerSizeClass} idle
+ * buffers; surplus buffers are left to the garbage collector.
+ * <p>
+ * Heap buffers are also available as arrays ({@link #acquireArray(int)}), for
+ * components that work with {@code byte[]}.
+ * <p>
+ * A buffer must not be used by the caller after it has been released, and must be
+ * released only once; releasing a buffer (or the array of a heap buffer) that is still
+ * idle in the pool is rejected with an {@link IllegalStateException}, so that it can't
+ * be handed out to two callers.
+ *
+ * @author agent
+ * @since 5.0
+ *
+ */
+@ManagedResource
+public class ByteBufferPool {
+
+	public static final int DEFAULT_MIN_BUFFER_SIZE = 512;
+
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+
+	public static final int DEFAULT_MAX_POOLED_PER_SIZE_CLASS = 256;
+
+	private final int minShift;
+
+	private final int maxBufferSize;
+
+	private final int maxPooledPerSizeClass;
+
+	private final SizeClass[] heap;
+
+	private final SizeClass[] direct;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong discards = new AtomicLong();
+
+	/**
+	 * Construct a pool with the default size classes (512 bytes to 1 MiB), retaining
+	 * up to 256 idle buffers per size class.
+	 */
+	public ByteBufferPool() {
+		this(DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_PER_SIZE_CLASS);
+	}
+
+	/**
+	 * Construct a pool with the provided size classes.
+	 * @param minBufferSize the smallest size class; rounded up to a power of two.
+	 * @param maxBufferSize the largest size class; rounded up to a power of two.
+	 * @param maxPooledPerSizeClass the maximum number of idle buffers retained in each
+	 * size class, for each of heap and direct buffers.
+	 */
+	public ByteBufferPool(int minBufferSize, int maxBufferSize, int maxPooledPerSizeClass) {
+		Assert.isTrue(minBufferSize > 0, "'minBufferSize' must be greater than 0");
+		Assert.isTrue(maxBufferSize >= minBufferSize, "'maxBufferSize' must be at least 'minBufferSize'");
+		Assert.isTrue(maxBufferSize <= 1 << 30, "'maxBufferSize' must not exceed 1 GiB");
+		Assert.isTrue(maxPooledPerSizeClass >= 0, "'maxPooledPerSizeClass' cannot be negative");
+		this.minShift = shift(minBufferSize);
+		int maxShift = shift(maxBufferSize);
+		this.maxBufferSize = 1 << maxShift;
+		this.maxPooledPerSizeClass = maxPooledPerSizeClass;
+		int classes = maxShift - this.minShift + 1;
+		this.heap = new SizeClass[classes];
+		this.direct = new SizeClass[classes];
+		for (int i = 0; i < classes; i++) {
+			this.heap[i] = new SizeClass();
+			this.direct[i] = new SizeClass();
+		}
+	}
+
+	/**
+	 * Obtain a cleared buffer with a capacity of at least {@code size} bytes.
+	 * @param size the required capacity.
+	 * @param directBuffer true for a direct buffer.
+	 * @return the buffer; position 0, limit equal to its capacity.
+	 */
+	public ByteBuffer acquire(int size, boolean directBuffer) {
+		if (size > this.maxBufferSize) {
+			this.misses.incrementAndGet();
+			return allocate(size, directBuffer);
+		}
+		int shift = Math.max(shift(size), this.minShift);
+		SizeClass sizeClass = (directBuffer ? this.direct : this.heap)[shift - this.minShift];
+		ByteBuffer buffer = sizeClass.poll();
+		if (buffer != null) {
+			this.hits.incrementAndGet();
+			buffer.clear();
+			return buffer;
+		}
+		this.misses.incrementAndGet();
+		return allocate(1 << shift, directBuffer);
+	}
+
+	/**
+	 * Obtain an array of at least {@code size} bytes, backed by a pooled heap buffer.
+	 * The array content is undefined.
+	 * @param size the required length.
+	 * @return the array.
+	 */
+	public byte[] acquireArray(int size) {
+		return acquire(size, false).array();
+	}
+
+	/**
+	 * Return a buffer to the pool. Buffers that don't match a size class (e.g. slices,
+	 * oversize or foreign buffers) and buffers exceeding the per-class limit are
+	 * discarded.
+	 * @param buffer the buffer; may be null.
+	 * @throws IllegalStateException if the buffer has already been released.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null) {
+			return;
+		}
+		int capacity = buffer.capacity();
+		if (capacity > this.maxBufferSize || Integer.bitCount(capacity) != 1
+				|| Integer.numberOfTrailingZeros(capacity) < this.minShift || buffer.isReadOnly()
+				|| (!buffer.isDirect() && buffer.arrayOffset() != 0)) {
+			this.discards.incrementAndGet();
+			return;
+		}
+		SizeClass sizeClass = (buffer.isDirect() ? this.direct : this.heap)
+				[Integer.numberOfTrailingZeros(capacity) - this.minShift];
+		if (!sizeClass.offer(buffer, this.maxPooledPerSizeClass)) {
+			this.discards.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Return an array obtained from {@link #acquireArray(int)} to the pool.
+	 * @param array the array; may be null.
+	 * @throws IllegalStateException if the array has already been released.
+	 */
+	public void releaseArray(byte[] array) {
+		if (array != null) {
+			release(ByteBuffer.wrap(array));
+		}
+	}
+
+	/**
+	 * @return the number of requests satisfied from the pool.
+	 */
+	@ManagedAttribute
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return the number of requests that needed a new allocation.
+	 */
+	@ManagedAttribute
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return the number of released buffers that were not retained.
+	 */
+	@ManagedAttribute
+	public long getDiscardCount() {
+		return this.discards.get();
+	}
+
+	/**
+	 * @return the number of idle heap buffers in the pool.
+	 */
+	@ManagedAttribute
+	public int getPooledHeapBufferCount() {
+		return count(this.heap);
+	}
+
+	/**
+	 * @return the number of idle direct buffers in the pool.
+	 */
+	@ManagedAttribute
+	public int getPooledDirectBufferCount() {
+		return count(this.direct);
+	}
+
+	/**
+	 * @return the total capacity of the idle heap buffers.
+	 */
+	@ManagedAttribute
+	public long getPooledHeapBytes() {
+		return bytes(this.heap);
+	}
+
+	/**
+	 * @return the total capacity of the idle direct buffers.
+	 */
+	@ManagedAttribute
+	public long getPooledDirectBytes() {
+		return bytes(this.direct);
+	}
+
+	/**
+	 * Reset the hit, miss and discard counters.
+	 */
+	@ManagedOperation
+	public void resetCounters() {
+		this.hits.set(0);
+		this.misses.set(0);
+		this.discards.set(0);
+	}
+
+	/**
+	 * Discard all idle buffers.
+	 */
+	@ManagedOperation
+	public void clear() {
+		clear(this.heap);
+		clear(this.direct);
+	}
+
+	private int count(SizeClass[] sizeClasses) {
+		int count = 0;
+		for (SizeClass sizeClass : sizeClasses) {
+			count += sizeClass.count.get();
+		}
+		return count;
+	}
+
+	private long bytes(SizeClass[] sizeClasses) {
+		long bytes = 0;
+		for (int i = 0; i < sizeClasses.length; i++) {
+			bytes += (long) sizeClasses[i].count.get() << (i + this.minShift);
+		}
+		return bytes;
+	}
+
+	private void clear(SizeClass[] sizeClasses) {
+		for (SizeClass sizeClass : sizeClasses) {
+			sizeClass.clear();
+		}
+	}
+
+	private static ByteBuffer allocate(int size, boolean directBuffer) {
+		return directBuffer ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+	private static int shift(int size) {
+		return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+	@Override
+	public String toString() {
+		return "ByteBufferPool [sizeClasses=" + (1 << this.minShift) + ".." + this.maxBufferSize
+				+ ", hits=" + this.hits + ", misses=" + this.misses + ", discards=" + this.discards
+				+ ", pooledHeapBytes=" + getPooledHeapBytes() + ", pooledDirectBytes=" + getPooledDirectBytes() + "]";
+	}
+
+	private static final class SizeClass {
+
+		private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+
+		/**
+		 * The idle buffers, by identity; the array of a heap buffer, since
+		 * {@link ByteBufferPool#releaseArray(byte[])} wraps it in a new buffer.
+		 */
+		private final Set<Object> idle = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		SizeClass() {
+			super();
+		}
+
+		synchronized ByteBuffer poll() {
+			ByteBuffer buffer = this.buffers.poll();
+			if (buffer != null) {
+				this.idle.remove(key(buffer));
+				this.count.decrementAndGet();
+			}
+			return buffer;
+		}
+
+		synchronized boolean offer(ByteBuffer buffer, int maxPooled) {
+			Object key = key(buffer);
+			if (this.idle.contains(key)) {
+				throw new IllegalStateException("Buffer already released to the pool: " + buffer);
+			}
+			if (this.buffers.size() >= maxPooled) {
+				return false;
+			}
+			this.idle.add(key);
+			this.buffers.offer(buffer);
+			this.count.incrementAndGet();
+			return true;
+		}
+
+		synchronized void clear() {
+			this.buffers.clear();
+			this.idle.clear();
+			this.count.set(0);
+		}
+
+		private static Object key(ByteBuffer buffer) {
+			return buffer.isDirect() ? buffer : buffer.array();
+		}
+
+	}
+
+}
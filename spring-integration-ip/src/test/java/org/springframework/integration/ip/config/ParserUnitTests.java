@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -40,6 +40,7 @@ import org.springframework.core.io.UrlResource;
 import org.springframework.core.serializer.Deserializer;
 import org.springframework.core.serializer.Serializer;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.aggregator.HeaderAttributeCorrelationStrategy;
 import org.springframework.integration.core.MessagingTemplate;
 import org.springframework.integration.endpoint.AbstractEndpoint;
 import org.springframework.integration.endpoint.EventDrivenConsumer;
@@ -65,8 +66,10 @@ import org.springframework.integration.ip.tcp.connection.TcpSocketSupport;
 import org.springframework.integration.ip.udp.DatagramPacketMessageMapper;
 import org.springframework.integration.ip.udp.MulticastReceivingChannelAdapter;
 import org.springframework.integration.ip.udp.MulticastSendingMessageHandler;
+import org.springframework.integration.ip.udp.NioUnicastReceivingChannelAdapter;
 import org.springframework.integration.ip.udp.UnicastReceivingChannelAdapter;
 import org.springframework.integration.ip.udp.UnicastSendingMessageHandler;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.test.util.TestUtils;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
@@ -103,10 +106,18 @@ public class ParserUnitTests {
 	@Qualifier("testInTcp")
 	TcpReceivingChannelAdapter tcpIn;
 
+	@Autowired
+	@Qualifier("testInUdpNio")
+	NioUnicastReceivingChannelAdapter udpInNio;
+
 	@Autowired
 	@Qualifier("testOutUdp.handler")
 	UnicastSendingMessageHandler udpOut;
 
+	@Autowired
+	@Qualifier("testOutUdpBatch.handler")
+	UnicastSendingMessageHandler udpOutBatch;
+
 	@Autowired
 	@Qualifier("testOutUdpiMulticast.handler")
 	MulticastSendingMessageHandler udpOutMulticast;
@@ -177,6 +188,9 @@ public class ParserUnitTests {
 	@Autowired
 	Deserializer<?> deserializer;
 
+	@Autowired
+	ByteBufferPool bufferPool;
+
 	@Autowired
 	AbstractConnectionFactory server1;
 
@@ -291,6 +305,22 @@ public class ParserUnitTests {
 		assertFalse((Boolean) mapperAccessor.getPropertyValue("lookupHost"));
 		assertFalse(TestUtils.getPropertyValue(udpIn, "autoStartup", Boolean.class));
 		assertEquals(1234, dfa.getPropertyValue("phase"));
+		assertSame(this.bufferPool, dfa.getPropertyValue("bufferPool"));
+	}
+
+	@Test
+	public void testInUdpNio() {
+		DirectFieldAccessor dfa = new DirectFieldAccessor(udpInNio);
+		assertEquals(2, dfa.getPropertyValue("receiverCount"));
+		assertEquals(16, dfa.getPropertyValue("receiveBatchSize"));
+		assertEquals(true, dfa.getPropertyValue("reusePort"));
+	}
+
+	@Test
+	public void testOutUdpBatch() {
+		DirectFieldAccessor dfa = new DirectFieldAccessor(udpOutBatch);
+		assertEquals(32, dfa.getPropertyValue("sendBatchSize"));
+		assertEquals(1000, dfa.getPropertyValue("sendQueueCapacity"));
 	}
 
 	@Test
@@ -367,6 +397,7 @@ public class ParserUnitTests {
 		assertEquals(23, dfa.getPropertyValue("order"));
 		assertEquals("testOutUdp", udpOut.getComponentName());
 		assertEquals("ip:udp-outbound-channel-adapter", udpOut.getComponentType());
+		assertSame(this.bufferPool, TestUtils.getPropertyValue(udpOut, "mapper.bufferPool"));
 	}
 
 	@Test
@@ -480,6 +511,9 @@ public class ParserUnitTests {
 		assertEquals("ip:tcp-outbound-gateway", tcpOutboundGateway.getComponentType());
 		assertTrue(cfC2.isLookupHost());
 		assertEquals(24, dfa.getPropertyValue("order"));
+		assertTrue(dfa.getPropertyValue("correlationStrategy") instanceof HeaderAttributeCorrelationStrategy);
+		assertSame(dfa.getPropertyValue("correlationStrategy"), dfa.getPropertyValue("replyCorrelationStrategy"));
+		assertEquals(true, dfa.getPropertyValue("async"));
 
 		assertEquals("4000", TestUtils.getPropertyValue(outAdviceGateway, "remoteTimeoutExpression.expression"));
 	}
@@ -502,6 +536,10 @@ public class ParserUnitTests {
 		assertSame(taskExecutor, dfa.getPropertyValue("taskExecutor"));
 		assertEquals(true, dfa.getPropertyValue("usingDirectBuffers"));
 		assertNotNull(dfa.getPropertyValue("interceptorFactoryChain"));
+		assertEquals(4096, dfa.getPropertyValue("writeBatchSize"));
+		assertEquals(5, dfa.getPropertyValue("writeBatchDelay"));
+		assertEquals(65536, dfa.getPropertyValue("readPauseThreshold"));
+		assertEquals(16384, dfa.getPropertyValue("readResumeThreshold"));
 	}
 
 	@Test
@@ -522,6 +560,9 @@ public class ParserUnitTests {
 		assertEquals(123, dfa.getPropertyValue("backlog"));
 		assertEquals(true, dfa.getPropertyValue("usingDirectBuffers"));
 		assertNotNull(dfa.getPropertyValue("interceptorFactoryChain"));
+		assertSame(this.bufferPool, dfa.getPropertyValue("bufferPool"));
+		assertEquals(2, dfa.getPropertyValue("workerSelectorCount"));
+		assertEquals(true, dfa.getPropertyValue("readInline"));
 	}
 
 	@Test
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -63,19 +64,27 @@ import org.springframework.expression.Expression;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.integration.MessageTimeoutException;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.context.IntegrationContextUtils;
+import org.springframework.integration.ip.IpHeaders;
 import org.springframework.integration.ip.tcp.connection.AbstractClientConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.CachingClientConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.FailoverClientConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.TcpConnectionSupport;
 import org.springframework.integration.ip.tcp.connection.TcpNetClientConnectionFactory;
+import org.springframework.integration.ip.tcp.connection.TcpNetServerConnectionFactory;
 import org.springframework.integration.ip.tcp.connection.TcpNioClientConnectionFactory;
+import org.springframework.integration.ip.util.TestingUtilities;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.test.support.LogAdjustingTestSupport;
 import org.springframework.integration.test.support.LongRunningIntegrationTest;
 import org.springframework.integration.test.util.TestUtils;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
 import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * @author Gary Russell
@@ -206,6 +215,160 @@ public class TcpOutboundGatewayTests extends LogAdjustingTestSupport {
 		serverSocket.get().close();
 	}
 
+	@Test
+	public void testMultiplexedNio() throws Exception {
+		final List<Message<?>> requests = Collections.synchronizedList(new ArrayList<>());
+		TcpNetServerConnectionFactory server = reversingServer(10, requests);
+		TcpNioClientConnectionFactory ccf = new TcpNioClientConnectionFactory("localhost",
+				server.getPort());
+		ccf.start();
+		TcpOutboundGateway gateway = multiplexingGateway(ccf);
+		final QueueChannel replyChannel = new QueueChannel();
+		gateway.setOutputChannel(replyChannel);
+		ExecutorService exec = Executors.newFixedThreadPool(10);
+		for (int i = 0; i < 10; i++) {
+			final String request = i + ":Test" + i;
+			exec.execute(() -> gateway.handleMessage(new GenericMessage<>(request)));
+		}
+		for (int i = 0; i < 10; i++) {
+			Message<?> reply = replyChannel.receive(10000);
+			assertNotNull(reply);
+			String payload = new String((byte[]) reply.getPayload());
+			assertEquals(payload.substring(payload.indexOf(':') + 1), "Test" + payload.substring(0, payload.indexOf(':')));
+		}
+		// all requests were in flight on the same connection
+		Set<Object> connectionIds = new HashSet<>();
+		for (Message<?> request : requests) {
+			connectionIds.add(request.getHeaders().get(IpHeaders.CONNECTION_ID));
+		}
+		assertEquals(1, connectionIds.size());
+		assertEquals(0, TestUtils.getPropertyValue(gateway, "multiplexedReplies", Map.class).size());
+		exec.shutdownNow();
+		gateway.stop();
+		server.stop();
+	}
+
+	@Test
+	public void testMultiplexedAsync() throws Exception {
+		TcpNetServerConnectionFactory server = reversingServer(5, Collections.synchronizedList(new ArrayList<>()));
+		TcpNetClientConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost",
+				server.getPort());
+		ccf.start();
+		TcpOutboundGateway gateway = multiplexingGateway(ccf);
+		gateway.setAsync(true);
+		QueueChannel replyChannel = new QueueChannel();
+		gateway.setOutputChannel(replyChannel);
+		// the calling thread is not blocked while the requests are in flight
+		for (int i = 0; i < 5; i++) {
+			gateway.handleMessage(new GenericMessage<>(i + ":Test" + i));
+		}
+		for (int i = 4; i >= 0; i--) {
+			Message<?> reply = replyChannel.receive(10000);
+			assertNotNull(reply);
+			assertEquals(i + ":Test" + i, new String((byte[]) reply.getPayload()));
+		}
+
+		// remote timeout
+		gateway.setRemoteTimeout(100);
+		QueueChannel errorChannel = new QueueChannel();
+		gateway.handleMessage(MessageBuilder.withPayload("5:Test5").setErrorChannel(errorChannel).build());
+		Message<?> error = errorChannel.receive(10000);
+		assertNotNull(error);
+		assertThat(error.getPayload(), instanceOf(MessageTimeoutException.class));
+		assertEquals(0, TestUtils.getPropertyValue(gateway, "multiplexedReplies", Map.class).size());
+
+		// the requests in flight fail when the connection is lost
+		gateway.setRemoteTimeout(10000);
+		gateway.handleMessage(MessageBuilder.withPayload("6:Test6").setErrorChannel(errorChannel).build());
+		server.stop();
+		error = errorChannel.receive(10000);
+		assertNotNull(error);
+		assertThat(error.getPayload(), instanceOf(MessagingException.class));
+		assertEquals(0, TestUtils.getPropertyValue(gateway, "multiplexedReplies", Map.class).size());
+		gateway.stop();
+	}
+
+	@Test
+	public void testMultiplexedAsyncLateReplyAfterClose() throws Exception {
+		TcpNetServerConnectionFactory server = reversingServer(10, Collections.synchronizedList(new ArrayList<>()));
+		TcpNetClientConnectionFactory ccf = new TcpNetClientConnectionFactory("localhost",
+				server.getPort());
+		ccf.start();
+		TcpOutboundGateway gateway = multiplexingGateway(ccf);
+		gateway.setAsync(true);
+		QueueChannel replyChannel = new QueueChannel();
+		gateway.setOutputChannel(replyChannel);
+		QueueChannel errorChannel = new QueueChannel();
+		gateway.handleMessage(MessageBuilder.withPayload("7:Test7").setErrorChannel(errorChannel).build());
+		Map<?, ?> replies = TestUtils.getPropertyValue(gateway, "multiplexedReplies", Map.class);
+		assertEquals(1, replies.size());
+		String connectionId = TestUtils.getPropertyValue(replies.get("7"), "connectionId", String.class);
+
+		// the close is processed before the reply read on another (NIO) thread
+		gateway.onMessage(new ErrorMessage(new MessagingException("Connection closed"),
+				Collections.singletonMap(IpHeaders.CONNECTION_ID, connectionId)));
+		assertNull(errorChannel.receive(100));
+		gateway.onMessage(MessageBuilder.withPayload("7:tseT".getBytes())
+				.setHeader(IpHeaders.CONNECTION_ID, connectionId)
+				.build());
+		Message<?> reply = replyChannel.receive(10000);
+		assertNotNull(reply);
+		assertEquals("7:tseT", new String((byte[]) reply.getPayload()));
+		assertNull(errorChannel.receive(3000));
+		assertEquals(0, replies.size());
+		gateway.stop();
+		server.stop();
+	}
+
+	/**
+	 * A server that replies to each batch of {@code batchSize} requests in reverse order,
+	 * so the replies can only be correlated if the requests are multiplexed.
+	 */
+	private TcpNetServerConnectionFactory reversingServer(final int batchSize, final List<Message<?>> requests)
+			throws Exception {
+		TcpNetServerConnectionFactory scf = new TcpNetServerConnectionFactory(0);
+		final TcpSendingMessageHandler handler = new TcpSendingMessageHandler();
+		handler.setConnectionFactory(scf);
+		final List<Message<?>> batch = new ArrayList<>();
+		scf.registerListener(message -> {
+			requests.add(message);
+			List<Message<?>> toSend = null;
+			synchronized (batch) {
+				batch.add(message);
+				if (batch.size() == batchSize) {
+					toSend = new ArrayList<>(batch);
+					batch.clear();
+				}
+			}
+			if (toSend != null) {
+				Collections.reverse(toSend);
+				toSend.forEach(handler::handleMessage);
+			}
+			return false;
+		});
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		TestingUtilities.waitListening(scf, null);
+		return scf;
+	}
+
+	private TcpOutboundGateway multiplexingGateway(AbstractClientConnectionFactory ccf) {
+		TcpOutboundGateway gateway = new TcpOutboundGateway();
+		gateway.setConnectionFactory(ccf);
+		gateway.setCorrelationStrategy(message -> ((String) message.getPayload()).split(":")[0]);
+		gateway.setReplyCorrelationStrategy(message -> new String((byte[]) message.getPayload()).split(":")[0]);
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.initialize();
+		BeanFactory beanFactory = mock(BeanFactory.class);
+		when(beanFactory.containsBean(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME)).thenReturn(true);
+		when(beanFactory.getBean(IntegrationContextUtils.TASK_SCHEDULER_BEAN_NAME, TaskScheduler.class))
+				.thenReturn(scheduler);
+		gateway.setBeanFactory(beanFactory);
+		gateway.afterPropertiesSet();
+		return gateway;
+	}
+
 	@Test
 	public void testGoodNetTimeout() throws Exception {
 		final CountDownLatch latch = new CountDownLatch(1);
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.ip.tcp.TcpOutboundGateway;
+import org.springframework.integration.ip.tcp.TcpSendingMessageHandler;
+import org.springframework.integration.ip.util.TestingUtilities;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class CachingClientConnectionFactoryPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(CachingClientConnectionFactoryPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	/**
+	 * Not a rigorous benchmark; compares the request/reply throughput of a
+	 * TcpOutboundGateway with 64 concurrent callers, with each pool implementation.
+	 */
+	@Test
+	public void testGatewayThroughput() throws Exception {
+		TcpNetServerConnectionFactory in = new TcpNetServerConnectionFactory(0);
+		in.setApplicationEventPublisher(mock(ApplicationEventPublisher.class));
+		final TcpSendingMessageHandler handler = new TcpSendingMessageHandler();
+		handler.setConnectionFactory(in);
+		in.registerListener(message -> {
+			if (!(message instanceof ErrorMessage)) {
+				handler.handleMessage(message);
+			}
+			return false;
+		});
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		TestingUtilities.waitListening(in, null);
+		int port = in.getPort();
+		runGatewayThroughput(port, false);
+		runGatewayThroughput(port, true);
+		long simple = runGatewayThroughput(port, false);
+		long lockFree = runGatewayThroughput(port, true);
+		logger.debug("64 callers; SimplePool: " + simple + " requests/s, LockFreePool: "
+				+ lockFree + " requests/s");
+		handler.stop();
+	}
+
+	private long runGatewayThroughput(int port, boolean lockFree) throws Exception {
+		final int callers = 64;
+		final int requestsPerCaller = 200;
+		TcpNetClientConnectionFactory out = new TcpNetClientConnectionFactory("localhost", port);
+		out.setApplicationEventPublisher(mock(ApplicationEventPublisher.class));
+		CachingClientConnectionFactory cache = new CachingClientConnectionFactory(out, 16, lockFree);
+		final TcpOutboundGateway gate = new TcpOutboundGateway();
+		gate.setConnectionFactory(cache);
+		gate.setRemoteTimeout(10000);
+		gate.setBeanFactory(mock(BeanFactory.class));
+		gate.afterPropertiesSet();
+		gate.start();
+		final AtomicInteger replies = new AtomicInteger();
+		final QueueChannel outputChannel = new QueueChannel() {
+
+			@Override
+			protected boolean doSend(Message<?> message, long timeout) {
+				replies.incrementAndGet();
+				return true;
+			}
+
+		};
+		gate.setOutputChannel(outputChannel);
+		ExecutorService exec = Executors.newFixedThreadPool(callers);
+		final CountDownLatch go = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(callers);
+		for (int i = 0; i < callers; i++) {
+			exec.execute(() -> {
+				try {
+					go.await(10, TimeUnit.SECONDS);
+					for (int j = 0; j < requestsPerCaller; j++) {
+						gate.handleMessage(new GenericMessage<String>("foo"));
+					}
+				}
+				catch (Exception e) {
+					logger.error("Request failed", e);
+				}
+				finally {
+					done.countDown();
+				}
+			});
+		}
+		long start = System.nanoTime();
+		go.countDown();
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		long elapsed = System.nanoTime() - start;
+		assertEquals(callers * requestsPerCaller, replies.get());
+		gate.stop();
+		cache.stop();
+		exec.shutdownNow();
+		return callers * requestsPerCaller * 1000000000L / elapsed;
+	}
+
+}
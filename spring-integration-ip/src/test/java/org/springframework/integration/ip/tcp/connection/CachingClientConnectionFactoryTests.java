@@ -44,7 +44,9 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
@@ -68,6 +70,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.context.IntegrationContextUtils;
 import org.springframework.integration.ip.IpHeaders;
 import org.springframework.integration.ip.tcp.TcpOutboundGateway;
 import org.springframework.integration.ip.tcp.TcpSendingMessageHandler;
@@ -82,6 +85,8 @@ import org.springframework.messaging.PollableChannel;
 import org.springframework.messaging.SubscribableChannel;
 import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.annotation.DirtiesContext.ClassMode;
 import org.springframework.test.context.ContextConfiguration;
@@ -730,6 +735,77 @@ public class CachingClientConnectionFactoryTests {
 		cache.stop();
 	}
 
+	@Test
+	public void testLockFreeRealConnection() throws Exception {
+		TcpNetServerConnectionFactory in = new TcpNetServerConnectionFactory(0);
+		final CountDownLatch latch = new CountDownLatch(100);
+		final Set<String> connectionIds = ConcurrentHashMap.newKeySet();
+		in.registerListener(message -> {
+			connectionIds.add((String) message.getHeaders().get(IpHeaders.CONNECTION_ID));
+			latch.countDown();
+			return false;
+		});
+		in.start();
+		TestingUtilities.waitListening(in, null);
+		TcpNetClientConnectionFactory out = new TcpNetClientConnectionFactory("localhost", in.getPort());
+		CachingClientConnectionFactory cache = new CachingClientConnectionFactory(out, 2, true);
+		cache.setConnectionWaitTimeout(100);
+		cache.start();
+		for (int i = 0; i < 100; i++) {
+			TcpConnectionSupport connection = cache.getConnection();
+			connection.send(new GenericMessage<String>("foo"));
+			connection.close();
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		// the same thread always gets its last connection back
+		assertEquals(1, connectionIds.size());
+		assertEquals(1, cache.getAllocatedCount());
+		assertEquals(1, cache.getIdleCount());
+		in.stop();
+		cache.stop();
+	}
+
+	@Test
+	public void testIdleConnectionValidation() throws Exception {
+		TcpNetServerConnectionFactory in = new TcpNetServerConnectionFactory(0);
+		in.registerListener(message -> false);
+		in.start();
+		TestingUtilities.waitListening(in, null);
+		TcpNetClientConnectionFactory out = new TcpNetClientConnectionFactory("localhost", in.getPort());
+		out.registerListener(message -> false);
+		CachingClientConnectionFactory cache = new CachingClientConnectionFactory(out, 2, true);
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.initialize();
+		BeanFactory bf = mock(BeanFactory.class);
+		when(bf.containsBean(IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME)).thenReturn(true);
+		when(bf.getBean(IntegrationContextUtils.HOUSEKEEPING_TASK_SCHEDULER_BEAN_NAME, TaskScheduler.class))
+				.thenReturn(scheduler);
+		cache.setBeanFactory(bf);
+		cache.setIdleConnectionValidationInterval(50);
+		cache.start();
+		TcpConnectionSupport connection = cache.getConnection();
+		connection.send(new GenericMessage<String>("foo"));
+		connection.close();
+		assertEquals(1, cache.getIdleCount());
+		// the server closes the connection; it is removed from the pool in the background
+		in.stop();
+		int n = 0;
+		while (n++ < 200 && cache.getAllocatedCount() > 0) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, cache.getIdleCount());
+		assertEquals(0, cache.getAllocatedCount());
+		cache.stop();
+		scheduler.destroy();
+		try {
+			new CachingClientConnectionFactory(out, 2).setIdleConnectionValidationInterval(50);
+			fail("Expected exception");
+		}
+		catch (IllegalArgumentException e) {
+			assertThat(e.getMessage(), startsWith("Idle connection validation requires the lock-free pool"));
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test //INT-3722
 	public void testGatewayRelease() throws Exception {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,8 @@
 package org.springframework.integration.ip.tcp.connection;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
@@ -34,10 +36,13 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -52,10 +57,13 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import org.springframework.integration.ip.tcp.serializer.ByteArrayCrLfSerializer;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.ip.util.TestingUtilities;
 import org.springframework.integration.test.util.TestUtils;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.support.ErrorMessage;
 import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * @author Gary Russell
@@ -415,6 +423,66 @@ Certificate fingerprints:
 		server.stop();
 	}
 
+	@Test
+	public void testNioSSLDelegatedTasksPooledBuffersAndResumption() throws Exception {
+		ExecutorService taskExec = Executors.newFixedThreadPool(2, new CustomizableThreadFactory("sslTask-"));
+		final AtomicInteger delegatedTasks = new AtomicInteger();
+		ByteBufferPool pool = new ByteBufferPool();
+		DefaultTcpSSLContextSupport sslContextSupport = new DefaultTcpSSLContextSupport("test.ks",
+				"test.truststore.ks", "secret", "secret");
+		// the session id is preserved when a TLSv1.2 session is resumed
+		sslContextSupport.setProtocol("TLSv1.2");
+		sslContextSupport.setSessionCacheSize(100);
+		sslContextSupport.setSessionTimeout(300);
+		DefaultTcpNioSSLConnectionSupport tcpNioConnectionSupport =
+				new DefaultTcpNioSSLConnectionSupport(sslContextSupport);
+		tcpNioConnectionSupport.setSessionResumption(true);
+		tcpNioConnectionSupport.setDelegatedTaskExecutor(r -> {
+			delegatedTasks.incrementAndGet();
+			taskExec.execute(r);
+		});
+		TcpNioServerConnectionFactory server = new TcpNioServerConnectionFactory(0);
+		server.setTcpNioConnectionSupport(tcpNioConnectionSupport);
+		server.setBufferPool(pool);
+		final List<Message<?>> messages = Collections.synchronizedList(new ArrayList<>());
+		final CountDownLatch latch = new CountDownLatch(2);
+		server.registerListener(message -> {
+			if (!(message instanceof ErrorMessage)) {
+				messages.add(message);
+				latch.countDown();
+			}
+			return false;
+		});
+		server.setApplicationEventPublisher(e -> { });
+		server.start();
+		TestingUtilities.waitListening(server, null);
+
+		TcpNioClientConnectionFactory client = new TcpNioClientConnectionFactory("localhost", server.getPort());
+		client.setTcpNioConnectionSupport(tcpNioConnectionSupport);
+		client.setBufferPool(pool);
+		client.registerListener(message -> false);
+		client.setApplicationEventPublisher(e -> { });
+		client.start();
+
+		TcpConnection connection = client.getConnection();
+		connection.send(new GenericMessage<>("Hello, world!"));
+		byte[] sessionId = connection.getSslSession().getId();
+		connection.close();
+		connection = client.getConnection();
+		connection.send(new GenericMessage<>("Hello, again!"));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		List<String> payloads = new ArrayList<>();
+		messages.forEach(m -> payloads.add(new String((byte[]) m.getPayload())));
+		assertThat(payloads, containsInAnyOrder("Hello, world!", "Hello, again!"));
+		assertTrue(Arrays.equals(sessionId, connection.getSslSession().getId()));
+		assertThat(delegatedTasks.get(), greaterThan(0));
+		connection.close();
+		client.stop();
+		server.stop();
+		assertThat(pool.getHitCount(), greaterThan(0L));
+		taskExec.shutdownNow();
+	}
+
 	@Test
 	public void testNioClientAndServerSSLDifferentContexts() throws Exception {
 		testNioClientAndServerSSLDifferentContexts(false);
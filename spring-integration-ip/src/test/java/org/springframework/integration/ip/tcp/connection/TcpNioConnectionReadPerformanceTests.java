@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.SocketFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.integration.ip.tcp.serializer.ByteArrayLengthHeaderSerializer;
+import org.springframework.integration.ip.util.TestingUtilities;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class TcpNioConnectionReadPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(TcpNioConnectionReadPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Test
+	public void testSmallFrameThroughput() throws Exception {
+		int frames = 100000;
+		long streamTime = sendSmallFrames(frames, false);
+		long bufferTime = sendSmallFrames(frames, true);
+		logger.debug(String.format("%d 16 byte frames on one connection; stream: %d ms (%d/s), buffer: %d ms (%d/s)",
+				frames, streamTime, frames * 1000L / Math.max(streamTime, 1),
+				bufferTime, frames * 1000L / Math.max(bufferTime, 1)));
+	}
+
+	private long sendSmallFrames(int frames, boolean deserializeFromBuffer) throws Exception {
+		ByteArrayLengthHeaderSerializer serializer = new ByteArrayLengthHeaderSerializer();
+		final CountDownLatch received = new CountDownLatch(frames);
+		final AtomicInteger bad = new AtomicInteger();
+		TcpNioServerConnectionFactory scf = new TcpNioServerConnectionFactory(0);
+		scf.setUsingDirectBuffers(true);
+		scf.setDeserializeFromBuffer(deserializeFromBuffer);
+		scf.setApplicationEventPublisher(e -> { });
+		scf.setSerializer(serializer);
+		scf.setDeserializer(serializer);
+		scf.registerListener(message -> {
+			if (((byte[]) message.getPayload()).length != 12) {
+				bad.incrementAndGet();
+			}
+			received.countDown();
+			return false;
+		});
+		scf.start();
+		TestingUtilities.waitListening(scf, null);
+		ByteBuffer frame = ByteBuffer.allocate(16);
+		frame.putInt(12).put("abcdefghijkl".getBytes());
+		Socket socket = SocketFactory.getDefault().createSocket("localhost", scf.getPort());
+		OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < frames; i++) {
+			outputStream.write(frame.array());
+		}
+		outputStream.flush();
+		assertTrue(received.await(60, TimeUnit.SECONDS));
+		long time = System.currentTimeMillis() - start;
+		assertEquals(0, bad.get());
+		socket.close();
+		scf.stop();
+		return time;
+	}
+
+}
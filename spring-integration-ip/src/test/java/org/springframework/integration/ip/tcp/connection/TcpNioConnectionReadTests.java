@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,8 @@ package org.springframework.integration.ip.tcp.connection;
 
 import static org.hamcrest.Matchers.anyOf;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -39,6 +41,7 @@ import org.springframework.integration.ip.tcp.serializer.AbstractByteArraySerial
 import org.springframework.integration.ip.tcp.serializer.ByteArrayCrLfSerializer;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayLengthHeaderSerializer;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayStxEtxSerializer;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.ip.util.SocketTestUtils;
 import org.springframework.integration.ip.util.TestingUtilities;
 import org.springframework.messaging.Message;
@@ -60,8 +63,21 @@ public class TcpNioConnectionReadTests {
 
 	private AbstractServerConnectionFactory getConnectionFactory(
 			AbstractByteArraySerializer serializer, TcpListener listener, TcpSender sender) throws Exception {
+		return getConnectionFactory(serializer, listener, sender, false);
+	}
+
+	private AbstractServerConnectionFactory getConnectionFactory(AbstractByteArraySerializer serializer,
+			TcpListener listener, TcpSender sender, boolean deserializeFromBuffer) throws Exception {
+		return getConnectionFactory(serializer, listener, sender, deserializeFromBuffer, null);
+	}
+
+	private AbstractServerConnectionFactory getConnectionFactory(AbstractByteArraySerializer serializer,
+			TcpListener listener, TcpSender sender, boolean deserializeFromBuffer, ByteBufferPool bufferPool)
+			throws Exception {
 		TcpNioServerConnectionFactory scf = new TcpNioServerConnectionFactory(0);
 		scf.setUsingDirectBuffers(true);
+		scf.setDeserializeFromBuffer(deserializeFromBuffer);
+		scf.setBufferPool(bufferPool);
 		scf.setApplicationEventPublisher(e -> { });
 		scf.setSerializer(serializer);
 		scf.setDeserializer(serializer);
@@ -519,6 +535,109 @@ public class TcpNioConnectionReadTests {
 		scf.stop();
 	}
 
+	@Test
+	public void testReadLengthFromBuffer() throws Exception {
+		ByteArrayLengthHeaderSerializer serializer = new ByteArrayLengthHeaderSerializer();
+		final List<Message<?>> responses = new ArrayList<Message<?>>();
+		final Semaphore semaphore = new Semaphore(0);
+		final List<String> threads = new ArrayList<String>();
+		AbstractServerConnectionFactory scf = getConnectionFactory(serializer, message -> {
+			responses.add(message);
+			threads.add(Thread.currentThread().getName());
+			semaphore.release();
+			return false;
+		}, null, true);
+
+		CountDownLatch done = SocketTestUtils.testSendLength(scf.getPort(), latch);
+		latch.countDown();
+		assertTrue(semaphore.tryAcquire(2, 10000, TimeUnit.MILLISECONDS));
+		assertEquals("Data", SocketTestUtils.TEST_STRING + SocketTestUtils.TEST_STRING,
+				new String((byte[]) responses.get(0).getPayload()));
+		assertEquals("Data", SocketTestUtils.TEST_STRING + SocketTestUtils.TEST_STRING,
+				new String((byte[]) responses.get(1).getPayload()));
+		assertEquals(threads.get(0), threads.get(1));
+		scf.stop();
+		done.countDown();
+	}
+
+	@Test
+	public void testCloseCleanupCrLfFromBuffer() throws Exception {
+		final Semaphore semaphore = new Semaphore(0);
+		final List<TcpConnection> added = new ArrayList<TcpConnection>();
+		final List<TcpConnection> removed = new ArrayList<TcpConnection>();
+		final List<Message<?>> responses = new ArrayList<Message<?>>();
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		serializer.setMaxMessageSize(1024);
+		AbstractServerConnectionFactory scf = getConnectionFactory(serializer, message -> {
+			responses.add(message);
+			return false;
+		}, new TcpSender() {
+
+			@Override
+			public void addNewConnection(TcpConnection connection) {
+				added.add(connection);
+				semaphore.release();
+			}
+
+			@Override
+			public void removeDeadConnection(TcpConnection connection) {
+				removed.add(connection);
+				semaphore.release();
+			}
+
+		}, true);
+		Socket socket = SocketFactory.getDefault().createSocket("localhost", scf.getPort());
+		socket.getOutputStream().write("foo\r\nba".getBytes());
+		socket.getOutputStream().write("r\r\nbaz".getBytes());
+		socket.close();
+		whileOpen(semaphore, added);
+		assertTrue(semaphore.tryAcquire(10000, TimeUnit.MILLISECONDS));
+		assertTrue(removed.size() > 0);
+		assertEquals(3, responses.size());
+		assertEquals("foo", new String((byte[]) responses.get(0).getPayload()));
+		assertEquals("bar", new String((byte[]) responses.get(1).getPayload()));
+		assertThat(responses.get(2), instanceOf(ErrorMessage.class));
+		assertThat(((ErrorMessage) responses.get(2)).getPayload().getMessage(), containsString("Connection is closed"));
+		scf.stop();
+	}
+
+	@Test
+	public void testBuffersReturnedToPool() throws Exception {
+		testBuffersReturnedToPool(false);
+		testBuffersReturnedToPool(true);
+	}
+
+	private void testBuffersReturnedToPool(boolean deserializeFromBuffer) throws Exception {
+		ByteBufferPool pool = new ByteBufferPool();
+		final Semaphore semaphore = new Semaphore(0);
+		final List<Message<?>> responses = new ArrayList<Message<?>>();
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		serializer.setBufferPool(pool);
+		AbstractServerConnectionFactory scf = getConnectionFactory(serializer, message -> {
+			if (!(message instanceof ErrorMessage)) {
+				responses.add(message);
+				semaphore.release();
+			}
+			return false;
+		}, null, deserializeFromBuffer, pool);
+		for (int i = 0; i < 2; i++) {
+			Socket socket = SocketFactory.getDefault().createSocket("localhost", scf.getPort());
+			socket.getOutputStream().write(("foo" + i + "\r\n").getBytes());
+			assertTrue(semaphore.tryAcquire(10000, TimeUnit.MILLISECONDS));
+			socket.close();
+			int n = 0;
+			while (pool.getPooledDirectBufferCount() == 0 && n++ < 200) {
+				Thread.sleep(50);
+			}
+			assertEquals(1, pool.getPooledDirectBufferCount());
+		}
+		assertEquals("foo0", new String((byte[]) responses.get(0).getPayload()));
+		assertEquals("foo1", new String((byte[]) responses.get(1).getPayload()));
+		assertThat(pool.getHitCount(), greaterThanOrEqualTo(1L));
+		assertEquals(0, pool.getDiscardCount());
+		scf.stop();
+	}
+
 	private void whileOpen(Semaphore semaphore, final List<TcpConnection> added)
 			throws InterruptedException {
 		int n = 0;
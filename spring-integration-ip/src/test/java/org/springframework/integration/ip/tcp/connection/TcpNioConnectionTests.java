@@ -17,6 +17,7 @@
 package org.springframework.integration.ip.tcp.connection;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -50,6 +51,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -57,6 +60,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor.AbortPolicy;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ServerSocketFactory;
@@ -75,6 +79,7 @@ import org.mockito.stubbing.Answer;
 import org.springframework.beans.DirectFieldAccessor;
 import org.springframework.context.ApplicationEvent;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.integration.ip.IpHeaders;
 import org.springframework.integration.ip.tcp.connection.TcpNioConnection.ChannelInputStream;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayCrLfSerializer;
 import org.springframework.integration.ip.tcp.serializer.MapJsonSerializer;
@@ -295,6 +300,42 @@ public class TcpNioConnectionTests {
 		assertEquals(0, TestUtils.getPropertyValue(factory, "connections", Map.class).size());
 	}
 
+	@Test
+	public void testCleanupPerSelector() throws Exception {
+		TcpNioClientConnectionFactory factory = new TcpNioClientConnectionFactory("localhost", 0);
+		factory.setApplicationEventPublisher(nullPublisher);
+		factory.setNioHarvestInterval(100);
+		Map<SocketChannel, TcpNioConnection> connections1 = new HashMap<SocketChannel, TcpNioConnection>();
+		Map<SocketChannel, TcpNioConnection> connections2 = new HashMap<SocketChannel, TcpNioConnection>();
+		SocketChannel chan1 = mock(SocketChannel.class);
+		SocketChannel chan2 = mock(SocketChannel.class);
+		connections1.put(chan1, mock(TcpNioConnection.class));
+		connections2.put(chan2, mock(TcpNioConnection.class));
+		final List<Field> fields = new ArrayList<Field>();
+		ReflectionUtils.doWithFields(SocketChannel.class, field -> {
+			field.setAccessible(true);
+			fields.add(field);
+		}, field -> field.getName().equals("open"));
+		Field field = fields.get(0);
+		ReflectionUtils.setField(field, chan1, true);
+		ReflectionUtils.setField(field, chan2, true);
+		Selector selector = mock(Selector.class);
+		when(selector.selectedKeys()).thenReturn(new HashSet<SelectionKey>());
+		AtomicLong nextCheck1 = new AtomicLong();
+		AtomicLong nextCheck2 = new AtomicLong();
+		factory.processNioSelections(1, selector, null, connections1, nextCheck1);
+		factory.processNioSelections(1, selector, null, connections2, nextCheck2);
+
+		ReflectionUtils.setField(field, chan1, false);
+		ReflectionUtils.setField(field, chan2, false);
+		Thread.sleep(110);
+		// the first selector's check must not postpone the second's
+		factory.processNioSelections(1, selector, null, connections1, nextCheck1);
+		factory.processNioSelections(1, selector, null, connections2, nextCheck2);
+		assertEquals(0, connections1.size());
+		assertEquals(0, connections2.size());
+	}
+
 	@Test
 	public void testInsufficientThreads() throws Exception {
 		final ExecutorService exec = Executors.newFixedThreadPool(2);
@@ -672,6 +713,158 @@ public class TcpNioConnectionTests {
 		factory.stop();
 	}
 
+	@Test
+	public void testWorkerSelectors() throws Exception {
+		final int numberOfSockets = 9;
+		TcpNioServerConnectionFactory factory = new TcpNioServerConnectionFactory(0);
+		factory.setApplicationEventPublisher(nullPublisher);
+		factory.setWorkerSelectorCount(3);
+		final CountDownLatch latch = new CountDownLatch(numberOfSockets * 2);
+		factory.registerListener(message -> {
+			if (!(message instanceof ErrorMessage)) {
+				latch.countDown();
+			}
+			return false;
+		});
+		factory.start();
+		TestingUtilities.waitListening(factory, null);
+		Socket[] sockets = new Socket[numberOfSockets];
+		for (int i = 0; i < numberOfSockets; i++) {
+			sockets[i] = SocketFactory.getDefault().createSocket("localhost", factory.getPort());
+			sockets[i].getOutputStream().write("foo\r\nbar\r\n".getBytes());
+		}
+		assertTrue("latch is still " + latch.getCount(), latch.await(10, TimeUnit.SECONDS));
+		assertEquals(numberOfSockets, factory.getSelectorConnectionCount());
+		assertTrue(Arrays.equals(new int[] { 3, 3, 3 }, factory.getSelectorConnectionCounts()));
+		assertEquals(numberOfSockets, factory.getConnections().size());
+		assertTrue(factory.getMeanSelectorLatency() > 0);
+		assertTrue(factory.getMaxSelectorLatency() >= factory.getMeanSelectorLatency());
+		factory.resetSelectorLatency();
+		assertEquals(0, factory.getMaxSelectorLatency(), 0);
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		int n = 0;
+		while (n++ < 100 && factory.getSelectorConnectionCount() > 0) {
+			Thread.sleep(100);
+		}
+		assertEquals(0, factory.getSelectorConnectionCount());
+		factory.stop();
+	}
+
+	@Test
+	public void testReadInline() throws Exception {
+		TcpNioServerConnectionFactory factory = new TcpNioServerConnectionFactory(0);
+		factory.setApplicationEventPublisher(nullPublisher);
+		factory.setWorkerSelectorCount(2);
+		factory.setDeserializeFromBuffer(true);
+		factory.setReadInline(true);
+		ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+		exec.setCorePoolSize(3);
+		exec.setThreadNamePrefix("nio-");
+		exec.initialize();
+		factory.setTaskExecutor(exec);
+		final Map<String, String> threads = new ConcurrentHashMap<>();
+		final Set<String> threadsPerConnection = ConcurrentHashMap.newKeySet();
+		final CountDownLatch latch = new CountDownLatch(40);
+		factory.registerListener(message -> {
+			if (!(message instanceof ErrorMessage)) {
+				String connectionId = message.getHeaders().get(IpHeaders.CONNECTION_ID, String.class);
+				threads.put(connectionId, Thread.currentThread().getName());
+				threadsPerConnection.add(connectionId + Thread.currentThread().getName());
+				latch.countDown();
+			}
+			return false;
+		});
+		factory.start();
+		TestingUtilities.waitListening(factory, null);
+		Socket[] sockets = new Socket[4];
+		for (int i = 0; i < sockets.length; i++) {
+			sockets[i] = SocketFactory.getDefault().createSocket("localhost", factory.getPort());
+		}
+		for (int j = 0; j < 10; j++) {
+			for (Socket socket : sockets) {
+				socket.getOutputStream().write(("foo" + j + "\r\n").getBytes());
+			}
+		}
+		assertTrue("latch is still " + latch.getCount(), latch.await(10, TimeUnit.SECONDS));
+		// each connection is always read on its worker selector thread
+		assertEquals(4, threads.size());
+		assertEquals(4, threadsPerConnection.size());
+		assertEquals(2, new HashSet<>(threads.values()).size());
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		factory.stop();
+		exec.shutdown();
+	}
+
+	@Test
+	public void testReadBackpressure() throws Exception {
+		TcpNioServerConnectionFactory factory = new TcpNioServerConnectionFactory(0);
+		factory.setApplicationEventPublisher(nullPublisher);
+		factory.setReadPauseThreshold(8192);
+		final int count = 2000;
+		final CountDownLatch gate = new CountDownLatch(1);
+		final CountDownLatch fastLatch = new CountDownLatch(1);
+		final CountDownLatch slowLatch = new CountDownLatch(count);
+		final Set<String> slow = ConcurrentHashMap.newKeySet();
+		factory.registerListener(message -> {
+			if (message.getPayload() instanceof byte[]) {
+				String payload = new String((byte[]) message.getPayload());
+				if (payload.startsWith("fast")) {
+					fastLatch.countDown();
+				}
+				else {
+					try {
+						gate.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					slow.add(payload);
+					slowLatch.countDown();
+				}
+			}
+			return false;
+		});
+		factory.start();
+		TestingUtilities.waitListening(factory, null);
+		final Socket slowSocket = SocketFactory.getDefault().createSocket("localhost", factory.getPort());
+		ExecutorService exec = Executors.newSingleThreadExecutor();
+		exec.execute(() -> {
+			try {
+				for (int i = 0; i < count; i++) {
+					slowSocket.getOutputStream().write(String.format("slow%096d\r\n", i).getBytes());
+				}
+			}
+			catch (IOException e) {
+				// closed
+			}
+		});
+		int n = 0;
+		while (n++ < 100 && factory.getPausedConnectionCount() == 0) {
+			Thread.sleep(100);
+		}
+		assertEquals(1, factory.getPausedConnectionCount());
+		// another connection is still served while the slow one is paused
+		Socket fastSocket = SocketFactory.getDefault().createSocket("localhost", factory.getPort());
+		fastSocket.getOutputStream().write("fast\r\n".getBytes());
+		assertTrue(fastLatch.await(10, TimeUnit.SECONDS));
+		gate.countDown();
+		assertTrue("latch is still " + slowLatch.getCount(), slowLatch.await(30, TimeUnit.SECONDS));
+		// NIO does not guarantee ordering when the listener blocks and several assemblers run
+		for (int i = 0; i < count; i++) {
+			assertTrue(slow.contains(String.format("slow%096d", i)));
+		}
+		assertEquals(0, factory.getPausedConnectionCount());
+		assertThat(factory.getReadPauseCount(), greaterThanOrEqualTo(1L));
+		slowSocket.close();
+		fastSocket.close();
+		exec.shutdownNow();
+		factory.stop();
+	}
+
 	private CompositeExecutor compositeExecutor() {
 		ThreadPoolTaskExecutor ioExec = new ThreadPoolTaskExecutor();
 		ioExec.setCorePoolSize(2);
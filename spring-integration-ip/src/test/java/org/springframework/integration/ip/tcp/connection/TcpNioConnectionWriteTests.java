@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2015 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,19 +17,30 @@
 package org.springframework.integration.ip.tcp.connection;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ServerSocketFactory;
 
 import org.junit.Test;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.integration.ip.tcp.serializer.AbstractByteArraySerializer;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayCrLfSerializer;
 import org.springframework.integration.ip.tcp.serializer.ByteArrayLengthHeaderSerializer;
@@ -251,6 +262,73 @@ public class TcpNioConnectionWriteTests {
 		latch.countDown();
 	}
 
+	@Test
+	public void testWriteBatching() throws Exception {
+		ServerSocket server = ServerSocketFactory.getDefault().createServerSocket(0);
+		server.setSoTimeout(10000);
+		final AtomicInteger gatheringWrites = new AtomicInteger();
+		final AtomicInteger buffersWritten = new AtomicInteger();
+		TcpNioClientConnectionFactory ccf = getBatchingConnectionFactory(server.getLocalPort(), 500,
+				gatheringWrites, buffersWritten);
+		final TcpConnection connection = ccf.getConnection();
+		Socket socket = server.accept();
+		socket.setSoTimeout(10000);
+
+		ExecutorService exec = Executors.newFixedThreadPool(10);
+		final CountDownLatch go = new CountDownLatch(1);
+		Future<?>[] futures = new Future<?>[10];
+		for (int i = 0; i < 10; i++) {
+			final int n = i;
+			futures[i] = exec.submit(() -> {
+				go.await(10, TimeUnit.SECONDS);
+				connection.send(MessageBuilder.withPayload("foo" + n).build());
+				return null;
+			});
+		}
+		go.countDown();
+		for (Future<?> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+		Set<String> received = new HashSet<>();
+		for (int i = 0; i < 10; i++) {
+			received.add(reader.readLine());
+		}
+		assertEquals(10, received.size());
+		assertEquals(10, buffersWritten.get());
+		assertTrue("Expected batched writes, got " + gatheringWrites.get(), gatheringWrites.get() < 10);
+
+		// no delay - each sequential send is written immediately
+		TcpNioClientConnectionFactory ccf2 = getBatchingConnectionFactory(server.getLocalPort(), 0,
+				gatheringWrites, buffersWritten);
+		TcpConnection connection2 = ccf2.getConnection();
+		Socket socket2 = server.accept();
+		gatheringWrites.set(0);
+		connection2.send(MessageBuilder.withPayload("bar").build());
+		connection2.send(MessageBuilder.withPayload("baz").build());
+		reader = new BufferedReader(new InputStreamReader(socket2.getInputStream()));
+		assertEquals("bar", reader.readLine());
+		assertEquals("baz", reader.readLine());
+		assertEquals(2, gatheringWrites.get());
+		ccf2.stop();
+		exec.shutdownNow();
+		ccf.stop();
+		server.close();
+	}
+
+	private TcpNioClientConnectionFactory getBatchingConnectionFactory(int port, int delay,
+			final AtomicInteger gatheringWrites, final AtomicInteger buffersWritten) {
+		TcpNioClientConnectionFactory ccf = new TcpNioClientConnectionFactory("localhost", port);
+		ccf.setSoTimeout(10000);
+		ccf.setWriteBatchSize(1024);
+		ccf.setWriteBatchDelay(delay);
+		ccf.setTcpNioConnectionSupport((socketChannel, server, lookupHost, publisher, factoryName) ->
+				new CountingConnection(socketChannel, lookupHost, publisher, factoryName,
+						gatheringWrites, buffersWritten));
+		ccf.start();
+		return ccf;
+	}
+
 	/**
 	 * @param is
 	 * @param buff
@@ -261,4 +339,31 @@ public class TcpNioConnectionWriteTests {
 		}
 	}
 
+	private static class CountingConnection extends TcpNioConnection {
+
+		private final ChannelOutputStream countingStream;
+
+		CountingConnection(SocketChannel socketChannel, boolean lookupHost,
+				ApplicationEventPublisher publisher, String factoryName,
+				final AtomicInteger gatheringWrites, final AtomicInteger buffersWritten) throws Exception {
+			super(socketChannel, false, lookupHost, publisher, factoryName);
+			this.countingStream = new ChannelOutputStream() {
+
+				@Override
+				protected synchronized void doWrite(ByteBuffer[] buffers) throws IOException {
+					gatheringWrites.incrementAndGet();
+					buffersWritten.addAndGet(buffers.length);
+					super.doWrite(buffers);
+				}
+
+			};
+		}
+
+		@Override
+		protected ChannelOutputStream getChannelOutputStream() {
+			return this.countingStream;
+		}
+
+	}
+
 }
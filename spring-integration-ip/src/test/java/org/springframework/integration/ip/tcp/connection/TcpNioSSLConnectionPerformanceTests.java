@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.connection;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.integration.ip.util.TestingUtilities;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class TcpNioSSLConnectionPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(TcpNioSSLConnectionPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Test
+	public void testNioSSLHandshakeRateAndThroughput() throws Exception {
+		int connections = 50;
+		int messages = 5000;
+		long full = timeHandshakes(connections, false);
+		long resumed = timeHandshakes(connections, true);
+		long plain = timeMessages(messages, false);
+		long encrypted = timeMessages(messages, true);
+		logger.debug(String.format("%d SSL handshakes; full: %d ms (%d/s), resumed: %d ms (%d/s)",
+				connections, full, connections * 1000L / Math.max(full, 1),
+				resumed, connections * 1000L / Math.max(resumed, 1)));
+		logger.debug(String.format("%d 1k messages; plain NIO: %d ms (%d/s), SSL: %d ms (%d/s)",
+				messages, plain, messages * 1000L / Math.max(plain, 1),
+				encrypted, messages * 1000L / Math.max(encrypted, 1)));
+	}
+
+	private long timeHandshakes(int count, boolean resumption) throws Exception {
+		DefaultTcpSSLContextSupport sslContextSupport = new DefaultTcpSSLContextSupport("test.ks",
+				"test.truststore.ks", "secret", "secret");
+		DefaultTcpNioSSLConnectionSupport tcpNioConnectionSupport =
+				new DefaultTcpNioSSLConnectionSupport(sslContextSupport);
+		tcpNioConnectionSupport.setSessionResumption(resumption);
+		final CountDownLatch latch = new CountDownLatch(count);
+		TcpNioServerConnectionFactory server = new TcpNioServerConnectionFactory(0);
+		server.setTcpNioConnectionSupport(tcpNioConnectionSupport);
+		server.registerListener(message -> {
+			latch.countDown();
+			return false;
+		});
+		server.setApplicationEventPublisher(e -> { });
+		server.start();
+		TestingUtilities.waitListening(server, null);
+		TcpNioClientConnectionFactory client = new TcpNioClientConnectionFactory("localhost", server.getPort());
+		client.setTcpNioConnectionSupport(tcpNioConnectionSupport);
+		client.setSingleUse(true);
+		client.registerListener(message -> false);
+		client.setApplicationEventPublisher(e -> { });
+		client.start();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			TcpConnection connection = client.getConnection();
+			connection.send(new GenericMessage<>("foo"));
+			connection.close();
+		}
+		assertTrue(latch.await(60, TimeUnit.SECONDS));
+		long time = System.currentTimeMillis() - start;
+		client.stop();
+		server.stop();
+		return time;
+	}
+
+	private long timeMessages(int count, boolean ssl) throws Exception {
+		final CountDownLatch latch = new CountDownLatch(count);
+		TcpNioServerConnectionFactory server = new TcpNioServerConnectionFactory(0);
+		TcpNioClientConnectionFactory client = new TcpNioClientConnectionFactory("localhost", 0);
+		if (ssl) {
+			DefaultTcpSSLContextSupport sslContextSupport = new DefaultTcpSSLContextSupport("test.ks",
+					"test.truststore.ks", "secret", "secret");
+			DefaultTcpNioSSLConnectionSupport tcpNioConnectionSupport =
+					new DefaultTcpNioSSLConnectionSupport(sslContextSupport);
+			server.setTcpNioConnectionSupport(tcpNioConnectionSupport);
+			client.setTcpNioConnectionSupport(tcpNioConnectionSupport);
+		}
+		server.registerListener(message -> {
+			latch.countDown();
+			return false;
+		});
+		server.setApplicationEventPublisher(e -> { });
+		server.start();
+		TestingUtilities.waitListening(server, null);
+		client.setPort(server.getPort());
+		client.registerListener(message -> false);
+		client.setApplicationEventPublisher(e -> { });
+		client.start();
+		TcpConnection connection = client.getConnection();
+		GenericMessage<byte[]> message = new GenericMessage<>(new byte[1024]);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			connection.send(message);
+		}
+		assertTrue(latch.await(60, TimeUnit.SECONDS));
+		long time = System.currentTimeMillis() - start;
+		client.stop();
+		server.stop();
+		return time;
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class ByteBufferDeserializationTests {
+
+	@Test
+	public void testCrLf() throws Exception {
+		ByteArrayCrLfSerializer serializer = new ByteArrayCrLfSerializer();
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put("foo\r\nbar\r".getBytes()).flip();
+		assertEquals("foo", new String(serializer.deserialize(buffer)));
+		assertNull(serializer.deserialize(buffer));
+		assertEquals(5, buffer.position());
+		buffer.compact();
+		buffer.put("\nbaz".getBytes()).flip();
+		assertEquals("bar", new String(serializer.deserialize(buffer)));
+		assertNull(serializer.deserialize(buffer));
+		assertEquals(3, buffer.remaining());
+	}
+
+	@Test
+	public void testSingleTerminatorDirect() throws Exception {
+		ByteArrayLfSerializer serializer = new ByteArrayLfSerializer();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+		buffer.put("foo\n\nbar\n".getBytes()).flip();
+		assertEquals("foo", new String(serializer.deserialize(buffer)));
+		assertEquals("", new String(serializer.deserialize(buffer)));
+		assertEquals("bar", new String(serializer.deserialize(buffer)));
+		assertNull(serializer.deserialize(buffer));
+	}
+
+	@Test
+	public void testStxEtx() throws Exception {
+		ByteArrayStxEtxSerializer serializer = new ByteArrayStxEtxSerializer();
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.put((byte) ByteArrayStxEtxSerializer.STX).put("foo".getBytes())
+				.put((byte) ByteArrayStxEtxSerializer.ETX).put((byte) ByteArrayStxEtxSerializer.STX).flip();
+		assertEquals("foo", new String(serializer.deserialize(buffer)));
+		assertNull(serializer.deserialize(buffer));
+		assertEquals(1, buffer.remaining());
+		buffer.clear();
+		buffer.put("foo".getBytes()).flip();
+		try {
+			serializer.deserialize(buffer);
+			fail("Expected exception");
+		}
+		catch (Exception e) {
+			assertThat(e.getMessage(), containsString("Expected STX"));
+		}
+	}
+
+	@Test
+	public void testLengthHeader() throws Exception {
+		testLengthHeader(ByteArrayLengthHeaderSerializer.HEADER_SIZE_INT);
+		testLengthHeader(ByteArrayLengthHeaderSerializer.HEADER_SIZE_UNSIGNED_SHORT);
+		testLengthHeader(ByteArrayLengthHeaderSerializer.HEADER_SIZE_UNSIGNED_BYTE);
+	}
+
+	private void testLengthHeader(int headerSize) throws Exception {
+		ByteArrayLengthHeaderSerializer serializer = new ByteArrayLengthHeaderSerializer(headerSize);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		putHeader(buffer, headerSize, 3).put("foo".getBytes());
+		putHeader(buffer, headerSize, 3).put("ba".getBytes()).flip();
+		assertEquals("foo", new String(serializer.deserialize(buffer)));
+		int position = buffer.position();
+		assertNull(serializer.deserialize(buffer));
+		assertEquals(position, buffer.position());
+		buffer.compact();
+		buffer.put("r".getBytes()).flip();
+		assertEquals("bar", new String(serializer.deserialize(buffer)));
+		assertEquals(0, buffer.remaining());
+	}
+
+	private ByteBuffer putHeader(ByteBuffer buffer, int headerSize, int length) {
+		switch (headerSize) {
+			case ByteArrayLengthHeaderSerializer.HEADER_SIZE_INT:
+				return buffer.putInt(length);
+			case ByteArrayLengthHeaderSerializer.HEADER_SIZE_UNSIGNED_SHORT:
+				return buffer.putShort((short) length);
+			default:
+				return buffer.put((byte) length);
+		}
+	}
+
+	@Test
+	public void testMaxMessageSize() throws Exception {
+		ByteArrayLengthHeaderSerializer lengthHeader = new ByteArrayLengthHeaderSerializer();
+		lengthHeader.setMaxMessageSize(10);
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		buffer.putInt(11).flip();
+		try {
+			lengthHeader.deserialize(buffer);
+			fail("Expected exception");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage(), containsString("Message length 11 exceeds max message length: 10"));
+		}
+
+		ByteArrayCrLfSerializer crLf = new ByteArrayCrLfSerializer();
+		crLf.setMaxMessageSize(10);
+		buffer.clear();
+		buffer.put("0123456789ab".getBytes()).flip();
+		try {
+			crLf.deserialize(buffer);
+			fail("Expected exception");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage(), containsString("CRLF not found before max message length"));
+		}
+	}
+
+}
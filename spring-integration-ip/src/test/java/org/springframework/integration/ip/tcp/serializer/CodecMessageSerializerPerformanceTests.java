@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.converter.MapMessageConverter;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.messaging.Message;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class CodecMessageSerializerPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(CodecMessageSerializerPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	@Test
+	public void testThroughputVsJson() throws Exception {
+		int count = 20000;
+		Message<String> message = MessageBuilder.withPayload("Hello, world!")
+				.setHeader("correlationId", "someCorrelationId")
+				.setSequenceNumber(1)
+				.setSequenceSize(5)
+				.build();
+
+		CodecMessageSerializer binary = new CodecMessageSerializer();
+		binary.setHeaderPatterns("correlationId", "sequence*");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		binary.serialize(message, baos);
+		int binarySize = baos.size();
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			baos.reset();
+			binary.serialize(message, baos);
+			binary.deserialize(new ByteArrayInputStream(baos.toByteArray()));
+		}
+		long binaryTime = System.currentTimeMillis() - start;
+
+		MapJsonSerializer json = new MapJsonSerializer();
+		MapMessageConverter converter = new MapMessageConverter();
+		converter.setHeaderNames("correlationId", "sequenceNumber", "sequenceSize");
+		baos.reset();
+		json.serialize((Map<?, ?>) converter.fromMessage(message, Map.class), baos);
+		int jsonSize = baos.size();
+		start = System.currentTimeMillis();
+		for (int i = 0; i < count; i++) {
+			baos.reset();
+			json.serialize((Map<?, ?>) converter.fromMessage(message, Map.class), baos);
+			converter.toMessage(json.deserialize(new ByteArrayInputStream(baos.toByteArray())), null);
+		}
+		long jsonTime = System.currentTimeMillis() - start;
+
+		logger.debug(String.format("%d round trips; binary: %d ms (%d/s, %d bytes), JSON: %d ms (%d/s, %d bytes)",
+				count, binaryTime, count * 1000L / Math.max(binaryTime, 1), binarySize,
+				jsonTime, count * 1000L / Math.max(jsonTime, 1), jsonSize));
+	}
+
+}
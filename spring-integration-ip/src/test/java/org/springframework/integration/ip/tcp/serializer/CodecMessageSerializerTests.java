@@ -0,0 +1,233 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.tcp.serializer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.springframework.integration.channel.NullChannel;
+import org.springframework.integration.codec.kryo.KryoClassListRegistrar;
+import org.springframework.integration.codec.kryo.PojoCodec;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.GenericMessage;
+
+import com.esotericsoftware.kryo.KryoException;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class CodecMessageSerializerTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testPayloadTypesAndHeaderPatterns() throws Exception {
+		CodecMessageSerializer serializer = new CodecMessageSerializer();
+		serializer.setAllowedTypes(Date.class);
+		serializer.setHeaderPatterns("app_*", MessageHeaders.REPLY_CHANNEL);
+		Date date = new Date();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		serializer.serialize(MessageBuilder.withPayload("foo")
+				.setHeader("app_foo", "bar")
+				.setHeader("app_date", date)
+				.setHeader("other", "baz")
+				.setReplyChannelName("replies")
+				.build(), baos);
+		serializer.serialize(MessageBuilder.withPayload(new byte[] { 1, 2, 3 })
+				.setReplyChannel(new NullChannel())
+				.build(), baos);
+		serializer.serialize(new GenericMessage<>(date), baos);
+		ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+
+		Message<?> message = serializer.deserialize(bais);
+		assertEquals("foo", message.getPayload());
+		assertEquals("bar", message.getHeaders().get("app_foo"));
+		assertEquals(date, message.getHeaders().get("app_date"));
+		assertEquals("replies", message.getHeaders().getReplyChannel());
+		assertNull(message.getHeaders().get("other"));
+
+		message = serializer.deserialize(bais);
+		assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) message.getPayload());
+		assertNull(message.getHeaders().getReplyChannel());
+
+		message = serializer.deserialize(bais);
+		assertEquals(date, message.getPayload());
+
+		try {
+			serializer.deserialize(bais);
+			fail("Expected SoftEndOfStreamException");
+		}
+		catch (SoftEndOfStreamException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRegisteredTypes() throws Exception {
+		CodecMessageSerializer serializer = new CodecMessageSerializer(
+				Collections.singletonList(new KryoClassListRegistrar(Collections.singletonList(Foo.class))));
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		serializer.serialize(MessageBuilder.withPayload(new Foo("bar")).setHeader("foo", new Foo("baz")).build(), baos);
+		Message<?> message = serializer.deserialize(new ByteArrayInputStream(baos.toByteArray()));
+		assertEquals("bar", ((Foo) message.getPayload()).value);
+		assertEquals("baz", ((Foo) message.getHeaders().get("foo")).value);
+	}
+
+	@Test
+	public void testTypesNotAllowed() throws Exception {
+		CodecMessageSerializer unrestricted = new CodecMessageSerializer(new PojoCodec());
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		unrestricted.serialize(new GenericMessage<>(new Foo("bar")), baos);
+		CodecMessageSerializer serializer = new CodecMessageSerializer();
+		try {
+			serializer.deserialize(new ByteArrayInputStream(baos.toByteArray()));
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage(), containsString("Payload type " + Foo.class.getName() + " is not allowed"));
+		}
+
+		baos.reset();
+		unrestricted.serialize(MessageBuilder.withPayload("foo").setHeader("foo", new Foo("bar")).build(), baos);
+		try {
+			serializer.deserialize(new ByteArrayInputStream(baos.toByteArray()));
+			fail("Expected KryoException");
+		}
+		catch (KryoException e) {
+			assertThat(e.getCause().getMessage(), containsString("Class is not registered: " + Foo.class.getName()));
+		}
+	}
+
+	@Test
+	public void testStreamedPayloads() throws Exception {
+		CodecMessageSerializer serializer = new CodecMessageSerializer();
+		serializer.setChunkSize(1000);
+		serializer.setMaxMessageSize(10000);
+		byte[] data = new byte[5500];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		File file = this.folder.newFile();
+		Files.write(file.toPath(), data);
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		serializer.serialize(MessageBuilder.withPayload(new ByteArrayInputStream(data)).setHeader("foo", "bar").build(),
+				baos);
+		serializer.serialize(new GenericMessage<>(file), baos);
+		serializer.serialize(new GenericMessage<>(file), baos);
+		ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+
+		Message<?> message = serializer.deserialize(bais);
+		assertArrayEquals(data, (byte[]) message.getPayload());
+		assertEquals("bar", message.getHeaders().get("foo"));
+		message = serializer.deserialize(bais);
+		assertArrayEquals(data, (byte[]) message.getPayload());
+
+		File spool = this.folder.newFolder();
+		serializer.setSpoolDirectory(spool);
+		serializer.setMaxMessageSize(100);
+		message = serializer.deserialize(bais);
+		assertThat(message.getPayload(), instanceOf(File.class));
+		File received = (File) message.getPayload();
+		assertEquals(spool, received.getParentFile());
+		assertArrayEquals(data, Files.readAllBytes(received.toPath()));
+	}
+
+	@Test
+	public void testMaxMessageSize() throws Exception {
+		CodecMessageSerializer serializer = new CodecMessageSerializer();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		serializer.serialize(new GenericMessage<>(new byte[3000]), baos);
+		serializer.serialize(new GenericMessage<>(new ByteArrayInputStream(new byte[3000])), baos);
+		File spool = this.folder.newFolder();
+		try {
+			serializer.deserialize(new ByteArrayInputStream(baos.toByteArray()));
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage(), containsString("exceeds max message length: 2048"));
+		}
+		serializer.setMaxMessageSize(4000);
+		ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
+		serializer.deserialize(bais);
+		serializer.setMaxMessageSize(2048);
+		serializer.setSpoolDirectory(spool);
+		byte[] truncated = new byte[bais.available() - 100];
+		bais.read(truncated);
+		try {
+			serializer.deserialize(new ByteArrayInputStream(truncated));
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			// expected
+		}
+		assertFalse(spool.list().length > 0);
+
+		serializer.setMaxSpoolSize(2500);
+		try {
+			serializer.deserialize(new ByteArrayInputStream(baos.toByteArray(), 3009, baos.size() - 3009));
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage(), containsString("exceeds max message length: 2500"));
+		}
+		assertFalse(spool.list().length > 0);
+
+		byte[] negativeChunk = { 3, 0, 0, 0, 0, -1, -1, -1, -1 };
+		try {
+			serializer.deserialize(new ByteArrayInputStream(negativeChunk));
+			fail("Expected IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage(), containsString("Invalid chunk length: -1"));
+		}
+		assertFalse(spool.list().length > 0);
+	}
+
+	private static class Foo {
+
+		private final String value;
+
+		Foo(String value) {
+			this.value = value;
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.junit.Test;
 
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.test.util.TestUtils;
 
 /**
@@ -69,4 +70,34 @@ public class PooledDeserializationTests {
 		assertNotSame(bytes, TestUtils.getPropertyValue(deser, "pool.allocated", Set.class).iterator().next());
 	}
 
+	@Test
+	public void testSharedBufferPool() throws IOException {
+		ByteBufferPool pool = new ByteBufferPool();
+		ByteArrayStxEtxSerializer stxEtx = new ByteArrayStxEtxSerializer();
+		stxEtx.setBufferPool(pool);
+		ByteArrayRawSerializer raw = new ByteArrayRawSerializer();
+		raw.setBufferPool(pool);
+		raw.setMaxMessageSize(3);
+		ByteArrayInputStream bais = new ByteArrayInputStream("\u0002foo\u0003".getBytes());
+		for (int i = 0; i < 5; i++) {
+			bais.reset();
+			assertEquals("foo", new String(stxEtx.deserialize(bais)));
+		}
+		bais = new ByteArrayInputStream("foo".getBytes());
+		byte[] bytes = raw.deserialize(bais);
+		assertEquals("foo", new String(bytes));
+		assertEquals(2, pool.getMissCount());
+		assertEquals(4, pool.getHitCount());
+		assertEquals(2, pool.getPooledHeapBufferCount());
+		byte[] pooled = pool.acquireArray(3);
+		assertNotSame(bytes, pooled);
+		try {
+			raw.setPoolSize(2);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.udp;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.ip.util.SocketTestUtils;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+import org.springframework.messaging.Message;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class UdpChannelAdapterPerformanceTests {
+
+	private static final Log logger = LogFactory.getLog(UdpChannelAdapterPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	/**
+	 * Not a rigorous benchmark; logs the packet rates on the loopback interface with the
+	 * blocking and NIO receivers, and with direct and batched sends.
+	 */
+	@Test
+	public void testPacketRates() throws Exception {
+		int packets = 20000;
+		long blocking = packetRate(new UnicastReceivingChannelAdapter(0), packets, 0);
+		long nio = packetRate(new NioUnicastReceivingChannelAdapter(0), packets, 0);
+		long batched = packetRate(new NioUnicastReceivingChannelAdapter(0), packets, 64);
+		logger.debug(packets + " packets/s on loopback; blocking receiver: " + blocking
+				+ ", NIO receiver: " + nio + ", NIO receiver with batched sender: " + batched);
+	}
+
+	private long packetRate(UnicastReceivingChannelAdapter adapter, int packets, int sendBatchSize)
+			throws Exception {
+		final AtomicInteger received = new AtomicInteger();
+		DirectChannel channel = new DirectChannel();
+		channel.subscribe(message -> received.incrementAndGet());
+		adapter.setOutputChannel(channel);
+		adapter.setSoReceiveBufferSize(4 * 1024 * 1024);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+		UnicastSendingMessageHandler handler = new UnicastSendingMessageHandler("localhost", adapter.getPort());
+		handler.setSendBatchSize(sendBatchSize);
+		handler.setSendQueueCapacity(packets);
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		Message<byte[]> message = MessageBuilder.withPayload(new byte[100]).build();
+		long start = System.nanoTime();
+		for (int i = 0; i < packets; i++) {
+			handler.handleMessage(message);
+		}
+		// UDP - some packets may be dropped; stop waiting when no more arrive
+		int last = -1;
+		while (received.get() < packets && received.get() != last) {
+			last = received.get();
+			Thread.sleep(200);
+		}
+		long elapsed = System.nanoTime() - start;
+		handler.stop();
+		adapter.stop();
+		assertThat(received.get(), greaterThan(0));
+		return received.get() * 1000000000L / elapsed;
+	}
+
+}
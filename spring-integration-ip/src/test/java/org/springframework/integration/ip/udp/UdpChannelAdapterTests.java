@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,9 +16,12 @@
 
 package org.springframework.integration.ip.udp;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
@@ -28,6 +31,8 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.Inet4Address;
 import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -46,9 +51,12 @@ import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.handler.ServiceActivatingHandler;
 import org.springframework.integration.ip.IpHeaders;
+import org.springframework.integration.ip.util.ByteBufferPool;
 import org.springframework.integration.ip.util.SocketTestUtils;
 import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.util.TestUtils;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
 import org.springframework.messaging.SubscribableChannel;
 
 /**
@@ -247,6 +255,37 @@ public class UdpChannelAdapterTests {
 		handler.stop();
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testUnicastSenderWithBufferPool() throws Exception {
+		ByteBufferPool pool = new ByteBufferPool();
+		QueueChannel channel = new QueueChannel(2);
+		UnicastReceivingChannelAdapter adapter = new UnicastReceivingChannelAdapter(0, true);
+		adapter.setBeanName("test");
+		adapter.setOutputChannel(channel);
+		adapter.setBufferPool(pool);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+		int port = adapter.getPort();
+
+		UnicastSendingMessageHandler handler = new UnicastSendingMessageHandler("localhost", port, true);
+		handler.setBufferPool(pool);
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		for (int i = 0; i < 3; i++) {
+			Message<byte[]> message = MessageBuilder.withPayload(("ABCD" + i).getBytes()).build();
+			handler.handleMessage(message);
+			Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+			assertNotNull(receivedMessage);
+			assertEquals("ABCD" + i, new String(receivedMessage.getPayload()));
+		}
+		assertThat(pool.getHitCount(), greaterThanOrEqualTo(2L));
+		assertThat(pool.getPooledHeapBufferCount(), greaterThanOrEqualTo(1));
+		adapter.stop();
+		handler.stop();
+	}
+
 	@SuppressWarnings("unchecked")
 	@Test
 	public void testMulticastReceiver() throws Exception {
@@ -344,6 +383,185 @@ public class UdpChannelAdapterTests {
 		context.close();
 	}
 
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testNioUnicastReceiver() throws Exception {
+		ByteBufferPool pool = new ByteBufferPool();
+		QueueChannel channel = new QueueChannel();
+		NioUnicastReceivingChannelAdapter adapter = new NioUnicastReceivingChannelAdapter(0, true);
+		adapter.setOutputChannel(channel);
+		adapter.setReceiverCount(2);
+		adapter.setReusePort(true);
+		adapter.setReceiveBatchSize(8);
+		adapter.setBufferPool(pool);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+		int port = adapter.getPort();
+
+		UnicastSendingMessageHandler handler = new UnicastSendingMessageHandler("localhost", port, true);
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		Set<String> payloads = new HashSet<>();
+		// two rounds, so the buffers of the first are returned to the pool before the second
+		for (int round = 0; round < 2; round++) {
+			for (int i = round * 10; i < round * 10 + 10; i++) {
+				handler.handleMessage(MessageBuilder.withPayload("ABCD" + i).build());
+			}
+			for (int i = 0; i < 10; i++) {
+				Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+				assertNotNull(receivedMessage);
+				payloads.add(new String(receivedMessage.getPayload()));
+				assertNotNull(receivedMessage.getHeaders().get(IpHeaders.PACKET_ADDRESS));
+			}
+		}
+		for (int i = 0; i < 20; i++) {
+			assertTrue(payloads.contains("ABCD" + i));
+		}
+		assertEquals(20, adapter.getReceivedPacketCount());
+		assertThat(pool.getHitCount(), greaterThanOrEqualTo(1L));
+		adapter.stop();
+		assertTrue(TestUtils.getPropertyValue(adapter, "selectors", Set.class).isEmpty()
+				|| waitForSelectorsClosed(adapter));
+		handler.stop();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testNioUnicastReceiverMoreReceiversThanPoolSize() throws Exception {
+		QueueChannel channel = new QueueChannel();
+		NioUnicastReceivingChannelAdapter adapter = new NioUnicastReceivingChannelAdapter(0);
+		adapter.setOutputChannel(channel);
+		adapter.setPoolSize(2);
+		adapter.setReceiverCount(4);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+
+		UnicastSendingMessageHandler handler = new UnicastSendingMessageHandler("localhost", adapter.getPort());
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		for (int i = 0; i < 10; i++) {
+			handler.handleMessage(MessageBuilder.withPayload("ABCD" + i).build());
+			Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+			assertNotNull(receivedMessage);
+			assertEquals("ABCD" + i, new String(receivedMessage.getPayload()));
+		}
+		adapter.stop();
+		handler.stop();
+	}
+
+	private boolean waitForSelectorsClosed(NioUnicastReceivingChannelAdapter adapter) throws InterruptedException {
+		int n = 0;
+		while (n++ < 100 && !TestUtils.getPropertyValue(adapter, "selectors", Set.class).isEmpty()) {
+			Thread.sleep(100);
+		}
+		return TestUtils.getPropertyValue(adapter, "selectors", Set.class).isEmpty();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testNioUnicastReceiverWithAck() throws Exception {
+		QueueChannel channel = new QueueChannel(2);
+		NioUnicastReceivingChannelAdapter adapter = new NioUnicastReceivingChannelAdapter(0);
+		adapter.setOutputChannel(channel);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+
+		UnicastSendingMessageHandler handler = new UnicastSendingMessageHandler("localhost", adapter.getPort(),
+				false, true, "localhost", 0, 5000);
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.start();
+		Message<byte[]> message = MessageBuilder.withPayload("ABCD".getBytes()).build();
+		// fails unless the ack is received
+		handler.handleMessage(message);
+		Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+		assertNotNull(receivedMessage);
+		assertEquals("ABCD", new String(receivedMessage.getPayload()));
+		adapter.stop();
+		handler.stop();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testNioMulticastReceiver() throws Exception {
+		QueueChannel channel = new QueueChannel(2);
+		NioMulticastReceivingChannelAdapter adapter =
+				new NioMulticastReceivingChannelAdapter(this.multicastRule.getGroup(), 0);
+		adapter.setOutputChannel(channel);
+		String nic = this.multicastRule.getNic();
+		adapter.setLocalAddress(nic);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+
+		MulticastSendingMessageHandler handler =
+				new MulticastSendingMessageHandler(this.multicastRule.getGroup(), adapter.getPort());
+		handler.setLocalAddress(nic);
+		Message<byte[]> message = MessageBuilder.withPayload("ABCD".getBytes()).build();
+		handler.handleMessage(message);
+
+		Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+		assertNotNull(receivedMessage);
+		assertEquals(new String(message.getPayload()), new String(receivedMessage.getPayload()));
+		adapter.stop();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testBatchedUnicastSender() throws Exception {
+		QueueChannel channel = new QueueChannel();
+		UnicastReceivingChannelAdapter adapter = new UnicastReceivingChannelAdapter(0, true);
+		adapter.setOutputChannel(channel);
+		adapter.start();
+		SocketTestUtils.waitListening(adapter);
+
+		UnicastSendingMessageHandler handler = new UnicastSendingMessageHandler("localhost", adapter.getPort(),
+				true);
+		handler.setSendBatchSize(4);
+		handler.setSendQueueCapacity(100);
+		handler.setBeanFactory(mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		try {
+			handler.handleMessage(MessageBuilder.withPayload("ABCD").build());
+			fail("Expected exception");
+		}
+		catch (MessageHandlingException e) {
+			assertThat(e.getCause().getMessage(), containsString("must be running"));
+		}
+		handler.start();
+		for (int i = 0; i < 10; i++) {
+			handler.handleMessage(MessageBuilder.withPayload("ABCD" + i).build());
+		}
+		Set<String> payloads = new HashSet<>();
+		for (int i = 0; i < 10; i++) {
+			Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+			assertNotNull(receivedMessage);
+			payloads.add(new String(receivedMessage.getPayload()));
+		}
+		assertEquals(10, payloads.size());
+		assertEquals(10, handler.getSentPacketCount());
+		// queued messages are sent when stopped
+		handler.handleMessage(MessageBuilder.withPayload("ABCD10").build());
+		handler.stop();
+		Message<byte[]> receivedMessage = (Message<byte[]>) channel.receive(10000);
+		assertNotNull(receivedMessage);
+		assertEquals("ABCD10", new String(receivedMessage.getPayload()));
+		adapter.stop();
+
+		UnicastSendingMessageHandler ackHandler = new UnicastSendingMessageHandler("localhost", 1234,
+				false, true, "localhost", 0, 5000);
+		ackHandler.setSendBatchSize(4);
+		ackHandler.setBeanFactory(mock(BeanFactory.class));
+		try {
+			ackHandler.afterPropertiesSet();
+			fail("Expected exception");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("not supported with a 'sendBatchSize'"));
+		}
+	}
+
 	private class FailingService {
 
 		@SuppressWarnings("unused")
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.ip.util;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class ByteBufferPoolTests {
+
+	@Test
+	public void testSizeClasses() {
+		ByteBufferPool pool = new ByteBufferPool(512, 4096, 2);
+		assertEquals(512, pool.acquire(1, false).capacity());
+		assertEquals(512, pool.acquire(512, false).capacity());
+		assertEquals(1024, pool.acquire(513, false).capacity());
+		assertEquals(4096, pool.acquire(4096, false).capacity());
+		ByteBuffer oversize = pool.acquire(4097, true);
+		assertEquals(4097, oversize.capacity());
+		assertTrue(oversize.isDirect());
+		assertEquals(5, pool.getMissCount());
+		assertEquals(0, pool.getHitCount());
+		pool.release(oversize);
+		assertEquals(1, pool.getDiscardCount());
+		assertEquals(0, pool.getPooledDirectBufferCount());
+	}
+
+	@Test
+	public void testReuse() {
+		ByteBufferPool pool = new ByteBufferPool(512, 4096, 2);
+		ByteBuffer heap = pool.acquire(1000, false);
+		ByteBuffer direct = pool.acquire(1000, true);
+		heap.put((byte) 1).flip();
+		pool.release(heap);
+		pool.release(direct);
+		assertEquals(1, pool.getPooledHeapBufferCount());
+		assertEquals(1, pool.getPooledDirectBufferCount());
+		assertEquals(1024, pool.getPooledHeapBytes());
+		assertEquals(1024, pool.getPooledDirectBytes());
+
+		ByteBuffer reused = pool.acquire(600, false);
+		assertSame(heap, reused);
+		assertEquals(0, reused.position());
+		assertEquals(1024, reused.limit());
+		assertSame(direct, pool.acquire(1024, true));
+		assertNotSame(heap, pool.acquire(1024, false));
+		assertEquals(2, pool.getHitCount());
+		assertEquals(3, pool.getMissCount());
+		assertEquals(0, pool.getPooledHeapBufferCount());
+
+		pool.resetCounters();
+		assertEquals(0, pool.getHitCount());
+		assertEquals(0, pool.getMissCount());
+	}
+
+	@Test
+	public void testMaxPooledPerSizeClass() {
+		ByteBufferPool pool = new ByteBufferPool(512, 4096, 2);
+		ByteBuffer[] buffers = new ByteBuffer[3];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = pool.acquire(512, false);
+		}
+		for (ByteBuffer buffer : buffers) {
+			pool.release(buffer);
+		}
+		assertEquals(2, pool.getPooledHeapBufferCount());
+		assertEquals(1, pool.getDiscardCount());
+		pool.clear();
+		assertEquals(0, pool.getPooledHeapBufferCount());
+		assertEquals(0, pool.getPooledHeapBytes());
+	}
+
+	@Test
+	public void testForeignBuffersDiscarded() {
+		ByteBufferPool pool = new ByteBufferPool(512, 4096, 2);
+		pool.release(ByteBuffer.allocate(1000));
+		pool.release(ByteBuffer.allocate(256));
+		pool.release(ByteBuffer.allocate(2048).asReadOnlyBuffer());
+		ByteBuffer buffer = ByteBuffer.allocate(2048);
+		buffer.position(1);
+		pool.release(buffer.slice());
+		pool.release(null);
+		assertEquals(4, pool.getDiscardCount());
+		assertEquals(0, pool.getPooledHeapBufferCount());
+	}
+
+	@Test
+	public void testDoubleReleaseRejected() {
+		ByteBufferPool pool = new ByteBufferPool(512, 4096, 2);
+		ByteBuffer heap = pool.acquire(512, false);
+		ByteBuffer direct = pool.acquire(512, true);
+		pool.release(heap);
+		pool.release(direct);
+		try {
+			pool.release(heap);
+			fail("expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("already released"));
+		}
+		try {
+			pool.releaseArray(heap.array());
+			fail("expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("already released"));
+		}
+		try {
+			pool.release(direct);
+			fail("expected IllegalStateException");
+		}
+		catch (IllegalStateException e) {
+			assertThat(e.getMessage(), containsString("already released"));
+		}
+		assertEquals(1, pool.getPooledHeapBufferCount());
+		assertEquals(1, pool.getPooledDirectBufferCount());
+
+		// once handed out again, it can be released
+		assertSame(heap, pool.acquire(512, false));
+		pool.release(heap);
+		assertEquals(1, pool.getPooledHeapBufferCount());
+	}
+
+	@Test
+	public void testArrays() {
+		ByteBufferPool pool = new ByteBufferPool();
+		byte[] array = pool.acquireArray(2000);
+		assertEquals(2048, array.length);
+		pool.releaseArray(array);
+		assertSame(array, pool.acquireArray(1500));
+		assertEquals(1, pool.getHitCount());
+		assertFalse(pool.toString().isEmpty());
+	}
+
+}
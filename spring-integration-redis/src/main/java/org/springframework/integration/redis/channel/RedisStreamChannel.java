@@ -0,0 +1,259 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.channel;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.integration.MessageDispatchingException;
+import org.springframework.integration.channel.AbstractMessageChannel;
+import org.springframework.integration.dispatcher.RoundRobinLoadBalancingStrategy;
+import org.springframework.integration.dispatcher.UnicastingDispatcher;
+import org.springframework.integration.redis.inbound.RedisStreamMessageDrivenEndpoint;
+import org.springframework.integration.redis.support.RedisStreamCommands;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.util.Assert;
+
+/**
+ * A durable point-to-point channel backed by a Redis Stream.
+ * <p>
+ * Sent messages are serialized and appended to the stream ({@code XADD}); all the
+ * channel instances (e.g. in different applications) with the same stream name and
+ * consumer group share the load, and each message is dispatched to exactly one
+ * subscriber of one of these instances (round-robin between local subscribers).
+ * A message is acknowledged only after it has been handled by a subscriber, so messages
+ * survive application crashes: they are replayed or claimed by other consumers, see
+ * {@link RedisStreamMessageDrivenEndpoint}.
+ *
+ * @author agent
+ * @since 5.0
+ */
+public class RedisStreamChannel extends AbstractMessageChannel
+		implements SubscribableChannel, SmartLifecycle, DisposableBean {
+
+	private final RedisStreamCommands streamCommands;
+
+	private final String streamKey;
+
+	private final RedisStreamMessageDrivenEndpoint endpoint;
+
+	private final UnicastingDispatcher dispatcher = new UnicastingDispatcher();
+
+	private volatile RedisSerializer<?> serializer = new JdkSerializationRedisSerializer();
+
+	private volatile long maxLength;
+
+	private volatile boolean initialized;
+
+	/**
+	 * @param connectionFactory the connection factory.
+	 * @param streamKey the stream key.
+	 * @param consumerGroup the consumer group shared by all the instances of this channel.
+	 */
+	public RedisStreamChannel(RedisConnectionFactory connectionFactory, String streamKey, String consumerGroup) {
+		Assert.notNull(connectionFactory, "'connectionFactory' must not be null");
+		Assert.hasText(streamKey, "'streamKey' must not be empty");
+		this.streamCommands = new RedisStreamCommands(connectionFactory);
+		this.streamKey = streamKey;
+		this.endpoint = new RedisStreamMessageDrivenEndpoint(streamKey, consumerGroup, connectionFactory);
+		this.endpoint.setExpectMessage(true);
+		this.endpoint.setOutputChannel(new DispatchingChannel());
+		this.dispatcher.setLoadBalancingStrategy(new RoundRobinLoadBalancingStrategy());
+	}
+
+	public void setTaskExecutor(Executor taskExecutor) {
+		Assert.notNull(taskExecutor, "'taskExecutor' must not be null");
+		this.endpoint.setTaskExecutor(taskExecutor);
+	}
+
+	public void setSerializer(RedisSerializer<?> serializer) {
+		Assert.notNull(serializer, "'serializer' must not be null");
+		this.serializer = serializer;
+		this.endpoint.setSerializer(serializer);
+	}
+
+	/**
+	 * @param consumerName the consumer name.
+	 * @see RedisStreamMessageDrivenEndpoint#setConsumerName(String)
+	 */
+	public void setConsumerName(String consumerName) {
+		this.endpoint.setConsumerName(consumerName);
+	}
+
+	/**
+	 * @param concurrency the number of consumers.
+	 * @see RedisStreamMessageDrivenEndpoint#setConcurrency(int)
+	 */
+	public void setConcurrency(int concurrency) {
+		this.endpoint.setConcurrency(concurrency);
+	}
+
+	/**
+	 * @param batchSize the batch size.
+	 * @see RedisStreamMessageDrivenEndpoint#setBatchSize(int)
+	 */
+	public void setBatchSize(int batchSize) {
+		this.endpoint.setBatchSize(batchSize);
+	}
+
+	/**
+	 * @param claimMinIdleTime the min idle time.
+	 * @see RedisStreamMessageDrivenEndpoint#setClaimMinIdleTime(long)
+	 */
+	public void setClaimMinIdleTime(long claimMinIdleTime) {
+		this.endpoint.setClaimMinIdleTime(claimMinIdleTime);
+	}
+
+	/**
+	 * @param maxDeliveries the max number of deliveries.
+	 * @see RedisStreamMessageDrivenEndpoint#setMaxDeliveries(int)
+	 */
+	public void setMaxDeliveries(int maxDeliveries) {
+		this.endpoint.setMaxDeliveries(maxDeliveries);
+	}
+
+	/**
+	 * @param deadLetterStreamKey the dead letter stream key.
+	 * @see RedisStreamMessageDrivenEndpoint#setDeadLetterStreamKey(String)
+	 */
+	public void setDeadLetterStreamKey(String deadLetterStreamKey) {
+		this.endpoint.setDeadLetterStreamKey(deadLetterStreamKey);
+	}
+
+	/**
+	 * Trim the stream to approximately this length on each send ({@code XADD MAXLEN ~}).
+	 * Not trimmed by default.
+	 * @param maxLength the approximate max stream length.
+	 */
+	public void setMaxLength(long maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Specify the maximum number of subscribers supported by the
+	 * channel's dispatcher.
+	 * @param maxSubscribers The maximum number of subscribers allowed.
+	 */
+	public void setMaxSubscribers(int maxSubscribers) {
+		this.dispatcher.setMaxSubscribers(maxSubscribers);
+	}
+
+	@Override
+	public boolean subscribe(MessageHandler handler) {
+		return this.dispatcher.addHandler(handler);
+	}
+
+	@Override
+	public boolean unsubscribe(MessageHandler handler) {
+		return this.dispatcher.removeHandler(handler);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected boolean doSend(Message<?> message, long timeout) {
+		this.streamCommands.add(this.streamKey, ((RedisSerializer<Object>) this.serializer).serialize(message),
+				this.maxLength);
+		return true;
+	}
+
+	@Override
+	public void onInit() throws Exception {
+		if (this.initialized) {
+			return;
+		}
+		super.onInit();
+		if (getBeanFactory() != null) {
+			this.endpoint.setBeanFactory(getBeanFactory());
+		}
+		this.endpoint.setComponentName(getComponentName());
+		this.endpoint.afterPropertiesSet();
+		this.initialized = true;
+	}
+
+	/*
+	 * SmartLifecycle implementation (delegates to the stream consuming endpoint)
+	 */
+
+	@Override
+	public boolean isAutoStartup() {
+		return this.endpoint.isAutoStartup();
+	}
+
+	@Override
+	public int getPhase() {
+		return this.endpoint.getPhase();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.endpoint.isRunning();
+	}
+
+	@Override
+	public void start() {
+		this.endpoint.start();
+	}
+
+	@Override
+	public void stop() {
+		this.endpoint.stop();
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+		this.endpoint.stop(callback);
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		this.endpoint.stop();
+	}
+
+	private class DispatchingChannel implements MessageChannel {
+
+		DispatchingChannel() {
+			super();
+		}
+
+		@Override
+		public boolean send(Message<?> message) {
+			return send(message, -1);
+		}
+
+		@Override
+		public boolean send(Message<?> message, long timeout) {
+			try {
+				return RedisStreamChannel.this.dispatcher.dispatch(message);
+			}
+			catch (MessageDispatchingException e) {
+				throw new MessageDeliveryException(message, e.getMessage()
+						+ " for redis-stream-channel '" + RedisStreamChannel.this.streamKey
+						+ "' (" + RedisStreamChannel.this.getFullChannelName() + ").", e);
+			}
+		}
+
+	}
+
+}
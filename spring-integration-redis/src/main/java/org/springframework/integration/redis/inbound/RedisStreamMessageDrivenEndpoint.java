@@ -0,0 +1,619 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.inbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.integration.channel.MessagePublishingErrorHandler;
+import org.springframework.integration.endpoint.MessageProducerSupport;
+import org.springframework.integration.redis.event.RedisExceptionEvent;
+import org.springframework.integration.redis.support.RedisHeaders;
+import org.springframework.integration.redis.support.RedisStreamCommands;
+import org.springframework.integration.redis.support.RedisStreamCommands.PendingEntry;
+import org.springframework.integration.redis.support.RedisStreamCommands.StreamEntry;
+import org.springframework.integration.support.AbstractIntegrationMessageBuilder;
+import org.springframework.integration.support.channel.BeanFactoryChannelResolver;
+import org.springframework.integration.support.management.IntegrationManagedResource;
+import org.springframework.integration.util.ErrorHandlingTaskExecutor;
+import org.springframework.jmx.export.annotation.ManagedMetric;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.scheduling.SchedulingAwareRunnable;
+import org.springframework.util.Assert;
+
+/**
+ * A message-driven endpoint consuming a Redis Stream as a member of a consumer group
+ * ({@code XREADGROUP}).
+ * <p>
+ * Entries are read in batches of up to {@link #setBatchSize(int) batchSize} and acknowledged
+ * ({@code XACK}) after they have been sent to the output channel successfully.
+ * Not acknowledged entries stay pending in the group: on start, each consumer replays its own
+ * pending entries first, and entries idle longer than {@link #setClaimMinIdleTime(long)}
+ * (e.g. left by a crashed consumer) are periodically claimed ({@code XCLAIM}) and redelivered.
+ * An entry which has been delivered {@link #setMaxDeliveries(int) maxDeliveries} times is not
+ * redelivered any more: it is acknowledged and moved to the
+ * {@link #setDeadLetterStreamKey(String) dead letter stream} or sent to the error channel.
+ * <p>
+ * The {@link #setConcurrency(int) concurrency} option starts several consumers in the same group,
+ * each on its own thread of the {@link #setTaskExecutor(Executor) taskExecutor}.
+ * <p>
+ * The consumers finish their current entry when the endpoint is stopped; consumers of a
+ * previous start which are still finishing when the endpoint is restarted exit instead
+ * of resuming alongside the new ones.
+ *
+ * @author agent
+ * @since 5.0
+ */
+@ManagedResource
+@IntegrationManagedResource
+public class RedisStreamMessageDrivenEndpoint extends MessageProducerSupport
+		implements ApplicationEventPublisherAware {
+
+	public static final long DEFAULT_POLL_INTERVAL = 100;
+
+	public static final long DEFAULT_RECOVERY_INTERVAL = 5000;
+
+	public static final long DEFAULT_CLAIM_MIN_IDLE_TIME = 60000;
+
+	public static final int DEFAULT_BATCH_SIZE = 10;
+
+	private final RedisStreamCommands streamCommands;
+
+	private final String streamKey;
+
+	private final String consumerGroup;
+
+	private final AtomicInteger activeConsumers = new AtomicInteger();
+
+	private final AtomicInteger generation = new AtomicInteger();
+
+	private final AtomicReference<Runnable> stopCallback = new AtomicReference<Runnable>();
+
+	private volatile ApplicationEventPublisher applicationEventPublisher;
+
+	private volatile MessageChannel errorChannel;
+
+	private volatile Executor taskExecutor;
+
+	private volatile RedisSerializer<?> serializer = new JdkSerializationRedisSerializer();
+
+	private volatile boolean expectMessage = false;
+
+	private volatile String consumerName = UUID.randomUUID().toString();
+
+	private volatile String groupStartId = "0";
+
+	private volatile int concurrency = 1;
+
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+	private volatile long pollInterval = DEFAULT_POLL_INTERVAL;
+
+	private volatile long recoveryInterval = DEFAULT_RECOVERY_INTERVAL;
+
+	private volatile long claimMinIdleTime = DEFAULT_CLAIM_MIN_IDLE_TIME;
+
+	private volatile boolean autoAck;
+
+	private volatile int maxDeliveries;
+
+	private volatile String deadLetterStreamKey;
+
+	private volatile boolean active;
+
+	/**
+	 * @param streamKey         Must not be an empty String
+	 * @param consumerGroup     Must not be an empty String
+	 * @param connectionFactory Must not be null
+	 */
+	public RedisStreamMessageDrivenEndpoint(String streamKey, String consumerGroup,
+			RedisConnectionFactory connectionFactory) {
+		Assert.hasText(streamKey, "'streamKey' is required");
+		Assert.hasText(consumerGroup, "'consumerGroup' is required");
+		this.streamCommands = new RedisStreamCommands(connectionFactory);
+		this.streamKey = streamKey;
+		this.consumerGroup = consumerGroup;
+	}
+
+	@Override
+	public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+		this.applicationEventPublisher = applicationEventPublisher;
+	}
+
+	public void setSerializer(RedisSerializer<?> serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * When data is retrieved from the Redis stream, does the returned data represent
+	 * just the payload for a Message, or does the data represent a serialized
+	 * {@link Message}?. {@code expectMessage} defaults to false.
+	 * @param expectMessage Defaults to false
+	 */
+	public void setExpectMessage(boolean expectMessage) {
+		this.expectMessage = expectMessage;
+	}
+
+	/**
+	 * The name of this consumer in the group. Defaults to a random {@link UUID}.
+	 * Configure a stable name to let a restarted application replay its own pending
+	 * entries immediately instead of waiting for them to be claimed.
+	 * When {@code concurrency > 1}, the consumers are named {@code consumerName-n}.
+	 * @param consumerName the consumer name.
+	 */
+	public void setConsumerName(String consumerName) {
+		Assert.hasText(consumerName, "'consumerName' must not be empty");
+		this.consumerName = consumerName;
+	}
+
+	/**
+	 * The id to start the consumer group from if it doesn't exist yet:
+	 * {@code 0} (default) to consume the entire stream, {@code $} for new entries only.
+	 * @param groupStartId the start id.
+	 */
+	public void setGroupStartId(String groupStartId) {
+		Assert.hasText(groupStartId, "'groupStartId' must not be empty");
+		this.groupStartId = groupStartId;
+	}
+
+	/**
+	 * The number of consumers (and threads) to read the stream concurrently. Defaults to 1.
+	 * @param concurrency the concurrency.
+	 */
+	public void setConcurrency(int concurrency) {
+		Assert.isTrue(concurrency > 0, "'concurrency' must be > 0.");
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * The max number of entries to read in one {@code XREADGROUP} ({@code COUNT}).
+	 * Defaults to 10.
+	 * @param batchSize the batch size.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "'batchSize' must be > 0.");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * The time (milliseconds) to wait before the next {@code XREADGROUP} when there are
+	 * no new entries in the stream. Defaults to {@code 100}.
+	 * @param pollInterval Must be positive. Specified in milliseconds.
+	 */
+	public void setPollInterval(long pollInterval) {
+		Assert.isTrue(pollInterval > 0, "'pollInterval' must be > 0.");
+		this.pollInterval = pollInterval;
+	}
+
+	public void setRecoveryInterval(long recoveryInterval) {
+		this.recoveryInterval = recoveryInterval;
+	}
+
+	/**
+	 * The time (milliseconds) a delivered entry may stay not acknowledged before it is
+	 * claimed by a consumer of this endpoint and redelivered. Also used as the interval
+	 * for the pending entries checks. Defaults to {@code 60000}; set to zero or a negative
+	 * value to disable claiming.
+	 * @param claimMinIdleTime the min idle time.
+	 */
+	public void setClaimMinIdleTime(long claimMinIdleTime) {
+		this.claimMinIdleTime = claimMinIdleTime;
+	}
+
+	/**
+	 * Set to true to acknowledge entries as soon as they are read ({@code XREADGROUP NOACK}),
+	 * trading the at-least-once guarantee for less network round trips. Defaults to false.
+	 * @param autoAck the auto ack flag.
+	 */
+	public void setAutoAck(boolean autoAck) {
+		this.autoAck = autoAck;
+	}
+
+	/**
+	 * The max number of times an entry is delivered before it is given up: when a pending
+	 * entry to be claimed has already been delivered ({@code XPENDING} delivery count) that
+	 * many times, it is acknowledged and moved to the {@link #setDeadLetterStreamKey(String)
+	 * dead letter stream}, or, if there is none, sent to the error channel as an
+	 * {@link ErrorMessage} (discarded with an error log when there is no error channel
+	 * either). Defaults to zero - unlimited redeliveries.
+	 * @param maxDeliveries the max number of deliveries.
+	 */
+	public void setMaxDeliveries(int maxDeliveries) {
+		Assert.isTrue(maxDeliveries >= 0, "'maxDeliveries' must be >= 0.");
+		this.maxDeliveries = maxDeliveries;
+	}
+
+	/**
+	 * The key of the stream to append ({@code XADD}) the raw data of the entries which
+	 * exceeded the {@link #setMaxDeliveries(int) maxDeliveries} to.
+	 * @param deadLetterStreamKey the dead letter stream key.
+	 */
+	public void setDeadLetterStreamKey(String deadLetterStreamKey) {
+		this.deadLetterStreamKey = deadLetterStreamKey;
+	}
+
+	public void setTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+	}
+
+	@Override
+	public void setErrorChannel(MessageChannel errorChannel) {
+		super.setErrorChannel(errorChannel);
+		this.errorChannel = errorChannel;
+	}
+
+	@Override
+	protected void onInit() {
+		super.onInit();
+		if (this.expectMessage) {
+			Assert.notNull(this.serializer, "'serializer' has to be provided where 'expectMessage == true'.");
+		}
+		if (this.taskExecutor == null) {
+			String beanName = this.getComponentName();
+			this.taskExecutor = new SimpleAsyncTaskExecutor((beanName == null ? "" : beanName + "-")
+					+ this.getComponentType());
+		}
+		if (!(this.taskExecutor instanceof ErrorHandlingTaskExecutor) && this.getBeanFactory() != null) {
+			MessagePublishingErrorHandler errorHandler =
+					new MessagePublishingErrorHandler(new BeanFactoryChannelResolver(this.getBeanFactory()));
+			errorHandler.setDefaultErrorChannel(this.errorChannel);
+			this.taskExecutor = new ErrorHandlingTaskExecutor(this.taskExecutor, errorHandler);
+		}
+	}
+
+	@Override
+	public String getComponentType() {
+		return "redis:stream-inbound-channel-adapter";
+	}
+
+	@Override
+	protected void doStart() {
+		if (!this.active) {
+			int generation = this.generation.incrementAndGet();
+			this.active = true;
+			for (int i = 0; i < this.concurrency; i++) {
+				String consumer = this.concurrency == 1 ? this.consumerName : this.consumerName + "-" + i;
+				this.activeConsumers.incrementAndGet();
+				this.taskExecutor.execute(new ConsumerTask(consumer, generation));
+			}
+		}
+	}
+
+	@Override
+	protected void doStop(Runnable callback) {
+		this.stopCallback.set(callback);
+		doStop();
+		if (this.activeConsumers.get() == 0) {
+			runStopCallback();
+		}
+	}
+
+	@Override
+	protected void doStop() {
+		super.doStop();
+		this.active = false;
+	}
+
+	/**
+	 * Return true if at least one consumer is reading the stream.
+	 * @return the listening state.
+	 */
+	public boolean isListening() {
+		return this.activeConsumers.get() > 0;
+	}
+
+	/**
+	 * Returns the number of entries in the stream. See also https://redis.io/commands/xlen
+	 * @return Size of the stream. Never negative.
+	 */
+	@ManagedMetric
+	public long getStreamSize() {
+		return this.streamCommands.size(this.streamKey);
+	}
+
+	private void runStopCallback() {
+		Runnable callback = this.stopCallback.getAndSet(null);
+		if (callback != null) {
+			callback.run();
+		}
+	}
+
+	private boolean createGroup(ConsumerTask task) {
+		try {
+			this.streamCommands.createGroup(this.streamKey, this.consumerGroup, this.groupStartId);
+			return true;
+		}
+		catch (Exception e) {
+			handleFailure(task, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Read a batch of entries starting after the provided id ({@code >} for new entries)
+	 * and send them to the output channel.
+	 * @return the entries read; null if the read has failed.
+	 */
+	private List<StreamEntry> readAndSend(ConsumerTask task, String id) {
+		List<StreamEntry> entries;
+		try {
+			entries = this.streamCommands.readGroup(this.streamKey, this.consumerGroup, task.consumer,
+					this.batchSize, this.autoAck, id);
+		}
+		catch (Exception e) {
+			handleFailure(task, e);
+			return null;
+		}
+		sendAndAcknowledge(task, entries, Collections.<String, Long>emptyMap());
+		return entries;
+	}
+
+	private void claimAndSend(ConsumerTask task) {
+		String consumer = task.consumer;
+		try {
+			List<PendingEntry> pending = this.streamCommands.pending(this.streamKey, this.consumerGroup,
+					this.claimMinIdleTime, this.batchSize);
+			if (!pending.isEmpty()) {
+				List<String> ids = new ArrayList<String>(pending.size());
+				Map<String, Long> exhausted = new HashMap<String, Long>();
+				for (PendingEntry entry : pending) {
+					ids.add(entry.getId());
+					if (this.maxDeliveries > 0 && entry.getDeliveryCount() >= this.maxDeliveries) {
+						exhausted.put(entry.getId(), entry.getDeliveryCount());
+					}
+				}
+				List<StreamEntry> entries = this.streamCommands.claim(this.streamKey, this.consumerGroup, consumer,
+						this.claimMinIdleTime, ids);
+				if (!entries.isEmpty() && logger.isDebugEnabled()) {
+					logger.debug("Consumer '" + consumer + "' claimed " + entries.size() + " pending entries from '"
+							+ this.streamKey + "'");
+				}
+				sendAndAcknowledge(task, entries, exhausted);
+			}
+		}
+		catch (Exception e) {
+			handleFailure(task, e);
+		}
+	}
+
+	/**
+	 * Send the entries to the output channel and acknowledge them.
+	 * The entries with an id in the {@code exhausted} map (to the delivery count) are
+	 * dead-lettered instead.
+	 */
+	private void sendAndAcknowledge(ConsumerTask task, List<StreamEntry> entries, Map<String, Long> exhausted) {
+		List<String> processed = new ArrayList<String>(entries.size());
+		for (StreamEntry entry : entries) {
+			if (!task.isActive()) {
+				break;
+			}
+			if (entry.getPayload() == null) {
+				// The entry has been deleted from the stream (e.g. trimmed) - nothing to deliver.
+				processed.add(entry.getId());
+				continue;
+			}
+			try {
+				Long deliveries = exhausted.get(entry.getId());
+				if (deliveries != null) {
+					deadLetter(task.consumer, entry, deliveries);
+				}
+				else {
+					sendMessage(toMessage(task.consumer, entry));
+				}
+				processed.add(entry.getId());
+			}
+			catch (Exception e) {
+				logger.error("Failed to process stream entry " + entry.getId() + "; it remains pending and will "
+						+ "be redelivered after " + this.claimMinIdleTime + " milliseconds.", e);
+			}
+		}
+		if (!this.autoAck && !processed.isEmpty()) {
+			try {
+				this.streamCommands.acknowledge(this.streamKey, this.consumerGroup, processed);
+			}
+			catch (Exception e) {
+				handleFailure(task, e);
+			}
+		}
+	}
+
+	private void deadLetter(String consumer, StreamEntry entry, long deliveries) {
+		String description = "Stream entry " + entry.getId() + " has been delivered " + deliveries
+				+ " times without being acknowledged";
+		if (this.deadLetterStreamKey != null) {
+			this.streamCommands.add(this.deadLetterStreamKey, entry.getPayload(), 0);
+			logger.warn(description + "; moved to the dead letter stream '" + this.deadLetterStreamKey + "'.");
+			return;
+		}
+		MessageChannel errorChannel = getErrorChannel();
+		if (errorChannel != null) {
+			MessagingException exception;
+			try {
+				exception = new MessagingException(toMessage(consumer, entry), description);
+			}
+			catch (Exception e) {
+				exception = new MessagingException(description, e);
+			}
+			getMessagingTemplate().send(errorChannel, new ErrorMessage(exception));
+		}
+		else {
+			logger.error(description + "; discarded.");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Message<?> toMessage(String consumer, StreamEntry entry) {
+		AbstractIntegrationMessageBuilder<?> builder;
+		if (this.expectMessage) {
+			try {
+				builder = getMessageBuilderFactory()
+						.fromMessage((Message<Object>) this.serializer.deserialize(entry.getPayload()));
+			}
+			catch (Exception e) {
+				throw new MessagingException("Deserialization of Message failed.", e);
+			}
+		}
+		else {
+			Object payload = entry.getPayload();
+			if (this.serializer != null) {
+				payload = this.serializer.deserialize(entry.getPayload());
+			}
+			builder = getMessageBuilderFactory().withPayload(payload);
+		}
+		return builder.setHeader(RedisHeaders.STREAM_KEY, this.streamKey)
+				.setHeader(RedisHeaders.STREAM_MESSAGE_ID, entry.getId())
+				.setHeader(RedisHeaders.CONSUMER_GROUP, this.consumerGroup)
+				.setHeader(RedisHeaders.CONSUMER, consumer)
+				.build();
+	}
+
+	private void handleFailure(ConsumerTask task, Exception e) {
+		if (task.isActive()) {
+			logger.error("Failed to read the stream '" + this.streamKey + "'. Will attempt to resume in "
+					+ this.recoveryInterval + " milliseconds.", e);
+			publishException(e);
+			sleepBeforeRecoveryAttempt();
+		}
+		else {
+			logger.debug("Failed to read the stream. " + e.getClass() + ": " + e.getMessage());
+		}
+	}
+
+	private void waitForEntries() {
+		try {
+			Thread.sleep(this.pollInterval);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Sleep according to the specified recovery interval.
+	 * Called between recovery attempts.
+	 */
+	private void sleepBeforeRecoveryAttempt() {
+		if (this.recoveryInterval > 0) {
+			try {
+				Thread.sleep(this.recoveryInterval);
+			}
+			catch (InterruptedException e) {
+				logger.debug("Thread interrupted while sleeping the recovery interval");
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void publishException(Exception e) {
+		if (this.applicationEventPublisher != null) {
+			this.applicationEventPublisher.publishEvent(new RedisExceptionEvent(this, e));
+		}
+		else {
+			if (logger.isDebugEnabled()) {
+				logger.debug("No application event publisher for exception: " + e.getMessage());
+			}
+		}
+	}
+
+
+	private final class ConsumerTask implements SchedulingAwareRunnable {
+
+		private final String consumer;
+
+		private final int generation;
+
+		private long lastClaim = System.currentTimeMillis();
+
+		ConsumerTask(String consumer, int generation) {
+			this.consumer = consumer;
+			this.generation = generation;
+		}
+
+		/**
+		 * Return false when the endpoint has been stopped (and maybe restarted with new
+		 * consumers) since this task was started, or when the thread was interrupted.
+		 * Must be called on the consumer thread.
+		 */
+		boolean isActive() {
+			RedisStreamMessageDrivenEndpoint endpoint = RedisStreamMessageDrivenEndpoint.this;
+			return endpoint.active && endpoint.generation.get() == this.generation
+					&& !Thread.currentThread().isInterrupted();
+		}
+
+		@Override
+		public boolean isLongLived() {
+			return true;
+		}
+
+		@Override
+		public void run() {
+			RedisStreamMessageDrivenEndpoint endpoint = RedisStreamMessageDrivenEndpoint.this;
+			try {
+				while (isActive() && !endpoint.createGroup(this)) {
+					// retry until the group is available
+				}
+				// Replay own pending entries left by the previous run of this consumer
+				String lastId = "0";
+				while (isActive()) {
+					List<StreamEntry> pending = endpoint.readAndSend(this, lastId);
+					if (pending == null) {
+						continue;
+					}
+					if (pending.isEmpty()) {
+						break;
+					}
+					lastId = pending.get(pending.size() - 1).getId();
+				}
+				while (isActive()) {
+					List<StreamEntry> entries = endpoint.readAndSend(this, ">");
+					if (entries != null && entries.isEmpty()) {
+						endpoint.waitForEntries();
+					}
+					if (endpoint.claimMinIdleTime > 0
+							&& System.currentTimeMillis() - this.lastClaim >= endpoint.claimMinIdleTime) {
+						endpoint.claimAndSend(this);
+						this.lastClaim = System.currentTimeMillis();
+					}
+				}
+			}
+			finally {
+				if (endpoint.activeConsumers.decrementAndGet() == 0 && !endpoint.active) {
+					endpoint.runStopCallback();
+				}
+			}
+		}
+
+	}
+
+}
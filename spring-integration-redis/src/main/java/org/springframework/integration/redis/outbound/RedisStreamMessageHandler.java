@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.outbound;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.common.LiteralExpression;
+import org.springframework.integration.expression.ExpressionUtils;
+import org.springframework.integration.handler.AbstractMessageHandler;
+import org.springframework.integration.redis.support.RedisStreamCommands;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link org.springframework.messaging.MessageHandler} appending the payload
+ * (or the whole message) to a Redis Stream ({@code XADD}).
+ *
+ * @author agent
+ * @since 5.0
+ */
+public class RedisStreamMessageHandler extends AbstractMessageHandler {
+
+	private final RedisSerializer<String> stringSerializer = new StringRedisSerializer();
+
+	private final RedisStreamCommands streamCommands;
+
+	private final Expression streamKeyExpression;
+
+	private volatile EvaluationContext evaluationContext;
+
+	private volatile boolean extractPayload = true;
+
+	private volatile RedisSerializer<?> serializer = new JdkSerializationRedisSerializer();
+
+	private volatile boolean serializerExplicitlySet;
+
+	private volatile long maxLength;
+
+	public RedisStreamMessageHandler(String streamKey, RedisConnectionFactory connectionFactory) {
+		this(new LiteralExpression(streamKey), connectionFactory);
+	}
+
+	public RedisStreamMessageHandler(Expression streamKeyExpression, RedisConnectionFactory connectionFactory) {
+		Assert.notNull(streamKeyExpression, "'streamKeyExpression' is required");
+		Assert.hasText(streamKeyExpression.getExpressionString(),
+				"'streamKeyExpression.getExpressionString()' is required");
+		this.streamKeyExpression = streamKeyExpression;
+		this.streamCommands = new RedisStreamCommands(connectionFactory);
+	}
+
+	public void setExtractPayload(boolean extractPayload) {
+		this.extractPayload = extractPayload;
+	}
+
+	public void setSerializer(RedisSerializer<?> serializer) {
+		Assert.notNull(serializer, "'serializer' must not be null");
+		this.serializer = serializer;
+		this.serializerExplicitlySet = true;
+	}
+
+	/**
+	 * Trim the stream to approximately this length on each append ({@code XADD MAXLEN ~}).
+	 * Not trimmed by default.
+	 * @param maxLength the approximate max stream length.
+	 */
+	public void setMaxLength(long maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	public void setIntegrationEvaluationContext(EvaluationContext evaluationContext) {
+		this.evaluationContext = evaluationContext;
+	}
+
+	@Override
+	public String getComponentType() {
+		return "redis:stream-outbound-channel-adapter";
+	}
+
+	@Override
+	protected void onInit() throws Exception {
+		super.onInit();
+		if (this.evaluationContext == null) {
+			this.evaluationContext = ExpressionUtils.createStandardEvaluationContext(getBeanFactory());
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void handleMessageInternal(Message<?> message) throws Exception {
+		Object value = message;
+
+		if (this.extractPayload) {
+			value = message.getPayload();
+		}
+
+		byte[] data;
+		if (value instanceof byte[]) {
+			data = (byte[]) value;
+		}
+		else if (value instanceof String && !this.serializerExplicitlySet) {
+			data = this.stringSerializer.serialize((String) value);
+		}
+		else {
+			data = ((RedisSerializer<Object>) this.serializer).serialize(value);
+		}
+
+		String streamKey = this.streamKeyExpression.getValue(this.evaluationContext, message, String.class);
+		this.streamCommands.add(streamKey, data, this.maxLength);
+	}
+
+}
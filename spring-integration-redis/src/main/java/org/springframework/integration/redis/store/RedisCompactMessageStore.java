@@ -0,0 +1,421 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupMetadata;
+import org.springframework.integration.store.MessageHolder;
+import org.springframework.integration.store.SimpleMessageGroup;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link RedisMessageStore} with a Redis-native layout for message groups.
+ * <p>
+ * Messages are still stored under their own {@code MESSAGE_<id>} keys, but instead of
+ * a serialized {@link MessageGroupMetadata} (which is rewritten as a whole on each
+ * group modification) each group is represented by two Redis structures:
+ * <ul>
+ * <li>{@code GROUP_METADATA_<groupId>} - a hash with the {@code timestamp},
+ * {@code lastModified}, {@code complete} and {@code lastReleasedSequence} fields;
+ * <li>{@code GROUP_MESSAGES_<groupId>} - a sorted set of message ids, scored by
+ * the insertion order.
+ * </ul>
+ * Adding messages to and removing them from a group are performed atomically by Lua
+ * scripts, so the network payload of a group update depends only on the messages
+ * being added or removed, not on the group size. Group messages are read with a
+ * single {@code MGET}.
+ * <p>
+ * Groups stored by a plain {@link RedisMessageStore} are not visible to this store.
+ * <p>
+ * Redis Cluster is not supported: the scripts and the {@code MGET} access the group keys
+ * and the {@code MESSAGE_<id>} keys together, which are in different hash slots, and the
+ * poll and remove group scripts derive the message key names from the stored ids.
+ *
+ * @author agent
+ * @since 5.0
+ */
+public class RedisCompactMessageStore extends RedisMessageStore {
+
+	protected static final String GROUP_METADATA_KEY_PREFIX = "GROUP_METADATA_";
+
+	protected static final String GROUP_MESSAGES_KEY_PREFIX = "GROUP_MESSAGES_";
+
+	private static final String TIMESTAMP = "timestamp";
+
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private static final String COMPLETE = "complete";
+
+	private static final String LAST_RELEASED_SEQUENCE = "lastReleasedSequence";
+
+	/*
+	 * KEYS: metadata hash, messages zset, message keys...
+	 * ARGV: now, then a (message id, stored message) pair per message key
+	 */
+	private static final RedisScript<Long> ADD_MESSAGES_SCRIPT = new DefaultRedisScript<>(
+			"redis.call('HSETNX', KEYS[1], 'timestamp', ARGV[1]) " +
+			"redis.call('HSET', KEYS[1], 'lastModified', ARGV[1]) " +
+			"for i = 3, #KEYS do " +
+			"  local id = ARGV[2 * i - 4] " +
+			"  redis.call('SET', KEYS[i], ARGV[2 * i - 3], 'NX') " +
+			"  if not redis.call('ZSCORE', KEYS[2], id) then " +
+			"    redis.call('ZADD', KEYS[2], redis.call('HINCRBY', KEYS[1], 'sequence', 1), id) " +
+			"  end " +
+			"end " +
+			"return redis.call('ZCARD', KEYS[2])", Long.class);
+
+	/*
+	 * KEYS: metadata hash, messages zset, message keys...
+	 * ARGV: now, then a message id per message key
+	 */
+	private static final RedisScript<Long> REMOVE_MESSAGES_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+			"for i = 3, #KEYS do " +
+			"  redis.call('ZREM', KEYS[2], ARGV[i - 1]) " +
+			"  redis.call('DEL', KEYS[i]) " +
+			"end " +
+			"redis.call('HSET', KEYS[1], 'lastModified', ARGV[1]) " +
+			"return 1", Long.class);
+
+	/*
+	 * KEYS: metadata hash, messages zset
+	 * ARGV: now, message key prefix
+	 */
+	private static final RedisScript<byte[]> POLL_MESSAGE_SCRIPT = new DefaultRedisScript<>(
+			"local ids = redis.call('ZRANGE', KEYS[2], 0, 0) " +
+			"if #ids == 0 then return false end " +
+			"redis.call('ZREM', KEYS[2], ids[1]) " +
+			"redis.call('HSET', KEYS[1], 'lastModified', ARGV[1]) " +
+			"local messageKey = ARGV[2] .. ids[1] " +
+			"local message = redis.call('GET', messageKey) " +
+			"redis.call('DEL', messageKey) " +
+			"return message", byte[].class);
+
+	/*
+	 * KEYS: metadata hash, messages zset
+	 * ARGV: message key prefix
+	 */
+	private static final RedisScript<Long> REMOVE_GROUP_SCRIPT = new DefaultRedisScript<>(
+			"local ids = redis.call('ZRANGE', KEYS[2], 0, -1) " +
+			"for i = 1, #ids do " +
+			"  redis.call('DEL', ARGV[1] .. ids[i]) " +
+			"end " +
+			"return redis.call('DEL', KEYS[1], KEYS[2])", Long.class);
+
+	/*
+	 * KEYS: metadata hash
+	 * ARGV: now
+	 */
+	private static final RedisScript<Long> COMPLETE_GROUP_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+			"redis.call('HMSET', KEYS[1], 'complete', '1', 'lastModified', ARGV[1]) " +
+			"return 1", Long.class);
+
+	/*
+	 * KEYS: metadata hash
+	 * ARGV: now, last released sequence
+	 */
+	private static final RedisScript<Long> SET_LAST_RELEASED_SCRIPT = new DefaultRedisScript<>(
+			"redis.call('HSETNX', KEYS[1], 'timestamp', ARGV[1]) " +
+			"redis.call('HMSET', KEYS[1], 'lastReleasedSequence', ARGV[2], 'lastModified', ARGV[1]) " +
+			"return 1", Long.class);
+
+	private static final RedisSerializer<byte[]> RAW_SERIALIZER = new RawRedisSerializer();
+
+	public RedisCompactMessageStore(RedisConnectionFactory connectionFactory) {
+		super(connectionFactory);
+	}
+
+	@Override
+	public MessageGroup getMessageGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Map<byte[], byte[]> metadata = getRedisTemplate().execute((RedisCallback<Map<byte[], byte[]>>)
+				connection -> connection.hGetAll(bytes(GROUP_METADATA_KEY_PREFIX + groupId)));
+		if (metadata == null || metadata.isEmpty()) {
+			return new SimpleMessageGroup(groupId);
+		}
+		long timestamp = 0;
+		long lastModified = 0;
+		boolean complete = false;
+		int lastReleasedSequence = 0;
+		for (Map.Entry<byte[], byte[]> field : metadata.entrySet()) {
+			String name = string(field.getKey());
+			String value = string(field.getValue());
+			if (TIMESTAMP.equals(name)) {
+				timestamp = Long.parseLong(value);
+			}
+			else if (LAST_MODIFIED.equals(name)) {
+				lastModified = Long.parseLong(value);
+			}
+			else if (COMPLETE.equals(name)) {
+				complete = "1".equals(value);
+			}
+			else if (LAST_RELEASED_SEQUENCE.equals(name)) {
+				lastReleasedSequence = Integer.parseInt(value);
+			}
+		}
+		MessageGroup messageGroup = getMessageGroupFactory().create(this, groupId, timestamp, complete);
+		messageGroup.setLastModified(lastModified);
+		messageGroup.setLastReleasedMessageSequenceNumber(lastReleasedSequence);
+		return messageGroup;
+	}
+
+	/**
+	 * Build the {@link MessageGroupMetadata} from the group hash and its messages.
+	 * Provided for compatibility only: the metadata is not stored in this form.
+	 */
+	@Override
+	public MessageGroupMetadata getGroupMetadata(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		if (!getRedisTemplate().hasKey(GROUP_METADATA_KEY_PREFIX + groupId)) {
+			return null;
+		}
+		MessageGroup messageGroup = getMessageGroup(groupId);
+		SimpleMessageGroup group = new SimpleMessageGroup(getMessagesForGroup(groupId), groupId,
+				messageGroup.getTimestamp(), messageGroup.isComplete());
+		group.setLastModified(messageGroup.getLastModified());
+		group.setLastReleasedMessageSequenceNumber(messageGroup.getLastReleasedMessageSequenceNumber());
+		return new MessageGroupMetadata(group);
+	}
+
+	@Override
+	public void addMessagesToGroup(Object groupId, Message<?>... messages) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Assert.notNull(messages, "'messages' must not be null");
+		List<String> keys = groupKeys(groupId);
+		byte[][] args = new byte[messages.length * 2 + 1][];
+		args[0] = bytes(Long.toString(System.currentTimeMillis()));
+		int i = 1;
+		for (Message<?> message : messages) {
+			String messageId = message.getHeaders().getId().toString();
+			keys.add(MESSAGE_KEY_PREFIX + messageId);
+			args[i++] = bytes(messageId);
+			args[i++] = serialize(new MessageHolder(message));
+		}
+		executeScript(ADD_MESSAGES_SCRIPT, keys, args);
+	}
+
+	@Override
+	public void removeMessagesFromGroup(Object groupId, Collection<Message<?>> messages) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Assert.notNull(messages, "'messages' must not be null");
+		List<String> keys = groupKeys(groupId);
+		byte[][] args = new byte[messages.size() + 1][];
+		args[0] = bytes(Long.toString(System.currentTimeMillis()));
+		int i = 1;
+		for (Message<?> message : messages) {
+			String messageId = message.getHeaders().getId().toString();
+			keys.add(MESSAGE_KEY_PREFIX + messageId);
+			args[i++] = bytes(messageId);
+		}
+		executeScript(REMOVE_MESSAGES_SCRIPT, keys, args);
+	}
+
+	@Override
+	public Message<?> pollMessageFromGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		byte[] stored = getRedisTemplate().execute(POLL_MESSAGE_SCRIPT, RAW_SERIALIZER, RAW_SERIALIZER,
+				new ArrayList<Object>(groupKeys(groupId)),
+				bytes(Long.toString(System.currentTimeMillis())), bytes(MESSAGE_KEY_PREFIX));
+		return stored != null ? extractMessage(deserialize(stored)) : null;
+	}
+
+	@Override
+	public void completeGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		executeScript(COMPLETE_GROUP_SCRIPT, Collections.singletonList(GROUP_METADATA_KEY_PREFIX + groupId),
+				bytes(Long.toString(System.currentTimeMillis())));
+	}
+
+	@Override
+	public void setLastReleasedSequenceNumberForGroup(Object groupId, int sequenceNumber) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		executeScript(SET_LAST_RELEASED_SCRIPT, Collections.singletonList(GROUP_METADATA_KEY_PREFIX + groupId),
+				bytes(Long.toString(System.currentTimeMillis())), bytes(Integer.toString(sequenceNumber)));
+	}
+
+	@Override
+	public void removeMessageGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		executeScript(REMOVE_GROUP_SCRIPT, groupKeys(groupId), bytes(MESSAGE_KEY_PREFIX));
+	}
+
+	@Override
+	public Message<?> getOneMessageFromGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		byte[] stored = getRedisTemplate().execute((RedisCallback<byte[]>) connection -> {
+			Set<byte[]> ids = connection.zRange(bytes(GROUP_MESSAGES_KEY_PREFIX + groupId), 0, 0);
+			if (ids == null || ids.isEmpty()) {
+				return null;
+			}
+			return connection.get(bytes(MESSAGE_KEY_PREFIX + string(ids.iterator().next())));
+		});
+		return stored != null ? extractMessage(deserialize(stored)) : null;
+	}
+
+	/**
+	 * Read the group message ids from the sorted set and all the messages
+	 * with a single {@code MGET} over the same connection.
+	 */
+	@Override
+	public Collection<Message<?>> getMessagesForGroup(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		List<byte[]> stored = getRedisTemplate().execute((RedisCallback<List<byte[]>>) connection -> {
+			Set<byte[]> ids = connection.zRange(bytes(GROUP_MESSAGES_KEY_PREFIX + groupId), 0, -1);
+			if (ids == null || ids.isEmpty()) {
+				return Collections.emptyList();
+			}
+			byte[][] messageKeys = new byte[ids.size()][];
+			int i = 0;
+			for (byte[] id : ids) {
+				messageKeys[i++] = bytes(MESSAGE_KEY_PREFIX + string(id));
+			}
+			return connection.mGet(messageKeys);
+		});
+		List<Message<?>> messages = new ArrayList<Message<?>>(stored.size());
+		for (byte[] value : stored) {
+			if (value != null) {
+				messages.add(extractMessage(deserialize(value)));
+			}
+		}
+		return messages;
+	}
+
+	@Override
+	public int messageGroupSize(Object groupId) {
+		Assert.notNull(groupId, "'groupId' must not be null");
+		Long size = getRedisTemplate().execute((RedisCallback<Long>)
+				connection -> connection.zCard(bytes(GROUP_MESSAGES_KEY_PREFIX + groupId)));
+		return size != null ? size.intValue() : 0;
+	}
+
+	@Override
+	public Iterator<MessageGroup> iterator() {
+		Collection<?> keys = doListKeys(GROUP_METADATA_KEY_PREFIX + "*");
+		Set<String> groupIds = new HashSet<String>();
+		if (keys != null) {
+			for (Object key : keys) {
+				groupIds.add(((String) key).substring(GROUP_METADATA_KEY_PREFIX.length()));
+			}
+		}
+		final Iterator<String> idIterator = groupIds.iterator();
+		return new Iterator<MessageGroup>() {
+
+			@Override
+			public boolean hasNext() {
+				return idIterator.hasNext();
+			}
+
+			@Override
+			public MessageGroup next() {
+				return getMessageGroup(idIterator.next());
+			}
+
+		};
+	}
+
+	private List<String> groupKeys(Object groupId) {
+		return new ArrayList<String>(Arrays.asList(GROUP_METADATA_KEY_PREFIX + groupId,
+				GROUP_MESSAGES_KEY_PREFIX + groupId));
+	}
+
+	private <T> T executeScript(RedisScript<T> script, List<String> keys, byte[]... args) {
+		RedisSerializer<T> resultSerializer = valueSerializer();
+		return getRedisTemplate().execute(script, RAW_SERIALIZER, resultSerializer, new ArrayList<Object>(keys),
+				(Object[]) args);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> RedisSerializer<T> valueSerializer() {
+		return (RedisSerializer<T>) getRedisTemplate().getValueSerializer();
+	}
+
+	private byte[] serialize(Object value) {
+		try {
+			return valueSerializer().serialize(value);
+		}
+		catch (SerializationException e) {
+			throw new IllegalArgumentException("If relying on the default RedisSerializer " +
+					"(JdkSerializationRedisSerializer) the Object must be Serializable. " +
+					"Either make it Serializable or provide your own implementation of " +
+					"RedisSerializer via 'setValueSerializer(..)'", e);
+		}
+	}
+
+	private Object deserialize(byte[] value) {
+		return valueSerializer().deserialize(value);
+	}
+
+	private static Message<?> extractMessage(Object object) {
+		if (object instanceof MessageHolder) {
+			return ((MessageHolder) object).getMessage();
+		}
+		else if (object instanceof Message) {
+			return (Message<?>) object;
+		}
+		else {
+			throw new IllegalArgumentException(
+					"Object of class [" + object.getClass().getName() +
+							"] must be an instance of [org.springframework.integration.store.MessageHolder].");
+		}
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(byte[] value) {
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	private static final class RawRedisSerializer implements RedisSerializer<byte[]> {
+
+		RawRedisSerializer() {
+			super();
+		}
+
+		@Override
+		public byte[] serialize(byte[] value) {
+			return value;
+		}
+
+		@Override
+		public byte[] deserialize(byte[] bytes) {
+			return bytes;
+		}
+
+	}
+
+}
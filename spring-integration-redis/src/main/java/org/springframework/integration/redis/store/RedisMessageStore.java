@@ -1,5 +1,5 @@
 /*
- * Copyright 2007-2016 the original author or authors.
+ * Copyright 2007-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -54,6 +54,16 @@ public class RedisMessageStore extends AbstractKeyValueMessageStore {
 		this.redisTemplate.setValueSerializer(valueSerializer);
 	}
 
+	/**
+	 * Return the {@link RedisTemplate} used by this store: {@code String} keys and
+	 * the configured value serializer.
+	 * @return the template.
+	 * @since 5.0
+	 */
+	protected RedisTemplate<Object, Object> getRedisTemplate() {
+		return this.redisTemplate;
+	}
+
 	@Override
 	protected Object doRetrieve(Object id) {
 		Assert.notNull(id, "'id' must not be null");
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2016 the original author or authors.
+ * Copyright 2014-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -43,4 +43,12 @@ public final class RedisHeaders {
 
 	public static final String COMMAND = PREFIX + "command";
 
+	public static final String STREAM_KEY = PREFIX + "streamKey";
+
+	public static final String STREAM_MESSAGE_ID = PREFIX + "streamMessageId";
+
+	public static final String CONSUMER_GROUP = PREFIX + "consumerGroup";
+
+	public static final String CONSUMER = PREFIX + "consumer";
+
 }
@@ -0,0 +1,380 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.support;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.Assert;
+
+/**
+ * A thin facade over the Redis Streams commands ({@code XADD}, {@code XGROUP},
+ * {@code XREADGROUP}, {@code XACK}, {@code XPENDING}, {@code XCLAIM} and {@code XLEN}).
+ * <p>
+ * These commands are supported neither by the {@link RedisTemplate} nor by the Redis
+ * drivers ({@code RedisConnection.execute()} fails for unknown commands), therefore they
+ * are performed via small Lua scripts ({@code EVALSHA} with an {@code EVAL} fallback)
+ * and the raw replies are converted here. The Redis server must be 5.0 or later.
+ * <p>
+ * Since blocking commands never block within scripts, {@code XREADGROUP} returns
+ * immediately; the consumers are responsible for waiting when there are no new entries.
+ *
+ * @author agent
+ * @since 5.0
+ */
+@SuppressWarnings("rawtypes")
+public class RedisStreamCommands {
+
+	/**
+	 * The stream entry field to store the serialized data.
+	 */
+	public static final String PAYLOAD_FIELD = "payload";
+
+	private static final RedisScript<byte[]> ADD_SCRIPT = new DefaultRedisScript<>(
+			"if ARGV[2] ~= '0' then\n" +
+			"  return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[2], '*', '" + PAYLOAD_FIELD + "', ARGV[1])\n" +
+			"end\n" +
+			"return redis.call('XADD', KEYS[1], '*', '" + PAYLOAD_FIELD + "', ARGV[1])", byte[].class);
+
+	private static final RedisScript<Long> CREATE_GROUP_SCRIPT = new DefaultRedisScript<>(
+			"local reply = redis.pcall('XGROUP', 'CREATE', KEYS[1], ARGV[1], ARGV[2], 'MKSTREAM')\n" +
+			"if type(reply) == 'table' and reply.err then\n" +
+			"  if string.find(reply.err, 'BUSYGROUP') then\n" +
+			"    return 0\n" +
+			"  end\n" +
+			"  return redis.error_reply(reply.err)\n" +
+			"end\n" +
+			"return 1", Long.class);
+
+	private static final RedisScript<List> READ_GROUP_SCRIPT = new DefaultRedisScript<>(
+			"local args = { 'XREADGROUP', 'GROUP', ARGV[1], ARGV[2], 'COUNT', ARGV[3] }\n" +
+			"if ARGV[5] == '1' then\n" +
+			"  table.insert(args, 'NOACK')\n" +
+			"end\n" +
+			"table.insert(args, 'STREAMS')\n" +
+			"table.insert(args, KEYS[1])\n" +
+			"table.insert(args, ARGV[4])\n" +
+			"return redis.call(unpack(args)) or {}", List.class);
+
+	private static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>(
+			"return redis.call('XACK', KEYS[1], unpack(ARGV))", Long.class);
+
+	private static final RedisScript<List> PENDING_SCRIPT = new DefaultRedisScript<>(
+			"return redis.call('XPENDING', KEYS[1], ARGV[1], '-', '+', ARGV[2])", List.class);
+
+	private static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>(
+			"return redis.call('XCLAIM', KEYS[1], unpack(ARGV))", List.class);
+
+	private static final RedisScript<Long> SIZE_SCRIPT = new DefaultRedisScript<>(
+			"return redis.call('XLEN', KEYS[1])", Long.class);
+
+	private final RedisTemplate<String, byte[]> template;
+
+	public RedisStreamCommands(RedisConnectionFactory connectionFactory) {
+		Assert.notNull(connectionFactory, "'connectionFactory' must not be null");
+		this.template = new RedisTemplate<String, byte[]>();
+		this.template.setConnectionFactory(connectionFactory);
+		this.template.setEnableDefaultSerializer(false);
+		this.template.setKeySerializer(new StringRedisSerializer());
+		this.template.afterPropertiesSet();
+	}
+
+	/**
+	 * Append an entry with the {@link #PAYLOAD_FIELD} to the stream ({@code XADD}).
+	 * @param key the stream key.
+	 * @param payload the data to store.
+	 * @param maxLength the approximate ({@code MAXLEN ~}) length to trim the stream to;
+	 * ignored if not positive.
+	 * @return the id of the new entry.
+	 */
+	public String add(String key, byte[] payload, long maxLength) {
+		return string(execute(ADD_SCRIPT, key, payload, bytes(Long.toString(Math.max(maxLength, 0)))));
+	}
+
+	/**
+	 * Create the consumer group ({@code XGROUP CREATE ... MKSTREAM}) if it doesn't exist yet.
+	 * @param key the stream key.
+	 * @param group the consumer group.
+	 * @param startId the id to start the group from: {@code 0} for the entire stream,
+	 * {@code $} for new entries only.
+	 * @return true if the group has been created, false if it already exists.
+	 */
+	public boolean createGroup(String key, String group, String startId) {
+		return (Long) execute(CREATE_GROUP_SCRIPT, key, bytes(group), bytes(startId)) == 1L;
+	}
+
+	/**
+	 * Read entries on behalf of the consumer in the group ({@code XREADGROUP}).
+	 * @param key the stream key.
+	 * @param group the consumer group.
+	 * @param consumer the consumer name.
+	 * @param count the max number of entries to return.
+	 * @param noAck true to acknowledge entries on delivery ({@code NOACK}).
+	 * @param id {@code >} for new entries, an id (e.g. {@code 0}) to replay the consumer's
+	 * pending entries after it.
+	 * @return the entries; empty list if there are no entries.
+	 */
+	public List<StreamEntry> readGroup(String key, String group, String consumer, int count, boolean noAck,
+			String id) {
+
+		List<?> reply = (List<?>) execute(READ_GROUP_SCRIPT, key, bytes(group), bytes(consumer),
+				bytes(Integer.toString(count)), bytes(id), bytes(noAck ? "1" : "0"));
+		List<StreamEntry> entries = new ArrayList<StreamEntry>();
+		for (Object stream : reply) {
+			entries.addAll(entries((List<?>) ((List<?>) stream).get(1)));
+		}
+		return entries;
+	}
+
+	/**
+	 * Acknowledge entries in the group ({@code XACK}).
+	 * @param key the stream key.
+	 * @param group the consumer group.
+	 * @param ids the entry ids.
+	 * @return the number of acknowledged entries.
+	 */
+	public long acknowledge(String key, String group, Collection<String> ids) {
+		if (ids.isEmpty()) {
+			return 0;
+		}
+		List<byte[]> args = new ArrayList<byte[]>();
+		args.add(bytes(group));
+		for (String id : ids) {
+			args.add(bytes(id));
+		}
+		return (Long) execute(ACK_SCRIPT, key, args.toArray(new byte[args.size()][]));
+	}
+
+	/**
+	 * Return the pending (delivered, but not acknowledged) entries in the group which
+	 * have been idle for at least the provided time ({@code XPENDING} extended form).
+	 * @param key the stream key.
+	 * @param group the consumer group.
+	 * @param minIdleTime the min idle time in milliseconds.
+	 * @param count the max number of entries to inspect.
+	 * @return the pending entries.
+	 */
+	public List<PendingEntry> pending(String key, String group, long minIdleTime, int count) {
+		List<?> reply = (List<?>) execute(PENDING_SCRIPT, key, bytes(group), bytes(Integer.toString(count)));
+		List<PendingEntry> entries = new ArrayList<PendingEntry>();
+		if (reply != null) {
+			for (Object pending : reply) {
+				List<?> details = (List<?>) pending;
+				if ((Long) details.get(2) >= minIdleTime) {
+					entries.add(new PendingEntry(string(details.get(0)), string(details.get(1)),
+							(Long) details.get(3)));
+				}
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Change the ownership of the pending entries to the consumer ({@code XCLAIM}).
+	 * The entries idle less than {@code minIdleTime} (e.g. claimed concurrently by
+	 * another consumer) are skipped.
+	 * @param key the stream key.
+	 * @param group the consumer group.
+	 * @param consumer the new owner.
+	 * @param minIdleTime the min idle time in milliseconds.
+	 * @param ids the entry ids.
+	 * @return the claimed entries.
+	 */
+	public List<StreamEntry> claim(String key, String group, String consumer, long minIdleTime,
+			Collection<String> ids) {
+
+		if (ids.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<byte[]> args = new ArrayList<byte[]>();
+		args.add(bytes(group));
+		args.add(bytes(consumer));
+		args.add(bytes(Long.toString(minIdleTime)));
+		for (String id : ids) {
+			args.add(bytes(id));
+		}
+		return entries((List<?>) execute(CLAIM_SCRIPT, key, args.toArray(new byte[args.size()][])));
+	}
+
+	/**
+	 * Return the number of entries in the stream ({@code XLEN}).
+	 * @param key the stream key.
+	 * @return the stream length.
+	 */
+	public long size(String key) {
+		return (Long) execute(SIZE_SCRIPT, key);
+	}
+
+	/**
+	 * Delete the stream together with its consumer groups.
+	 * @param key the stream key.
+	 */
+	public void delete(String key) {
+		this.template.delete(key);
+	}
+
+	private Object execute(RedisScript<?> script, String key, byte[]... args) {
+		byte[][] keysAndArgs = new byte[args.length + 1][];
+		keysAndArgs[0] = bytes(key);
+		System.arraycopy(args, 0, keysAndArgs, 1, args.length);
+		ReturnType returnType = ReturnType.fromJavaType(script.getResultType());
+		return this.template.execute((RedisCallback<Object>) connection -> {
+			try {
+				return connection.evalSha(script.getSha1(), returnType, 1, keysAndArgs);
+			}
+			catch (DataAccessException e) {
+				if (!isNoScript(e)) {
+					throw e;
+				}
+				return connection.eval(bytes(script.getScriptAsString()), returnType, 1, keysAndArgs);
+			}
+		});
+	}
+
+	private static boolean isNoScript(Throwable e) {
+		Throwable cause = e;
+		while (cause != null) {
+			if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+				return true;
+			}
+			cause = cause.getCause();
+		}
+		return false;
+	}
+
+	private static List<StreamEntry> entries(List<?> reply) {
+		List<StreamEntry> entries = new ArrayList<StreamEntry>();
+		if (reply != null) {
+			for (Object entry : reply) {
+				if (entry == null) {
+					continue;
+				}
+				List<?> idAndFields = (List<?>) entry;
+				Map<String, byte[]> fields = new LinkedHashMap<String, byte[]>();
+				List<?> rawFields = (List<?>) idAndFields.get(1);
+				if (rawFields != null) {
+					for (int i = 0; i < rawFields.size() - 1; i += 2) {
+						fields.put(string(rawFields.get(i)), (byte[]) rawFields.get(i + 1));
+					}
+				}
+				entries.add(new StreamEntry(string(idAndFields.get(0)), fields));
+			}
+		}
+		return entries;
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String string(Object value) {
+		if (value instanceof byte[]) {
+			return new String((byte[]) value, StandardCharsets.UTF_8);
+		}
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * A stream entry: the id and the fields.
+	 */
+	public static final class StreamEntry {
+
+		private final String id;
+
+		private final Map<String, byte[]> fields;
+
+		StreamEntry(String id, Map<String, byte[]> fields) {
+			this.id = id;
+			this.fields = fields;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public Map<String, byte[]> getFields() {
+			return this.fields;
+		}
+
+		/**
+		 * @return the {@link #PAYLOAD_FIELD} value; null if the entry has been deleted from the stream.
+		 */
+		public byte[] getPayload() {
+			return this.fields.get(PAYLOAD_FIELD);
+		}
+
+		@Override
+		public String toString() {
+			return "StreamEntry [id=" + this.id + ", fields=" + this.fields.keySet() + "]";
+		}
+
+	}
+
+	/**
+	 * A pending entry: the id, the current owner and how many times it has been delivered.
+	 */
+	public static final class PendingEntry {
+
+		private final String id;
+
+		private final String consumer;
+
+		private final long deliveryCount;
+
+		PendingEntry(String id, String consumer, long deliveryCount) {
+			this.id = id;
+			this.consumer = consumer;
+			this.deliveryCount = deliveryCount;
+		}
+
+		public String getId() {
+			return this.id;
+		}
+
+		public String getConsumer() {
+			return this.consumer;
+		}
+
+		/**
+		 * @return the number of times the entry has been delivered (read or claimed).
+		 */
+		public long getDeliveryCount() {
+			return this.deliveryCount;
+		}
+
+		@Override
+		public String toString() {
+			return "PendingEntry [id=" + this.id + ", consumer=" + this.consumer
+					+ ", deliveryCount=" + this.deliveryCount + "]";
+		}
+
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2016 the original author or authors.
+ * Copyright 2014-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -27,8 +27,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -36,16 +40,23 @@ import java.util.stream.Collectors;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.dao.CannotAcquireLockException;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.TimeoutUtils;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.integration.support.locks.DefaultLockRegistry;
 import org.springframework.integration.support.locks.LockRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.util.Assert;
 
 /**
@@ -67,12 +78,21 @@ import org.springframework.util.Assert;
  * for resource locking across multiple JVMs.
  * When a lock is released by a remote system, waiting threads may take up to 100ms
  * to acquire the lock.
- * A more performant version would need to get notifications from the Redis stores
- * of key changes. This is currently only available using the SYNC command.
+ * Starting with version 5.0, this can be avoided by providing a
+ * {@link RedisMessageListenerContainer} via
+ * {@link #setUnlockNotificationContainer(RedisMessageListenerContainer)}: releasing a
+ * lock then publishes a notification and the registries which share the same
+ * {@code registryKey} wake up their waiting thread immediately instead of polling.
  * <p>
  * This limitation will usually not apply when a lock is released within this registry,
  * unless another system takes the lock after the local lock is acquired here.
- * A {@link DefaultLockRegistry} is used internally to achieve this optimization.
+ * A {@link DefaultLockRegistry} is used internally to achieve this optimization:
+ * only one thread per JVM competes for a lock in Redis.
+ * <p>
+ * Also starting with version 5.0, the leases of held locks can be renewed in the
+ * background (see {@link #setRenewalTaskScheduler(TaskScheduler)}), so a lock does not
+ * expire while its owner is still alive, even if it is held longer than the
+ * expiration.
  * <p>
  * {@link Condition}s are not supported.
  *
@@ -82,7 +102,7 @@ import org.springframework.util.Assert;
  * @since 4.0
  *
  */
-public final class RedisLockRegistry implements LockRegistry {
+public final class RedisLockRegistry implements LockRegistry, DisposableBean {
 
 	private static final Log logger = LogFactory.getLog(RedisLockRegistry.class);
 
@@ -90,6 +110,26 @@ public final class RedisLockRegistry implements LockRegistry {
 
 	private static final long DEFAULT_EXPIRE_AFTER = 60000;
 
+	private static final long DEFAULT_IDLE_BETWEEN_TRIES = 100;
+
+	/*
+	 * When unlock notifications are used, a retry is still performed after this period
+	 * in case a notification has been missed (e.g. the lock has expired).
+	 */
+	private static final long NOTIFIED_IDLE_BETWEEN_TRIES = 1000;
+
+	private static final int MONITORS = 256;
+
+	private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+			"if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+			"  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+			"end " +
+			"return 0", Long.class);
+
+	private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+			"redis.call('DEL', KEYS[1]) " +
+			"return redis.call('PUBLISH', ARGV[1], ARGV[2])", Long.class);
+
 	private final String registryKey;
 
 	private final RedisTemplate<String, RedisLock> redisTemplate;
@@ -104,8 +144,20 @@ public final class RedisLockRegistry implements LockRegistry {
 
 	private final LockSerializer lockSerializer = new LockSerializer();
 
+	private final ConcurrentMap<RedisLock, byte[]> heldLocks = new ConcurrentHashMap<>();
+
+	private final UnlockMonitor[] unlockMonitors = new UnlockMonitor[MONITORS];
+
+	private final RawSerializer rawSerializer = new RawSerializer();
+
+	private final String unlockChannel;
+
 	private boolean useWeakReferences = false;
 
+	private volatile boolean unlockNotifications;
+
+	private volatile ScheduledFuture<?> renewalTask;
+
 	static {
 		String host;
 		try {
@@ -159,6 +211,10 @@ public final class RedisLockRegistry implements LockRegistry {
 		this.registryKey = registryKey;
 		this.expireAfter = expireAfter;
 		this.localRegistry = localRegistry;
+		this.unlockChannel = registryKey + ":unlocked";
+		for (int i = 0; i < MONITORS; i++) {
+			this.unlockMonitors[i] = new UnlockMonitor();
+		}
 	}
 
 	/**
@@ -175,6 +231,74 @@ public final class RedisLockRegistry implements LockRegistry {
 		this.useWeakReferences = useWeakReferences;
 	}
 
+	/**
+	 * Subscribe to lock release notifications using the provided container; releasing
+	 * a lock in this registry publishes a notification to the
+	 * {@code registryKey + ":unlocked"} channel. Threads waiting for a lock released by
+	 * another registry with the same {@code registryKey} are woken up immediately
+	 * instead of polling the store every 100 milliseconds; they still retry every second
+	 * in case a notification is missed (e.g. when a lock expires). All the registries
+	 * sharing the {@code registryKey} should be configured with a container. The
+	 * container lifecycle is managed by the caller.
+	 * @param container the listener container.
+	 * @since 5.0
+	 */
+	public void setUnlockNotificationContainer(RedisMessageListenerContainer container) {
+		Assert.notNull(container, "'container' cannot be null");
+		container.addMessageListener((message, pattern) -> {
+			String lockKey = new String(message.getBody());
+			getUnlockMonitor(lockKey).signal();
+		}, new ChannelTopic(this.unlockChannel));
+		this.unlockNotifications = true;
+	}
+
+	/**
+	 * Renew the leases of the locks held by this registry in the background, with the
+	 * provided scheduler, every third of the expiration; a held lock therefore doesn't
+	 * expire unless this JVM fails to renew it (e.g. it is dead or disconnected). Call
+	 * {@link #destroy()} to stop the renewal.
+	 * @param taskScheduler the scheduler.
+	 * @since 5.0
+	 */
+	public void setRenewalTaskScheduler(TaskScheduler taskScheduler) {
+		Assert.notNull(taskScheduler, "'taskScheduler' cannot be null");
+		Assert.state(this.renewalTask == null, "The lease renewal is already scheduled");
+		this.renewalTask = taskScheduler.scheduleAtFixedRate(this::renewLeases, Math.max(this.expireAfter / 3, 1));
+	}
+
+	private void renewLeases() {
+		for (Map.Entry<RedisLock, byte[]> held : this.heldLocks.entrySet()) {
+			String key = held.getKey().constructLockKey();
+			try {
+				Long renewed = this.redisTemplate.execute(RENEW_SCRIPT, this.rawSerializer, null,
+						Collections.singletonList(key), held.getValue(),
+						Long.toString(this.expireAfter).getBytes());
+				if (renewed == null || renewed == 0) {
+					this.heldLocks.remove(held.getKey(), held.getValue());
+					if (logger.isWarnEnabled()) {
+						logger.warn("Failed to renew the lease; the lock has expired: " + held.getKey());
+					}
+				}
+			}
+			catch (Exception e) {
+				logger.error("Failed to renew the lease for " + held.getKey(), e);
+			}
+		}
+	}
+
+	private UnlockMonitor getUnlockMonitor(String lockKey) {
+		return this.unlockMonitors[lockKey.hashCode() & (MONITORS - 1)];
+	}
+
+	@Override
+	public void destroy() {
+		ScheduledFuture<?> renewalTask = this.renewalTask;
+		if (renewalTask != null) {
+			renewalTask.cancel(true);
+			this.renewalTask = null;
+		}
+	}
+
 	/**
 	 * Weak referenced locks, lock is kept here when actual lock is NOT gained.
 	 * Used for obtaining same lock object within same thread and key.
@@ -317,9 +441,18 @@ public final class RedisLockRegistry implements LockRegistry {
 
 		private int reLock;
 
+		private final UnlockMonitor unlockMonitor;
+
 		RedisLock(String lockKey) {
 			this.lockKey = lockKey;
 			this.lockHost = RedisLockRegistry.hostName;
+			this.unlockMonitor = getUnlockMonitor(lockKey);
+		}
+
+		private long idleBetweenTries() {
+			return RedisLockRegistry.this.unlockNotifications
+					? NOTIFIED_IDLE_BETWEEN_TRIES
+					: DEFAULT_IDLE_BETWEEN_TRIES;
 		}
 
 		private String getLockKey() {
@@ -332,8 +465,10 @@ public final class RedisLockRegistry implements LockRegistry {
 			localLock.lock();
 			while (true) {
 				try {
+					long unlocks = this.unlockMonitor.getUnlocks();
 					while (!this.obtainLock()) {
-						Thread.sleep(100); //NOSONAR
+						this.unlockMonitor.await(unlocks, idleBetweenTries());
+						unlocks = this.unlockMonitor.getUnlocks();
 					}
 					break;
 				}
@@ -360,8 +495,10 @@ public final class RedisLockRegistry implements LockRegistry {
 			Lock localLock = RedisLockRegistry.this.localRegistry.obtain(this.lockKey);
 			localLock.lockInterruptibly();
 			try {
+				long unlocks = this.unlockMonitor.getUnlocks();
 				while (!this.obtainLock()) {
-					Thread.sleep(100); //NOSONAR
+					this.unlockMonitor.await(unlocks, idleBetweenTries());
+					unlocks = this.unlockMonitor.getUnlocks();
 				}
 			}
 			catch (InterruptedException ie) {
@@ -410,6 +547,7 @@ public final class RedisLockRegistry implements LockRegistry {
 			this.lockedAt = System.currentTimeMillis();
 			this.threadName = currentThread.getName();
 
+			byte[] lockValue = RedisLockRegistry.this.lockSerializer.serialize(this);
 			Boolean success = false;
 			try {
 
@@ -425,7 +563,7 @@ public final class RedisLockRegistry implements LockRegistry {
 					RedisSerializer<String> serializer = RedisLockRegistry.this.redisTemplate.getStringSerializer();
 					byte[][] actualArgs = new byte[][] {
 							serializer.serialize(constructLockKey()),
-							RedisLockRegistry.this.lockSerializer.serialize(RedisLock.this),
+							lockValue,
 							serializer.serialize("NX"),
 							serializer.serialize("EX"),
 							serializer.serialize(String.valueOf(expireAfter))
@@ -443,6 +581,9 @@ public final class RedisLockRegistry implements LockRegistry {
 				}
 				else {
 					this.thread = currentThread;
+					if (RedisLockRegistry.this.renewalTask != null) {
+						RedisLockRegistry.this.heldLocks.put(this, lockValue);
+					}
 					if (logger.isDebugEnabled()) {
 						logger.debug("New lock; " + this);
 					}
@@ -461,9 +602,12 @@ public final class RedisLockRegistry implements LockRegistry {
 			}
 			try {
 				long expire = System.currentTimeMillis() + TimeUnit.MILLISECONDS.convert(time, unit);
+				long unlocks = this.unlockMonitor.getUnlocks();
 				boolean acquired;
 				while (!(acquired = obtainLock()) && System.currentTimeMillis() < expire) { //NOSONAR
-					Thread.sleep(100); //NOSONAR
+					this.unlockMonitor.await(unlocks,
+							Math.max(Math.min(idleBetweenTries(), expire - System.currentTimeMillis()), 1));
+					unlocks = this.unlockMonitor.getUnlocks();
 				}
 				if (!acquired) {
 					localLock.unlock();
@@ -489,8 +633,17 @@ public final class RedisLockRegistry implements LockRegistry {
 			try {
 				if (this.reLock-- <= 0) {
 					try {
+						RedisLockRegistry.this.heldLocks.remove(this);
 						this.assertLockInRedisIsUnchanged();
-						RedisLockRegistry.this.redisTemplate.delete(constructLockKey());
+						if (RedisLockRegistry.this.unlockNotifications) {
+							RedisLockRegistry.this.redisTemplate.execute(UNLOCK_SCRIPT,
+									RedisLockRegistry.this.rawSerializer, null,
+									Collections.singletonList(constructLockKey()),
+									RedisLockRegistry.this.unlockChannel.getBytes(), this.lockKey.getBytes());
+						}
+						else {
+							RedisLockRegistry.this.redisTemplate.delete(constructLockKey());
+						}
 						if (logger.isDebugEnabled()) {
 							logger.debug("Released lock; " + this);
 						}
@@ -637,4 +790,51 @@ public final class RedisLockRegistry implements LockRegistry {
 
 	}
 
+	/**
+	 * Counts the unlock notifications for a stripe of lock keys; waiting threads wake up
+	 * on the next notification, unless one has been received since they last checked.
+	 */
+	private static final class UnlockMonitor {
+
+		private long unlocks;
+
+		UnlockMonitor() {
+			super();
+		}
+
+		synchronized long getUnlocks() {
+			return this.unlocks;
+		}
+
+		synchronized void signal() {
+			this.unlocks++;
+			notifyAll();
+		}
+
+		synchronized void await(long seen, long timeout) throws InterruptedException {
+			if (this.unlocks == seen) {
+				wait(timeout);
+			}
+		}
+
+	}
+
+	private static final class RawSerializer implements RedisSerializer<byte[]> {
+
+		RawSerializer() {
+			super();
+		}
+
+		@Override
+		public byte[] serialize(byte[] bytes) throws SerializationException {
+			return bytes;
+		}
+
+		@Override
+		public byte[] deserialize(byte[] bytes) throws SerializationException {
+			return bytes;
+		}
+
+	}
+
 }
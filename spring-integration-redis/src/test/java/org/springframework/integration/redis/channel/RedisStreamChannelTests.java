@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.channel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.integration.redis.rules.RedisAvailable;
+import org.springframework.integration.redis.rules.RedisAvailableTests;
+import org.springframework.integration.redis.support.RedisStreamCommands;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+
+/**
+ * @author agent
+ * @since 5.0
+ */
+public class RedisStreamChannelTests extends RedisAvailableTests {
+
+	private static final String STREAM = "si.test.streamChannel";
+
+	@Test
+	@RedisAvailable
+	public void testMessagesSurviveWithoutSubscribers() throws Exception {
+		RedisConnectionFactory connectionFactory = this.getConnectionFactoryForTest();
+		RedisStreamCommands commands = new RedisStreamCommands(connectionFactory);
+		commands.delete(STREAM);
+
+		RedisStreamChannel channel = new RedisStreamChannel(connectionFactory, STREAM, "testGroup");
+		channel.setBeanName("streamChannel");
+		channel.setBeanFactory(mock(BeanFactory.class));
+		channel.setConsumerName("testConsumer");
+		channel.afterPropertiesSet();
+
+		channel.send(MessageBuilder.withPayload("1").setHeader("foo", "bar").build());
+		channel.send(MessageBuilder.withPayload("2").setHeader("foo", "bar").build());
+		assertEquals(2, commands.size(STREAM));
+
+		final CountDownLatch latch = new CountDownLatch(3);
+		final List<Message<?>> received = new CopyOnWriteArrayList<>();
+		channel.subscribe(message -> {
+			received.add(message);
+			latch.countDown();
+		});
+		channel.start();
+		channel.send(MessageBuilder.withPayload("3").setHeader("foo", "bar").build());
+
+		assertTrue(latch.await(20, TimeUnit.SECONDS));
+		assertEquals("1", received.get(0).getPayload());
+		assertEquals("2", received.get(1).getPayload());
+		assertEquals("3", received.get(2).getPayload());
+		assertEquals("bar", received.get(2).getHeaders().get("foo"));
+
+		channel.stop();
+		commands.delete(STREAM);
+	}
+
+}
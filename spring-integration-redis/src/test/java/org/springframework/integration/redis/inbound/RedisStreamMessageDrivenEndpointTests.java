@@ -0,0 +1,309 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.inbound;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.redis.outbound.RedisStreamMessageHandler;
+import org.springframework.integration.redis.rules.RedisAvailable;
+import org.springframework.integration.redis.rules.RedisAvailableTests;
+import org.springframework.integration.redis.support.RedisHeaders;
+import org.springframework.integration.redis.support.RedisStreamCommands;
+import org.springframework.integration.redis.support.RedisStreamCommands.PendingEntry;
+import org.springframework.integration.redis.support.RedisStreamCommands.StreamEntry;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.test.util.TestUtils;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * @author agent
+ * @since 5.0
+ */
+public class RedisStreamMessageDrivenEndpointTests extends RedisAvailableTests {
+
+	private static final String STREAM = "si.test.redisStreamTests";
+
+	@Test
+	@RedisAvailable
+	public void testSendAndReceive() throws Exception {
+		RedisConnectionFactory connectionFactory = getConnectionFactoryForTest();
+		RedisStreamCommands commands = new RedisStreamCommands(connectionFactory);
+		commands.delete(STREAM);
+
+		RedisStreamMessageHandler handler = new RedisStreamMessageHandler(STREAM, connectionFactory);
+		handler.setBeanFactory(Mockito.mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		handler.handleMessage(new GenericMessage<>("foo"));
+		handler.handleMessage(new GenericMessage<>("bar".getBytes()));
+		assertEquals(2, commands.size(STREAM));
+
+		QueueChannel channel = new QueueChannel();
+		RedisStreamMessageDrivenEndpoint endpoint =
+				new RedisStreamMessageDrivenEndpoint(STREAM, "testGroup", connectionFactory);
+		endpoint.setBeanFactory(Mockito.mock(BeanFactory.class));
+		endpoint.setOutputChannel(channel);
+		endpoint.setSerializer(new StringRedisSerializer());
+		endpoint.setConsumerName("testConsumer");
+		endpoint.afterPropertiesSet();
+		endpoint.start();
+
+		Message<?> receive = channel.receive(10000);
+		assertNotNull(receive);
+		assertEquals("foo", receive.getPayload());
+		assertEquals(STREAM, receive.getHeaders().get(RedisHeaders.STREAM_KEY));
+		assertEquals("testGroup", receive.getHeaders().get(RedisHeaders.CONSUMER_GROUP));
+		assertEquals("testConsumer", receive.getHeaders().get(RedisHeaders.CONSUMER));
+		assertNotNull(receive.getHeaders().get(RedisHeaders.STREAM_MESSAGE_ID));
+
+		receive = channel.receive(10000);
+		assertNotNull(receive);
+		assertEquals("bar", receive.getPayload());
+
+		int n = 0;
+		while (n++ < 100 && !commands.pending(STREAM, "testGroup", 0, 10).isEmpty()) {
+			Thread.sleep(100);
+		}
+		assertTrue(commands.pending(STREAM, "testGroup", 0, 10).isEmpty());
+		endpoint.stop();
+		commands.delete(STREAM);
+	}
+
+	@Test
+	@RedisAvailable
+	public void testExpectMessageAndConcurrency() throws Exception {
+		RedisConnectionFactory connectionFactory = getConnectionFactoryForTest();
+		RedisStreamCommands commands = new RedisStreamCommands(connectionFactory);
+		commands.delete(STREAM);
+
+		RedisStreamMessageHandler handler = new RedisStreamMessageHandler(STREAM, connectionFactory);
+		handler.setExtractPayload(false);
+		handler.setBeanFactory(Mockito.mock(BeanFactory.class));
+		handler.afterPropertiesSet();
+		for (int i = 0; i < 100; i++) {
+			handler.handleMessage(MessageBuilder.withPayload(i).setHeader("foo", "bar").build());
+		}
+
+		QueueChannel channel = new QueueChannel();
+		RedisStreamMessageDrivenEndpoint endpoint =
+				new RedisStreamMessageDrivenEndpoint(STREAM, "testGroup", connectionFactory);
+		endpoint.setBeanFactory(Mockito.mock(BeanFactory.class));
+		endpoint.setOutputChannel(channel);
+		endpoint.setExpectMessage(true);
+		endpoint.setConsumerName("testConsumer");
+		endpoint.setConcurrency(3);
+		endpoint.setBatchSize(7);
+		endpoint.afterPropertiesSet();
+		endpoint.start();
+
+		Set<Object> payloads = new HashSet<>();
+		Set<Object> consumers = new HashSet<>();
+		for (int i = 0; i < 100; i++) {
+			Message<?> receive = channel.receive(10000);
+			assertNotNull(receive);
+			assertEquals("bar", receive.getHeaders().get("foo"));
+			assertThat(receive.getHeaders().get(RedisHeaders.CONSUMER, String.class), startsWith("testConsumer-"));
+			payloads.add(receive.getPayload());
+			consumers.add(receive.getHeaders().get(RedisHeaders.CONSUMER));
+		}
+		assertEquals(100, payloads.size());
+		assertTrue(consumers.size() > 1);
+		assertNull(channel.receive(100));
+
+		endpoint.stop();
+		commands.delete(STREAM);
+	}
+
+	@Test
+	@RedisAvailable
+	public void testNotAcknowledgedEntriesAreRedelivered() throws Exception {
+		RedisConnectionFactory connectionFactory = getConnectionFactoryForTest();
+		RedisStreamCommands commands = new RedisStreamCommands(connectionFactory);
+		commands.delete(STREAM);
+		commands.add(STREAM, "foo".getBytes(), 0);
+
+		AtomicInteger attempts = new AtomicInteger();
+		DirectChannel failingChannel = new DirectChannel();
+		failingChannel.subscribe(m -> {
+			attempts.incrementAndGet();
+			throw new MessagingException(m, "Planned failure");
+		});
+
+		RedisStreamMessageDrivenEndpoint failingEndpoint =
+				new RedisStreamMessageDrivenEndpoint(STREAM, "testGroup", connectionFactory);
+		failingEndpoint.setBeanFactory(Mockito.mock(BeanFactory.class));
+		failingEndpoint.setOutputChannel(failingChannel);
+		failingEndpoint.setSerializer(null);
+		failingEndpoint.setConsumerName("failingConsumer");
+		failingEndpoint.setClaimMinIdleTime(0);
+		failingEndpoint.afterPropertiesSet();
+		failingEndpoint.start();
+
+		int n = 0;
+		while (n++ < 100 && attempts.get() == 0) {
+			Thread.sleep(100);
+		}
+		failingEndpoint.stop();
+		assertEquals(1, attempts.get());
+
+		List<PendingEntry> pending = commands.pending(STREAM, "testGroup", 0, 10);
+		assertEquals(1, pending.size());
+
+		QueueChannel channel = new QueueChannel();
+		RedisStreamMessageDrivenEndpoint endpoint =
+				new RedisStreamMessageDrivenEndpoint(STREAM, "testGroup", connectionFactory);
+		endpoint.setBeanFactory(Mockito.mock(BeanFactory.class));
+		endpoint.setOutputChannel(channel);
+		endpoint.setSerializer(null);
+		endpoint.setConsumerName("anotherConsumer");
+		endpoint.setClaimMinIdleTime(100);
+		endpoint.afterPropertiesSet();
+		endpoint.start();
+
+		Message<?> receive = channel.receive(10000);
+		assertNotNull(receive);
+		assertEquals("foo", new String((byte[]) receive.getPayload()));
+		assertEquals(pending.get(0).getId(), receive.getHeaders().get(RedisHeaders.STREAM_MESSAGE_ID));
+		assertEquals("anotherConsumer", receive.getHeaders().get(RedisHeaders.CONSUMER));
+
+		n = 0;
+		while (n++ < 100 && !commands.pending(STREAM, "testGroup", 0, 10).isEmpty()) {
+			Thread.sleep(100);
+		}
+		assertTrue(commands.pending(STREAM, "testGroup", 0, 10).isEmpty());
+		endpoint.stop();
+		assertFalse(endpoint.isRunning());
+		commands.delete(STREAM);
+	}
+
+	@Test
+	@RedisAvailable
+	public void testExhaustedEntriesAreDeadLettered() throws Exception {
+		RedisConnectionFactory connectionFactory = getConnectionFactoryForTest();
+		RedisStreamCommands commands = new RedisStreamCommands(connectionFactory);
+		commands.delete(STREAM);
+		commands.delete(STREAM + ".dlq");
+		commands.add(STREAM, "foo".getBytes(), 0);
+
+		AtomicInteger attempts = new AtomicInteger();
+		DirectChannel failingChannel = new DirectChannel();
+		failingChannel.subscribe(m -> {
+			attempts.incrementAndGet();
+			throw new MessagingException(m, "Planned failure");
+		});
+
+		RedisStreamMessageDrivenEndpoint endpoint =
+				new RedisStreamMessageDrivenEndpoint(STREAM, "testGroup", connectionFactory);
+		endpoint.setBeanFactory(Mockito.mock(BeanFactory.class));
+		endpoint.setOutputChannel(failingChannel);
+		endpoint.setSerializer(null);
+		endpoint.setClaimMinIdleTime(100);
+		endpoint.setMaxDeliveries(2);
+		endpoint.setDeadLetterStreamKey(STREAM + ".dlq");
+		endpoint.afterPropertiesSet();
+		endpoint.start();
+
+		int n = 0;
+		while (n++ < 100 && commands.size(STREAM + ".dlq") == 0) {
+			Thread.sleep(100);
+		}
+		assertEquals(1, commands.size(STREAM + ".dlq"));
+		assertTrue(commands.pending(STREAM, "testGroup", 0, 10).isEmpty());
+		Thread.sleep(300);
+		endpoint.stop();
+		assertEquals(2, attempts.get());
+
+		commands.createGroup(STREAM + ".dlq", "dlqGroup", "0");
+		List<StreamEntry> deadLetters = commands.readGroup(STREAM + ".dlq", "dlqGroup", "dlqConsumer", 10, true, ">");
+		assertEquals(1, deadLetters.size());
+		assertEquals("foo", new String(deadLetters.get(0).getPayload()));
+		commands.delete(STREAM);
+		commands.delete(STREAM + ".dlq");
+	}
+
+	@Test
+	public void testQuickRestartDoesNotDuplicateConsumers() throws Exception {
+		RedisConnection connection = Mockito.mock(RedisConnection.class, (InvocationOnMock invocation) -> {
+			if ("evalSha".equals(invocation.getMethod().getName())) {
+				// An existing group and an empty stream
+				return ReturnType.INTEGER.equals(invocation.getArgument(1)) ? 0L : new ArrayList<>();
+			}
+			return Mockito.RETURNS_DEFAULTS.answer(invocation);
+		});
+		RedisConnectionFactory connectionFactory = Mockito.mock(RedisConnectionFactory.class);
+		Mockito.when(connectionFactory.getConnection()).thenReturn(connection);
+
+		RedisStreamMessageDrivenEndpoint endpoint =
+				new RedisStreamMessageDrivenEndpoint(STREAM, "testGroup", connectionFactory);
+		endpoint.setBeanFactory(Mockito.mock(BeanFactory.class));
+		endpoint.setOutputChannel(new QueueChannel());
+		endpoint.setPollInterval(500);
+		endpoint.setConcurrency(2);
+		endpoint.afterPropertiesSet();
+		AtomicInteger activeConsumers = TestUtils.getPropertyValue(endpoint, "activeConsumers", AtomicInteger.class);
+
+		endpoint.start();
+		int n = 0;
+		while (n++ < 100 && Mockito.mockingDetails(connection).getInvocations().isEmpty()) {
+			Thread.sleep(10);
+		}
+		endpoint.stop();
+		endpoint.start();
+
+		// The consumers of the first start exit once they wake up instead of reading again
+		n = 0;
+		while (n++ < 100 && activeConsumers.get() > 2) {
+			Thread.sleep(50);
+		}
+		Thread.sleep(600);
+		assertEquals(2, activeConsumers.get());
+		assertTrue(endpoint.isListening());
+
+		CountDownLatch stopLatch = new CountDownLatch(1);
+		endpoint.stop(stopLatch::countDown);
+		assertTrue(stopLatch.await(10, TimeUnit.SECONDS));
+		assertEquals(0, activeConsumers.get());
+		assertFalse(endpoint.isListening());
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.springframework.data.redis.connection.DataType;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.integration.redis.rules.RedisAvailable;
+import org.springframework.integration.redis.rules.RedisAvailableTests;
+import org.springframework.integration.store.MessageGroup;
+import org.springframework.integration.store.MessageGroupMetadata;
+import org.springframework.integration.store.SimpleMessageGroup;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+
+/**
+ * @author agent
+ * @since 5.0
+ */
+public class RedisCompactMessageStoreTests extends RedisAvailableTests {
+
+	@Before
+	@After
+	public void setUpTearDown() {
+		StringRedisTemplate template = createStringRedisTemplate(getConnectionFactoryForTest());
+		template.delete(template.keys("GROUP_*"));
+		template.delete(template.keys("MESSAGE_*"));
+	}
+
+	@Test
+	@RedisAvailable
+	public void testNonExistingEmptyMessageGroup() {
+		RedisCompactMessageStore store = new RedisCompactMessageStore(getConnectionFactoryForTest());
+
+		MessageGroup messageGroup = store.getMessageGroup(1);
+		assertNotNull(messageGroup);
+		assertTrue(messageGroup instanceof SimpleMessageGroup);
+		assertEquals(0, messageGroup.size());
+		assertNull(store.getGroupMetadata(1));
+		assertNull(store.pollMessageFromGroup(1));
+		assertNull(store.getOneMessageFromGroup(1));
+	}
+
+	@Test
+	@RedisAvailable
+	public void testGroupLayout() throws Exception {
+		RedisConnectionFactory jcf = getConnectionFactoryForTest();
+		RedisCompactMessageStore store = new RedisCompactMessageStore(jcf);
+
+		Message<?> message1 = new GenericMessage<>("foo");
+		MessageGroup messageGroup = store.addMessageToGroup(1, message1);
+		assertEquals(1, messageGroup.size());
+		assertEquals(messageGroup.getTimestamp(), messageGroup.getLastModified());
+
+		Thread.sleep(10);
+		Message<?> message2 = new GenericMessage<>("bar");
+		messageGroup = store.addMessageToGroup(1, message2);
+		assertEquals(2, messageGroup.size());
+		assertTrue(messageGroup.getLastModified() > messageGroup.getTimestamp());
+
+		// adding the same message again must not change the group
+		store.addMessagesToGroup(1, message1);
+		assertEquals(2, store.messageGroupSize(1));
+
+		StringRedisTemplate template = createStringRedisTemplate(jcf);
+		assertEquals(DataType.HASH, template.type("GROUP_METADATA_1"));
+		assertEquals(DataType.ZSET, template.type("GROUP_MESSAGES_1"));
+		assertEquals(2L, store.getMessageCount());
+
+		store = new RedisCompactMessageStore(jcf);
+		messageGroup = store.getMessageGroup(1);
+		assertEquals(2, messageGroup.size());
+		Iterator<Message<?>> messages = messageGroup.getMessages().iterator();
+		assertEquals("foo", messages.next().getPayload());
+		assertEquals("bar", messages.next().getPayload());
+		assertEquals("foo", store.getOneMessageFromGroup(1).getPayload());
+		assertEquals("foo", store.getMessage(message1.getHeaders().getId()).getPayload());
+
+		MessageGroupMetadata metadata = store.getGroupMetadata(1);
+		assertEquals(2, metadata.size());
+		assertEquals(message1.getHeaders().getId(), metadata.firstId());
+
+		store.completeGroup(1);
+		store.setLastReleasedSequenceNumberForGroup(1, 5);
+		messageGroup = store.getMessageGroup(1);
+		assertTrue(messageGroup.isComplete());
+		assertEquals(5, messageGroup.getLastReleasedMessageSequenceNumber());
+
+		Message<?> polled = store.pollMessageFromGroup(1);
+		assertEquals("foo", polled.getPayload());
+		assertNull(store.getMessage(message1.getHeaders().getId()));
+		assertEquals(1, store.messageGroupSize(1));
+
+		store.removeMessagesFromGroup(1, message2);
+		assertEquals(0, store.messageGroupSize(1));
+		assertNull(store.getMessage(message2.getHeaders().getId()));
+		assertTrue(template.hasKey("GROUP_METADATA_1"));
+
+		store.removeMessageGroup(1);
+		assertFalse(template.hasKey("GROUP_METADATA_1"));
+		assertEquals(0, store.getMessageGroup(1).size());
+	}
+
+	@Test
+	@RedisAvailable
+	public void testRemoveMessageGroup() {
+		RedisCompactMessageStore store = new RedisCompactMessageStore(getConnectionFactoryForTest());
+
+		store.addMessagesToGroup("foo", new GenericMessage<>("1"), new GenericMessage<>("2"));
+		store.addMessagesToGroup("bar", new GenericMessage<>("3"));
+		assertEquals(2, store.getMessageGroupCount());
+		assertEquals(3, store.getMessageCountForAllMessageGroups());
+		assertEquals(3, store.getMessageCount());
+
+		store.removeMessageGroup("foo");
+		assertEquals(1, store.getMessageGroupCount());
+		assertEquals(1, store.getMessageCount());
+		assertEquals("bar", store.iterator().next().getGroupId());
+	}
+
+	@Test
+	@RedisAvailable
+	public void testLargeGroup() {
+		RedisCompactMessageStore store = new RedisCompactMessageStore(getConnectionFactoryForTest());
+		List<Message<?>> messages = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			Message<?> message = new GenericMessage<>(i);
+			messages.add(message);
+			store.addMessagesToGroup("large", message);
+		}
+		Collection<Message<?>> messagesForGroup = store.getMessagesForGroup("large");
+		assertEquals(10000, messagesForGroup.size());
+		assertEquals(0, messagesForGroup.iterator().next().getPayload());
+
+		store.removeMessagesFromGroup("large", messages);
+		assertEquals(0, store.messageGroupSize("large"));
+		assertEquals(0, store.getMessageCount());
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.integration.redis.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.integration.redis.rules.RedisAvailable;
+import org.springframework.integration.redis.rules.RedisAvailableTests;
+import org.springframework.integration.test.support.LongRunningIntegrationTest;
+
+/**
+ * @author agent
+ * @since 5.0
+ *
+ */
+public class RedisLockRegistryPerformanceTests extends RedisAvailableTests {
+
+	private static final Log logger = LogFactory.getLog(RedisLockRegistryPerformanceTests.class);
+
+	@ClassRule
+	public static LongRunningIntegrationTest longTests = new LongRunningIntegrationTest();
+
+	private final String registryKey = UUID.randomUUID().toString();
+
+	@After
+	public void tearDown() {
+		RedisTemplate<String, ?> template = new RedisTemplate<>();
+		template.setConnectionFactory(this.getConnectionFactoryForTest());
+		template.setKeySerializer(new StringRedisSerializer());
+		template.afterPropertiesSet();
+		template.delete(this.registryKey + ":*");
+	}
+
+	@Test
+	@RedisAvailable
+	public void testLockAcquireLatencyUnderContention() throws Exception {
+		logger.debug("Polling: " + measureContention(false));
+		logger.debug("Unlock notifications: " + measureContention(true));
+	}
+
+	private String measureContention(boolean notifications) throws Exception {
+		RedisMessageListenerContainer container = createContainer();
+		List<RedisLockRegistry> registries = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			RedisLockRegistry registry = new RedisLockRegistry(this.getConnectionFactoryForTest(), this.registryKey);
+			if (notifications) {
+				registry.setUnlockNotificationContainer(container);
+			}
+			registries.add(registry);
+		}
+		if (notifications) {
+			container.afterPropertiesSet();
+			container.start();
+			awaitContainerSubscribed(container);
+		}
+		int threadsPerRegistry = 3;
+		int iterations = 10;
+		ExecutorService exec = Executors.newCachedThreadPool();
+		AtomicLong totalWait = new AtomicLong();
+		AtomicLong maxWait = new AtomicLong();
+		List<Future<?>> futures = new ArrayList<>();
+		long start = System.currentTimeMillis();
+		for (RedisLockRegistry registry : registries) {
+			for (int i = 0; i < threadsPerRegistry; i++) {
+				futures.add(exec.submit(() -> {
+					for (int j = 0; j < iterations; j++) {
+						Lock lock = registry.obtain("foo");
+						long before = System.nanoTime();
+						lock.lock();
+						long wait = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before);
+						totalWait.addAndGet(wait);
+						maxWait.accumulateAndGet(wait, Math::max);
+						try {
+							Thread.sleep(5);
+						}
+						finally {
+							lock.unlock();
+						}
+					}
+					return null;
+				}));
+			}
+		}
+		for (Future<?> future : futures) {
+			future.get(60, TimeUnit.SECONDS);
+		}
+		long elapsed = System.currentTimeMillis() - start;
+		exec.shutdownNow();
+		container.stop();
+		int acquisitions = registries.size() * threadsPerRegistry * iterations;
+		return acquisitions + " acquisitions in " + elapsed + "ms, average wait "
+				+ (totalWait.get() / acquisitions) + "ms, max wait " + maxWait.get() + "ms";
+	}
+
+	private RedisMessageListenerContainer createContainer() {
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(this.getConnectionFactoryForTest());
+		return container;
+	}
+
+}
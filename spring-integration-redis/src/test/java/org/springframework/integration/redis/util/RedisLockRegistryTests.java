@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2016 the original author or authors.
+ * Copyright 2014-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package org.springframework.integration.redis.util;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
@@ -30,12 +31,15 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.logging.Log;
@@ -48,11 +52,13 @@ import org.junit.Test;
 
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.integration.redis.rules.RedisAvailable;
 import org.springframework.integration.redis.rules.RedisAvailableTests;
 import org.springframework.integration.test.rule.Log4jLevelAdjuster;
 import org.springframework.integration.test.util.TestUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 /**
  * @author Gary Russell
@@ -492,6 +498,71 @@ public class RedisLockRegistryTests extends RedisAvailableTests {
 		lock.unlock();
 	}
 
+	@Test
+	@RedisAvailable
+	public void testUnlockNotificationWakesUpRemoteWaiter() throws Exception {
+		RedisMessageListenerContainer container = createContainer();
+		RedisLockRegistry registry1 = new RedisLockRegistry(this.getConnectionFactoryForTest(), this.registryKey);
+		RedisLockRegistry registry2 = new RedisLockRegistry(this.getConnectionFactoryForTest(), this.registryKey);
+		registry1.setUnlockNotificationContainer(container);
+		registry2.setUnlockNotificationContainer(container);
+		container.afterPropertiesSet();
+		container.start();
+		awaitContainerSubscribed(container);
+
+		Lock lock1 = registry1.obtain("foo");
+		lock1.lock();
+		CountDownLatch waiting = new CountDownLatch(1);
+		AtomicLong acquiredAt = new AtomicLong();
+		ExecutorService exec = Executors.newSingleThreadExecutor();
+		Future<Boolean> result = exec.submit(() -> {
+			Lock lock2 = registry2.obtain("foo");
+			waiting.countDown();
+			boolean locked = lock2.tryLock(10, TimeUnit.SECONDS);
+			acquiredAt.set(System.currentTimeMillis());
+			if (locked) {
+				lock2.unlock();
+			}
+			return locked;
+		});
+		assertTrue(waiting.await(10, TimeUnit.SECONDS));
+		// let the waiter go idle between tries
+		Thread.sleep(200);
+		long unlockedAt = System.currentTimeMillis();
+		lock1.unlock();
+		assertTrue(result.get(10, TimeUnit.SECONDS));
+		long latency = acquiredAt.get() - unlockedAt;
+		logger.debug("Remote lock handover latency: " + latency + "ms");
+		// without the notification the waiter would retry only after a second
+		assertThat(latency, lessThan(500L));
+		container.stop();
+		exec.shutdownNow();
+	}
+
+	@Test
+	@RedisAvailable
+	public void testLeaseRenewal() throws Exception {
+		ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+		scheduler.afterPropertiesSet();
+		RedisLockRegistry registry = new RedisLockRegistry(this.getConnectionFactoryForTest(), this.registryKey, 1000);
+		registry.setRenewalTaskScheduler(scheduler);
+		Lock lock = registry.obtain("foo");
+		lock.lock();
+		Thread.sleep(2500);
+		assertEquals(1, TestUtils.getPropertyValue(registry, "heldLocks", Map.class).size());
+		assertTrue(this.createTemplate().hasKey(this.registryKey + ":foo"));
+		lock.unlock();
+		assertEquals(0, TestUtils.getPropertyValue(registry, "heldLocks", Map.class).size());
+		registry.destroy();
+		scheduler.destroy();
+	}
+
+	private RedisMessageListenerContainer createContainer() {
+		RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+		container.setConnectionFactory(this.getConnectionFactoryForTest());
+		return container;
+	}
+
 	private Long getExpire(RedisLockRegistry registry, String lockKey) {
 		RedisTemplate<String, ?> template = this.createTemplate();
 		String registryKey = TestUtils.getPropertyValue(registry, "registryKey", String.class);
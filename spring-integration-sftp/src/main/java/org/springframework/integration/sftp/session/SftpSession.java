@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2016 the original author or authors.
+ * Copyright 2002-2017 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -143,6 +143,16 @@ public class SftpSession implements Session<LsEntry> {
 		}
 	}
 
+	@Override
+	public InputStream readRaw(String source, long offset) throws IOException {
+		try {
+			return this.channel.get(source, null, offset);
+		}
+		catch (SftpException e) {
+			throw new NestedIOException("failed to read file " + source + " at offset " + offset, e);
+		}
+	}
+
 	@Override
 	public boolean finalizeRaw() throws IOException {
 		return true;